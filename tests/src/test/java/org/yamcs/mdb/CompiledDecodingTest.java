@@ -0,0 +1,198 @@
+package org.yamcs.mdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.yamcs.ContainerExtractionResult;
+import org.yamcs.YConfiguration;
+import org.yamcs.parameter.ContainerParameterValue;
+import org.yamcs.parameter.ParameterValue;
+import org.yamcs.parameter.ParameterValueList;
+import org.yamcs.protobuf.Pvalue.AcquisitionStatus;
+import org.yamcs.tests.RefMdbPacketGenerator;
+import org.yamcs.xtce.Parameter;
+import org.yamcs.xtce.SequenceContainer;
+
+/**
+ * Checks that the compiled decoding gives the same result as the interpreter
+ */
+public class CompiledDecodingTest {
+    private static Mdb mdb;
+
+    @BeforeAll
+    public static void setUpBeforeClass() throws Exception {
+        YConfiguration.setupTest("refmdb");
+        MdbFactory.reset();
+        mdb = MdbFactory.createInstanceByConfig("refmdb");
+    }
+
+    @Test
+    public void testAllPackets() {
+        XtceTmExtractor interpreted = new XtceTmExtractor(mdb);
+        interpreted.provideAll();
+        XtceTmExtractor compiled = compiledExtractor();
+        compiled.provideAll();
+
+        for (byte[] pkt : packets()) {
+            compare(interpreted, compiled, pkt);
+        }
+    }
+
+    @Test
+    public void testPartialSubscription() {
+        XtceTmExtractor interpreted = new XtceTmExtractor(mdb);
+        XtceTmExtractor compiled = compiledExtractor();
+        for (String pname : Arrays.asList("/REFMDB/SUBSYS1/IntegerPara1_1_6", "/REFMDB/SUBSYS1/FloatPara1_1_3",
+                "/REFMDB/SUBSYS1/FixedStringPara1_3_2", "/REFMDB/SUBSYS1/block_para3")) {
+            Parameter p = mdb.getParameter(pname);
+            assertNotNull(p, pname);
+            interpreted.startProviding(p);
+            compiled.startProviding(p);
+        }
+        for (byte[] pkt : packets()) {
+            compare(interpreted, compiled, pkt);
+        }
+
+        // the plans are recomputed when the subscription changes
+        Parameter p = mdb.getParameter("/REFMDB/SUBSYS1/IntegerPara1_1_7");
+        interpreted.startProviding(p);
+        compiled.startProviding(p);
+        for (byte[] pkt : packets()) {
+            compare(interpreted, compiled, pkt);
+        }
+    }
+
+    @Test
+    public void testTruncatedPackets() {
+        for (boolean ignoreOutOfContainerEntries : Arrays.asList(false, true)) {
+            XtceTmExtractor interpreted = extractor(false, ignoreOutOfContainerEntries);
+            interpreted.provideAll();
+            XtceTmExtractor compiled = extractor(true, ignoreOutOfContainerEntries);
+            compiled.provideAll();
+
+            // the entries beyond the end of the packet are either skipped or cause an exception
+            for (byte[] pkt : packets()) {
+                for (int length : Arrays.asList(pkt.length - 1, pkt.length / 2, 16)) {
+                    compare(interpreted, compiled, Arrays.copyOf(pkt, Math.min(length, pkt.length)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidValues() {
+        XtceTmExtractor interpreted = new XtceTmExtractor(mdb);
+        interpreted.provideAll();
+        XtceTmExtractor compiled = compiledExtractor();
+        compiled.provideAll();
+
+        // random data after the headers, giving values not matching any enumeration state or out of the valid range
+        Random random = new Random(1);
+        int numInvalid = 0;
+        for (byte[] pkt : packets()) {
+            for (int i = 0; i < 20; i++) {
+                byte[] pkt1 = pkt.clone();
+                for (int j = 16; j < pkt1.length; j++) {
+                    pkt1[j] = (byte) random.nextInt();
+                }
+                compare(interpreted, compiled, pkt1);
+                for (ParameterValue pv : interpreted.processPacket(pkt1, 1000, 2000, 0).getParameterResult()) {
+                    if (pv.getAcquisitionStatus() == AcquisitionStatus.INVALID) {
+                        numInvalid++;
+                    }
+                }
+            }
+        }
+        assertTrue(numInvalid > 0);
+    }
+
+    @Test
+    public void testInheritanceIndex() {
+        XtceTmExtractor compiled = compiledExtractor();
+        compiled.provideAll();
+        SequenceContainer root = mdb.getRootSequenceContainer();
+        ContainerDecodePlan plan = compiled.getSubscription().getSubscribedContainer(root).getDecodePlan();
+        // the packets are dispatched based on the APID
+        assertEquals("/REFMDB/ccsds-apid", plan.discriminator.getParameter().getQualifiedName());
+        assertNotNull(plan.inheritingByValue.get(995L));
+
+        SequenceContainer pkt1 = mdb.getSequenceContainer("/REFMDB/SUBSYS1/PKT1");
+        ContainerDecodePlan pkt1Plan = compiled.getSubscription().getSubscribedContainer(pkt1).getDecodePlan();
+        // some of the PKT1 sub-containers are distinguished by the packet type, the others are always evaluated
+        assertEquals("/REFMDB/SUBSYS1/PacketType", pkt1Plan.discriminator.getParameter().getQualifiedName());
+        assertEquals(5, pkt1Plan.otherInheritingContainers.size());
+
+        // the plan is cached until the subscription changes
+        assertSame(plan, compiled.getSubscription().getSubscribedContainer(root).getDecodePlan());
+    }
+
+    private static XtceTmExtractor compiledExtractor() {
+        return extractor(true, false);
+    }
+
+    private static XtceTmExtractor extractor(boolean compiledDecoding, boolean ignoreOutOfContainerEntries) {
+        XtceTmExtractor extractor = new XtceTmExtractor(mdb);
+        ContainerProcessingOptions options = new ContainerProcessingOptions();
+        options.setCompiledDecoding(compiledDecoding);
+        options.setIgnoreOutOfContainerEntries(ignoreOutOfContainerEntries);
+        extractor.setOptions(options);
+        return extractor;
+    }
+
+    static List<byte[]> packets() {
+        RefMdbPacketGenerator tmGenerator = new RefMdbPacketGenerator();
+        return Arrays.asList(tmGenerator.generate_PKT1_1(), tmGenerator.generate_PKT1_2(),
+                tmGenerator.generate_PKT1_3(), tmGenerator.generate_PKT14(), tmGenerator.generate_PKT1_5(),
+                tmGenerator.generate_TM2_PKT1(), tmGenerator.generate_PKT1_6(3, 4), tmGenerator.generate_PKT1_7(),
+                tmGenerator.generate_PKT1_8(5, 6), tmGenerator.generate_PKT1_9(),
+                tmGenerator.generate_PKT1_10(1, 2, 3.5f), tmGenerator.generate_PKT1_11(),
+                tmGenerator.generate_PKT1_12(), tmGenerator.generate_PKT4(), tmGenerator.generate_PKT5(),
+                tmGenerator.generate_PKT6(), tmGenerator.generate_PKT2(), tmGenerator.generate_PKT3(),
+                tmGenerator.generate_PKT7(), tmGenerator.generate_PKT8(), tmGenerator.generate_PKT9((short) 1, 10),
+                tmGenerator.generate_PKT10(), tmGenerator.generate_PKT11("abc", (byte) 7),
+                tmGenerator.generate_PKT12(), tmGenerator.generate_PKT13());
+    }
+
+    private static void compare(XtceTmExtractor interpreted, XtceTmExtractor compiled, byte[] pkt) {
+        ContainerProcessingResult r1 = interpreted.processPacket(pkt, 1000, 2000, 0);
+        ContainerProcessingResult r2 = compiled.processPacket(pkt, 1000, 2000, 0);
+        assertEquals(String.valueOf(r1.exception), String.valueOf(r2.exception));
+
+        List<ContainerExtractionResult> c1 = r1.getContainerResult();
+        List<ContainerExtractionResult> c2 = r2.getContainerResult();
+        assertEquals(c1.size(), c2.size());
+        for (int i = 0; i < c1.size(); i++) {
+            assertSame(c1.get(i).getContainer(), c2.get(i).getContainer());
+            assertEquals(c1.get(i).getLocationInContainerInBits(), c2.get(i).getLocationInContainerInBits());
+        }
+
+        ParameterValueList l1 = r1.getParameterResult();
+        ParameterValueList l2 = r2.getParameterResult();
+        assertEquals(l1.size(), l2.size());
+        var it2 = l2.iterator();
+        for (ParameterValue pv1 : l1) {
+            ParameterValue pv2 = it2.next();
+            String name = pv1.getParameterQualifiedName();
+            assertSame(pv1.getParameter(), pv2.getParameter());
+            assertEquals(String.valueOf(pv1.getRawValue()), String.valueOf(pv2.getRawValue()), name);
+            assertEquals(String.valueOf(pv1.getEngValue()), String.valueOf(pv2.getEngValue()), name);
+            assertEquals(pv1.getAcquisitionStatus(), pv2.getAcquisitionStatus(), name);
+            assertEquals(pv1.getExpireMills(), pv2.getExpireMills(), name);
+            if (pv1 instanceof ContainerParameterValue) {
+                ContainerParameterValue cpv1 = (ContainerParameterValue) pv1;
+                ContainerParameterValue cpv2 = (ContainerParameterValue) pv2;
+                assertEquals(cpv1.getAbsoluteBitOffset(), cpv2.getAbsoluteBitOffset(), name);
+                assertEquals(cpv1.getBitSize(), cpv2.getBitSize(), name);
+                assertSame(cpv1.getSequenceEntry(), cpv2.getSequenceEntry(), name);
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.yamcs.mdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.yamcs.ContainerExtractionResult;
+import org.yamcs.ProcessorConfig;
+import org.yamcs.TmPacket;
+import org.yamcs.YConfiguration;
+
+/**
+ * Checks the decoding of the packets in parallel by the {@link XtceTmProcessor}
+ */
+public class ParallelDecodingTest {
+    private static Mdb mdb;
+
+    @BeforeAll
+    public static void setUpBeforeClass() throws Exception {
+        YConfiguration.setupTest("refmdb");
+        MdbFactory.reset();
+        mdb = MdbFactory.createInstanceByConfig("refmdb");
+    }
+
+    @Test
+    public void testOrderPerApid() throws Exception {
+        ProcessorConfig pconfig = new ProcessorConfig();
+        pconfig.getContainerProcessingOptions().setDecodingThreads(3);
+        pconfig.getContainerProcessingOptions().setDecodingQueueSize(4);
+        XtceTmProcessor tmProcessor = new XtceTmProcessor(mdb, pconfig);
+
+        Map<Integer, List<Long>> deliveries = new HashMap<>();
+        AtomicBoolean delivering = new AtomicBoolean();
+        AtomicBoolean concurrentDelivery = new AtomicBoolean();
+        tmProcessor.setContainerListener(containers -> {
+            if (!delivering.compareAndSet(false, true)) {
+                concurrentDelivery.set(true);
+            }
+            ContainerExtractionResult root = containers.get(0);
+            deliveries.computeIfAbsent(getApid(root.getContainerContent()), k -> new ArrayList<>())
+                    .add(root.getGenerationTime());
+            delivering.set(false);
+        });
+        tmProcessor.startProvidingAll();
+        tmProcessor.startAsync().awaitRunning();
+
+        List<byte[]> packets = CompiledDecodingTest.packets();
+        int n = 200;
+        Map<Integer, List<Long>> expected = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            byte[] pkt = packets.get(i % packets.size());
+            long gentime = 1000 + i;
+            tmProcessor.processPacket(new TmPacket(gentime, gentime, i, pkt), mdb.getRootSequenceContainer());
+            expected.computeIfAbsent(getApid(pkt), k -> new ArrayList<>()).add(gentime);
+        }
+        tmProcessor.stopAsync().awaitTerminated(10, TimeUnit.SECONDS);
+
+        assertFalse(concurrentDelivery.get());
+        assertTrue(expected.size() > 1);
+        // all the packets are delivered, in order for each APID
+        assertEquals(expected, deliveries);
+    }
+
+    private static int getApid(byte[] pkt) {
+        return ((pkt[0] & 0x07) << 8) | (pkt[1] & 0xFF);
+    }
+}
@@ -0,0 +1,62 @@
+package org.yamcs.mdb;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.yamcs.YConfiguration;
+
+/**
+ * Compares the speed of the interpreted and compiled decoding of the reference MDB packets
+ */
+@Disabled
+public class XtceTmExtractorPerfTest {
+    static final int WARMUP_ITERATIONS = 20_000;
+    static final int ITERATIONS = 100_000;
+    private static Mdb mdb;
+
+    @BeforeAll
+    public static void setUpBeforeClass() throws Exception {
+        YConfiguration.setupTest("refmdb");
+        MdbFactory.reset();
+        mdb = MdbFactory.createInstanceByConfig("refmdb");
+    }
+
+    @Test
+    public void testSpeed() {
+        // the packets failing to decode are not used, the time would be spent mostly in logging the error
+        XtceTmExtractor validator = new XtceTmExtractor(mdb);
+        validator.provideAll();
+        List<byte[]> packets = CompiledDecodingTest.packets().stream()
+                .filter(pkt -> validator.processPacket(pkt, 0, 0, 0).exception == null)
+                .collect(Collectors.toList());
+
+        for (boolean compiled : new boolean[] { false, true, false, true }) {
+            XtceTmExtractor extractor = new XtceTmExtractor(mdb);
+            ContainerProcessingOptions options = new ContainerProcessingOptions();
+            options.setCompiledDecoding(compiled);
+            extractor.setOptions(options);
+            extractor.provideAll();
+
+            run(extractor, packets, WARMUP_ITERATIONS);
+            long t0 = System.nanoTime();
+            long n = run(extractor, packets, ITERATIONS);
+            long t1 = System.nanoTime();
+            System.out.println((compiled ? "compiled:    " : "interpreted: ") + ITERATIONS * packets.size()
+                    + " packets, " + n + " parameters in " + (t1 - t0) / 1_000_000 + " ms; "
+                    + (t1 - t0) / (ITERATIONS * packets.size()) + " ns/packet");
+        }
+    }
+
+    private long run(XtceTmExtractor extractor, List<byte[]> packets, int iterations) {
+        long n = 0;
+        for (int i = 0; i < iterations; i++) {
+            for (byte[] pkt : packets) {
+                n += extractor.processPacket(pkt, i, i, 0).getParameterResult().size();
+            }
+        }
+        return n;
+    }
+}
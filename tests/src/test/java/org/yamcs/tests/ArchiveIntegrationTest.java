@@ -237,6 +237,60 @@ public class ArchiveIntegrationTest extends AbstractIntegrationTest {
         assertEquals(packetGenerator.pIntegerPara1_1_7, pv3.getEngValue().getUint32Value());
     }
 
+    @Test
+    public void testFastForwardReplay() throws Exception {
+        generatePkt13AndPps("2016-02-01T10:00:00", 300);
+
+        CreateProcessorRequest prequest = CreateProcessorRequest.newBuilder()
+                .setInstance("instance1")
+                .setName("testFastForwardReplay")
+                .setPersistent(true)
+                .setType("Archive")
+                .setConfig("{\"start\": \"2016-02-01T10:01:00Z\", \"stop\": \"2016-02-01T10:04:00Z\", "
+                        + "\"endAction\": \"STOP\", \"speed\": {\"type\": \"FAST_FORWARD\"}}")
+                .build();
+        ProcessorClient replay = yamcsClient.createProcessor(prequest).get();
+        Thread.sleep(2000);
+
+        ParameterSubscription subscription = yamcsClient.createParameterSubscription();
+        ParameterCaptor captor = ParameterCaptor.of(subscription);
+        SubscribeParametersRequest request = SubscribeParametersRequest.newBuilder()
+                .setInstance(replay.getInstance())
+                .setProcessor(replay.getProcessor())
+                .setSendFromCache(false)
+                .addId(NamedObjectId.newBuilder().setName("/REFMDB/SUBSYS1/IntegerPara1_1_6"))
+                .addId(NamedObjectId.newBuilder().setName("/REFMDB/SUBSYS1/processed_para_uint"))
+                .build();
+        subscription.sendMessage(request);
+        replay.pause().get();
+        Thread.sleep(2000);
+        captor.clear();
+
+        replay.seek(Instant.parse("2016-02-01T10:01:00Z")).get();
+
+        // the packets are decoded in parallel but delivered in the original order
+        long t0 = TimeEncoding.parse("2016-02-01T10:01:00");
+        long lastTime = -1;
+        int count = 0;
+        List<ParameterValue> values;
+        while ((values = captor.poll(2000)) != null) {
+            for (ParameterValue pv : values) {
+                long t = TimeEncoding.fromProtobufTimestamp(pv.getGenerationTime());
+                assertTrue(t >= lastTime);
+                lastTime = t;
+                if (pv.getId().getName().equals("/REFMDB/SUBSYS1/IntegerPara1_1_6")) {
+                    assertEquals(t0 + 1000 * count, t);
+                    count++;
+                }
+            }
+        }
+        assertTrue(count >= 180);
+
+        var progress = replay.getInfo().get().getReplayProgress();
+        assertTrue(progress.getCount() >= 2 * count);
+        assertTrue(progress.getRate() > 0);
+    }
+
     @Test
     public void testReplayWithPpExclusion() throws Exception {
         generatePkt13AndPps("2015-02-01T10:00:00", 300);
@@ -0,0 +1,86 @@
+package org.yamcs.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.yamcs.YConfiguration;
+import org.yamcs.YamcsServer;
+import org.yamcs.client.ParameterSubscription;
+import org.yamcs.client.YamcsClient;
+import org.yamcs.http.HttpServer;
+import org.yamcs.protobuf.SubscribeParametersData;
+import org.yamcs.protobuf.SubscribeParametersRequest;
+import org.yamcs.protobuf.Yamcs.NamedObjectId;
+import org.yamcs.tests.AbstractIntegrationTest.MyConnectionListener;
+
+import io.netty.channel.epoll.Epoll;
+
+/**
+ * Runs the HTTP server with the epoll transport, multiple accept threads and a separate WebSocket group.
+ * <p>
+ * Skipped on the hosts where the native epoll transport is not available.
+ */
+public class HttpServerEpollTest {
+
+    @BeforeAll
+    public static void beforeClass() throws Exception {
+        assumeTrue(Epoll.isAvailable(), "epoll transport not available");
+        YConfiguration.setupTest("HttpServerEpollTest");
+        YamcsServer.getServer().prepareStart();
+        YamcsServer.getServer().start();
+    }
+
+    @AfterAll
+    public static void shutDownYamcs() throws Exception {
+        if (Epoll.isAvailable()) {
+            YamcsServer.getServer().shutDown();
+        }
+    }
+
+    @Test
+    public void testEpoll() {
+        assertTrue(YamcsServer.getServer().getGlobalService(HttpServer.class).isEpoll());
+    }
+
+    @Test
+    public void testConnections() throws Exception {
+        // the connections are distributed over the server sockets bound on the same port
+        for (int i = 0; i < 10; i++) {
+            YamcsClient client = YamcsClient.newBuilder("localhost", 9192).build();
+            try {
+                assertEquals("HttpServerEpollTest",
+                        client.getServerInfo().get(5, TimeUnit.SECONDS).getDefaultYamcsInstance());
+                subscribe(client);
+            } finally {
+                client.close();
+            }
+        }
+    }
+
+    private void subscribe(YamcsClient client) throws Exception {
+        MyConnectionListener connectionListener = new MyConnectionListener();
+        client.addConnectionListener(connectionListener);
+        client.connectWebSocket();
+        assertTrue(connectionListener.onConnect.tryAcquire(5, TimeUnit.SECONDS));
+
+        SubscribeParametersRequest request = SubscribeParametersRequest.newBuilder()
+                .setAbortOnInvalid(false)
+                .setInstance("HttpServerEpollTest")
+                .setProcessor("realtime")
+                .addId(NamedObjectId.newBuilder().setName("/REFMDB/SUBSYS1/IntegerPara1_1_6"))
+                .build();
+
+        ParameterSubscription subscription = client.createParameterSubscription();
+        MessageCaptor<SubscribeParametersData> captor = MessageCaptor.of(subscription);
+        subscription.sendMessage(request);
+
+        // the first message (with the parameter ids) is received through the WebSocket group
+        captor.expectTimely();
+    }
+}
@@ -34,6 +34,7 @@ import org.yamcs.parameter.ParameterRequestManager;
 import org.yamcs.parameter.ParameterValue;
 import org.yamcs.protobuf.ServiceState;
 import org.yamcs.protobuf.Yamcs.EndAction;
+import org.yamcs.protobuf.Yamcs.ReplayProgress;
 import org.yamcs.protobuf.Yamcs.ReplayRequest;
 import org.yamcs.protobuf.Yamcs.ReplaySpeed;
 import org.yamcs.protobuf.Yamcs.ReplaySpeed.ReplaySpeedType;
@@ -558,6 +559,15 @@ public class Processor extends AbstractService {
         return ((ArchiveTmPacketProvider) tmPacketProvider).getCurrentReplayRequest();
     }
 
+    /**
+     * valid only if isArchiveReplay returns true
+     * 
+     * @return the progress of the replay or null if not available
+     */
+    public ReplayProgress getReplayProgress() {
+        return ((ArchiveTmPacketProvider) tmPacketProvider).getReplayProgress();
+    }
+
     public ServiceState getState() {
         return ServiceState.valueOf(state().name());
     }
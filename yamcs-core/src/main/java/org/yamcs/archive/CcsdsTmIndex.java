@@ -3,16 +3,26 @@ package org.yamcs.archive;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 import javax.naming.ConfigurationException;
 
 import org.rocksdb.RocksDBException;
 import org.rocksdb.RocksIterator;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
 import org.yamcs.AbstractYamcsService;
 import org.yamcs.InitException;
 import org.yamcs.NotThreadSafe;
@@ -42,6 +52,8 @@ import org.yamcs.yarch.rocksdb.protobuf.Tablespace.TablespaceRecord;
 import org.yamcs.yarch.rocksdb.protobuf.Tablespace.TablespaceRecord.Type;
 import org.yamcs.yarch.streamsql.StreamSqlException;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 /**
  * Completeness index of CCSDS telemetry. The structure of the rocksdb records:
  *
@@ -65,9 +77,24 @@ public class CcsdsTmIndex extends AbstractYamcsService implements TmIndexService
     static long maxApidInterval = 3600 * 1000l;
     private static AtomicInteger streamCounter = new AtomicInteger();
     protected Tablespace tablespace;
-    int tbsIndex;
+    volatile int tbsIndex;
     List<String> streamNames;
 
+    // the packets are accumulated in memory in runs of consecutive packets, each run corresponding to one record.
+    // The runs are written to the database periodically or when a packet does not fit at the end of a run.
+    static final int NUM_STRIPES = 16;
+    // maximum number of runs kept open for one APID (e.g. realtime packets, playback packets and rebuild)
+    static final int MAX_OPEN_RUNS = 4;
+    static final long FLUSH_INTERVAL = 1000;
+    final Stripe[] stripes = new Stripe[NUM_STRIPES];
+    ScheduledExecutorService flushExecutor;
+
+    {
+        for (int i = 0; i < NUM_STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
     @Override
     public void init(String yamcsInstance, String serviceName, YConfiguration args) throws InitException {
         super.init(yamcsInstance, serviceName, args);
@@ -102,6 +129,9 @@ public class CcsdsTmIndex extends AbstractYamcsService implements TmIndexService
             }
             stream.addSubscriber(this);
         }
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("CcsdsTmIndex-" + yamcsInstance).build());
+        flushExecutor.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
         notifyStarted();
     }
 
@@ -115,6 +145,10 @@ public class CcsdsTmIndex extends AbstractYamcsService implements TmIndexService
                 stream.removeSubscriber(this);
             }
         }
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+        }
+        flush();
         notifyStopped();
     }
 
@@ -172,7 +206,52 @@ public class CcsdsTmIndex extends AbstractYamcsService implements TmIndexService
         return (Long) tuple.getColumn(StandardTupleDefinitions.GENTIME_COLUMN);
     }
 
-    synchronized void addPacket(short apid, long instant, short seq) throws RocksDBException {
+    void addPacket(short apid, long instant, short seq) throws RocksDBException {
+        Stripe stripe = stripes[apid & (NUM_STRIPES - 1)];
+        stripe.lock.lock();
+        try {
+            List<OpenRun> runs = stripe.runs.computeIfAbsent(apid, k -> new ArrayList<>());
+            for (OpenRun run : runs) {
+                int c = compare(apid, instant, seq, run.record);
+                if (c == 0) {
+                    if (log.isTraceEnabled()) {
+                        log.trace("ignored duplicate packet: apid={} time={} seq={}", apid,
+                                TimeEncoding.toOrdinalDateTime(instant), seq);
+                    }
+                    return;
+                } else if (c == 1 && compare(apid, instant, seq, run.next) < -1) {
+                    // the most common case: the packet is appended to the run without touching the database
+                    run.record.seqLast = seq;
+                    run.record.lastTime = instant;
+                    run.record.numPackets++;
+                    run.dirty = true;
+                    return;
+                }
+            }
+            // the database has to be up to date before looking for the records surrounding the packet
+            for (OpenRun run : runs) {
+                writeRun(run);
+            }
+            OpenRun run = insertPacket(apid, instant, seq, runs);
+            if (run != null) {
+                if (runs.size() >= MAX_OPEN_RUNS) {
+                    runs.remove(0);
+                }
+                runs.add(run);
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts the packet into the database and returns the run corresponding to the record containing the packet or
+     * null if the packet is a duplicate.
+     * <p>
+     * The runs from the list which correspond to records modified by the insertion are removed.
+     */
+    private OpenRun insertPacket(short apid, long instant, short seq, List<OpenRun> runs)
+            throws RocksDBException {
         YRDB db = tablespace.getRdb();
         RocksIterator it = tablespace.getRdb().newIterator();
         try {
@@ -190,7 +269,7 @@ public class CcsdsTmIndex extends AbstractYamcsService implements TmIndexService
                         log.trace("ignored duplicate packet: apid={} time={} seq={}", apid,
                                 TimeEncoding.toOrdinalDateTime(instant), seq);
                     }
-                    return;
+                    return null;
                 } else if (cright < 0) {
                     break;
                 } else {
@@ -207,35 +286,104 @@ public class CcsdsTmIndex extends AbstractYamcsService implements TmIndexService
                     log.trace("ignored duplicate packet: apid={} time={} seq={}", apid,
                             TimeEncoding.toOrdinalDateTime(instant), seq);
                 }
-                return;
+                return null;
             }
+            byte[] kleft = rleft.key(tbsIndex);
+            byte[] kright = rright.key(tbsIndex);
+            runs.removeIf(run -> Arrays.equals(run.key, kleft) || Arrays.equals(run.key, kright)
+                    || Arrays.equals(run.nextKey, kright));
+
             // the cursor is located on the left record and we have a few cases to examine
             if ((cleft == 1) && (cright == -1)) { // left and right have to be merged
                 rleft.seqLast = rright.seqLast;
                 rleft.lastTime = rright.lastTime;
                 rleft.numPackets += rright.numPackets + 1;
-                db.put(rleft.key(tbsIndex), rleft.val());
-                db.delete(rright.key(tbsIndex)); // remove the right record
+                db.put(kleft, rleft.val());
+                db.delete(kright); // remove the right record
+                it.next();
+                it.next();
+                return new OpenRun(rleft, kleft, new Record(it.key(), it.value()));
             } else if (cleft == 1) {// attach to left
                 rleft.seqLast = seq;
                 rleft.lastTime = instant;
                 rleft.numPackets++;
-                db.put(rleft.key(tbsIndex), rleft.val());
+                db.put(kleft, rleft.val());
+                return new OpenRun(rleft, kleft, rright);
             } else if (cright == -1) {// attach to right
-                db.delete(rright.key(tbsIndex));
+                db.delete(kright);
                 rright.seqFirst = seq;
                 rright.firstTime = instant;
                 rright.numPackets++;
-                db.put(rright.key(tbsIndex), rright.val());
+                byte[] k = rright.key(tbsIndex);
+                db.put(k, rright.val());
+                it.next();
+                it.next();
+                return new OpenRun(rright, k, new Record(it.key(), it.value()));
             } else { // create a new record
                 Record r = new Record(apid, instant, seq, 1);
-                db.put(r.key(tbsIndex), r.val());
+                byte[] k = r.key(tbsIndex);
+                db.put(k, r.val());
+                return new OpenRun(r, k, rright);
             }
         } finally {
             it.close();
         }
     }
 
+    private void writeRun(OpenRun run) throws RocksDBException {
+        if (run.dirty) {
+            tablespace.getRdb().put(run.key, run.record.val());
+            run.dirty = false;
+        }
+    }
+
+    /**
+     * Writes to the database the packets accumulated in memory.
+     * <p>
+     * It is called periodically when the service is running and before reading the index.
+     */
+    void flush() {
+        YRDB db = tablespace.getRdb();
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try (WriteBatch wb = new WriteBatch(); WriteOptions wo = new WriteOptions()) {
+                List<OpenRun> dirtyRuns = new ArrayList<>();
+                for (List<OpenRun> runs : stripe.runs.values()) {
+                    for (OpenRun run : runs) {
+                        if (run.dirty) {
+                            wb.put(run.key, run.record.val());
+                            dirtyRuns.add(run);
+                        }
+                    }
+                }
+                if (!dirtyRuns.isEmpty()) {
+                    db.write(wo, wb);
+                    dirtyRuns.forEach(run -> run.dirty = false);
+                }
+            } catch (RocksDBException e) {
+                log.error("Error when writing the ccsds tm index", e);
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Writes and forgets all the runs; called before deleting records.
+     * <p>
+     * Called with all the stripe locks held.
+     */
+    private void closeRuns() throws RocksDBException {
+        for (Stripe stripe : stripes) {
+            for (List<OpenRun> runs : stripe.runs.values()) {
+                for (OpenRun run : runs) {
+                    writeRun(run);
+                }
+            }
+            stripe.runs.clear();
+        }
+    }
+
     /**
      * compare the packet with the record. returns:
      * <ul>
@@ -299,7 +447,7 @@ public class CcsdsTmIndex extends AbstractYamcsService implements TmIndexService
      * @see org.yamcs.yarch.usoc.TmIndex#deleteRecords(long, long)
      */
     @Override
-    public synchronized void deleteRecords(long start, long stop) {
+    public void deleteRecords(long start, long stop) {
         try {
             deleteRecords(new TimeInterval(start, stop));
         } catch (RocksDBException e) {
@@ -352,6 +500,7 @@ public class CcsdsTmIndex extends AbstractYamcsService implements TmIndexService
         Record curr;
 
         public CcsdsIndexIterator(short apid, long start, long stop) {
+            flush();
             if (start < 0) {
                 start = 0;
             }
@@ -454,7 +603,13 @@ public class CcsdsTmIndex extends AbstractYamcsService implements TmIndexService
         }
     }
 
-    public synchronized CompletableFuture<Void> rebuild(TimeInterval interval) throws YarchException {
+    /**
+     * Rebuilds the index for the given interval from the packets stored in the tm table.
+     * <p>
+     * The packets are read from the table through a stream created for this purpose and added to the index in the
+     * same way as the realtime packets, which continue to be indexed during the rebuild.
+     */
+    public CompletableFuture<Void> rebuild(TimeInterval interval) throws YarchException {
         CompletableFuture<Void> cf = new CompletableFuture<>();
 
         if (interval.hasStart() || interval.hasEnd()) {
@@ -470,13 +625,24 @@ public class CcsdsTmIndex extends AbstractYamcsService implements TmIndexService
 
         } else {
             log.info("{} Rebuilding the CCSDS tm index from scratch", yamcsInstance);
+            // the realtime packets are blocked only while the index is being replaced
+            for (Stripe stripe : stripes) {
+                stripe.lock.lock();
+            }
             try {
+                for (Stripe stripe : stripes) {
+                    stripe.runs.clear();
+                }
                 tablespace.removeTbsIndex(Type.TM_INDEX, tbsIndex);
                 openDb();
             } catch (Exception e) {
                 log.error("Error when removing existing tm index", e);
                 cf.completeExceptionally(e);
                 return cf;
+            } finally {
+                for (Stripe stripe : stripes) {
+                    stripe.lock.unlock();
+                }
             }
         }
 
@@ -494,6 +660,7 @@ public class CcsdsTmIndex extends AbstractYamcsService implements TmIndexService
         stream.addSubscriber(new StreamSubscriber() {
             @Override
             public void streamClosed(Stream stream) {
+                flush();
                 cf.complete(null);
             }
 
@@ -507,7 +674,23 @@ public class CcsdsTmIndex extends AbstractYamcsService implements TmIndexService
         return cf;
     }
 
-    private synchronized void deleteRecords(TimeInterval interval) throws RocksDBException {
+    private void deleteRecords(TimeInterval interval) throws RocksDBException {
+        // the realtime packets are blocked during the deletion, a run opened in the meanwhile would write back the
+        // deleted records
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+        }
+        try {
+            closeRuns();
+            deleteRanges(interval);
+        } finally {
+            for (Stripe stripe : stripes) {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    private void deleteRanges(TimeInterval interval) throws RocksDBException {
         YRDB db = tablespace.getRdb();
         try (RocksIterator it = db.newIterator()) {
             it.seek(firstKey(tbsIndex)); // header
@@ -532,6 +715,30 @@ public class CcsdsTmIndex extends AbstractYamcsService implements TmIndexService
         }
     }
 
+    static class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        final Map<Short, List<OpenRun>> runs = new HashMap<>();
+    }
+
+    /**
+     * Record which may be extended in memory with the packets following it.
+     */
+    static class OpenRun {
+        final Record record;
+        final byte[] key;
+        // the record following this one in the database; the packets fitting before it can be appended to the run
+        final Record next;
+        final byte[] nextKey;
+        boolean dirty;
+
+        OpenRun(Record record, byte[] key, Record next) {
+            this.record = record;
+            this.key = key;
+            this.next = next;
+            this.nextKey = next.key(Record.tbsIndex(key));
+        }
+    }
+
     public static String getWhereCondition(String timeColumnName, TimeInterval interval) {
         if (!interval.hasStart() && !interval.hasEnd()) {
             return "";
@@ -585,6 +792,10 @@ class Record {
         this.numPackets = numPackets;
     }
 
+    static int tbsIndex(byte[] key) {
+        return ByteBuffer.wrap(key).getInt();
+    }
+
     static byte[] key(int tbsIndex, short apid, long start, short seqFirst) {
         ByteBuffer bbk = ByteBuffer.allocate(KEY_SIZE);
         bbk.putInt(tbsIndex);
@@ -7,6 +7,7 @@ import org.yamcs.InitException;
 import org.yamcs.StreamConfig;
 import org.yamcs.StreamConfig.StreamConfigEntry;
 import org.yamcs.YConfiguration;
+import org.yamcs.utils.TimeInterval;
 import org.yamcs.utils.parser.ParseException;
 import org.yamcs.yarch.YarchDatabase;
 import org.yamcs.yarch.YarchDatabaseInstance;
@@ -15,6 +16,9 @@ import org.yamcs.yarch.streamsql.StreamSqlException;
 
 /**
  * Sets up the archiving of the events coming on events_realtime and events_dump streams into the yarch table events.
+ * <p>
+ * If the option <code>textIndex</code> is set to true, the words of the event messages are also indexed in the table
+ * {@value EventTextIndex#TABLE_NAME}, see {@link EventTextIndex}.
  * 
  * @author nm
  *
@@ -24,7 +28,9 @@ public class EventRecorder extends AbstractYamcsService {
     public static final String TABLE_NAME = "events";
     public static final String REALTIME_EVENT_STREAM_NAME = "events_realtime";
     public static final String CF_NAME = XtceTmRecorder.CF_NAME;
-    
+
+    private EventTextIndex textIndex;
+
     @Override
     public void init(String yamcsInstance, String serviceName, YConfiguration config) throws InitException {
         super.init(yamcsInstance, serviceName, config);
@@ -32,9 +38,8 @@ public class EventRecorder extends AbstractYamcsService {
         YarchDatabaseInstance ydb = YarchDatabase.getInstance(yamcsInstance);
 
         try {
+            var timePart = ydb.getTimePartitioningSchema(config);
             if (ydb.getTable(TABLE_NAME) == null) {
-                var timePart = ydb.getTimePartitioningSchema(config);
-
                 var partitionBy = timePart == null ? ""
                         : "partition by time(gentime('" + timePart.getName() + "'))";
 
@@ -44,10 +49,17 @@ public class EventRecorder extends AbstractYamcsService {
                         + " table_format=compressed,column_family:"+CF_NAME);
             }
 
+            if (config.getBoolean("textIndex", false)) {
+                textIndex = new EventTextIndex(ydb, CF_NAME);
+            }
+
             StreamConfig sc = StreamConfig.getInstance(yamcsInstance);
             for (StreamConfigEntry sce : sc.getEntries()) {
                 if (sce.getType() == StreamConfig.StandardStreamType.EVENT) {
                     ydb.execute("insert into " + TABLE_NAME + " select * from " + sce.getName());
+                    if (textIndex != null) {
+                        textIndex.indexStream(ydb.getStream(sce.getName()));
+                    }
                 }
             }
         } catch (ParseException | StreamSqlException e) {
@@ -57,6 +69,10 @@ public class EventRecorder extends AbstractYamcsService {
 
     @Override
     protected void doStart() {
+        // the index has been enabled on an existing archive or the server has been stopped during the rebuild
+        if (textIndex != null && !textIndex.isReady()) {
+            textIndex.rebuild(new TimeInterval());
+        }
         notifyStarted();
     }
 
@@ -69,4 +85,11 @@ public class EventRecorder extends AbstractYamcsService {
 
         notifyStopped();
     }
+
+    /**
+     * Returns the index of the event messages or null if the text indexing is not enabled.
+     */
+    public EventTextIndex getTextIndex() {
+        return textIndex;
+    }
 }
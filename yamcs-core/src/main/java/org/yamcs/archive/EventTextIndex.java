@@ -0,0 +1,454 @@
+package org.yamcs.archive;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.yamcs.logging.Log;
+import org.yamcs.utils.TimeInterval;
+import org.yamcs.utils.parser.ParseException;
+import org.yamcs.yarch.DataType;
+import org.yamcs.yarch.DbRange;
+import org.yamcs.yarch.ExecutionContext;
+import org.yamcs.yarch.PartitionManager;
+import org.yamcs.yarch.ProtobufDatabase;
+import org.yamcs.yarch.Stream;
+import org.yamcs.yarch.StreamSubscriber;
+import org.yamcs.yarch.TableColumnDefinition;
+import org.yamcs.yarch.TableDefinition;
+import org.yamcs.yarch.TableVisitor;
+import org.yamcs.yarch.TableWalker;
+import org.yamcs.yarch.TimePartitionSchema;
+import org.yamcs.yarch.Tuple;
+import org.yamcs.yarch.TupleDefinition;
+import org.yamcs.yarch.YarchDatabaseInstance;
+import org.yamcs.yarch.YarchException;
+import org.yamcs.yarch.protobuf.Db.Event;
+import org.yamcs.yarch.streamsql.StreamSqlException;
+
+import com.google.protobuf.BoolValue;
+
+/**
+ * Inverted index of the words appearing in the event messages, used to speed up the free text search in the events
+ * table.
+ * <p>
+ * The messages are converted to lower case and split into words made of letters and digits. For each word, all the
+ * suffixes having at least {@link #MIN_TOKEN_LENGTH} characters are stored as tokens in the table
+ * {@value #TABLE_NAME}, together with the key of the event. A word appearing as substring in a message is then a
+ * prefix of one of the tokens of that message, such that the candidates for a <code>like '%q%'</code> search can be
+ * found by a range scan on the token.
+ * <p>
+ * The index only narrows down the events to be scanned, the like condition has still to be applied on the candidates.
+ * <p>
+ * The table is partitioned by time like the events table. Because yarch supports time partitioning only on the first
+ * column of the primary key, the key starts with the start of the time partition of the event (pstart), followed by
+ * the token and the event key. The time interval of a search is applied by visiting only the partitions overlapping
+ * with it and walking, for each of the tokens matching the searched word, only the keys between (pstart, token,
+ * start) and (pstart, token, end).
+ * <p>
+ * The index of a time interval can be recreated with {@link #rebuild(TimeInterval)}. The index is used only once it
+ * is complete, that is if it has been created together with the events table or if a rebuild has finished; this is
+ * recorded in the protobuf database such that an interrupted rebuild is restarted at the next start.
+ */
+public class EventTextIndex {
+    public static final String TABLE_NAME = "events_text_index";
+    static final String STREAM_NAME = TABLE_NAME + "_in";
+    // key in the protobuf database of the marker indicating that the index is complete
+    static final String READY_MARKER_ID = TABLE_NAME + ".ready";
+
+    /**
+     * Words (and suffixes) shorter than this are not indexed
+     */
+    public static final int MIN_TOKEN_LENGTH = 3;
+    /**
+     * The tokens are truncated to this length
+     */
+    public static final int MAX_TOKEN_LENGTH = 64;
+
+    /**
+     * If a search returns more candidates than this, {@link #search(String, TimeInterval)} gives up and the events
+     * table has to be scanned.
+     */
+    public static final int MAX_CANDIDATES = 1000;
+
+    static final TupleDefinition TDEF = new TupleDefinition();
+    static {
+        TDEF.addColumn("pstart", DataType.TIMESTAMP);
+        TDEF.addColumn("token", DataType.STRING);
+        TDEF.addColumn("gentime", DataType.TIMESTAMP);
+        TDEF.addColumn("source", DataType.ENUM);
+        TDEF.addColumn("seqNum", DataType.INT);
+    }
+
+    // characters which have a special meaning in the like expression and would make the search using the index
+    // incorrect
+    static final String UNSUPPORTED_CHARS = "*+{}[]()|\\^$";
+
+    static AtomicInteger streamCounter = new AtomicInteger();
+
+    final Log log;
+    final YarchDatabaseInstance ydb;
+    final Stream stream;
+    // the time partitioning of the events table, null if not partitioned
+    final TimePartitionSchema partitionSchema;
+    private volatile boolean ready;
+
+    /**
+     * Creates the index table if it does not exist.
+     * <p>
+     * If the table is created while the events table is empty, the index is complete from the beginning, otherwise
+     * the index is not used before {@link #rebuild(TimeInterval)} is called.
+     */
+    public EventTextIndex(YarchDatabaseInstance ydb, String cfName) throws StreamSqlException, ParseException {
+        this.ydb = ydb;
+        this.log = new Log(EventTextIndex.class, ydb.getName());
+        TableDefinition eventsTable = ydb.getTable(EventRecorder.TABLE_NAME);
+        this.partitionSchema = eventsTable != null && eventsTable.isPartitionedByTime()
+                ? eventsTable.getPartitioningSpec().getTimePartitioningSchema()
+                : null;
+        try {
+            if (ydb.getTable(TABLE_NAME) == null) {
+                String partitionBy = partitionSchema == null ? ""
+                        : " partition by time(pstart('" + partitionSchema.getName() + "'))";
+                ydb.execute("create table " + TABLE_NAME + "(" + TDEF.getStringDefinition1()
+                        + ", primary key(pstart, token, gentime, source, seqNum))" + partitionBy
+                        + " table_format=compressed,column_family:" + cfName);
+                setReady(isEventTableEmpty());
+            }
+            ready = getProtobufDatabase().get(READY_MARKER_ID, BoolValue.class) != null;
+        } catch (IOException e) {
+            throw new YarchException(e);
+        }
+        if (ydb.getStream(STREAM_NAME) == null) {
+            ydb.execute("create stream " + STREAM_NAME + TDEF.getStringDefinition());
+        }
+        ydb.execute("insert into " + TABLE_NAME + " select * from " + STREAM_NAME);
+        stream = ydb.getStream(STREAM_NAME);
+    }
+
+    /**
+     * Index the events coming on the given stream
+     */
+    public void indexStream(Stream eventStream) {
+        eventStream.addSubscriber(new StreamSubscriber() {
+            @Override
+            public void onTuple(Stream s, Tuple tuple) {
+                index(tuple);
+            }
+
+            @Override
+            public void streamClosed(Stream s) {
+                // nothing to do
+            }
+        });
+    }
+
+    /**
+     * Adds to the index the tokens of the event contained in the tuple
+     */
+    void index(Tuple tuple) {
+        Event event = (Event) tuple.getColumn("body");
+        if (event == null || !event.hasMessage()) {
+            return;
+        }
+        long gentime = tuple.getTimestampColumn("gentime");
+        long pstart = partitionStart(gentime);
+        Object source = tuple.getColumn("source");
+        Object seqNum = tuple.getColumn("seqNum");
+        for (String token : tokenize(event.getMessage())) {
+            stream.emitTuple(new Tuple(TDEF, new Object[] { pstart, token, gentime, source, seqNum }));
+        }
+    }
+
+    /**
+     * Returns the gentime of the events whose message may contain the text q, in the sense of the like expression
+     * <code>body.message like '%q%'</code>.
+     * <p>
+     * Returns null if the index is not complete, if it cannot be used for the given text (because it does not contain
+     * any word long enough or it contains characters with special meaning) or if there are more than
+     * {@link #MAX_CANDIDATES} candidates or matching tokens. In this case the events have to be searched by scanning
+     * the table.
+     *
+     * @param q
+     *            the text to search for
+     * @param interval
+     *            restricts the search to the events generated in this interval
+     */
+    public Set<Long> search(String q, TimeInterval interval) {
+        if (!ready) {
+            return null;
+        }
+        String word = getSearchWord(q);
+        if (word == null) {
+            return null;
+        }
+        TableDefinition tblDef = ydb.getTable(TABLE_NAME);
+        TableColumnDefinition pstartCol = tblDef.getColumnDefinition("pstart");
+        TableColumnDefinition tokenCol = tblDef.getColumnDefinition("token");
+        TableColumnDefinition gentimeCol = tblDef.getColumnDefinition("gentime");
+
+        // the tokens are null terminated in the key, all the keys of the tokens starting with word start with prefix
+        byte[] wordKey = tokenCol.getSerializer().toByteArray(word);
+        byte[] wordPrefix = Arrays.copyOf(wordKey, wordKey.length - 1);
+        byte[] startKey = interval.hasStart() ? gentimeCol.getSerializer().toByteArray(interval.getStart()) : null;
+        byte[] endKey = interval.hasEnd() ? gentimeCol.getSerializer().toByteArray(interval.getEnd() - 1) : null;
+
+        Set<Long> result = new TreeSet<>();
+        int numTokens = 0;
+        try (ExecutionContext ctx = new ExecutionContext(ydb)) {
+            for (long pstart : partitionStarts(tblDef, interval)) {
+                byte[] pstartKey = pstartCol.getSerializer().toByteArray(pstart);
+                byte[] prefix = concat(pstartKey, wordPrefix);
+                byte[] seekKey = prefix;
+                while (true) {
+                    // skip to the next token starting with the word
+                    byte[] key = firstKey(ctx, tblDef, pstart, range(seekKey, prefix));
+                    if (key == null) {
+                        break;
+                    }
+                    if (++numTokens > MAX_CANDIDATES) {
+                        log.debug("More than {} tokens for '{}', not using the text index", MAX_CANDIDATES, q);
+                        return null;
+                    }
+                    String token = (String) tokenCol.getSerializer()
+                            .fromByteArray(Arrays.copyOfRange(key, pstartKey.length, key.length), tokenCol);
+                    byte[] tokenKey = concat(pstartKey, tokenCol.getSerializer().toByteArray(token));
+
+                    // collect the events of the token inside the interval
+                    DbRange r = range(startKey == null ? tokenKey : concat(tokenKey, startKey),
+                            endKey == null ? tokenKey : concat(tokenKey, endKey));
+                    TableWalker tw = newWalker(ctx, tblDef, pstart);
+                    tw.setPrimaryIndexRange(r);
+                    boolean[] tooMany = new boolean[1];
+                    tw.walk((k, v) -> {
+                        result.add(tblDef.deserialize(k, v).getTimestampColumn("gentime"));
+                        if (result.size() > MAX_CANDIDATES) {
+                            tooMany[0] = true;
+                            return TableVisitor.ACTION_STOP;
+                        }
+                        return TableVisitor.ACTION_CONTINUE;
+                    });
+                    if (tooMany[0]) {
+                        log.debug("More than {} candidates for '{}', not using the text index", MAX_CANDIDATES, q);
+                        return null;
+                    }
+                    // the next token is after all the keys starting with tokenKey
+                    seekKey = tokenKey.clone();
+                    seekKey[seekKey.length - 1] = 1;
+                }
+            }
+        } catch (StreamSqlException | YarchException e) {
+            log.error("Error when searching the text index", e);
+            return null;
+        }
+        return result;
+    }
+
+    // the start of the time partition of the events table containing the instant
+    private long partitionStart(long instant) {
+        return partitionSchema == null ? 0 : partitionSchema.getPartitionInfo(instant).getStart();
+    }
+
+    // the start of the partitions of the index overlapping with the interval
+    private List<Long> partitionStarts(TableDefinition tblDef, TimeInterval interval) {
+        List<Long> l = new ArrayList<>();
+        if (partitionSchema == null) {
+            l.add(0L);
+            return l;
+        }
+        // the partition intervals are closed at both ends
+        TimeInterval closed = new TimeInterval();
+        if (interval.hasStart()) {
+            closed.setStart(interval.getStart());
+        }
+        if (interval.hasEnd()) {
+            closed.setEnd(interval.getEnd() - 1);
+        }
+        Iterator<PartitionManager.Interval> it = ydb.getPartitionManager(tblDef).intervalIterator(closed);
+        while (it.hasNext()) {
+            l.add(it.next().getStart());
+        }
+        return l;
+    }
+
+    // walker visiting only the partition starting at pstart
+    private static TableWalker newWalker(ExecutionContext ctx, TableDefinition tblDef, long pstart) {
+        TableWalker tw = ctx.getDb().getStorageEngine(tblDef).newTableWalker(ctx, tblDef, true, false);
+        if (tblDef.isPartitionedByTime()) {
+            tw.setPartitionFilter(new TimeInterval(pstart, pstart), null);
+        }
+        return tw;
+    }
+
+    // returns the first key of the table in the range or null if there is none
+    private static byte[] firstKey(ExecutionContext ctx, TableDefinition tblDef, long pstart, DbRange range)
+            throws StreamSqlException {
+        TableWalker tw = newWalker(ctx, tblDef, pstart);
+        tw.setPrimaryIndexRange(range);
+        byte[][] first = new byte[1][];
+        tw.walk((k, v) -> {
+            first[0] = k;
+            return TableVisitor.ACTION_STOP;
+        });
+        return first[0];
+    }
+
+    private static DbRange range(byte[] start, byte[] end) {
+        DbRange r = new DbRange();
+        r.rangeStart = start;
+        r.rangeEnd = end;
+        return r;
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] c = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, c, a.length, b.length);
+        return c;
+    }
+
+    /**
+     * Returns true if the index is complete and is used by {@link #search(String, TimeInterval)}.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Rebuilds the index for the events in the given interval.
+     * <p>
+     * If the interval is unbounded, the index is rebuilt from scratch.
+     * <p>
+     * The index is not used for searching until the rebuild has finished.
+     */
+    public CompletableFuture<Void> rebuild(TimeInterval interval) {
+        CompletableFuture<Void> cf = new CompletableFuture<>();
+        String whereCnd = CcsdsTmIndex.getWhereCondition("gentime", interval);
+        log.info("Rebuilding the event text index{}", whereCnd);
+        String streamName = TABLE_NAME + "_rebuild_" + streamCounter.incrementAndGet();
+        try {
+            setReady(false);
+            ydb.execute("delete from " + TABLE_NAME + whereCnd);
+            ydb.execute("create stream " + streamName + " as select * from " + EventRecorder.TABLE_NAME + whereCnd);
+        } catch (StreamSqlException | ParseException | IOException e) {
+            log.error("Error when rebuilding the event text index", e);
+            cf.completeExceptionally(e);
+            return cf;
+        }
+
+        Stream s = ydb.getStream(streamName);
+        s.addSubscriber(new StreamSubscriber() {
+            @Override
+            public void streamClosed(Stream stream) {
+                try {
+                    setReady(true);
+                    log.info("Finished rebuilding the event text index");
+                    cf.complete(null);
+                } catch (IOException e) {
+                    log.error("Error when marking the event text index as complete", e);
+                    cf.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onTuple(Stream stream, Tuple tuple) {
+                index(tuple);
+            }
+        });
+        s.start();
+        return cf;
+    }
+
+    private void setReady(boolean ready) throws IOException {
+        ProtobufDatabase pdb = getProtobufDatabase();
+        if (ready) {
+            pdb.save(READY_MARKER_ID, BoolValue.of(true));
+        } else {
+            pdb.delete(READY_MARKER_ID);
+        }
+        this.ready = ready;
+    }
+
+    private ProtobufDatabase getProtobufDatabase() throws IOException {
+        try {
+            return ydb.getProtobufDatabase();
+        } catch (YarchException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private boolean isEventTableEmpty() throws StreamSqlException, ParseException {
+        if (ydb.getTable(EventRecorder.TABLE_NAME) == null) {
+            return true;
+        }
+        var r = ydb.execute("select gentime from " + EventRecorder.TABLE_NAME);
+        try {
+            return !r.hasNext();
+        } finally {
+            r.close();
+        }
+    }
+
+    /**
+     * Returns the distinct tokens of the message: the suffixes of all the words, truncated to
+     * {@link #MAX_TOKEN_LENGTH}.
+     */
+    static Set<String> tokenize(String message) {
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String word : words(message)) {
+            for (int i = 0; i <= word.length() - MIN_TOKEN_LENGTH; i++) {
+                tokens.add(truncate(word.substring(i)));
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns the longest word from q which can be used to search the index or null if there is none.
+     */
+    static String getSearchWord(String q) {
+        for (int i = 0; i < q.length(); i++) {
+            if (UNSUPPORTED_CHARS.indexOf(q.charAt(i)) >= 0) {
+                return null;
+            }
+        }
+        String longest = null;
+        for (String word : words(q)) {
+            if (word.length() >= MIN_TOKEN_LENGTH && (longest == null || word.length() > longest.length())) {
+                longest = word;
+            }
+        }
+        return longest == null ? null : truncate(longest);
+    }
+
+    // splits the lower case text into words made of letters and digits
+    static List<String> words(String text) {
+        String s = text.toLowerCase();
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i < s.length(); i++) {
+            if (Character.isLetterOrDigit(s.charAt(i))) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                words.add(s.substring(start, i));
+                start = -1;
+            }
+        }
+        if (start >= 0) {
+            words.add(s.substring(start));
+        }
+        return words;
+    }
+
+    private static String truncate(String token) {
+        return token.length() > MAX_TOKEN_LENGTH ? token.substring(0, MAX_TOKEN_LENGTH) : token;
+    }
+}
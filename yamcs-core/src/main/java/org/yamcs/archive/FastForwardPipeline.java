@@ -0,0 +1,131 @@
+package org.yamcs.archive;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Used by the {@link YarchReplay} in the {@link SpeedSpec.Type#FAST_FORWARD} mode.
+ * <p>
+ * The tasks are executed in parallel by a pool of threads and their results (a delivery to be run) are run in the
+ * order the tasks have been submitted, by a dedicated delivery thread. The number of tasks submitted but not yet
+ * delivered is limited; the thread submitting the tasks is blocked when the limit is reached.
+ */
+class FastForwardPipeline {
+    static Logger log = LoggerFactory.getLogger(FastForwardPipeline.class);
+
+    final ExecutorService executor;
+    final BlockingQueue<Future<Runnable>> queue;
+    final Thread deliveryThread;
+    private volatile boolean closed = false;
+
+    /**
+     * @param name
+     *            used for naming the threads
+     * @param numThreads
+     *            the number of threads executing the tasks
+     * @param maxPending
+     *            the maximum number of tasks submitted but not yet delivered
+     */
+    FastForwardPipeline(String name, int numThreads, int maxPending) {
+        executor = Executors.newFixedThreadPool(numThreads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat(name + "-decoder-%d").build());
+        queue = new ArrayBlockingQueue<>(maxPending);
+        deliveryThread = new Thread(this::deliver, name + "-delivery");
+        deliveryThread.setDaemon(true);
+        deliveryThread.start();
+    }
+
+    /**
+     * Submits a task to be executed by the thread pool. The runnable returned by the task is run after the ones
+     * returned by the tasks submitted before. If the task returns null, nothing is delivered.
+     */
+    void submit(Callable<Runnable> task) throws InterruptedException {
+        Future<Runnable> f;
+        try {
+            f = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            // closed in the meantime
+            return;
+        }
+        put(f);
+    }
+
+    /**
+     * Submits a runnable to be delivered directly, in order with the submitted tasks.
+     */
+    void submitDelivery(Runnable delivery) throws InterruptedException {
+        put(CompletableFuture.completedFuture(delivery));
+    }
+
+    private void put(Future<Runnable> f) throws InterruptedException {
+        while (!closed) {
+            if (queue.offer(f, 1, TimeUnit.SECONDS)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Waits until all the tasks submitted so far have been delivered.
+     */
+    void drain() throws InterruptedException {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        submitDelivery(() -> done.complete(null));
+        while (!closed) {
+            try {
+                done.get(1, TimeUnit.SECONDS);
+                return;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e);
+            } catch (TimeoutException e) {
+                // check again if the pipeline has been closed
+            }
+        }
+    }
+
+    /**
+     * Stops the threads; the tasks not yet delivered are discarded.
+     */
+    void close() {
+        closed = true;
+        executor.shutdownNow();
+        deliveryThread.interrupt();
+        queue.clear();
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    private void deliver() {
+        while (!closed) {
+            try {
+                Runnable r = queue.take().get();
+                if (r != null && !closed) {
+                    r.run();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                log.error("Error processing replay data", e.getCause());
+            } catch (Exception e) {
+                log.error("Error delivering replay data", e);
+            }
+        }
+    }
+}
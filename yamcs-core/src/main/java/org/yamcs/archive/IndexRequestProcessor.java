@@ -256,8 +256,9 @@ public class IndexRequestProcessor implements Runnable {
         ColumnDefinition histoColumnDefinition = tblDef.getColumnDefinition(hreq.columnName);
         TimeInterval interval = getTimeInterval(req);
 
+        // the records are merged only if the client requested it, see sendData
         try (HistogramIterator iter = ydb.getStorageEngine(tblDef).getHistogramIterator(ydb, tblDef, hreq.columnName,
-                interval)) {
+                interval, req.getMergeTime())) {
             if (hreq.seekValue != null) {
                 iter.seek(hreq.seekValue, hreq.seekTime);
             }
@@ -8,4 +8,16 @@ public interface ReplayListener {
     void newData(ProtoDataType type, Object data);
 
     void stateChanged(ReplayStatus rs);
+
+    /**
+     * Called in the {@link SpeedSpec.Type#FAST_FORWARD} mode for the telemetry packets, from a pool of decoding
+     * threads. The method may be called concurrently for different packets and has to be thread safe.
+     * <p>
+     * The returned object is passed to {@link #newData(ProtoDataType, Object)}, in the original order of the packets.
+     * The packets whose decoding depends on the data delivered before them have to be decoded by
+     * {@link #newData(ProtoDataType, Object)} instead. The default implementation returns the data unchanged.
+     */
+    default Object decode(ProtoDataType type, Object data) {
+        return data;
+    }
 }
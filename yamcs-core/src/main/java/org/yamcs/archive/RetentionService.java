@@ -0,0 +1,170 @@
+package org.yamcs.archive;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.rocksdb.RocksDBException;
+import org.yamcs.AbstractYamcsService;
+import org.yamcs.InitException;
+import org.yamcs.Spec;
+import org.yamcs.Spec.OptionType;
+import org.yamcs.YConfiguration;
+import org.yamcs.YamcsServer;
+import org.yamcs.parameterarchive.ParameterArchive;
+import org.yamcs.utils.TimeEncoding;
+import org.yamcs.yarch.TableDefinition;
+import org.yamcs.yarch.YarchDatabase;
+import org.yamcs.yarch.YarchDatabaseInstance;
+import org.yamcs.yarch.rocksdb.RdbStorageEngine;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Bounds the disk usage of the archive by periodically removing the time partitions older than a configured retention
+ * period.
+ * <p>
+ * For each configured table, the partitions ending before <code>now - retentionDays</code> are dropped together with
+ * their histograms. The same is done for the parameter archive if <code>parameterArchiveRetentionDays</code> is
+ * configured.
+ * <p>
+ * Only whole partitions are removed, such that the data is kept for at least the retention period and at most the
+ * retention period plus the length of one partition. The data is removed by ranges (or by dropping the column family for
+ * the parameter archive) and not row by row. The tables and the parameter archive which are not partitioned by time are
+ * not affected.
+ *
+ * <pre>
+ * services:
+ *   - class: org.yamcs.archive.RetentionService
+ *     args:
+ *       checkInterval: 3600
+ *       tables:
+ *         - name: tm
+ *           retentionDays: 365
+ *         - name: events
+ *           retentionDays: 730
+ *       parameterArchiveRetentionDays: 365
+ * </pre>
+ */
+public class RetentionService extends AbstractYamcsService {
+    static final long DAY_MILLIS = 24 * 3600 * 1000L;
+
+    List<TableRetention> tableRetentions = new ArrayList<>();
+    int parameterArchiveRetentionDays = -1;
+    long checkInterval;
+    boolean compact;
+    ScheduledExecutorService executor;
+
+    @Override
+    public Spec getSpec() {
+        Spec tableSpec = new Spec();
+        tableSpec.addOption("name", OptionType.STRING).withRequired(true);
+        tableSpec.addOption("retentionDays", OptionType.INTEGER).withRequired(true);
+
+        Spec spec = new Spec();
+        spec.addOption("checkInterval", OptionType.INTEGER).withDefault(3600)
+                .withDescription("How often (in seconds) to check for partitions to remove");
+        spec.addOption("compact", OptionType.BOOLEAN).withDefault(true)
+                .withDescription("Compact the removed ranges in order to release the disk space immediately");
+        spec.addOption("tables", OptionType.LIST).withElementType(OptionType.MAP).withSpec(tableSpec);
+        spec.addOption("parameterArchiveRetentionDays", OptionType.INTEGER);
+        return spec;
+    }
+
+    @Override
+    public void init(String yamcsInstance, String serviceName, YConfiguration config) throws InitException {
+        super.init(yamcsInstance, serviceName, config);
+        checkInterval = config.getInt("checkInterval");
+        compact = config.getBoolean("compact");
+        if (config.containsKey("tables")) {
+            for (YConfiguration tc : config.getConfigList("tables")) {
+                tableRetentions.add(new TableRetention(tc.getString("name"), tc.getInt("retentionDays")));
+            }
+        }
+        if (config.containsKey("parameterArchiveRetentionDays")) {
+            parameterArchiveRetentionDays = config.getInt("parameterArchiveRetentionDays");
+        }
+    }
+
+    @Override
+    protected void doStart() {
+        executor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("RetentionService-" + yamcsInstance).build());
+        var timeService = YamcsServer.getTimeService(yamcsInstance);
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                applyRetention(timeService.getMissionTime());
+            } catch (Exception e) {
+                log.error("Error applying the retention policy", e);
+            }
+        }, Math.min(60, checkInterval), checkInterval, TimeUnit.SECONDS);
+        notifyStarted();
+    }
+
+    @Override
+    protected void doStop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        notifyStopped();
+    }
+
+    /**
+     * Removes the partitions which are older than the retention period relative to now.
+     *
+     * @return the number of partitions removed
+     */
+    int applyRetention(long now) throws RocksDBException {
+        YarchDatabaseInstance ydb = YarchDatabase.getInstance(yamcsInstance);
+        int count = 0;
+        for (TableRetention tr : tableRetentions) {
+            TableDefinition tblDef = ydb.getTable(tr.tableName);
+            if (tblDef == null) {
+                log.debug("Table {} does not exist", tr.tableName);
+                continue;
+            }
+            if (tblDef.getPartitioningSpec().timeColumn == null) {
+                log.debug("Table {} is not partitioned by time, nothing to remove", tr.tableName);
+                continue;
+            }
+            long before = now - tr.retentionDays * DAY_MILLIS;
+            var tablespace = RdbStorageEngine.getInstance().getTablespace(ydb);
+            var removed = tablespace.dropTimePartitions(tblDef, before, compact);
+            if (!removed.isEmpty()) {
+                log.info("Removed {} partitions of table {} ending before {}", removed.size(), tr.tableName,
+                        TimeEncoding.toString(before));
+            }
+            count += removed.size();
+        }
+
+        if (parameterArchiveRetentionDays >= 0) {
+            var ysi = YamcsServer.getServer().getInstance(yamcsInstance);
+            List<ParameterArchive> parchives = ysi == null ? List.of() : ysi.getServices(ParameterArchive.class);
+            if (parchives.isEmpty()) {
+                log.warn("Retention configured for the parameter archive but there is no parameter archive service");
+            }
+            for (ParameterArchive parchive : parchives) {
+                long before = now - parameterArchiveRetentionDays * DAY_MILLIS;
+                var removed = parchive.deletePartitions(TimeEncoding.NEGATIVE_INFINITY, before);
+                if (!removed.isEmpty()) {
+                    log.info("Removed {} parameter archive partitions ending before {}", removed.size(),
+                            TimeEncoding.toString(before));
+                }
+                count += removed.size();
+            }
+        }
+        return count;
+    }
+
+    static class TableRetention {
+        final String tableName;
+        final int retentionDays;
+
+        TableRetention(String tableName, int retentionDays) {
+            this.tableName = tableName;
+            this.retentionDays = retentionDays;
+        }
+    }
+}
@@ -5,7 +5,12 @@ import org.yamcs.protobuf.Yamcs.ReplaySpeed.ReplaySpeedType;
 
 public class SpeedSpec {
     public enum Type {
-        AFAP, FIXED_DELAY, ORIGINAL, STEP_BY_STEP
+        AFAP, FIXED_DELAY, ORIGINAL, STEP_BY_STEP,
+        /**
+         * like AFAP but the packets are decoded in parallel and delivered in order by a different thread than the one
+         * reading the archive
+         */
+        FAST_FORWARD
     }
 
     private Type type;
@@ -62,6 +67,9 @@ public class SpeedSpec {
         case STEP_BY_STEP:
             rsb.setType(ReplaySpeedType.STEP_BY_STEP);
             break;
+        case FAST_FORWARD:
+            rsb.setType(ReplaySpeedType.FAST_FORWARD);
+            break;
         }
 
         return rsb.build();
@@ -80,6 +88,9 @@ public class SpeedSpec {
         case REALTIME:
             ss = new SpeedSpec(SpeedSpec.Type.ORIGINAL, "gentime", speed.getParam());
             break;
+        case FAST_FORWARD:
+            ss = new SpeedSpec(SpeedSpec.Type.FAST_FORWARD);
+            break;
         default:
             throw new IllegalArgumentException("Unknown speed type " + speed.getType());
         }
@@ -14,6 +14,7 @@ import org.yamcs.YamcsException;
 import org.yamcs.archive.SpeedSpec.Type;
 import org.yamcs.mdb.Mdb;
 import org.yamcs.protobuf.Yamcs.EndAction;
+import org.yamcs.protobuf.Yamcs.ReplayProgress;
 import org.yamcs.protobuf.Yamcs.ReplayStatus;
 import org.yamcs.protobuf.Yamcs.ReplayStatus.ReplayState;
 import org.yamcs.utils.TimeEncoding;
@@ -33,6 +34,10 @@ import org.yamcs.yarch.streamsql.StreamSqlException;
  * It relies on handlers for each data type. Each handler creates a stream, the streams are merged and the output is
  * sent to the listener This class can also handle pause/resume: simply stop sending data seek: closes the streams and
  * creates new ones with a different starting time.
+ * <p>
+ * In the {@link SpeedSpec.Type#FAST_FORWARD} mode, the stream thread only reads the data; the telemetry packets are
+ * decoded in parallel (see {@link ReplayListener#decode(ProtoDataType, Object)}) and all the data is delivered to the
+ * listener in the original order by a separate thread.
  * 
  * @author nm
  *
@@ -44,6 +49,17 @@ public class YarchReplay implements StreamSubscriber {
      */
     public final static long MAX_WAIT_TIME = 10000;
 
+    /**
+     * number of threads decoding the packets in the FAST_FORWARD mode
+     */
+    static int FF_DECODING_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+    /**
+     * maximum number of tuples read but not yet delivered in the FAST_FORWARD mode
+     */
+    static int FF_MAX_PENDING = 4096;
+    // interval for computing the current delivery rate
+    static final long RATE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
     ReplayServer replayServer;
     volatile String streamName;
     volatile boolean quitting = false;
@@ -68,6 +84,17 @@ public class YarchReplay implements StreamSubscriber {
     ReplayListener listener;
     volatile long replayTime;
 
+    private volatile FastForwardPipeline pipeline;
+
+    // progress statistics; the number of tuples is incremented only by the delivering thread
+    private volatile long numTuples;
+    private final Object progressLock = new Object();
+    private long startNanos;
+    private long sampleNanos;
+    private long sampleCount;
+    private long prevSampleNanos;
+    private long prevSampleCount;
+
     public YarchReplay(ReplayServer replayServer, ReplayOptions rr, ReplayListener listener, Mdb mdb)
             throws YamcsException {
         this.listener = listener;
@@ -205,6 +232,11 @@ public class YarchReplay implements StreamSubscriber {
         s.addSubscriber(this);
 
         lastDataTime = replayTime = currentRequest.playFrom;
+        synchronized (progressLock) {
+            numTuples = 0;
+            startNanos = sampleNanos = prevSampleNanos = System.nanoTime();
+            sampleCount = prevSampleCount = 0;
+        }
 
         s.start();
     }
@@ -257,6 +289,8 @@ public class YarchReplay implements StreamSubscriber {
                 }
             }
 
+            closePipeline(false);
+
             // if paused, there is a tuple already emitted and ready to be processed in the onTuple method.
             // we want to get rid of it
             if (sleeping) {
@@ -287,6 +321,7 @@ public class YarchReplay implements StreamSubscriber {
         }
         quitting = true;
         log.debug("Replay quitting");
+        closePipeline(false);
 
         try {
             YarchDatabaseInstance db = YarchDatabase.getInstance(instance);
@@ -306,6 +341,13 @@ public class YarchReplay implements StreamSubscriber {
         }
         long time = t.getTimestampColumn("gentime");
 
+        if (currentRequest.getSpeed().getType() == Type.FAST_FORWARD) {
+            fastForward(t, time);
+            return;
+        }
+        // the speed may have been changed from FAST_FORWARD
+        closePipeline(true);
+
         try {
             sleepUntilTime(time);
 
@@ -323,6 +365,7 @@ public class YarchReplay implements StreamSubscriber {
             }
             lastDataSentTime = System.currentTimeMillis();
             lastDataTime = time;
+            numTuples++;
 
             if (currentRequest.getSpeed().getType() == Type.STEP_BY_STEP) {
                 // Force user to trigger next step.
@@ -337,6 +380,68 @@ public class YarchReplay implements StreamSubscriber {
         }
     }
 
+    private void fastForward(Tuple t, long time) {
+        ProtoDataType type = ProtoDataType.forNumber((Integer) t.getColumn(0));
+        ReplayHandler handler = handlers.get(type);
+        FastForwardPipeline ffp = pipeline;
+        if (ffp == null) {
+            ffp = pipeline = new FastForwardPipeline(streamName, FF_DECODING_THREADS, FF_MAX_PENDING);
+        }
+        try {
+            if (type == ProtoDataType.TM_PACKET) {
+                ffp.submit(() -> {
+                    Object data = handler.transform(t);
+                    Object decoded = data == null ? null : listener.decode(type, data);
+                    return () -> deliver(type, decoded, time);
+                });
+            } else {
+                Object data = handler.transform(t);
+                ffp.submitDelivery(() -> deliver(type, data, time));
+            }
+        } catch (InterruptedException e) {
+            if (!quitting) {
+                log.warn("Interrupted: ", e);
+                quit();
+            }
+        }
+    }
+
+    // called in the FAST_FORWARD mode by the delivery thread
+    private void deliver(ProtoDataType type, Object data, long time) {
+        if (quitting) {
+            return;
+        }
+        replayTime = time;
+        if (data != null) {
+            listener.newData(type, data);
+        }
+        lastDataSentTime = System.currentTimeMillis();
+        lastDataTime = time;
+        numTuples++;
+    }
+
+    /**
+     * Stops the FAST_FORWARD pipeline, if any.
+     * 
+     * @param drain
+     *            if true, wait for the data already read to be delivered; otherwise discard it.
+     */
+    private void closePipeline(boolean drain) {
+        FastForwardPipeline ffp = pipeline;
+        if (ffp == null) {
+            return;
+        }
+        pipeline = null;
+        if (drain) {
+            try {
+                ffp.drain();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        ffp.close();
+    }
+
     private void sleepUntilTime(long time) throws InterruptedException {
         long waitTime = 0;
         SpeedSpec speed = currentRequest.getSpeed();
@@ -356,6 +461,7 @@ public class YarchReplay implements StreamSubscriber {
             }
             break;
         case STEP_BY_STEP:
+        case FAST_FORWARD:
             break;
         }
 
@@ -386,7 +492,15 @@ public class YarchReplay implements StreamSubscriber {
     }
 
     @Override
-    public synchronized void streamClosed(Stream stream) {
+    public void streamClosed(Stream stream) {
+        if (!ignoreClose && !quitting) {
+            // deliver the data still in the FAST_FORWARD pipeline before signaling the end
+            closePipeline(true);
+        }
+        onStreamClosed(stream);
+    }
+
+    private synchronized void onStreamClosed(Stream stream) {
         if (ignoreClose) { // this happens when we close the stream to reopen
                            // another one
             ignoreClose = false;
@@ -439,4 +553,34 @@ public class YarchReplay implements StreamSubscriber {
     public long getReplayTime() {
         return replayTime;
     }
+
+    /**
+     * Returns the number of tuples delivered since the replay has been (re)started and the delivery rate.
+     * <p>
+     * The current rate is computed over an interval of a few seconds, ending at the time of the call.
+     */
+    public ReplayProgress getProgress() {
+        long now = System.nanoTime();
+        ReplayProgress.Builder rpb = ReplayProgress.newBuilder();
+        synchronized (progressLock) {
+            long count = numTuples;
+            if (now - sampleNanos >= RATE_INTERVAL_NANOS) {
+                prevSampleNanos = sampleNanos;
+                prevSampleCount = sampleCount;
+                sampleNanos = now;
+                sampleCount = count;
+            }
+            rpb.setCount(count);
+            if (now > startNanos) {
+                rpb.setRate(count * 1e9 / (now - startNanos));
+            }
+            if (now > prevSampleNanos) {
+                rpb.setCurrentRate((count - prevSampleCount) * 1e9 / (now - prevSampleNanos));
+            }
+        }
+        if (replayTime != TimeEncoding.INVALID_INSTANT) {
+            rpb.setTime(TimeEncoding.toProtobufTimestamp(replayTime));
+        }
+        return rpb.build();
+    }
 }
@@ -8,6 +8,7 @@ import static org.yamcs.cfdp.CfdpService.ETYPE_TRANSFER_RESUMED;
 import static org.yamcs.cfdp.CfdpService.ETYPE_TRANSFER_SUSPENDED;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -126,6 +127,20 @@ public class CfdpIncomingTransfer extends OngoingCfdpTransfer {
             YConfiguration config, CfdpHeader hdr, Stream cfdpOut, FileSaveHandler fileSaveHandler,
             EventProducer eventProducer, TransferMonitor monitor,
             Map<ConditionCode, FaultHandlingAction> faultHandlerActions) {
+        this(yamcsInstance, id, creationTime, executor, config, hdr, cfdpOut, fileSaveHandler, eventProducer, monitor,
+                faultHandlerActions, null);
+    }
+
+    /**
+     * 
+     * @param partFileDir
+     *            directory where the data of the large files is stored while being received; if null, the default
+     *            temporary-file directory is used.
+     */
+    public CfdpIncomingTransfer(String yamcsInstance, long id, long creationTime, ScheduledThreadPoolExecutor executor,
+            YConfiguration config, CfdpHeader hdr, Stream cfdpOut, FileSaveHandler fileSaveHandler,
+            EventProducer eventProducer, TransferMonitor monitor,
+            Map<ConditionCode, FaultHandlingAction> faultHandlerActions, Path partFileDir) {
         super(yamcsInstance, id, creationTime, executor, config, hdr.getTransactionId(), hdr.getDestinationId(),
                 cfdpOut, eventProducer, monitor, faultHandlerActions);
         this.fileSaveHandler = fileSaveHandler;
@@ -161,7 +176,8 @@ public class CfdpIncomingTransfer extends OngoingCfdpTransfer {
 
         this.maxPduDataSize = maxPduSize - directiveHeader.getLength();
         needsFinish = acknowledged;
-        incomingDataFile = new DataFile(-1);
+        incomingDataFile = new DataFile(-1, config.getLong("maxInMemoryFileSize", DataFile.DEFAULT_MAX_IN_MEMORY_SIZE),
+                partFileDir);
     }
 
     @Override
@@ -685,6 +701,14 @@ public class CfdpIncomingTransfer extends OngoingCfdpTransfer {
         return incomingDataFile.getData();
     }
 
+    /**
+     * Releases the resources (temporary file) used for storing the incoming data. Called when the transfer is removed
+     * from the pending transfers, after that the data cannot be retrieved anymore.
+     */
+    void releaseData() {
+        executor.execute(() -> incomingDataFile.close());
+    }
+
     public CfdpTransactionId getOriginatingTransactionId() {
         return originatingTransactionId;
     }
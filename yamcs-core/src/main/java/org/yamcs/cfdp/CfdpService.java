@@ -6,6 +6,9 @@ import static org.yamcs.cfdp.CompletedTransfer.COL_TRANSFER_STATE;
 import static org.yamcs.cfdp.CompletedTransfer.TDEF;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -146,6 +149,8 @@ public class CfdpService extends AbstractFileTransferService implements StreamSu
 
     private boolean allowDownloadOverwrites;
     private int maxExistingFileRenames;
+    // where the large incoming files are stored while being received
+    private Path partFileDir;
 
     boolean nakMetadata;
     int maxNumPendingDownloads;
@@ -242,6 +247,8 @@ public class CfdpService extends AbstractFileTransferService implements StreamSu
         spec.addOption("nakLimit", OptionType.INTEGER).withDefault(-1);
         spec.addOption("nakTimeout", OptionType.INTEGER).withDefault(5000);
         spec.addOption("immediateNak", OptionType.BOOLEAN).withDefault(true);
+        spec.addOption("maxInMemoryFileSize", OptionType.INTEGER).withDefault(DataFile.DEFAULT_MAX_IN_MEMORY_SIZE);
+        spec.addOption("partFileDir", OptionType.STRING);
         spec.addOption("archiveRetrievalLimit", OptionType.INTEGER).withDefault(100);
         spec.addOption("receiverFaultHandlers", OptionType.MAP).withSpec(Spec.ANY);
         spec.addOption("senderFaultHandlers", OptionType.MAP).withSpec(Spec.ANY);
@@ -342,6 +349,7 @@ public class CfdpService extends AbstractFileTransferService implements StreamSu
         }
 
         automaticDirectoryListingReloads = config.getBoolean("automaticDirectoryListingReloads");
+        initPartFileDir(config);
 
         initSrcDst(config);
         eventProducer = EventProducerFactory.getEventProducer(yamcsInstance, "CfdpService", 10000);
@@ -797,7 +805,27 @@ public class CfdpService extends AbstractFileTransferService implements StreamSu
                 maxExistingFileRenames);
 
         return new CfdpIncomingTransfer(yamcsInstance, idSeq.next(), creationTime, executor, config, packet.getHeader(),
-                cfdpOut, fileSaveHandler, eventProducer, this, receiverFaultHandlers);
+                cfdpOut, fileSaveHandler, eventProducer, this, receiverFaultHandlers, partFileDir);
+    }
+
+    private void initPartFileDir(YConfiguration config) throws InitException {
+        if (config.containsKey("partFileDir")) {
+            partFileDir = Paths.get(config.getString("partFileDir"));
+        } else {
+            partFileDir = Paths.get(YarchDatabase.getDataDir()).resolve(yamcsInstance).resolve("cfdp")
+                    .resolve(serviceName);
+        }
+        try {
+            Files.createDirectories(partFileDir);
+            // the files of the transfers interrupted by a crash or a restart
+            int n = DataFile.deletePartFiles(partFileDir);
+            if (n > 0) {
+                log.info("Removed {} incomplete incoming files from {}", n, partFileDir);
+            }
+        } catch (IOException e) {
+            throw new InitException("Cannot create or clean the directory of the incoming files " + partFileDir
+                    + ": " + e.getMessage());
+        }
     }
 
     public EntityConf getRemoteEntity(long entityId) {
@@ -904,8 +932,12 @@ public class CfdpService extends AbstractFileTransferService implements StreamSu
 
             if (cfdpTransfer instanceof OngoingCfdpTransfer) {
                 // keep it in pending for a while such that PDUs from remote entity can still be answered
-                executor.schedule(() -> pendingTransfers.remove(cfdpTransfer.getTransactionId()),
-                        pendingAfterCompletion, TimeUnit.MILLISECONDS);
+                executor.schedule(() -> {
+                    pendingTransfers.remove(cfdpTransfer.getTransactionId());
+                    if (cfdpTransfer instanceof CfdpIncomingTransfer) {
+                        ((CfdpIncomingTransfer) cfdpTransfer).releaseData();
+                    }
+                }, pendingAfterCompletion, TimeUnit.MILLISECONDS);
 
                 if (cfdpTransfer instanceof CfdpIncomingTransfer) {
                     CfdpIncomingTransfer incomingTransfer = (CfdpIncomingTransfer) cfdpTransfer;
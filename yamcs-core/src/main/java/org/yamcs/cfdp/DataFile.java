@@ -1,5 +1,16 @@
 package org.yamcs.cfdp;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -8,24 +19,70 @@ import java.util.List;
 import org.yamcs.cfdp.pdu.FileDataPacket;
 import org.yamcs.cfdp.pdu.SegmentRequest;
 
-public class DataFile {
+/**
+ * Keeps track of the data received for an incoming file.
+ * <p>
+ * The data is kept in memory as long as the file is smaller than the maxInMemorySize passed to the constructor;
+ * beyond that, it is moved into a temporary {@value #PART_FILE_SUFFIX} file where the file data packets are written
+ * directly at their offsets. The temporary file is removed by {@link #close()}; the files left over by a crash can be
+ * removed with {@link #deletePartFiles(Path)}.
+ * <p>
+ * The checksum is computed incrementally from the data not received before.
+ */
+public class DataFile implements AutoCloseable {
+    public static final long DEFAULT_MAX_IN_MEMORY_SIZE = 16 * 1024 * 1024;
+    public static final String PART_FILE_SUFFIX = ".part";
+    // maximum size of the data kept in memory
+    static int MAX_SIZE = Integer.MAX_VALUE;
+
     List<Segment> dataFileSegments = new ArrayList<Segment>();
     // -1 means size unknown or unbounded
-    private int size = -1;
+    private long size = -1;
+    // the data if kept in memory, null if stored in the temporary file
     byte[] data;
-    static int MAX_SIZE = Integer.MAX_VALUE;
+    private final long maxInMemorySize;
+    // directory of the temporary file, null for the default temporary-file directory
+    private final Path tmpDir;
+    private Path tmpFile;
+    private FileChannel channel;
+    private long checksum;
 
     public DataFile() {
         this(-1);
     }
 
     public DataFile(long size) {
-        this.size = checkMaxSize(size);
-        if (size > MAX_SIZE) {
-            throw new UnsupportedOperationException(
-                    "file transfers larger than " + MAX_SIZE + " not supported");
-        }
-        if (size > 0) {
+        this(size, DEFAULT_MAX_IN_MEMORY_SIZE);
+    }
+
+    /**
+     * 
+     * @param size
+     *            the size of the file or -1 if not known
+     * @param maxInMemorySize
+     *            if the file grows beyond this size, it is stored in a temporary file instead of memory.
+     */
+    public DataFile(long size, long maxInMemorySize) {
+        this(size, maxInMemorySize, null);
+    }
+
+    /**
+     * 
+     * @param size
+     *            the size of the file or -1 if not known
+     * @param maxInMemorySize
+     *            if the file grows beyond this size, it is stored in a temporary file instead of memory.
+     * @param tmpDir
+     *            the directory where the temporary file is created; if null, the default temporary-file directory is
+     *            used.
+     */
+    public DataFile(long size, long maxInMemorySize, Path tmpDir) {
+        this.size = size;
+        this.maxInMemorySize = Math.min(maxInMemorySize, MAX_SIZE);
+        this.tmpDir = tmpDir;
+        if (size > this.maxInMemorySize) {
+            openTmpFile();
+        } else if (size > 0) {
             this.data = new byte[(int) size];
         } else {
             this.data = new byte[1024];
@@ -36,6 +93,7 @@ public class DataFile {
         if (size != -1 && fdp.getEndOffset() > size) {
             throw new IllegalArgumentException("Segment falls beyond the end of the file");
         }
+        updateChecksum(fdp);
 
         Segment newseg = new Segment(fdp.getOffset(), fdp.getEndOffset());
 
@@ -52,73 +110,100 @@ public class DataFile {
             return;
         }
 
+        // find the first segment which overlaps or touches the new one
         int idx = Collections.binarySearch(dataFileSegments, newseg,
                 (s1, s2) -> Long.compare(s1.start, s2.start));
-
-        if (idx >= 0) {// newseg offset coincides with an existing segment offset
-            Segment seg1 = dataFileSegments.get(idx);
-            assert (seg1.start == newseg.start);
-            if (seg1.end < newseg.end) {
-                // newseg is longer than seg1 and starts at the same offset
-                // replace seg1 with newseg
-                seg1.end = newseg.end;
-            }
-        } else { // the segment does not start at the same offset with an existing segment
-                 // but it might still overlap with one
+        if (idx < 0) {
             idx = -(idx + 1);
-            if (idx == dataFileSegments.size()) {
-
-                Segment prevseg = dataFileSegments.get(idx - 1);
-                if (prevseg.end > newseg.start) {
-                    // overlaps with the last segment
-                    // extend the last segment
-                    if (prevseg.end < newseg.end) {
-                        prevseg.end = newseg.end;
-                    }
-                } else {
-                    dataFileSegments.add(newseg);
-                }
-            } else {
-                if (idx == 0) {
-                    Segment nextseg = dataFileSegments.get(0);
-                    if (newseg.end >= nextseg.start) {
-                        nextseg.start = newseg.start;
-                    } else {
-                        dataFileSegments.add(0, newseg);
-                    }
-                } else {
-                    Segment prevseg = dataFileSegments.get(idx - 1);
-                    Segment nextseg = dataFileSegments.get(idx);
-
-                    if (prevseg.end >= newseg.start && newseg.end >= nextseg.start) {
-                        // overlaps with both prev and next
-                        prevseg.end = nextseg.end;
-                        dataFileSegments.remove(idx);
-                    } else if (prevseg.end >= newseg.start) {
-                        // overlaps only with prev
-                        if (newseg.end >= prevseg.end) {
-                            prevseg.end = newseg.end;
-                        }
-                    } else if (newseg.end >= nextseg.start) {
-                        // overlaps only with next
-                        nextseg.start = newseg.start;
-                    } else { // does not overlap
-                        dataFileSegments.add(idx, newseg);
-                    }
-                }
-            }
         }
+        if (idx > 0 && dataFileSegments.get(idx - 1).end >= newseg.start) {
+            idx--;
+        }
+        // merge all the segments overlapping with the new one into the new one
+        while (idx < dataFileSegments.size() && dataFileSegments.get(idx).start <= newseg.end) {
+            Segment seg = dataFileSegments.remove(idx);
+            newseg.start = Math.min(seg.start, newseg.start);
+            newseg.end = Math.max(seg.end, newseg.end);
+        }
+        dataFileSegments.add(idx, newseg);
 
         addData(fdp);
     }
 
     private void addData(FileDataPacket fdp) {
-        if (data.length < fdp.getEndOffset()) {
-            checkMaxSize(fdp.getEndOffset());
-            var length = (int) Long.min(fdp.getEndOffset() + 1024 * 1024, MAX_SIZE);
+        if (data != null && fdp.getEndOffset() > maxInMemorySize) {
+            moveToTmpFile();
+        } else if (data != null && data.length < fdp.getEndOffset()) {
+            var length = (int) Long.min(fdp.getEndOffset() + 1024 * 1024, maxInMemorySize);
             data = Arrays.copyOf(data, length);
         }
-        System.arraycopy(fdp.getData(), 0, data, (int) fdp.getOffset(), fdp.getLength());
+        if (data != null) {
+            System.arraycopy(fdp.getData(), 0, data, (int) fdp.getOffset(), fdp.getLength());
+        } else {
+            try {
+                ByteBuffer buf = ByteBuffer.wrap(fdp.getData(), 0, fdp.getLength());
+                long offset = fdp.getOffset();
+                while (buf.hasRemaining()) {
+                    offset += channel.write(buf, offset);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write to " + tmpFile, e);
+            }
+        }
+    }
+
+    // adds to the checksum the parts of the packet not covered by the segments received before
+    private void updateChecksum(FileDataPacket fdp) {
+        long start = fdp.getOffset();
+        long end = fdp.getEndOffset();
+        for (Segment seg : dataFileSegments) {
+            if (seg.end <= start) {
+                continue;
+            }
+            if (seg.start >= end) {
+                break;
+            }
+            if (seg.start > start) {
+                addChecksum(fdp, start, seg.start);
+            }
+            start = Math.max(start, seg.end);
+        }
+        if (start < end) {
+            addChecksum(fdp, start, end);
+        }
+    }
+
+    private void addChecksum(FileDataPacket fdp, long start, long end) {
+        checksum += ChecksumCalculator.calculateChecksum(fdp.getData(), (int) (start - fdp.getOffset()), start,
+                (int) (end - start));
+    }
+
+    private void openTmpFile() {
+        try {
+            if (tmpDir == null) {
+                tmpFile = Files.createTempFile("cfdp", PART_FILE_SUFFIX);
+            } else {
+                tmpFile = Files.createTempFile(tmpDir, "cfdp", PART_FILE_SUFFIX);
+            }
+            tmpFile.toFile().deleteOnExit();
+            channel = FileChannel.open(tmpFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create temporary file for the incoming data", e);
+        }
+    }
+
+    private void moveToTmpFile() {
+        openTmpFile();
+        try {
+            // the segments include already the new packet which is not yet in the data
+            ByteBuffer buf = ByteBuffer.wrap(data, 0, (int) Math.min(Math.max(endOfFileOffset(), 0), data.length));
+            while (buf.hasRemaining()) {
+                channel.write(buf, buf.position());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write to " + tmpFile, e);
+        }
+        data = null;
     }
 
     public synchronized List<SegmentRequest> getMissingChunks() {
@@ -164,13 +249,41 @@ public class DataFile {
         if (size == -1) {
             throw new IllegalStateException("Size unknown");
         }
+        if (data == null) {
+            checkMaxSize(size);
+            try (InputStream is = newInputStream()) {
+                return is.readAllBytes();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
         if (data.length > size) {
-            return Arrays.copyOf(data, size);
+            return Arrays.copyOf(data, (int) size);
         } else {
             return data;
         }
     }
 
+    /**
+     * Returns a stream over the file data; it should be used only after all the data has been received.
+     */
+    public synchronized InputStream newInputStream() throws IOException {
+        if (size == -1) {
+            throw new IllegalStateException("Size unknown");
+        }
+        if (data != null) {
+            return new ByteArrayInputStream(data, 0, (int) Math.min(size, data.length));
+        }
+        return Channels.newInputStream(FileChannel.open(tmpFile, StandardOpenOption.READ));
+    }
+
+    /**
+     * Returns true if the data is stored in a temporary file
+     */
+    public synchronized boolean isFileBacked() {
+        return tmpFile != null;
+    }
+
     /**
      * 
      * @return true if all the data has been received. If size is not known return false.
@@ -187,10 +300,6 @@ public class DataFile {
     }
 
     public synchronized long getChecksum() {
-        long checksum = 0;
-        for (Segment segment : this.dataFileSegments) {
-            checksum += ChecksumCalculator.calculateChecksum(data, segment.start, segment.length());
-        }
         return checksum & 0xFFFFFFFFl;
     }
 
@@ -213,21 +322,53 @@ public class DataFile {
         if (size < 0 || size < eof) {
             throw new IllegalArgumentException("Invalid size");
         }
-        this.size = checkMaxSize(size);
+        this.size = size;
     }
 
     public synchronized long getSize() {
         return size;
     }
 
-    public static int checkMaxSize(long size) {
+    static int checkMaxSize(long size) {
         if (size > MAX_SIZE) {
             throw new IllegalArgumentException(
-                    "file transfers larger than " + Integer.MAX_VALUE + " not supported");
+                    "files larger than " + MAX_SIZE + " cannot be retrieved in memory");
         }
         return (int) size;
     }
 
+    /**
+     * Removes the temporary file if the data has been stored into one.
+     */
+    @Override
+    public synchronized void close() {
+        if (tmpFile == null) {
+            return;
+        }
+        try {
+            channel.close();
+            Files.deleteIfExists(tmpFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot remove " + tmpFile, e);
+        }
+    }
+
+    /**
+     * Removes the temporary files left in the directory by the transfers interrupted by a crash.
+     * 
+     * @return the number of files removed
+     */
+    public static int deletePartFiles(Path dir) throws IOException {
+        int n = 0;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*" + PART_FILE_SUFFIX)) {
+            for (Path p : ds) {
+                Files.deleteIfExists(p);
+                n++;
+            }
+        }
+        return n;
+    }
+
     static class Segment {
         long start;
         long end;
@@ -237,8 +378,8 @@ public class DataFile {
             this.end = end;
         }
 
-        public int length() {
-            return (int) (end - start);
+        public long length() {
+            return end - start;
         }
     }
 
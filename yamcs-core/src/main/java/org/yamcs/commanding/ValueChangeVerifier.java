@@ -1,5 +1,6 @@
 package org.yamcs.commanding;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.yamcs.parameter.AggregateValue;
@@ -63,7 +64,9 @@ public class ValueChangeVerifier  extends Verifier implements ParameterConsumer
 
     @Override
     public void updateItems(int subscriptionId, List<ParameterValue> params) {
-        timer.submit(() -> params.forEach(pv -> process(pv, false)));
+        // the list is reused by the ParameterRequestManager
+        List<ParameterValue> copy = new ArrayList<>(params);
+        timer.submit(() -> copy.forEach(pv -> process(pv, false)));
     }
 
     private void process(ParameterValue pv, boolean fromCache) {
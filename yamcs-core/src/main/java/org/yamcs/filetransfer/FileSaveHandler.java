@@ -1,6 +1,7 @@
 package org.yamcs.filetransfer;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.nio.file.FileAlreadyExistsException;
 import java.util.Map;
@@ -58,8 +59,8 @@ public class FileSaveHandler {
             bucket = defaultBucket;
         }
 
-        try {
-            bucket.putObject(this.objectName, null, metadata, file.getData());
+        try (InputStream is = file.newInputStream()) {
+            bucket.putObject(this.objectName, null, metadata, is);
         } catch (IOException e) {
             throw new UncheckedIOException("Cannot save incoming file in bucket: " + objectName
                     + (bucket != null ? " -> " + bucket.getName() : ""), e);
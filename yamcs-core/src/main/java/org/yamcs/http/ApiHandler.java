@@ -126,7 +126,7 @@ public class ApiHandler extends HttpHandler {
 
         // Add websocket-specific handlers to channel pipeline
         String webSocketPath = req.uri();
-        String subprotocols = "json, protobuf";
+        String subprotocols = "json, protobuf, protobuf-batch";
         pipeline.addLast(new WebSocketServerProtocolHandler(webSocketPath, subprotocols, true, maxFrameLength));
 
         // Emit idle events (interpreted by WebSocketFrameHandler).
@@ -136,7 +136,10 @@ public class ApiHandler extends HttpHandler {
             pipeline.addLast(new IdleStateHandler(0, 0, pingWhenIdleFor));
         }
 
-        pipeline.addLast(new WebSocketFrameHandler(httpServer, req, user, waterMark));
+        var batchWindow = wsConfig.getInt("batchWindow");
+        var maxBatchSize = wsConfig.getInt("maxBatchSize");
+        pipeline.addLast(httpServer.getWebSocketGroup(),
+                new WebSocketFrameHandler(httpServer, req, user, waterMark, batchWindow, maxBatchSize));
 
         // Effectively trigger websocket-handler (will attempt handshake)
         nettyContext.fireChannelRead(req);
@@ -4,6 +4,7 @@ import static io.netty.handler.codec.http.HttpResponseStatus.OK;
 import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 import org.yamcs.NotThreadSafe;
@@ -53,7 +54,8 @@ public class CallObserver implements Observer<Message> {
             completeRequest(httpResponse);
         } else if (message instanceof HttpBody) {
             HttpBody responseBody = (HttpBody) message;
-            ByteBuf buf = Unpooled.wrappedBuffer(responseBody.getData().toByteArray());
+            ByteBuf buf = Unpooled.wrappedBuffer(responseBody.getData().asReadOnlyByteBufferList()
+                    .toArray(new ByteBuffer[0]));
             HttpResponse httpResponse = new DefaultFullHttpResponse(HTTP_1_1, OK, buf);
             httpResponse.headers().set(HttpHeaderNames.CONTENT_TYPE, responseBody.getContentType());
             httpResponse.headers().set(HttpHeaderNames.CONTENT_LENGTH, buf.readableBytes());
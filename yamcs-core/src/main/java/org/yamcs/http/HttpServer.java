@@ -79,9 +79,14 @@ import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpMethod;
@@ -91,7 +96,9 @@ import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.traffic.GlobalTrafficShapingHandler;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
 import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutorGroup;
 import io.netty.util.concurrent.GlobalEventExecutor;
 import io.netty.util.concurrent.ThreadPerTaskExecutor;
 
@@ -113,6 +120,8 @@ public class HttpServer extends AbstractYamcsService {
 
     private EventLoopGroup bossGroup;
     private EventLoopGroup workerGroup;
+    // if not null, the WebSocket handlers run on this group instead of the worker group
+    private EventExecutorGroup webSocketGroup;
     private ChannelGroup clientChannels;
     private GlobalTrafficShapingHandler globalTrafficHandler;
 
@@ -127,6 +136,10 @@ public class HttpServer extends AbstractYamcsService {
     private String contextPath;
     private boolean reverseLookup;
     private int nThreads;
+    private boolean epoll;
+    private int acceptThreads;
+    private int webSocketThreads;
+    private boolean directBuffers;
 
     // Cross-origin Resource Sharing (CORS) enables use of the HTTP API in non-official client web applications
     private CorsConfig corsConfig;
@@ -170,6 +183,8 @@ public class HttpServer extends AbstractYamcsService {
         // Value in seconds. Both nginx and apache have a default timeout of 60 seconds before
         // they will close an idle WebSocket connection, therefore we choose a value well below that.
         websocketSpec.addOption("pingWhenIdleFor", OptionType.INTEGER).withDefault(40);
+        websocketSpec.addOption("batchWindow", OptionType.INTEGER).withDefault(50);
+        websocketSpec.addOption("maxBatchSize", OptionType.INTEGER).withDefault(32 * 1024);
 
         Spec bindingSpec = new Spec();
         bindingSpec.addOption("address", OptionType.STRING);
@@ -196,6 +211,10 @@ public class HttpServer extends AbstractYamcsService {
                 .withElementType(OptionType.MAP)
                 .withSpec(bindingSpec);
         spec.addOption("nThreads", OptionType.INTEGER).withDefault(0);
+        spec.addOption("transport", OptionType.STRING).withChoices("nio", "epoll").withDefault("nio");
+        spec.addOption("acceptThreads", OptionType.INTEGER).withDefault(1);
+        spec.addOption("webSocketThreads", OptionType.INTEGER).withDefault(0);
+        spec.addOption("directBuffers", OptionType.BOOLEAN).withDefault(true);
         spec.addOption("reverseLookup", OptionType.BOOLEAN).withDefault(false);
 
         // When using multiple bindings, best to avoid confusion and disable the top-level properties
@@ -276,6 +295,21 @@ public class HttpServer extends AbstractYamcsService {
             corsConfig = corsb.build();
         }
         nThreads = config.getInt("nThreads");
+        acceptThreads = config.getInt("acceptThreads");
+        webSocketThreads = config.getInt("webSocketThreads");
+        directBuffers = config.getBoolean("directBuffers");
+        if ("epoll".equals(config.getString("transport"))) {
+            if (Epoll.isAvailable()) {
+                epoll = true;
+            } else {
+                log.warn("The epoll transport is not available ({}), falling back to nio",
+                        Epoll.unavailabilityCause().toString());
+            }
+        }
+        if (acceptThreads > 1 && !epoll) {
+            log.warn("Multiple accept threads require the epoll transport, using only one");
+            acceptThreads = 1;
+        }
 
         addApi(new ActivitiesApi());
         addApi(new AlarmsApi(auditLog));
@@ -388,12 +422,20 @@ public class HttpServer extends AbstractYamcsService {
                 tokenStore, auditLog));
         serviceManager.startAsync().awaitHealthy(10, TimeUnit.SECONDS);
 
-        bossGroup = new NioEventLoopGroup(1);
-
         // Note that by default (i.e. with nThreads = 0), Netty will limit the number
         // of worker threads to 2*number of CPU cores
-        workerGroup = new NioEventLoopGroup(nThreads,
-                new ThreadPerTaskExecutor(new DefaultThreadFactory("YamcsHttpServer")));
+        var workerExecutor = new ThreadPerTaskExecutor(new DefaultThreadFactory("YamcsHttpServer"));
+        if (epoll) {
+            bossGroup = new EpollEventLoopGroup(acceptThreads);
+            workerGroup = new EpollEventLoopGroup(nThreads, workerExecutor);
+        } else {
+            bossGroup = new NioEventLoopGroup(1);
+            workerGroup = new NioEventLoopGroup(nThreads, workerExecutor);
+        }
+        if (webSocketThreads > 0) {
+            webSocketGroup = new DefaultEventExecutorGroup(webSocketThreads,
+                    new DefaultThreadFactory("YamcsHttpServer-ws"));
+        }
 
         // Measure global traffic, we also add a channel-specific measurer in channel-init.
         globalTrafficHandler = new GlobalTrafficShapingHandler(workerGroup, 5000);
@@ -412,20 +454,30 @@ public class HttpServer extends AbstractYamcsService {
             sslContext = binding.createSslContext();
         }
 
+        Class<? extends ServerSocketChannel> channelClass = epoll ? EpollServerSocketChannel.class
+                : NioServerSocketChannel.class;
+        var allocator = directBuffers ? PooledByteBufAllocator.DEFAULT : new PooledByteBufAllocator(false);
+
         ServerBootstrap bootstrap = new ServerBootstrap();
         bootstrap.group(bossGroup, workerGroup)
-                .channel(NioServerSocketChannel.class)
+                .channel(channelClass)
                 .handler(new LoggingHandler(HttpServer.class, LogLevel.DEBUG))
-                .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .childOption(ChannelOption.ALLOCATOR, allocator)
                 .childHandler(new HttpServerChannelInitializer(this, sslContext, globalTrafficHandler));
+        if (acceptThreads > 1) {
+            // each bind creates a server socket on the same port, served by its own accept thread
+            bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
 
         // Bind and start to accept incoming connections.
         InetAddress address = binding.getAddress();
         int port = binding.getPort();
-        if (address == null) {
-            bootstrap.bind(new InetSocketAddress(port)).sync();
-        } else {
-            bootstrap.bind(new InetSocketAddress(address, port)).sync();
+        for (int i = 0; i < acceptThreads; i++) {
+            if (address == null) {
+                bootstrap.bind(new InetSocketAddress(port)).sync();
+            } else {
+                bootstrap.bind(new InetSocketAddress(address, port)).sync();
+            }
         }
     }
 
@@ -439,6 +491,21 @@ public class HttpServer extends AbstractYamcsService {
         return supplier != null ? supplier.get() : null;
     }
 
+    /**
+     * Returns the group on which the WebSocket handlers are run or null if they run on the same event loop as the
+     * other HTTP handlers.
+     */
+    EventExecutorGroup getWebSocketGroup() {
+        return webSocketGroup;
+    }
+
+    /**
+     * Returns true if the native epoll transport is used
+     */
+    public boolean isEpoll() {
+        return epoll;
+    }
+
     public TokenStore getTokenStore() {
         return tokenStore;
     }
@@ -513,6 +580,9 @@ public class HttpServer extends AbstractYamcsService {
         var future2 = closers.submit(() -> {
             return bossGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS).get();
         });
+        if (webSocketGroup != null) {
+            webSocketGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS);
+        }
         var future3 = closers.submit(() -> {
             serviceManager.stopAsync();
             serviceManager.awaitStopped(5, TimeUnit.SECONDS);
@@ -48,16 +48,37 @@ public class WebSocketFrameHandler extends SimpleChannelInboundHandler<WebSocket
     private User user;
 
     private WriteBufferWaterMark writeBufferWaterMark;
+    private long batchWindow;
+    private int maxBatchSize;
+
+    // counters of the outgoing traffic, updated from the netty event loop
+    private volatile long frameCount;
+    private volatile long messageCount;
+    private volatile long byteCount;
 
     private List<TopicContext> contexts = new ArrayList<>();
     private Map<Integer, Observer<Message>> clientObserversByCall = new HashMap<>();
 
     public WebSocketFrameHandler(HttpServer httpServer, HttpRequest req, User user,
             WriteBufferWaterMark writeBufferWaterMark) {
+        this(httpServer, req, user, writeBufferWaterMark, 0, 0);
+    }
+
+    /**
+     * @param batchWindow
+     *            maximum time in milliseconds that a message is delayed in order to be sent in the same frame as other
+     *            messages, when using the protobuf-batch subprotocol
+     * @param maxBatchSize
+     *            size in bytes at which a batched frame is sent without waiting for the batch window to pass
+     */
+    public WebSocketFrameHandler(HttpServer httpServer, HttpRequest req, User user,
+            WriteBufferWaterMark writeBufferWaterMark, long batchWindow, int maxBatchSize) {
         this.httpServer = httpServer;
         this.nettyRequest = req;
         this.user = user;
         this.writeBufferWaterMark = writeBufferWaterMark;
+        this.batchWindow = batchWindow;
+        this.maxBatchSize = maxBatchSize;
     }
 
     @Override
@@ -70,10 +91,14 @@ public class WebSocketFrameHandler extends SimpleChannelInboundHandler<WebSocket
         if (evt instanceof HandshakeComplete) {
             HandshakeComplete handshakeEvt = (HandshakeComplete) evt;
             String subprotocol = handshakeEvt.selectedSubprotocol();
-            protobuf = "protobuf".equals(subprotocol);
+            boolean batch = "protobuf-batch".equals(subprotocol);
+            protobuf = batch || "protobuf".equals(subprotocol);
             String channelId = nettyContext.channel().id().asShortText();
 
-            if (protobuf) {
+            if (batch) {
+                log.info("{} {} {} {} [subprotocol: protobuf-batch]", channelId, nettyRequest.method(),
+                        nettyRequest.uri(), HttpResponseStatus.SWITCHING_PROTOCOLS.code());
+            } else if (protobuf) {
                 log.info("{} {} {} {} [subprotocol: protobuf]", channelId, nettyRequest.method(), nettyRequest.uri(),
                         HttpResponseStatus.SWITCHING_PROTOCOLS.code());
             } else {
@@ -84,7 +109,9 @@ public class WebSocketFrameHandler extends SimpleChannelInboundHandler<WebSocket
             // After upgrade, no further HTTP messages will be received
             nettyContext.pipeline().remove(HttpRequestHandler.class);
 
-            nettyContext.pipeline().addLast(new WebSocketServerMessageHandler(httpServer, protobuf));
+            var messageHandler = new WebSocketServerMessageHandler(httpServer, protobuf, this,
+                    batch ? batchWindow : 0, maxBatchSize);
+            nettyContext.pipeline().addLast(httpServer.getWebSocketGroup(), messageHandler);
         } else if (evt instanceof IdleStateEvent) {
             nettyContext.writeAndFlush(new PingWebSocketFrame());
         } else {
@@ -268,11 +295,55 @@ public class WebSocketFrameHandler extends SimpleChannelInboundHandler<WebSocket
 
     @Override
     public void channelInactive(ChannelHandlerContext nettyContext) throws Exception {
-        log.info("{} Channel closed", nettyContext.channel().id().asShortText());
+        log.info("{} Channel closed (frames: {}, messages: {}, bytes: {})", nettyContext.channel().id().asShortText(),
+                frameCount, messageCount, byteCount);
         contexts.forEach(TopicContext::close);
         contexts.clear();
     }
 
+    /**
+     * Called from the netty event loop each time a frame has been passed to the channel.
+     *
+     * @param numMessages
+     *            number of messages contained in the frame
+     * @param numBytes
+     *            size of the frame payload (before compression)
+     */
+    void frameWritten(int numMessages, int numBytes) {
+        frameCount++;
+        messageCount += numMessages;
+        byteCount += numBytes;
+    }
+
+    /**
+     * Number of frames sent to the client
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Number of messages sent to the client
+     */
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    /**
+     * Number of bytes sent to the client (frame payload, before compression)
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * Average number of messages per frame; always 1 unless the protobuf-batch subprotocol is used.
+     */
+    public double getCoalescingRatio() {
+        long frames = frameCount;
+        return frames == 0 ? 0 : (double) messageCount / frames;
+    }
+
     private Topic matchTopic(String topicName) {
         for (Topic topic : httpServer.getTopics()) {
             if (topicName.equals(topic.getName())) {
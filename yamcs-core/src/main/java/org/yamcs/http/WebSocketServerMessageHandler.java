@@ -1,5 +1,14 @@
 package org.yamcs.http;
 
+import static org.yamcs.http.WebSocketFramePriority.HIGH;
+import static org.yamcs.http.WebSocketFramePriority.NORMAL;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
 import org.yamcs.protobuf.ServerMessage;
 
 import io.netty.buffer.ByteBuf;
@@ -14,20 +23,57 @@ import io.netty.handler.codec.http.websocketx.WebSocketFrame;
 /**
  * Encodes {@link ServerMessage} to either {@link BinaryWebSocketFrame} or {@link TextWebSocketFrame} depending if the
  * protobuf or json has to be sent.
+ * <p>
+ * With the protobuf-batch subprotocol, the messages are coalesced into binary frames, each message being prefixed by
+ * its varint32 encoded length. A frame is sent when its size reaches the configured maximum, when a high priority
+ * message (e.g. a reply) is part of it or at the latest after the batch window has passed since its first message.
  */
 public class WebSocketServerMessageHandler extends ChannelOutboundHandlerAdapter {
 
     final boolean protobuf;
     final HttpServer httpServer;
+    final WebSocketFrameHandler frameHandler;
+
+    // batching parameters, only used if batchWindow > 0
+    final long batchWindow;
+    final int maxBatchSize;
+
+    private ByteBuf batch;
+    private int batchMessageCount;
+    private WebSocketFramePriority batchPriority;
+    private List<ChannelPromise> batchPromises = new ArrayList<>();
+    private ScheduledFuture<?> batchFlushFuture;
 
     public WebSocketServerMessageHandler(HttpServer httpServer, boolean protobuf) {
+        this(httpServer, protobuf, null, 0, 0);
+    }
+
+    /**
+     *
+     * @param frameHandler
+     *            if not null, it is informed about each frame written
+     * @param batchWindow
+     *            if greater than 0, the protobuf messages are coalesced into frames sent at most this number of
+     *            milliseconds after the first message has been added.
+     * @param maxBatchSize
+     *            when batching, the frame is sent as soon as its size reaches this number of bytes.
+     */
+    public WebSocketServerMessageHandler(HttpServer httpServer, boolean protobuf, WebSocketFrameHandler frameHandler,
+            long batchWindow, int maxBatchSize) {
         this.httpServer = httpServer;
         this.protobuf = protobuf;
+        this.frameHandler = frameHandler;
+        this.batchWindow = protobuf ? batchWindow : 0;
+        this.maxBatchSize = maxBatchSize;
     }
 
     @Override
     public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
         ServerMessage serverMessage = (ServerMessage) msg;
+        if (batchWindow > 0) {
+            addToBatch(ctx, serverMessage, promise);
+            return;
+        }
         WebSocketFrame frame;
 
         if (protobuf) {
@@ -40,7 +86,109 @@ public class WebSocketServerMessageHandler extends ChannelOutboundHandlerAdapter
             String json = httpServer.getJsonPrinter().print(serverMessage);
             frame = new TextWebSocketFrame(json);
         }
+        if (frameHandler != null) {
+            frameHandler.frameWritten(1, frame.content().readableBytes());
+        }
 
         ctx.write(frame, promise);
     }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        if (batch != null) {
+            if (batchPriority == HIGH || batch.readableBytes() >= maxBatchSize) {
+                writeBatch(ctx);
+            } else if (batchFlushFuture == null) {
+                batchFlushFuture = ctx.executor().schedule(() -> {
+                    batchFlushFuture = null;
+                    if (batch != null) {
+                        writeBatch(ctx);
+                        ctx.flush();
+                    }
+                }, batchWindow, TimeUnit.MILLISECONDS);
+                return;
+            } else {
+                return;
+            }
+        }
+        ctx.flush();
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        releaseBatch();
+        ctx.close(promise);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        releaseBatch();
+    }
+
+    private void addToBatch(ChannelHandlerContext ctx, ServerMessage serverMessage, ChannelPromise promise)
+            throws Exception {
+        if (batch == null) {
+            batch = ctx.alloc().buffer();
+            batchPriority = null;
+        }
+        try (ByteBufOutputStream bufOut = new ByteBufOutputStream(batch)) {
+            serverMessage.writeDelimitedTo(bufOut);
+        }
+        batchMessageCount++;
+        batchPromises.add(promise);
+
+        // the frame is sent with the highest priority of its messages
+        WebSocketFramePriority priority = ctx.channel().attr(WebSocketFramePriority.ATTR).get();
+        if (priority == null) {
+            priority = NORMAL;
+        }
+        if (batchPriority == null || priority.compareTo(batchPriority) > 0) {
+            batchPriority = priority;
+        }
+    }
+
+    private void writeBatch(ChannelHandlerContext ctx) {
+        if (batchFlushFuture != null) {
+            batchFlushFuture.cancel(false);
+            batchFlushFuture = null;
+        }
+        WebSocketFrame frame = new BinaryWebSocketFrame(batch);
+        List<ChannelPromise> promises = batchPromises;
+        if (frameHandler != null) {
+            frameHandler.frameWritten(batchMessageCount, batch.readableBytes());
+        }
+        batch = null;
+        batchMessageCount = 0;
+        batchPromises = new ArrayList<>();
+
+        // the priority attribute is read by the WebSocketFrameDropper during the write
+        var prioAttr = ctx.channel().attr(WebSocketFramePriority.ATTR);
+        WebSocketFramePriority prevPriority = prioAttr.getAndSet(batchPriority);
+        ctx.write(frame).addListener(f -> {
+            for (ChannelPromise p : promises) {
+                if (f.isSuccess()) {
+                    p.trySuccess();
+                } else {
+                    p.tryFailure(f.cause());
+                }
+            }
+        });
+        prioAttr.set(prevPriority);
+    }
+
+    private void releaseBatch() {
+        if (batchFlushFuture != null) {
+            batchFlushFuture.cancel(false);
+            batchFlushFuture = null;
+        }
+        if (batch != null) {
+            batch.release();
+            batch = null;
+            batchMessageCount = 0;
+            for (ChannelPromise p : batchPromises) {
+                p.tryFailure(new ClosedChannelException());
+            }
+            batchPromises.clear();
+        }
+    }
 }
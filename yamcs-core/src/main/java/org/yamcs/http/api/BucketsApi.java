@@ -1,6 +1,7 @@
 package org.yamcs.http.api;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -147,12 +148,19 @@ public class BucketsApi extends AbstractBucketsApi<Context> {
             if (props == null) {
                 throw new NotFoundException();
             }
-            byte[] objData = bucket.getObject(objName);
             String contentType = props.hasContentType() ? props.getContentType() : "application/octet-stream";
 
+            // read the object directly into the chunks of the ByteString, avoiding an intermediate copy
+            ByteString data;
+            try (InputStream is = bucket.getObjectStream(objName)) {
+                if (is == null) {
+                    throw new NotFoundException();
+                }
+                data = ByteString.readFrom(is);
+            }
             HttpBody body = HttpBody.newBuilder()
                     .setContentType(contentType)
-                    .setData(ByteString.copyFrom(objData))
+                    .setData(data)
                     .build();
 
             observer.complete(body);
@@ -181,8 +189,7 @@ public class BucketsApi extends AbstractBucketsApi<Context> {
         verifyObjectName(objectName);
 
         String contentType = body.hasContentType() ? body.getContentType() : null;
-        byte[] objectData = body.getData().toByteArray();
-        try {
+        try (InputStream objectData = body.getData().newInput()) {
             bucket.putObject(objectName, contentType, body.getMetadataMap(), objectData);
         } catch (IOException e) {
             throw new InternalServerErrorException("Error when uploading object to bucket: " + e.getMessage(), e);
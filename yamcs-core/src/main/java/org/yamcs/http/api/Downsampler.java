@@ -10,6 +10,8 @@ import java.util.function.Consumer;
 import org.yamcs.logging.Log;
 import org.yamcs.parameter.Value;
 import org.yamcs.parameter.ValueArray;
+import org.yamcs.parameterarchive.ParameterRollup;
+import org.yamcs.parameterarchive.ParameterRollup.Bucket;
 import org.yamcs.parameterarchive.ParameterValueArray;
 import org.yamcs.protobuf.Pvalue.ParameterStatus;
 import org.yamcs.protobuf.Yamcs.Value.Type;
@@ -188,6 +190,30 @@ public class Downsampler implements Consumer<ParameterValueArray> {
         }
     }
 
+    /**
+     * Adds the aggregated values from the rollup buckets. Each bucket is added to the sample containing its first
+     * value.
+     */
+    public void process(ParameterRollup rollup) {
+        for (Bucket b : rollup.getBuckets()) {
+            long time = b.getFirstTime();
+            if (time > stop || time < start) {
+                continue;
+            }
+            Entry<Long, Sample> entry = samplesByTime.floorEntry(time);
+            if (entry == null) {
+                continue;
+            }
+            lastSampleTime = entry.getKey();
+            Sample sample = entry.getValue();
+            if (sample == null) {
+                samplesByTime.put(entry.getKey(), new Sample(entry.getKey(), b));
+            } else {
+                sample.process(b);
+            }
+        }
+    }
+
     public List<Sample> collect() {
         if (samplesByTime == null) {
             return Collections.emptyList();
@@ -249,6 +275,32 @@ public class Downsampler implements Consumer<ParameterValueArray> {
             n = 1;
         }
 
+        // sample with the values from a rollup bucket
+        Sample(long t, Bucket b) {
+            this.t = t;
+            this.expireMillis = -1;
+            min = b.getMin();
+            max = b.getMax();
+            avg = b.getAvg();
+            minTime = b.getMinTime();
+            maxTime = b.getMaxTime();
+            n = b.getCount();
+        }
+
+        void process(Bucket b) {
+            this.expireMillis = -1;
+            if (b.getMin() < min) {
+                min = b.getMin();
+                minTime = b.getMinTime();
+            }
+            if (b.getMax() > max) {
+                max = b.getMax();
+                maxTime = b.getMaxTime();
+            }
+            avg = (avg * n + b.getSum()) / (n + b.getCount());
+            n += b.getCount();
+        }
+
         public void process(long valueTime, double value, long expireMillis) {
             this.expireMillis = expireMillis;
             if (value < min) {
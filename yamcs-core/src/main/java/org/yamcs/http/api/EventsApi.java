@@ -14,6 +14,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -22,6 +23,7 @@ import org.yamcs.YamcsServer;
 import org.yamcs.api.HttpBody;
 import org.yamcs.api.Observer;
 import org.yamcs.archive.EventRecorder;
+import org.yamcs.archive.EventTextIndex;
 import org.yamcs.events.EventProducer;
 import org.yamcs.events.EventProducerFactory;
 import org.yamcs.http.BadRequestException;
@@ -41,6 +43,7 @@ import org.yamcs.protobuf.StreamEventsRequest;
 import org.yamcs.protobuf.SubscribeEventsRequest;
 import org.yamcs.security.SystemPrivilege;
 import org.yamcs.utils.TimeEncoding;
+import org.yamcs.utils.TimeInterval;
 import org.yamcs.yarch.SqlBuilder;
 import org.yamcs.yarch.Stream;
 import org.yamcs.yarch.StreamSubscriber;
@@ -54,6 +57,7 @@ import com.csvreader.CsvWriter;
 import com.google.common.collect.BiMap;
 import com.google.gson.Gson;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.Timestamp;
 import com.google.protobuf.util.Timestamps;
 
 public class EventsApi extends AbstractEventsApi<Context> {
@@ -106,7 +110,8 @@ public class EventsApi extends AbstractEventsApi<Context> {
         }
 
         if (request.hasQ()) {
-            sqlb.where("body.message like ?", "%" + request.getQ() + "%");
+            addTextFilter(instance, sqlb, request.getQ(), request.hasStart() ? request.getStart() : null,
+                    request.hasStop() ? request.getStop() : null);
         }
         if (nextToken != null) {
             // TODO this currently ignores the source column (also part of the key)
@@ -291,7 +296,8 @@ public class EventsApi extends AbstractEventsApi<Context> {
         addSeverityFilter(sqlb, severity);
 
         if (request.hasQ()) {
-            sqlb.where("body.message like ?", "%" + request.getQ() + "%");
+            addTextFilter(instance, sqlb, request.getQ(), request.hasStart() ? request.getStart() : null,
+                    request.hasStop() ? request.getStop() : null);
         }
 
         StreamFactory.stream(instance, sqlb.toString(), sqlb.getQueryArguments(), new StreamSubscriber() {
@@ -337,7 +343,8 @@ public class EventsApi extends AbstractEventsApi<Context> {
         addSeverityFilter(sqlb, severity);
 
         if (request.hasQ()) {
-            sqlb.where("body.message like ?", "%" + request.getQ() + "%");
+            addTextFilter(instance, sqlb, request.getQ(), request.hasStart() ? request.getStart() : null,
+                    request.hasStop() ? request.getStop() : null);
         }
 
         String sql = sqlb.toString();
@@ -363,6 +370,39 @@ public class EventsApi extends AbstractEventsApi<Context> {
         StreamFactory.stream(instance, sql, sqlb.getQueryArguments(), streamer);
     }
 
+    /**
+     * Adds the condition that the event message contains the text q.
+     * <p>
+     * If the text index is enabled in the EventRecorder and it can be used for the given text, the condition is
+     * complemented with the list of candidate event times, such that only those events are retrieved from the table.
+     */
+    private static void addTextFilter(String instance, SqlBuilder sqlb, String q, Timestamp start, Timestamp stop) {
+        sqlb.where("body.message like ?", "%" + q + "%");
+
+        EventRecorder recorder = YamcsServer.getServer().getService(instance, EventRecorder.class);
+        EventTextIndex textIndex = recorder == null ? null : recorder.getTextIndex();
+        if (textIndex == null) {
+            return;
+        }
+        TimeInterval interval = new TimeInterval();
+        if (start != null) {
+            interval.setStart(TimeEncoding.fromProtobufTimestamp(start));
+        }
+        if (stop != null) {
+            interval.setEnd(TimeEncoding.fromProtobufTimestamp(stop));
+        }
+        Set<Long> candidates = textIndex.search(q, interval);
+        if (candidates == null) {
+            return;
+        }
+        if (candidates.isEmpty()) {
+            // nothing matches, look for an event at a time that cannot exist
+            sqlb.whereColIn(GENTIME_COLUMN, Arrays.asList(TimeEncoding.INVALID_INSTANT));
+        } else {
+            sqlb.whereColIn(GENTIME_COLUMN, candidates);
+        }
+    }
+
     /**
      * Checks if events are supported for the specified instance. This will succeed in two cases:
      * <ol>
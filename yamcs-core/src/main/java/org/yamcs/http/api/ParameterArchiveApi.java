@@ -36,6 +36,7 @@ import org.yamcs.parameterarchive.ParameterIdDb;
 import org.yamcs.parameterarchive.ParameterIdValueList;
 import org.yamcs.parameterarchive.ParameterInfoRetrieval;
 import org.yamcs.parameterarchive.ParameterRequest;
+import org.yamcs.parameterarchive.ParameterRollup;
 import org.yamcs.protobuf.AbstractParameterArchiveApi;
 import org.yamcs.protobuf.Archive.GetParameterSamplesRequest;
 import org.yamcs.protobuf.Archive.ListParameterHistoryRequest;
@@ -199,9 +200,16 @@ public class ParameterArchiveApi extends AbstractParameterArchiveApi<Context> {
         }
 
         ParameterRequest pr = new ParameterRequest(start, stop, true, !useRawValue, useRawValue, true);
-        SingleParameterRetriever spdr = new SingleParameterRetriever(parchive, pcache, pid, pr);
+        // the rollups are computed only for the engineering values
+        int rollupLevel = useRawValue ? -1 : ParameterRollup.getLevel((stop - start) / sampleCount);
         try {
-            spdr.retrieve(sampler);
+            if (rollupLevel >= 0) {
+                var retriever = new RollupParameterRetriever(parchive, pcache, pid, pr, rollupLevel,
+                        getRollupStop(ysi));
+                retriever.retrieve(sampler, sampler::process);
+            } else {
+                new SingleParameterRetriever(parchive, pcache, pid, pr).retrieve(sampler);
+            }
         } catch (IOException e) {
             log.warn("Received exception during parameter retrieval", e);
             throw new InternalServerErrorException(e.toString());
@@ -249,9 +257,21 @@ public class ParameterArchiveApi extends AbstractParameterArchiveApi<Context> {
         ParameterRanger ranger = new ParameterRanger(minGap, maxGap, minRange, maxValues);
 
         ParameterRequest pr = new ParameterRequest(start, stop, true, true, false, true);
-        SingleParameterRetriever spdr = new SingleParameterRetriever(parchive, pcache, pid, pr);
+        // the rollups can be used if the gaps inside one bucket do not matter and the buckets are much smaller than
+        // the ranges
+        int rollupLevel = ParameterRollup.getLevel(minRange);
+        if (rollupLevel >= 0 && ParameterRollup.getBucketDuration(rollupLevel) > minGap) {
+            rollupLevel = -1;
+        }
         try {
-            spdr.retrieve(ranger);
+            if (rollupLevel >= 0) {
+                var retriever = new RollupParameterRetriever(parchive, pcache, pid, pr, rollupLevel,
+                        getRollupStop(ysi));
+                retriever.setFilter(r -> r.getBuckets().stream().allMatch(b -> r.getConstantValue(b) != null));
+                retriever.retrieve(ranger, ranger::accept);
+            } else {
+                new SingleParameterRetriever(parchive, pcache, pid, pr).retrieve(ranger);
+            }
         } catch (IOException e) {
             log.warn("Received exception during parameter retrieval ", e);
             throw new InternalServerErrorException(e.toString());
@@ -368,6 +388,12 @@ public class ParameterArchiveApi extends AbstractParameterArchiveApi<Context> {
         observer.complete(resultb.build());
     }
 
+    // the intervals ending after this time may still receive data (by the realtime filler), so the values have to be
+    // retrieved instead of the rollups
+    private static long getRollupStop(YamcsServerInstance ysi) {
+        return ysi.getTimeService().getMissionTime() - ParameterArchive.getIntervalDuration();
+    }
+
     private ParameterArchive getParameterArchive(YamcsServerInstance ysi) throws BadRequestException {
         List<ParameterArchive> l = ysi.getServices(ParameterArchive.class);
 
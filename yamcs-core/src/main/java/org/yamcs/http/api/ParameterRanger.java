@@ -10,6 +10,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.yamcs.parameter.Value;
 import org.yamcs.parameter.ValueArray;
+import org.yamcs.parameterarchive.ParameterRollup;
+import org.yamcs.parameterarchive.ParameterRollup.Bucket;
 import org.yamcs.parameterarchive.ParameterValueArray;
 import org.yamcs.protobuf.Pvalue.ParameterStatus;
 import org.yamcs.protobuf.Yamcs.Value.Type;
@@ -85,45 +87,71 @@ public class ParameterRanger implements Consumer<ParameterValueArray> {
         }
 
         for (int i = 0; i < n; i++) {
-            Value v = va.getValue(i);
+            process(timestamps[i], va.getValue(i), statuses[i], 1);
+        }
+    }
 
-            // if distinct is true, it means the value is part of the distinctValues map
-            // if it's false we do not need to keep track of it but we do if it is part of a new range
-            boolean distinct = addToDistinct(v);
+    /**
+     * Adds the values from the rollup buckets; all the buckets have to contain one single value (see
+     * {@link ParameterRollup#getConstantValue(Bucket)}).
+     * <p>
+     * The expiration of the values is not known, so a data interruption is detected between the buckets only if the
+     * distance between them is greater than the maxGap.
+     */
+    public void accept(ParameterRollup rollup) {
+        if (ranges.size() >= MAX_RANGES) {
+            log.warn("Maximum number of ranges reached, ignoring further data.", ranges.size());
+            return;
+        }
+        for (Bucket b : rollup.getBuckets()) {
+            Value v = rollup.getConstantValue(b);
+            if (curRange != null && v.getType() != curRange.getValue(0).getType()) {
+                ranges.add(curRange);
+                curRange = null;
+            }
+            process(b.getFirstTime(), v, ParameterStatus.getDefaultInstance(), b.getCount());
+            if (curRange.stop < b.getLastTime()) {
+                curRange.stop = b.getLastTime();
+            }
+            prevTimestamp = b.getLastTime();
+        }
+    }
 
-            ParameterStatus status = statuses[i];
-            long timestamp = timestamps[i];
+    // process n occurrences of the value v received at the given timestamp
+    private void process(long timestamp, Value v, ParameterStatus status, int n) {
+        // if distinct is true, it means the value is part of the distinctValues map
+        // if it's false we do not need to keep track of it but we do if it is part of a new range
+        boolean distinct = addToDistinct(v, n);
 
-            if (curRange == null) {
-                curRange = new SingleRange(timestamp, v);
+        if (curRange == null) {
+            curRange = new SingleRange(timestamp, v, n);
+        } else {
+            long stop = checkDataInterruption(prevTimestamp, timestamp, prevStatus);
+            if (stop != Long.MIN_VALUE) {// data interruption
+                curRange.stop = stop;
+                potentiallyCreateNewRange(timestamp, v, distinct, n);
+            } else if (!v.equals(prevValue)) {
+                curRange.stop = timestamp;
+                potentiallyCreateNewRange(timestamp, v, distinct, n);
             } else {
-                long stop = checkDataInterruption(prevTimestamp, timestamp, prevStatus);
-                if (stop != Long.MIN_VALUE) {// data interruption
-                    curRange.stop = stop;
-                    potentiallyCreateNewRange(timestamp, v, distinct);
-                } else if (!v.equals(prevValue)) {
-                    curRange.stop = timestamp;
-                    potentiallyCreateNewRange(timestamp, v, distinct);
-                } else {
-                    curRange.add(v, distinct);
-                    curRange.stop = timestamp;
-                }
+                curRange.add(v, distinct, n);
+                curRange.stop = timestamp;
             }
-            prevValue = v;
-            prevTimestamp = timestamp;
-            prevStatus = status;
         }
+        prevValue = v;
+        prevTimestamp = timestamp;
+        prevStatus = status;
     }
 
     // add the value to the distinct values and return true if it has been added or false if there are already more than
     // 2*maxValues distinct values
-    private boolean addToDistinct(Value v) {
+    private boolean addToDistinct(Value v, int n) {
         MutableLong ml = distinctValues.get(v);
         if (ml != null) {
-            ml.increment();
+            ml.setLong(ml.getLong() + n);
             return true;
         } else if (distinctValues.size() < 2 * maxValues) {
-            distinctValues.put(v, new MutableLong(1));
+            distinctValues.put(v, new MutableLong(n));
             return true;
         }
         return false;
@@ -131,20 +159,20 @@ public class ParameterRanger implements Consumer<ParameterValueArray> {
 
     // create a new range unless the minRange parameter is in effect and the current range is too small, case in which
     // create a multi value range and add to it
-    void potentiallyCreateNewRange(long timestamp, Value v, boolean distinct) {
+    void potentiallyCreateNewRange(long timestamp, Value v, boolean distinct, int n) {
         if (timestamp - curRange.start < minRange) {
             if (curRange instanceof SingleRange) {
                 curRange = new MultiRange((SingleRange) curRange);
             }
-            curRange.add(v, distinct);
+            curRange.add(v, distinct, n);
             curRange.stop = timestamp;
         } else {
             ranges.add(curRange);
-            curRange = new SingleRange(timestamp, v);
+            curRange = new SingleRange(timestamp, v, n);
             if (!distinct) {
                 // if a new value appears after a while,
                 // we give it a chance to appear among the values part of the final result
-                distinctValues.put(v, new MutableLong(1));
+                distinctValues.put(v, new MutableLong(n));
             }
         }
     }
@@ -178,7 +206,14 @@ public class ParameterRanger implements Consumer<ParameterValueArray> {
             this.stop = stop;
         }
 
-        public abstract void add(Value v, boolean distinct);
+        public void add(Value v, boolean distinct) {
+            add(v, distinct, 1);
+        }
+
+        /**
+         * add n occurrences of the value
+         */
+        public abstract void add(Value v, boolean distinct, int n);
 
         public abstract int valueCount();
 
@@ -196,13 +231,18 @@ public class ParameterRanger implements Consumer<ParameterValueArray> {
         Value value;
 
         SingleRange(long start, Value v) {
+            this(start, v, 1);
+        }
+
+        SingleRange(long start, Value v, int n) {
             super(start, start);
             this.value = v;
-            this.count = 1;
+            this.count = n;
         }
 
-        public void add(Value v, boolean distinct) {
-            count++;
+        @Override
+        public void add(Value v, boolean distinct, int n) {
+            count += n;
         }
 
         public int valueCount() {
@@ -241,17 +281,17 @@ public class ParameterRanger implements Consumer<ParameterValueArray> {
         // add value to the range;
         // if distinct is false, only increase the total count, not add the value itself
         @Override
-        public void add(Value v, boolean distinct) {
-            count++;
+        public void add(Value v, boolean distinct, int n) {
+            count += n;
 
             int idx = values.indexOf(v);
             if (idx < 0) {
                 if (distinct) {
                     values.add(v);
-                    counts.add(1);
+                    counts.add(n);
                 }
             } else {
-                counts.set(idx, counts.get(idx) + 1);
+                counts.set(idx, counts.get(idx) + n);
             }
         }
 
@@ -215,6 +215,8 @@ public class ProcessingApi extends AbstractProcessingApi<Context> {
             ReplaySpeed replaySpeed;
             if ("afap".equals(speed)) {
                 replaySpeed = ReplaySpeed.newBuilder().setType(ReplaySpeedType.AFAP).build();
+            } else if ("ff".equals(speed)) {
+                replaySpeed = ReplaySpeed.newBuilder().setType(ReplaySpeedType.FAST_FORWARD).build();
             } else if (speed.endsWith("x")) {
                 try {
                     float factor = Float.parseFloat(speed.substring(0, speed.length() - 1));
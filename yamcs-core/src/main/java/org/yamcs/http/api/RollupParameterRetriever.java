@@ -0,0 +1,86 @@
+package org.yamcs.http.api;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.rocksdb.RocksDBException;
+import org.yamcs.parameter.ParameterCache;
+import org.yamcs.parameter.ParameterWithId;
+import org.yamcs.parameterarchive.ParameterArchive;
+import org.yamcs.parameterarchive.ParameterRequest;
+import org.yamcs.parameterarchive.ParameterRollup;
+import org.yamcs.parameterarchive.ParameterValueArray;
+import org.yamcs.parameterarchive.RollupRetrieval;
+
+/**
+ * Retrieves data for one parameter in ascending order, using the parameter archive rollups for the intervals where
+ * they are available and the values (from the parameter archive and the cache) for the rest.
+ */
+public class RollupParameterRetriever {
+    final ParameterRequest req;
+    final ParameterArchive parchive;
+    final ParameterCache cache;
+    final ParameterWithId pid;
+    final int level;
+    final long rollupStop;
+    Predicate<ParameterRollup> filter = r -> true;
+
+    /**
+     * @param level
+     *            the rollup level, see {@link ParameterRollup#getLevel(long)}
+     * @param rollupStop
+     *            the rollups are only used for the intervals ending before this time. The intervals which are still
+     *            being filled have to be retrieved from the values.
+     */
+    public RollupParameterRetriever(ParameterArchive parchive, ParameterCache cache, ParameterWithId pid,
+            ParameterRequest req, int level, long rollupStop) {
+        this.parchive = parchive;
+        this.cache = cache;
+        this.pid = pid;
+        this.req = req;
+        this.level = level;
+        this.rollupStop = rollupStop;
+    }
+
+    /**
+     * Only the rollups matching the filter are used; the values are retrieved for the intervals of the other rollups.
+     */
+    public void setFilter(Predicate<ParameterRollup> filter) {
+        this.filter = filter;
+    }
+
+    public void retrieve(Consumer<ParameterValueArray> valueConsumer, Consumer<ParameterRollup> rollupConsumer)
+            throws IOException {
+        List<ParameterRollup> rollups = new ArrayList<>();
+        RollupRetrieval rr = new RollupRetrieval(parchive, pid.getQualifiedName(), level);
+        try {
+            rr.retrieve(req.getStart(), Math.min(req.getStop(), rollupStop), r -> {
+                if (filter.test(r)) {
+                    rollups.add(r);
+                }
+            });
+        } catch (RocksDBException e) {
+            throw new IOException(e);
+        }
+
+        long t = req.getStart();
+        for (ParameterRollup r : rollups) {
+            if (r.getInterval() > t) {
+                retrieveValues(t, r.getInterval(), null, valueConsumer);
+            }
+            rollupConsumer.accept(r);
+            t = ParameterArchive.getIntervalEnd(r.getInterval()) + 1;
+        }
+        retrieveValues(t, req.getStop(), cache, valueConsumer);
+    }
+
+    private void retrieveValues(long start, long stop, ParameterCache cache, Consumer<ParameterValueArray> consumer)
+            throws IOException {
+        ParameterRequest req1 = new ParameterRequest(start, stop, true, req.isRetrieveEngineeringValues(),
+                req.isRetrieveRawValues(), req.isRetrieveParameterStatus());
+        new SingleParameterRetriever(parchive, cache, pid, req1).retrieve(consumer);
+    }
+}
@@ -8,6 +8,7 @@ import org.yamcs.protobuf.AcknowledgmentInfo;
 import org.yamcs.protobuf.ProcessorInfo;
 import org.yamcs.protobuf.Statistics;
 import org.yamcs.protobuf.TmStatistics;
+import org.yamcs.protobuf.Yamcs.ReplayProgress;
 import org.yamcs.protobuf.Yamcs.ReplayRequest;
 import org.yamcs.utils.TimeEncoding;
 import org.yamcs.utils.TimestampUtil;
@@ -44,6 +45,10 @@ public final class ManagementGpbHelper {
             ReplayRequest request = processor.getCurrentReplayRequest();
             processorb.setReplayRequest(request);
             processorb.setReplayState(processor.getReplayState());
+            ReplayProgress progress = processor.getReplayProgress();
+            if (progress != null) {
+                processorb.setReplayProgress(progress);
+            }
         }
 
         for (var ack : processor.getAcknowledgments()) {
@@ -0,0 +1,286 @@
+package org.yamcs.mdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.yamcs.mdb.SubscribedContainer.InheritingContainer;
+import org.yamcs.xtce.ArrayParameterEntry;
+import org.yamcs.xtce.BaseDataType;
+import org.yamcs.xtce.BooleanDataEncoding;
+import org.yamcs.xtce.Comparison;
+import org.yamcs.xtce.ComparisonList;
+import org.yamcs.xtce.DataEncoding;
+import org.yamcs.xtce.DataSource;
+import org.yamcs.xtce.FloatDataEncoding;
+import org.yamcs.xtce.IntegerDataEncoding;
+import org.yamcs.xtce.MatchCriteria;
+import org.yamcs.xtce.OperatorType;
+import org.yamcs.xtce.Parameter;
+import org.yamcs.xtce.ParameterEntry;
+import org.yamcs.xtce.ParameterInstanceRef;
+import org.yamcs.xtce.ParameterType;
+import org.yamcs.xtce.SequenceEntry;
+
+/**
+ * Flat decode plan of a subscribed container, used when the compiled decoding is enabled in the
+ * {@link ContainerProcessingOptions}.
+ * <p>
+ * The plan is computed once for the current subscription and contains for each entry:
+ * <ul>
+ * <li>the bit position of the entry, as absolute position in the packet or relative to the start of the container,
+ * whenever it can be determined from the sizes of the previous entries. Otherwise the position is relative to the
+ * previous entry, as in the interpreter.</li>
+ * <li>the data encoding to be used for the parameters having a fixed size integer, float or boolean encoding. The
+ * other entries (arrays, aggregates, strings, binaries, containers, repeated entries, custom decoders) are extracted
+ * by the {@link SequenceEntryProcessor}.</li>
+ * <li>the evaluator of the include condition.</li>
+ * </ul>
+ * In addition, if several inheriting containers are restricted by an equality comparison of the same integer
+ * parameter (typically the APID or the packet type), they are indexed by the value of that parameter such that only
+ * the criteria of the containers matching the value (and of the containers not restricted by that parameter) have to
+ * be evaluated.
+ */
+public class ContainerDecodePlan {
+    enum LocationType {
+        ABSOLUTE, START_RELATIVE, PREVIOUS_RELATIVE
+    }
+
+    enum DecodeType {
+        INTEGER, FLOAT, BOOLEAN, INTERPRETED
+    }
+
+    static class Step {
+        final SequenceEntry entry;
+        final MatchCriteriaEvaluator includeEvaluator;
+        final LocationType locationType;
+        final int location;
+        final DecodeType decodeType;
+        final DataEncoding encoding;
+        final int sizeInBits;
+
+        Step(SequenceEntry entry, MatchCriteriaEvaluator includeEvaluator, LocationType locationType, int location,
+                DecodeType decodeType, DataEncoding encoding, int sizeInBits) {
+            this.entry = entry;
+            this.includeEvaluator = includeEvaluator;
+            this.locationType = locationType;
+            this.location = location;
+            this.decodeType = decodeType;
+            this.encoding = encoding;
+            this.sizeInBits = sizeInBits;
+        }
+    }
+
+    final Step[] steps;
+    final List<InheritingContainer> inheritingContainers;
+
+    // if not null, the inheriting containers are indexed by the value of this parameter
+    ParameterInstanceRef discriminator;
+    Map<Long, List<InheritingContainer>> inheritingByValue;
+    // the inheriting containers whose criteria does not compare the discriminator
+    List<InheritingContainer> otherInheritingContainers;
+
+    ContainerDecodePlan(List<SequenceEntry> entries, List<InheritingContainer> inheritingContainers) {
+        steps = new Step[entries.size()];
+
+        // position of the end of the previous entry if known, relative to the container start or absolute
+        LocationType knownType = LocationType.START_RELATIVE;
+        int knownEnd = 0;
+        for (int i = 0; i < steps.length; i++) {
+            SequenceEntry se = entries.get(i);
+            LocationType ltype;
+            int location;
+            if (se.getReferenceLocation() == SequenceEntry.ReferenceLocationType.CONTAINER_START) {
+                ltype = LocationType.ABSOLUTE;
+                location = se.getLocationInContainerInBits();
+            } else if (knownType != null) {
+                ltype = knownType;
+                location = knownEnd + se.getLocationInContainerInBits();
+            } else {
+                ltype = LocationType.PREVIOUS_RELATIVE;
+                location = se.getLocationInContainerInBits();
+            }
+            MatchCriteriaEvaluator includeEvaluator = se.getIncludeCondition() == null ? null
+                    : MatchCriteriaEvaluatorFactory.getEvaluator(se.getIncludeCondition());
+
+            DataEncoding encoding = getFixedSizeEncoding(se);
+            Step step;
+            if (encoding == null) {
+                step = new Step(se, includeEvaluator, ltype, location, DecodeType.INTERPRETED, null, -1);
+            } else {
+                step = new Step(se, includeEvaluator, ltype, location, getDecodeType(encoding), encoding,
+                        getDecodedSize(encoding));
+            }
+            steps[i] = step;
+
+            // the position after the entry is known only if the entry is always extracted with a known size
+            if (ltype != LocationType.PREVIOUS_RELATIVE && includeEvaluator == null && encoding != null) {
+                knownType = ltype;
+                knownEnd = location + step.sizeInBits;
+            } else {
+                knownType = null;
+            }
+        }
+
+        this.inheritingContainers = new ArrayList<>(inheritingContainers);
+        indexInheritingContainers();
+    }
+
+    /**
+     * Returns the inheriting containers whose restriction criteria may match the data extracted so far.
+     */
+    List<InheritingContainer> getInheritingCandidates(ProcessingData data) {
+        if (discriminator == null) {
+            return inheritingContainers;
+        }
+        ResolvedValue v = MatchCriteriaEvaluatorFactory.resolveParameter(discriminator, data);
+        if (v == null) {
+            // the comparison is undefined, so none of the criteria comparing the discriminator can match
+            return otherInheritingContainers;
+        }
+        if (!(v.value instanceof Long)) {
+            return inheritingContainers;
+        }
+        List<InheritingContainer> l = inheritingByValue.get(v.value);
+        return l == null ? otherInheritingContainers : l;
+    }
+
+    private void indexInheritingContainers() {
+        // choose the parameter compared in the largest number of criteria
+        int maxCount = 1;
+        for (InheritingContainer ic : inheritingContainers) {
+            for (Comparison c : getComparisons(ic.container.conainerDef.getRestrictionCriteria())) {
+                ParameterInstanceRef ref = getIndexableRef(c);
+                if (ref == null || (discriminator != null && discriminator.getParameter() == ref.getParameter()
+                        && discriminator.useCalibratedValue() == ref.useCalibratedValue())) {
+                    continue;
+                }
+                int count = 0;
+                for (InheritingContainer ic1 : inheritingContainers) {
+                    if (getComparedValue(ic1.container.conainerDef.getRestrictionCriteria(), ref) != null) {
+                        count++;
+                    }
+                }
+                if (count > maxCount) {
+                    maxCount = count;
+                    discriminator = ref;
+                }
+            }
+        }
+        if (discriminator == null) {
+            return;
+        }
+
+        // the containers not restricted by the discriminator are candidates for all values.
+        Long[] values = new Long[inheritingContainers.size()];
+        inheritingByValue = new HashMap<>();
+        otherInheritingContainers = new ArrayList<>();
+        for (int i = 0; i < values.length; i++) {
+            InheritingContainer ic = inheritingContainers.get(i);
+            values[i] = getComparedValue(ic.container.conainerDef.getRestrictionCriteria(), discriminator);
+            if (values[i] == null) {
+                otherInheritingContainers.add(ic);
+            } else {
+                inheritingByValue.put(values[i], new ArrayList<>());
+            }
+        }
+        // keep the original order, it determines the order of the extracted parameters
+        for (var me : inheritingByValue.entrySet()) {
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == null || values[i].equals(me.getKey())) {
+                    me.getValue().add(inheritingContainers.get(i));
+                }
+            }
+        }
+    }
+
+    private static ParameterInstanceRef getIndexableRef(Comparison c) {
+        if (c.getComparisonOperator() != OperatorType.EQUALITY || !(c.getRef() instanceof ParameterInstanceRef)) {
+            return null;
+        }
+        ParameterInstanceRef ref = (ParameterInstanceRef) c.getRef();
+        Parameter p = ref.getParameter();
+        if (ref.getMemberPath() != null || p.getDataSource() == DataSource.COMMAND
+                || p.getDataSource() == DataSource.COMMAND_HISTORY) {
+            return null;
+        }
+        return ref;
+    }
+
+    // if the criteria contains an equality comparison of the parameter from ref with an integer value, return the
+    // value
+    private static Long getComparedValue(MatchCriteria mc, ParameterInstanceRef ref) {
+        for (Comparison c : getComparisons(mc)) {
+            ParameterInstanceRef ref1 = getIndexableRef(c);
+            if (ref1 == null || ref1.getParameter() != ref.getParameter()
+                    || ref1.useCalibratedValue() != ref.useCalibratedValue()) {
+                continue;
+            }
+            try {
+                var evaluator = new MatchCriteriaEvaluatorFactory.RefValueEvaluator(ref1, c.getComparisonOperator(),
+                        c.getStringValue());
+                if (evaluator.rValue != null && evaluator.rValue.value instanceof Long) {
+                    return (Long) evaluator.rValue.value;
+                }
+            } catch (IllegalArgumentException e) {
+                // the criteria will fail also when evaluated
+                return null;
+            }
+        }
+        return null;
+    }
+
+    // returns the comparisons that have to be all true for the criteria to match
+    private static List<Comparison> getComparisons(MatchCriteria mc) {
+        if (mc instanceof Comparison) {
+            return Collections.singletonList((Comparison) mc);
+        } else if (mc instanceof ComparisonList) {
+            return ((ComparisonList) mc).getComparisonList();
+        } else {
+            return Collections.emptyList();
+        }
+    }
+
+    private static DataEncoding getFixedSizeEncoding(SequenceEntry se) {
+        if (!(se instanceof ParameterEntry) || (se instanceof ArrayParameterEntry) || se.getRepeatEntry() != null) {
+            return null;
+        }
+        ParameterType ptype = ((ParameterEntry) se).getParameter().getParameterType();
+        if (!(ptype instanceof BaseDataType)) {
+            return null;
+        }
+        DataEncoding de = ((BaseDataType) ptype).getEncoding();
+        if (de == null || de.getFromBinaryTransformAlgorithm() != null) {
+            return null;
+        }
+        if (de instanceof IntegerDataEncoding) {
+            IntegerDataEncoding ide = (IntegerDataEncoding) de;
+            return ide.getEncoding() == IntegerDataEncoding.Encoding.STRING ? null : de;
+        } else if (de instanceof FloatDataEncoding) {
+            FloatDataEncoding fde = (FloatDataEncoding) de;
+            return fde.getEncoding() == FloatDataEncoding.Encoding.STRING || fde.getSizeInBits() != 32
+                    && fde.getSizeInBits() != 64 ? null : de;
+        } else if (de instanceof BooleanDataEncoding) {
+            return de;
+        } else {
+            return null;
+        }
+    }
+
+    // the number of bits read by the DataEncodingDecoder
+    private static int getDecodedSize(DataEncoding de) {
+        return de instanceof BooleanDataEncoding ? 1 : de.getSizeInBits();
+    }
+
+    private static DecodeType getDecodeType(DataEncoding de) {
+        if (de instanceof IntegerDataEncoding) {
+            return DecodeType.INTEGER;
+        } else if (de instanceof FloatDataEncoding) {
+            return DecodeType.FLOAT;
+        } else {
+            return DecodeType.BOOLEAN;
+        }
+    }
+}
@@ -29,11 +29,35 @@ public class ContainerProcessingOptions {
 
     int maxArraySize = 10000;
 
+    /**
+     * If true, the containers are extracted using pre-computed decode plans instead of interpreting the container
+     * definitions for each packet.
+     * 
+     * @see ContainerDecodePlan
+     */
+    boolean compiledDecoding = false;
+
+    /**
+     * If greater than 0, the {@link XtceTmProcessor} decodes the packets in parallel using this number of threads. The
+     * packets having the same root container and APID are always decoded by the same thread, in the order they have
+     * been received.
+     */
+    int decodingThreads = 0;
+
+    /**
+     * The maximum number of packets waiting to be decoded by each of the decoding threads. When the queue is full, the
+     * thread delivering the packets is blocked.
+     */
+    int decodingQueueSize = 1024;
+
     public ContainerProcessingOptions(YConfiguration config) {
         if (config != null) {
             ignoreOutOfContainerEntries = config.getBoolean("ignoreOutOfContainerEntries", false);
             expirationTolerance = config.getDouble("expirationTolerance", expirationTolerance);
             maxArraySize = config.getInt("maxArraySize", maxArraySize);
+            compiledDecoding = config.getBoolean("compiledDecoding", compiledDecoding);
+            decodingThreads = config.getInt("decodingThreads", decodingThreads);
+            decodingQueueSize = config.getInt("decodingQueueSize", decodingQueueSize);
         }
     }
 
@@ -42,6 +66,9 @@ public class ContainerProcessingOptions {
         spec.addOption("ignoreOutOfContainerEntries", OptionType.BOOLEAN).withDefault(false);
         spec.addOption("expirationTolerance", OptionType.FLOAT).withDefault(1.9);
         spec.addOption("maxArraySize", OptionType.INTEGER).withDefault(10000);
+        spec.addOption("compiledDecoding", OptionType.BOOLEAN).withDefault(false);
+        spec.addOption("decodingThreads", OptionType.INTEGER).withDefault(0);
+        spec.addOption("decodingQueueSize", OptionType.INTEGER).withDefault(1024);
 
         return spec;
     }
@@ -80,4 +107,28 @@ public class ContainerProcessingOptions {
     public int getMaxArraySize() {
         return maxArraySize;
     }
+
+    public boolean isCompiledDecoding() {
+        return compiledDecoding;
+    }
+
+    public void setCompiledDecoding(boolean compiledDecoding) {
+        this.compiledDecoding = compiledDecoding;
+    }
+
+    public int getDecodingThreads() {
+        return decodingThreads;
+    }
+
+    public void setDecodingThreads(int decodingThreads) {
+        this.decodingThreads = decodingThreads;
+    }
+
+    public int getDecodingQueueSize() {
+        return decodingQueueSize;
+    }
+
+    public void setDecodingQueueSize(int decodingQueueSize) {
+        this.decodingQueueSize = decodingQueueSize;
+    }
 }
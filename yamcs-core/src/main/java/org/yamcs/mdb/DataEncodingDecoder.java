@@ -92,7 +92,7 @@ public class DataEncodingDecoder {
         }
     }
 
-    private Value extractRawInteger(IntegerDataEncoding ide) {
+    Value extractRawInteger(IntegerDataEncoding ide) {
         // Integer encoded as string, don't even try reading it as int
         if (ide.getEncoding() == Encoding.STRING) {
             return extractRaw(ide.getStringEncoding());
@@ -236,7 +236,7 @@ public class DataEncodingDecoder {
         return ValueUtility.getStringValue(new String(b, Charset.forName(sde.getEncoding())));
     }
 
-    private Value extractRawFloat(FloatDataEncoding de) {
+    Value extractRawFloat(FloatDataEncoding de) {
         switch (de.getEncoding()) {
         case IEEE754_1985:
             return extractRawIEEE754_1985(de);
@@ -269,7 +269,7 @@ public class DataEncodingDecoder {
         }
     }
 
-    private Value extractRawBoolean(BooleanDataEncoding bde) {
+    Value extractRawBoolean(BooleanDataEncoding bde) {
         return ValueUtility.getBooleanValue(buffer.getBits(1) != 0);
     }
 
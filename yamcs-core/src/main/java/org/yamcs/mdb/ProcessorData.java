@@ -5,6 +5,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
@@ -57,10 +58,11 @@ public class ProcessorData {
      */
     final ParameterTypeProcessor parameterTypeProcessor;
 
-    private Map<Calibrator, CalibratorProc> calibrators = new HashMap<>();
-    private Map<DataEncoding, DataDecoder> decoders = new HashMap<>();
-    private Map<DataEncoding, DataEncoder> encoders = new HashMap<>();
-    private Map<MatchCriteria, MatchCriteriaEvaluator> evaluators = new HashMap<>();
+    // concurrent maps because the packets may be decoded in parallel (see XtceTmProcessor)
+    private Map<Calibrator, CalibratorProc> calibrators = new ConcurrentHashMap<>();
+    private Map<DataEncoding, DataDecoder> decoders = new ConcurrentHashMap<>();
+    private Map<DataEncoding, DataEncoder> encoders = new ConcurrentHashMap<>();
+    private Map<MatchCriteria, MatchCriteriaEvaluator> evaluators = new ConcurrentHashMap<>();
 
     final Mdb mdb;
     final Log log;
@@ -134,7 +136,7 @@ public class ProcessorData {
                 .filter(pv -> pv != null)
                 .collect(Collectors.toList());
 
-        lastValueCache = new LastValueCache(constants);
+        lastValueCache = new LastValueCache(constants, mdb.getNumParameterIndices());
 
         mdb.getParameters().stream()
                 .filter(p -> p.getDataSource() != DataSource.CONSTANT)
@@ -272,13 +274,28 @@ public class ProcessorData {
     }
 
     public DataDecoder getDataDecoder(DataEncoding de) {
-        return decoders.computeIfAbsent(de,
-                de1 -> DataDecoderFactory.get(de1.getFromBinaryTransformAlgorithm(), this));
+        // not using computeIfAbsent because the factory may call back into this object
+        DataDecoder dd = decoders.get(de);
+        if (dd == null) {
+            dd = DataDecoderFactory.get(de.getFromBinaryTransformAlgorithm(), this);
+            DataDecoder dd1 = decoders.putIfAbsent(de, dd);
+            if (dd1 != null) {
+                dd = dd1;
+            }
+        }
+        return dd;
     }
 
     public DataEncoder getDataEncoder(DataEncoding de) {
-        return encoders.computeIfAbsent(de,
-                de1 -> DataEncoderFactory.get(de1.getToBinaryTransformAlgorithm(), this));
+        DataEncoder de1 = encoders.get(de);
+        if (de1 == null) {
+            de1 = DataEncoderFactory.get(de.getToBinaryTransformAlgorithm(), this);
+            DataEncoder de2 = encoders.putIfAbsent(de, de1);
+            if (de2 != null) {
+                de1 = de2;
+            }
+        }
+        return de1;
     }
 
     public Mdb getMdb() {
@@ -323,6 +340,10 @@ public class ProcessorData {
     }
 
     public ParameterType getParameterType(Parameter parameter) {
+        if (typeOverrides.isEmpty()) {
+            // called for each extracted value, avoid the lookup in the common case
+            return parameter.getParameterType();
+        }
         ParameterType pt = typeOverrides.get(parameter);
         if (pt == null) {
             pt = parameter.getParameterType();
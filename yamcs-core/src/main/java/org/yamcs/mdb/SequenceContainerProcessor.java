@@ -21,7 +21,6 @@ public class SequenceContainerProcessor {
     }
 
     public void extract(SubscribedContainer subscribedContainer) throws XtceProcessingException {
-        ProcessorData pdata = pcontext.proccessorData;
         SequenceContainer containerDef = subscribedContainer.conainerDef;
         ContainerProcessingResult result = pcontext.result;
         ContainerProcessingOptions options = pcontext.options;
@@ -40,8 +39,36 @@ public class SequenceContainerProcessor {
         }
         int maxposition = buf.getPosition();
 
-        // then extract the entries
-        List<SequenceEntry> entries = subscribedContainer.entries;
+        ContainerDecodePlan plan = options.isCompiledDecoding() ? subscribedContainer.getDecodePlan() : null;
+        if (plan != null) {
+            maxposition = extractPlan(plan, maxposition);
+        } else {
+            maxposition = extractEntries(subscribedContainer.entries, maxposition);
+        }
+
+        List<InheritingContainer> inheritingContainers = plan == null ? subscribedContainer.inheritingContainers
+                : plan.getInheritingCandidates(result);
+        // And then any derived containers
+        int bitp = buf.getPosition();
+        for (InheritingContainer inherited : inheritingContainers) {
+            MatchResult r = inherited.matches(result);
+
+            if (r == MatchResult.OK) {
+                buf.setPosition(bitp);
+                extract(inherited.container);
+                if (buf.getPosition() > maxposition) {
+                    maxposition = buf.getPosition();
+                }
+            }
+        }
+        buf.setPosition(maxposition);
+    }
+
+    private int extractEntries(List<SequenceEntry> entries, int maxposition) {
+        ProcessorData pdata = pcontext.proccessorData;
+        ContainerProcessingResult result = pcontext.result;
+        BitBuffer buf = pcontext.buffer;
+
         for (SequenceEntry se : entries) {
             int position = buf.getPosition();
             try {
@@ -60,7 +87,7 @@ public class SequenceContainerProcessor {
                     buf.setPosition(se.getLocationInContainerInBits());
                 }
 
-                if (options.ignoreOutOfContainerEntries() && (buf.getPosition() >= buf.sizeInBits())) {
+                if (pcontext.options.ignoreOutOfContainerEntries() && (buf.getPosition() >= buf.sizeInBits())) {
                     // the next entry is outside of the packet
                     break;
                 }
@@ -68,53 +95,93 @@ public class SequenceContainerProcessor {
                 // remember the position where the entry has started because the extract() below may move it and
                 // then throw an exception
                 position = buf.getPosition();
+                extractEntry(se);
+            } catch (BufferUnderflowException | BufferOverflowException | IndexOutOfBoundsException e) {
+                throw outOfContainer(se, position);
+            }
+            if (buf.getPosition() > maxposition) {
+                maxposition = buf.getPosition();
+            }
+        }
+        return maxposition;
+    }
 
-                if (se.getRepeatEntry() == null) {
-                    pcontext.sequenceEntryProcessor.extract(se);
-                } else { // this entry is repeated several times
-                    long n = pcontext.getIntegerValue(se.getRepeatEntry().getCount());
-                    for (int i = 0; i < n; i++) {
-                        pcontext.sequenceEntryProcessor.extract(se);
-                        buf.setPosition(buf.getPosition() + se.getRepeatEntry().getOffsetSizeInBits());
-                    }
+    /**
+     * Same as {@link #extractEntries(List, int)} but using the pre-computed locations, evaluators and encodings from
+     * the plan.
+     */
+    private int extractPlan(ContainerDecodePlan plan, int maxposition) {
+        ContainerProcessingResult result = pcontext.result;
+        BitBuffer buf = pcontext.buffer;
+        int start = buf.getPosition();
+
+        for (ContainerDecodePlan.Step step : plan.steps) {
+            int position = buf.getPosition();
+            try {
+                if (step.includeEvaluator != null && step.includeEvaluator.evaluate(result) != MatchResult.OK) {
+                    continue;
                 }
-            } catch (BufferUnderflowException | BufferOverflowException | IndexOutOfBoundsException e) {
-                if (se instanceof ParameterEntry) {
-                    ParameterEntry pe = (ParameterEntry) se;
-                    throw new XtceProcessingException(
-                            "Could not extract parameter " + pe.getParameter().getQualifiedName()
-                                    + " from container " + se.getContainer().getQualifiedName()
-                                    + " at position " + position
-                                    + " because it falls beyond the end of the container. Container size in bits: "
-                                    + buf.sizeInBits());
-                } else {
-                    throw new XtceProcessingException("Could not extract entry " + se + "of size "
-                            + buf.sizeInBits() + "bits from container " + se.getContainer().getQualifiedName()
-                            + " position " + position
-                            + "because it falls beyond the end of the container. Container size in bits: "
-                            + buf.sizeInBits());
+                switch (step.locationType) {
+                case ABSOLUTE:
+                    position = step.location;
+                    break;
+                case START_RELATIVE:
+                    position = start + step.location;
+                    break;
+                default:
+                    position = buf.getPosition() + step.location;
                 }
+                buf.setPosition(position);
 
+                if (pcontext.options.ignoreOutOfContainerEntries() && (position >= buf.sizeInBits())) {
+                    // the next entry is outside of the packet
+                    break;
+                }
+
+                if (step.decodeType == ContainerDecodePlan.DecodeType.INTERPRETED) {
+                    extractEntry(step.entry);
+                } else {
+                    pcontext.sequenceEntryProcessor.extractFixedSize(step);
+                }
+            } catch (BufferUnderflowException | BufferOverflowException | IndexOutOfBoundsException e) {
+                throw outOfContainer(step.entry, position);
             }
             if (buf.getPosition() > maxposition) {
                 maxposition = buf.getPosition();
             }
         }
+        return maxposition;
+    }
 
-        List<InheritingContainer> inheritingContainers = subscribedContainer.inheritingContainers;
-        // And then any derived containers
-        int bitp = buf.getPosition();
-        for (InheritingContainer inherited : inheritingContainers) {
-            MatchResult r = inherited.matches(result);
-
-            if (r == MatchResult.OK) {
-                buf.setPosition(bitp);
-                extract(inherited.container);
-                if (buf.getPosition() > maxposition) {
-                    maxposition = buf.getPosition();
-                }
+    private void extractEntry(SequenceEntry se) {
+        if (se.getRepeatEntry() == null) {
+            pcontext.sequenceEntryProcessor.extract(se);
+        } else { // this entry is repeated several times
+            BitBuffer buf = pcontext.buffer;
+            long n = pcontext.getIntegerValue(se.getRepeatEntry().getCount());
+            for (int i = 0; i < n; i++) {
+                pcontext.sequenceEntryProcessor.extract(se);
+                buf.setPosition(buf.getPosition() + se.getRepeatEntry().getOffsetSizeInBits());
             }
         }
-        buf.setPosition(maxposition);
+    }
+
+    private XtceProcessingException outOfContainer(SequenceEntry se, int position) {
+        BitBuffer buf = pcontext.buffer;
+        if (se instanceof ParameterEntry) {
+            ParameterEntry pe = (ParameterEntry) se;
+            return new XtceProcessingException(
+                    "Could not extract parameter " + pe.getParameter().getQualifiedName()
+                            + " from container " + se.getContainer().getQualifiedName()
+                            + " at position " + position
+                            + " because it falls beyond the end of the container. Container size in bits: "
+                            + buf.sizeInBits());
+        } else {
+            return new XtceProcessingException("Could not extract entry " + se + "of size "
+                    + buf.sizeInBits() + "bits from container " + se.getContainer().getQualifiedName()
+                    + " position " + position
+                    + "because it falls beyond the end of the container. Container size in bits: "
+                    + buf.sizeInBits());
+        }
     }
 }
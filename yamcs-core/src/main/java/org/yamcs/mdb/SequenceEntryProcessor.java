@@ -14,9 +14,12 @@ import org.yamcs.xtce.AggregateDataType;
 import org.yamcs.xtce.ArrayParameterEntry;
 import org.yamcs.xtce.ArrayParameterType;
 import org.yamcs.xtce.BaseDataType;
+import org.yamcs.xtce.BooleanDataEncoding;
 import org.yamcs.xtce.ContainerEntry;
 import org.yamcs.xtce.DataEncoding;
+import org.yamcs.xtce.FloatDataEncoding;
 import org.yamcs.xtce.IndirectParameterRefEntry;
+import org.yamcs.xtce.IntegerDataEncoding;
 import org.yamcs.xtce.IntegerValue;
 import org.yamcs.xtce.Member;
 import org.yamcs.xtce.Parameter;
@@ -90,8 +93,6 @@ public class SequenceEntryProcessor {
     }
 
     private ContainerParameterValue extractParameter(Parameter param) {
-        ContainerProcessingResult result = pcontext.result;
-
         ParameterType ptype = param.getParameterType();
         if (ptype == null) {
             throw new XtceProcessingException(
@@ -102,13 +103,22 @@ public class SequenceEntryProcessor {
         int startPosition = pcontext.buffer.getPosition();
 
         Value rv = extract(ptype);
-        if (rv == null) {
+        if (rv == null && ptype instanceof ArrayParameterType) {
             // A dynamically sized array could have zero length.
             // Currently this is represented has having no value.
-            if (ptype instanceof ArrayParameterType) {
-                return null;
-            }
+            return null;
+        }
+        setValue(pv, rv, startPosition);
+        return pv;
+    }
 
+    /**
+     * Sets the raw value (or the INVALID status if the raw value could not be extracted), the size, the calibrated
+     * value and the times of a parameter value extracted from startPosition to the current buffer position.
+     */
+    private void setValue(ContainerParameterValue pv, Value rv, int startPosition) {
+        ContainerProcessingResult result = pcontext.result;
+        if (rv == null) {
             pv.setAcquisitionStatus(AcquisitionStatus.INVALID);
         } else {
             pv.setRawValue(rv);
@@ -120,7 +130,6 @@ public class SequenceEntryProcessor {
         pv.setAcquisitionTime(result.acquisitionTime);
         pv.setGenerationTime(result.generationTime);
         pv.setExpireMillis(result.expireMillis);
-        return pv;
     }
 
     private void extractParameterEntry(ParameterEntry pe) {
@@ -131,6 +140,36 @@ public class SequenceEntryProcessor {
         }
     }
 
+    /**
+     * Extracts a parameter entry having a fixed size encoding, as determined by the decode plan
+     */
+    void extractFixedSize(ContainerDecodePlan.Step step) {
+        BitBuffer buf = pcontext.buffer;
+        ParameterEntry pe = (ParameterEntry) step.entry;
+        int startPosition = buf.getPosition();
+        ContainerParameterValue pv = new ContainerParameterValue(pe.getParameter(), buf.offset(), startPosition);
+
+        DataEncodingDecoder decoder = pcontext.dataEncodingProcessor;
+        Value rv;
+        switch (step.decodeType) {
+        case INTEGER:
+            rv = decoder.extractRawInteger((IntegerDataEncoding) step.encoding);
+            break;
+        case FLOAT:
+            rv = decoder.extractRawFloat((FloatDataEncoding) step.encoding);
+            break;
+        case BOOLEAN:
+            rv = decoder.extractRawBoolean((BooleanDataEncoding) step.encoding);
+            break;
+        default:
+            throw new IllegalStateException("Unexpected decode type " + step.decodeType);
+        }
+        // same handling of the missing and invalid values as for the interpreted entries
+        setValue(pv, rv, startPosition);
+        pv.setSequenceEntry(pe);
+        pcontext.result.addTmParam(pv);
+    }
+
     private void extractArrayParameterEntry(ArrayParameterEntry pe) {
         List<IntegerValue> size = pe.getSize();
         if (size == null) {
@@ -16,6 +16,10 @@ public class SubscribedContainer {
     List<InheritingContainer> inheritingContainers = new ArrayList<>();
     boolean allEntriesAdded = false;
 
+    // computed when needed, reset each time the subscription changes
+    // (it may be computed concurrently by two threads extracting packets, in which case one of the results is kept)
+    private volatile ContainerDecodePlan decodePlan;
+
     public SubscribedContainer(SequenceContainer sc) {
         this.conainerDef = sc;
     }
@@ -28,6 +32,7 @@ public class SubscribedContainer {
         int idx = Collections.binarySearch(entries, se);
         if (idx < 0) {
             entries.add(-idx - 1, se);
+            decodePlan = null;
         }
     }
 
@@ -36,12 +41,26 @@ public class SubscribedContainer {
             return;
         }
         entries = conainerDef.getEntryList();
+        decodePlan = null;
     }
 
     public void addIneriting(SubscribedContainer child) {
         if (!inheritingContainers.stream().anyMatch(ic -> ic.container == child)) {
             inheritingContainers.add(new InheritingContainer(child, child.conainerDef.getRestrictionCriteria()));
+            decodePlan = null;
+        }
+    }
+
+    /**
+     * Returns the decode plan for the current entries and inheriting containers.
+     */
+    public ContainerDecodePlan getDecodePlan() {
+        ContainerDecodePlan plan = decodePlan;
+        if (plan == null) {
+            plan = new ContainerDecodePlan(entries, inheritingContainers);
+            decodePlan = plan;
         }
+        return plan;
     }
 
     public String toString() {
@@ -1,6 +1,8 @@
 package org.yamcs.mdb;
 
 import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,6 +23,9 @@ public class XtceTmExtractor {
     private static final Logger log = LoggerFactory.getLogger(XtceTmExtractor.class);
     protected final Subscription subscription;
     private ProcessingStatistics stats = new ProcessingStatistics();
+    // the packets are extracted with the read lock, allowing parallel extraction; the subscription is modified with
+    // the write lock
+    private final ReadWriteLock subscriptionLock = new ReentrantReadWriteLock();
 
     public final Mdb mdb;
     final SequenceContainer rootContainer;
@@ -68,13 +73,16 @@ public class XtceTmExtractor {
      *            parameter to be added to the current subscription list
      */
     public void startProviding(Parameter param) {
-        synchronized (subscription) {
+        subscriptionLock.writeLock().lock();
+        try {
             ParameterType ptype = param.getParameterType();
             if (ptype != null) {
                 Set<Parameter> dependencies = ptype.getDependentParameters();
                 dependencies.forEach(p -> subscription.addParameter(p));
             }
             subscription.addParameter(param);
+        } finally {
+            subscriptionLock.writeLock().unlock();
         }
     }
 
@@ -82,10 +90,15 @@ public class XtceTmExtractor {
      * Adds all containers and parameters to the subscription
      */
     public void provideAll() {
-        for (SequenceContainer c : mdb.getSequenceContainers()) {
-            if (c.getBaseContainer() == null) {
-                subscription.addAll(c);
+        subscriptionLock.writeLock().lock();
+        try {
+            for (SequenceContainer c : mdb.getSequenceContainers()) {
+                if (c.getBaseContainer() == null) {
+                    subscription.addAll(c);
+                }
             }
+        } finally {
+            subscriptionLock.writeLock().unlock();
         }
     }
 
@@ -125,15 +138,18 @@ public class XtceTmExtractor {
         ContainerProcessingResult result = new ContainerProcessingResult(acquisitionTime, generationTime, seqCount,
                 pdata.getLastValueCache());
         try {
-            synchronized (subscription) {
-                SubscribedContainer subscribedContainer = subscription.addSequenceContainer(startContainer);
+            SubscribedContainer subscribedContainer = getSubscribedContainer(startContainer);
+            subscriptionLock.readLock().lock();
+            try {
                 ContainerProcessingContext cpc = new ContainerProcessingContext(pdata, buf, result, subscription,
                         options, true);
                 cpc.sequenceContainerProcessor.extract(subscribedContainer);
-                String pname = XtceTmRecorder.deriveArchivePartition(result);
-                stats.newPacket(pname, result.getParameterResult().size(), acquisitionTime, generationTime,
-                        buf.sizeInBits());
+            } finally {
+                subscriptionLock.readLock().unlock();
             }
+            String pname = XtceTmRecorder.deriveArchivePartition(result);
+            stats.newPacket(pname, result.getParameterResult().size(), acquisitionTime, generationTime,
+                    buf.sizeInBits());
         } catch (XtceProcessingException e) {
             pdata.eventProducer.sendWarning(e.toString());
             log.info("Exception processing packet ", e);
@@ -146,6 +162,24 @@ public class XtceTmExtractor {
         return result;
     }
 
+    private SubscribedContainer getSubscribedContainer(SequenceContainer startContainer) {
+        subscriptionLock.readLock().lock();
+        try {
+            SubscribedContainer subscribedContainer = subscription.getSubscribedContainer(startContainer);
+            if (subscribedContainer != null) {
+                return subscribedContainer;
+            }
+        } finally {
+            subscriptionLock.readLock().unlock();
+        }
+        subscriptionLock.writeLock().lock();
+        try {
+            return subscription.addSequenceContainer(startContainer);
+        } finally {
+            subscriptionLock.writeLock().unlock();
+        }
+    }
+
     public void resetStatistics() {
         stats.reset();
     }
@@ -155,8 +189,11 @@ public class XtceTmExtractor {
     }
 
     public void startProviding(SequenceContainer sequenceContainer) {
-        synchronized (subscription) {
+        subscriptionLock.writeLock().lock();
+        try {
             subscription.addSequenceContainer(sequenceContainer);
+        } finally {
+            subscriptionLock.writeLock().unlock();
         }
     }
 
@@ -1,7 +1,14 @@
 package org.yamcs.mdb;
 
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.yamcs.AbstractProcessorService;
 import org.yamcs.ConfigurationException;
@@ -19,9 +26,30 @@ import org.yamcs.parameter.ParameterProvider;
 import org.yamcs.parameter.ParameterValueList;
 import org.yamcs.protobuf.Yamcs.NamedObjectId;
 import org.yamcs.utils.TimeEncoding;
+import org.yamcs.xtce.AbsoluteTimeParameterType;
+import org.yamcs.xtce.AggregateDataType;
+import org.yamcs.xtce.ArrayDataType;
+import org.yamcs.xtce.ArrayParameterEntry;
+import org.yamcs.xtce.BaseDataType;
+import org.yamcs.xtce.BinaryDataEncoding;
 import org.yamcs.xtce.Container;
+import org.yamcs.xtce.ContainerEntry;
+import org.yamcs.xtce.DataEncoding;
+import org.yamcs.xtce.DataType;
+import org.yamcs.xtce.DynamicIntegerValue;
+import org.yamcs.xtce.IndirectParameterRefEntry;
+import org.yamcs.xtce.IntegerValue;
+import org.yamcs.xtce.MatchCriteria;
+import org.yamcs.xtce.Member;
 import org.yamcs.xtce.Parameter;
+import org.yamcs.xtce.ParameterEntry;
+import org.yamcs.xtce.ParameterInstanceRef;
 import org.yamcs.xtce.SequenceContainer;
+import org.yamcs.xtce.SequenceEntry;
+import org.yamcs.xtce.StringDataEncoding;
+import org.yamcs.xtce.xml.XtceStaxReader;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * 
@@ -40,6 +68,12 @@ public class XtceTmProcessor extends AbstractProcessorService
     public final Mdb mdb;
     final XtceTmExtractor tmExtractor;
 
+    // used when the packets are decoded in parallel; one single threaded executor for each decoding thread
+    private volatile ThreadPoolExecutor[] decodingExecutors;
+    private final Object deliveryLock = new Object();
+    // root container -> true if its packets are decoded using values of parameters from other packets
+    private final Map<SequenceContainer, Boolean> dependsOnOtherPackets = new ConcurrentHashMap<>();
+
     public XtceTmProcessor(Processor processor) {
         this.processor = processor;
         this.mdb = processor.getMdb();
@@ -57,7 +91,7 @@ public class XtceTmProcessor extends AbstractProcessorService
         this.processor = null;
         this.mdb = mdb;
         log = new Log(getClass());
-        var pdata = new ProcessorData(getYamcsInstance(), "XTCEPROC", mdb, pconfig, Collections.emptyMap());
+        var pdata = new ProcessorData(null, "XTCEPROC", mdb, pconfig, Collections.emptyMap());
         tmExtractor = new XtceTmExtractor(mdb,pdata);
     }
 
@@ -128,22 +162,174 @@ public class XtceTmProcessor extends AbstractProcessorService
 
     /**
      * Process telemetry packets
-     *
+     * <p>
+     * If the parallel decoding is enabled (see {@link ContainerProcessingOptions#getDecodingThreads()}), the packet is
+     * queued to the decoding thread corresponding to its root container and APID and the method returns immediately.
      */
     @Override
     public void processPacket(TmPacket pkt, SequenceContainer sc) {
+        SequenceContainer rootContainer = pkt.getRootContainer();
+        if (rootContainer == null) {
+            rootContainer = sc;
+        }
+        ThreadPoolExecutor[] executors = decodingExecutors;
+        if (executors == null) {
+            deliver(extract(pkt, rootContainer));
+        } else {
+            SequenceContainer rc = rootContainer;
+            int idx = Math.floorMod(getDecodingKey(pkt, rc), executors.length);
+            executors[idx].execute(() -> {
+                ContainerProcessingResult result = extract(pkt, rc);
+                // the parameter processors (algorithms, alarms, etc) receive one delivery at a time
+                synchronized (deliveryLock) {
+                    deliver(result);
+                }
+            });
+        }
+    }
+
+    /**
+     * Extracts the parameters and containers from the packet without passing them to the processor. The method can be
+     * called concurrently from multiple threads; the result has to be passed to
+     * {@link #deliverResult(ContainerProcessingResult)}.
+     * <p>
+     * Used by the replays running in the fast-forward mode, for the packets which do not
+     * {@link #dependsOnOtherPackets(SequenceContainer) depend on other packets}.
+     * 
+     * @return the result of the extraction or null if the packet could not be extracted
+     */
+    public ContainerProcessingResult decodePacket(TmPacket pkt, SequenceContainer sc) {
+        SequenceContainer rootContainer = pkt.getRootContainer();
+        if (rootContainer == null) {
+            rootContainer = sc;
+        }
+        return extract(pkt, rootContainer);
+    }
+
+    /**
+     * Returns true if the decoding of the packets starting at the root container may use the values of parameters not
+     * extracted from the same packet: restriction criteria, include conditions, repeat counts, dynamic sizes, context
+     * calibrators or reference times referring to parameters from other packets.
+     * <p>
+     * Such values are read from the processor last value cache, so these packets cannot be decoded with
+     * {@link #decodePacket(TmPacket, SequenceContainer)} ahead of the delivery of the preceding packets.
+     */
+    public boolean dependsOnOtherPackets(SequenceContainer rootContainer) {
+        return dependsOnOtherPackets.computeIfAbsent(rootContainer,
+                rc -> hasExternalDependencies(rc, Collections.emptySet()));
+    }
+
+    // checks the container and the containers inheriting from it; inherited are the parameters of the base containers
+    private boolean hasExternalDependencies(SequenceContainer sc, Set<Parameter> inherited) {
+        Set<Parameter> params = new HashSet<>(inherited);
+        Set<Parameter> dependencies = new HashSet<>();
+        MatchCriteria mc = sc.getRestrictionCriteria();
+        if (mc != null) {
+            dependencies.addAll(mc.getDependentParameters());
+        }
+        collectEntries(sc, params, dependencies);
+        if (!params.containsAll(dependencies)) {
+            return true;
+        }
+        List<SequenceContainer> inheriting = mdb.getInheritingContainers(sc);
+        if (inheriting != null) {
+            for (SequenceContainer sc1 : inheriting) {
+                if (hasExternalDependencies(sc1, params)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void collectEntries(SequenceContainer sc, Set<Parameter> params, Set<Parameter> dependencies) {
+        for (SequenceEntry se : sc.getEntryList()) {
+            if (se.getIncludeCondition() != null) {
+                dependencies.addAll(se.getIncludeCondition().getDependentParameters());
+            }
+            if (se.getRepeatEntry() != null) {
+                addDependency(se.getRepeatEntry().getCount(), dependencies);
+            }
+            if (se instanceof ParameterEntry pe) {
+                params.add(pe.getParameter());
+                if (se instanceof ArrayParameterEntry ape && ape.getSize() != null) {
+                    ape.getSize().forEach(iv -> addDependency(iv, dependencies));
+                }
+                collectTypeDependencies(pe.getParameter().getParameterType(), dependencies);
+            } else if (se instanceof ContainerEntry ce) {
+                collectEntries(ce.getRefContainer(), params, dependencies);
+            } else if (se instanceof IndirectParameterRefEntry ie) {
+                dependencies.add(ie.getParameterRef().getParameter());
+            }
+        }
+    }
+
+    private static void collectTypeDependencies(DataType type, Set<Parameter> dependencies) {
+        if (type instanceof AbsoluteTimeParameterType atype) {
+            dependencies.addAll(atype.getDependentParameters());
+        }
+        if (type instanceof BaseDataType bdt) {
+            DataEncoding encoding = bdt.getEncoding();
+            if (encoding == null) {
+                return;
+            }
+            dependencies.addAll(encoding.getDependentParameters());
+            if (encoding.getFromBinaryTransformAlgorithm() != null) {
+                return; // the size is determined by the algorithm
+            }
+            if (encoding instanceof StringDataEncoding sde) {
+                addDependency(sde.getDynamicBufferSize(), dependencies);
+            } else if (encoding instanceof BinaryDataEncoding bde) {
+                addDependency(bde.getDynamicSize(), dependencies);
+            }
+        } else if (type instanceof ArrayDataType adt) {
+            if (adt.getSize() != null) {
+                adt.getSize().forEach(iv -> addDependency(iv, dependencies));
+            }
+            collectTypeDependencies(adt.getElementType(), dependencies);
+        } else if (type instanceof AggregateDataType agg) {
+            for (Member m : agg.getMemberList()) {
+                collectTypeDependencies(m.getType(), dependencies);
+            }
+        }
+    }
+
+    private static void addDependency(IntegerValue iv, Set<Parameter> dependencies) {
+        if (iv instanceof DynamicIntegerValue div && div != XtceStaxReader.IGNORED_DYNAMIC_VALUE
+                && div.getDynamicInstanceRef() instanceof ParameterInstanceRef pref) {
+            dependencies.add(pref.getParameter());
+        }
+    }
+
+    /**
+     * Passes the result of {@link #decodePacket(TmPacket, SequenceContainer)} to the container listeners and to the
+     * parameter processing.
+     */
+    public void deliverResult(ContainerProcessingResult result) {
+        synchronized (deliveryLock) {
+            deliver(result);
+        }
+    }
+
+    private ContainerProcessingResult extract(TmPacket pkt, SequenceContainer rootContainer) {
         try {
             long rectime = pkt.getReceptionTime();
             if (rectime == TimeEncoding.INVALID_INSTANT) {
                 rectime = TimeEncoding.getWallclockTime();
             }
-            SequenceContainer rootContainer = pkt.getRootContainer();
-            if (rootContainer == null) {
-                rootContainer = sc;
-            }
-            ContainerProcessingResult result = tmExtractor.processPacket(pkt.getPacket(), pkt.getGenerationTime(),
-                    rectime, pkt.getSeqCount(), rootContainer);
+            return tmExtractor.processPacket(pkt.getPacket(), pkt.getGenerationTime(), rectime, pkt.getSeqCount(),
+                    rootContainer);
+        } catch (Exception e) {
+            log.error("Exception while processing packet", e);
+            return null;
+        }
+    }
 
+    private void deliver(ContainerProcessingResult result) {
+        if (result == null) {
+            return;
+        }
+        try {
             ParameterValueList paramResult = result.getTmParams();
             List<ContainerExtractionResult> containerResult = result.containers;
 
@@ -159,6 +345,19 @@ public class XtceTmProcessor extends AbstractProcessorService
         }
     }
 
+    /**
+     * The packets with the same key are decoded in order by the same thread.
+     * <p>
+     * The key is made of the root container and the APID, assuming that the packets start with a CCSDS primary
+     * header. For other packets, the first 11 bits are used instead of the APID, which does not affect the
+     * correctness, only the distribution of the packets among the threads.
+     */
+    static int getDecodingKey(TmPacket pkt, SequenceContainer rootContainer) {
+        byte[] b = pkt.getPacket();
+        int apid = b.length < 2 ? 0 : ((b[0] & 0x07) << 8) | (b[1] & 0xFF);
+        return 31 * System.identityHashCode(rootContainer) + apid;
+    }
+
     @Override
     public void finished() {
         stopAsync();
@@ -207,11 +406,51 @@ public class XtceTmProcessor extends AbstractProcessorService
 
     @Override
     protected void doStart() {
+        ContainerProcessingOptions options = tmExtractor.getOptions();
+        int n = options.getDecodingThreads();
+        if (n > 0) {
+            log.debug("Decoding packets with {} threads", n);
+            String name = processor == null ? "XTCEPROC" : processor.getName();
+            ThreadPoolExecutor[] executors = new ThreadPoolExecutor[n];
+            for (int i = 0; i < n; i++) {
+                executors[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(options.getDecodingQueueSize()),
+                        new ThreadFactoryBuilder().setNameFormat("tm-decoder-" + name + "-" + i).build(),
+                        (r, executor) -> {
+                            // block the caller until there is space in the queue
+                            if (executor.isShutdown()) {
+                                log.warn("Packet received after the processor has been stopped; dropping it");
+                                return;
+                            }
+                            try {
+                                executor.getQueue().put(r);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        });
+            }
+            decodingExecutors = executors;
+        }
         notifyStarted();
     }
 
     @Override
     protected void doStop() {
+        ThreadPoolExecutor[] executors = decodingExecutors;
+        if (executors != null) {
+            for (ThreadPoolExecutor executor : executors) {
+                executor.shutdown();
+            }
+            try {
+                for (ThreadPoolExecutor executor : executors) {
+                    if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                        log.warn("Timed out waiting for the packets to be decoded");
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
         notifyStopped();
     }
 
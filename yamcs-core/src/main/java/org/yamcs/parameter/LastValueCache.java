@@ -1,12 +1,15 @@
 package org.yamcs.parameter;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 import org.yamcs.xtce.DataSource;
 import org.yamcs.xtce.Parameter;
@@ -16,26 +19,51 @@ import org.yamcs.xtce.Parameter;
  * <p>
  * Can also stored a number of n values for certain parameters (required by algorithms and match criteria)
  * <p>
- * it uses a readwrite lock to synchronize access from multiple threads.
+ * The values of the parameters having an index (see {@link Parameter#getIndex()}) smaller than the number of slots
+ * given in the constructor are stored in an array indexed by the parameter index. Each slot contains either the last
+ * {@link ParameterValue} or a {@link ParamBuffer} if buffering is enabled for the parameter. The slots are read and
+ * written with {@link VarHandle} acquire/release semantics such that the readers never block the writers.
+ * <p>
+ * The other parameters (not part of the MDB or added to the MDB after the cache has been created) are stored in a
+ * {@link ConcurrentHashMap}.
  *
  */
 public class LastValueCache {
-    HashMap<Parameter, ParameterValue> constants = new HashMap<>();
-    HashMap<Parameter, ParameterValue> params = new HashMap<>();
-    HashMap<Parameter, ParamBuffer> bufferedParams = new HashMap<>();
+    static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(Object[].class);
+
+    // the constants are only set in the constructor
+    final Map<Parameter, ParameterValue> constants = new HashMap<>();
+
+    // slots indexed by the parameter index; each slot contains a ParameterValue or a ParamBuffer
+    final Object[] slots;
 
-    ReadWriteLock lock = new ReentrantReadWriteLock();
+    // the values (ParameterValue or ParamBuffer) of the parameters that do not have a slot
+    final ConcurrentHashMap<Parameter, Object> others = new ConcurrentHashMap<>();
 
     public LastValueCache() {
+        this(Collections.emptyList(), 0);
     }
 
     public LastValueCache(Collection<ParameterValue> constants) {
+        this(constants, 0);
+    }
+
+    /**
+     * 
+     * @param constants
+     *            the values of the constant parameters
+     * @param numSlots
+     *            the number of array slots; should be the number of parameters in the MDB, such that all the MDB
+     *            parameters are stored in the array.
+     */
+    public LastValueCache(Collection<ParameterValue> constants, int numSlots) {
         constants.forEach(pv -> this.constants.put(pv.getParameter(), pv));
+        this.slots = new Object[numSlots];
     }
 
     /**
      * Returns the latest known value for p or null if there is none.
-     * 
+     *
      * @param param
      * @return
      */
@@ -43,17 +71,11 @@ public class LastValueCache {
         if (param.getDataSource() == DataSource.CONSTANT) {
             return constants.get(param);
         }
-
-        lock.readLock().lock();
-        try {
-            ParamBuffer pb = bufferedParams.get(param);
-            if (pb != null) {
-                return pb.end();
-            } else {
-                return params.get(param);
-            }
-        } finally {
-            lock.readLock().unlock();
+        Object o = get(param);
+        if (o instanceof ParamBuffer pb) {
+            return pb.end();
+        } else {
+            return (ParameterValue) o;
         }
     }
 
@@ -64,7 +86,7 @@ public class LastValueCache {
      * <p>
      * If n<0 but buffering is not enabled for the parameter or the buffer capacity is smaller than -n+1, an
      * IllegalStateException will be thrown
-     * 
+     *
      * @throws IllegalArgumentException
      *             if n>0 or if n<0 and the parameter is constant
      * @throws IllegalStateException
@@ -82,31 +104,25 @@ public class LastValueCache {
             }
         }
 
-        lock.readLock().lock();
-        try {
-            if (n == 0) {
-                return getValue(param);
-            }
+        if (n == 0) {
+            return getValue(param);
+        }
 
-            ParamBuffer pb = bufferedParams.get(param);
-            if (pb == null) {
-                throw new IllegalStateException("Buffering not enabled for " + param.getQualifiedName());
-            }
-            if (pb.capacity() < -n + 1) {
-                throw new IllegalStateException("Buffering enabled for " + param.getQualifiedName()
-                        + " but it's capacity " + pb.capacity() + " is smaller than " + (n + 1));
-            }
-            return pb.nth(n);
-        } finally {
-            lock.readLock().unlock();
+        if (!(get(param) instanceof ParamBuffer pb)) {
+            throw new IllegalStateException("Buffering not enabled for " + param.getQualifiedName());
         }
+        if (pb.capacity() < -n + 1) {
+            throw new IllegalStateException("Buffering enabled for " + param.getQualifiedName()
+                    + " but it's capacity " + pb.capacity() + " is smaller than " + (n + 1));
+        }
+        return pb.nth(n);
     }
 
     /**
      * Configure the parameter cache to remember at least capacity values for the parameter.
      * <p>
      * The size has to be at least 2 (because size 1 is by default)
-     * 
+     *
      * @throws IllegalArgumentException
      *             if the capacity is smaller than 2 or the parameter is a constant.
      */
@@ -117,94 +133,82 @@ public class LastValueCache {
         if (param.getDataSource() == DataSource.CONSTANT) {
             throw new IllegalArgumentException("Cannot enable buffering for constant parameters");
         }
-        lock.writeLock().lock();
-        try {
-
-            ParamBuffer pb = bufferedParams.get(param);
-            if (pb == null) {
-                pb = new ParamBuffer(capacity);
-                ParameterValue pv = params.remove(param);
-                if (pv != null) {
-                    pb.add(pv);
+        while (true) {
+            Object o = get(param);
+            ParamBuffer pb;
+            if (o instanceof ParamBuffer pb0) {
+                if (capacity <= pb0.capacity()) {
+                    return;
                 }
-                bufferedParams.put(param, pb);
+                // no value can be added to the old buffer from now on, the writers wait for the new one
+                pb0.seal();
+                pb = new ParamBuffer(pb0, capacity);
             } else {
-                if (capacity <= pb.capacity()) {
-                    return;
-                } else {
-                    ParamBuffer pb1 = new ParamBuffer(pb, capacity);
-
-                    bufferedParams.put(param, pb1);
+                pb = new ParamBuffer(param, capacity);
+                if (o != null) {
+                    pb.add((ParameterValue) o);
                 }
             }
-        } finally {
-            lock.writeLock().unlock();
+            if (compareAndSet(param, o, pb)) {
+                return;
+            }
         }
     }
 
     /**
      * Adds a new value. If buffering is enabled, the value is added to the buffer, otherwise it replaces the old value
      * (if any)
-     * 
+     *
      * @param pv
      */
     public void add(ParameterValue pv) {
-        lock.writeLock().lock();
-        try {
-            doAdd(pv);
-        } finally {
-            lock.writeLock().unlock();
-        }
-    }
-
-    private void doAdd(ParameterValue pv) {
         Parameter param = pv.getParameter();
         if (param.getDataSource() == DataSource.CONSTANT) {
             throw new IllegalArgumentException("Cannot add constants (they can only be added in the constructor)");
         }
-        ParamBuffer pb = bufferedParams.get(param);
-        if (pb == null) {
-            params.put(param, pv);
-        } else {
-            pb.add(pv);
+        while (true) {
+            Object o = get(param);
+            if (o instanceof ParamBuffer pb) {
+                if (pb.tryAdd(pv)) {
+                    return;
+                }
+                // the buffer is being replaced by a bigger one
+                Thread.yield();
+            } else if (compareAndSet(param, o, pv)) {
+                return;
+            }
         }
     }
 
     /**
      * Add all parameters to the cache
-     * 
+     *
      * @param newValues
      */
     public void addAll(Collection<ParameterValue> newValues) {
-        lock.writeLock().lock();
-        try {
-            newValues.forEach(pv -> doAdd(pv));
-        } finally {
-            lock.writeLock().unlock();
-        }
+        newValues.forEach(pv -> add(pv));
     }
 
     public int size() {
-        lock.readLock().lock();
-        try {
-            return constants.size() + params.size() + bufferedParams.size();
-        } finally {
-            lock.readLock().unlock();
-        }
+        int[] size = new int[] { constants.size() };
+        forEachValue(o -> size[0]++);
+        return size[0];
     }
 
     /**
      * returns all the values from the cache
-     * 
+     *
      * @return
      */
     public Collection<ParameterValue> getValues() {
-        lock.readLock().lock();
-        try {
-            return params.values();
-        } finally {
-            lock.readLock().unlock();
-        }
+        List<ParameterValue> pvList = new ArrayList<>();
+        forEachValue(o -> {
+            ParameterValue pv = (o instanceof ParamBuffer pb) ? pb.end() : (ParameterValue) o;
+            if (pv != null) {
+                pvList.add(pv);
+            }
+        });
+        return pvList;
     }
 
     /**
@@ -214,39 +218,107 @@ public class LastValueCache {
      */
     public List<ParameterValue> getValuesToBePersisted() {
         List<ParameterValue> pvList = new ArrayList<>();
-        lock.readLock().lock();
-        try {
-            for (var entry : bufferedParams.entrySet()) {
-                if (entry.getKey().isPersistent()) {
-                    var pv = entry.getValue().end();
-                    if (pv != null) {
-                        pvList.add(pv);
-                    }
-                }
+        for (ParameterValue pv : getValues()) {
+            if (pv.getParameter().isPersistent()) {
+                pvList.add(pv);
             }
-            for (var entry : params.entrySet()) {
-                if (entry.getKey().isPersistent()) {
-                    pvList.add(entry.getValue());
-                }
-            }
-        } finally {
-            lock.readLock().unlock();
         }
         return pvList;
     }
 
-    // fixed size circular buffer
+    private void forEachValue(Consumer<Object> consumer) {
+        for (int i = 0; i < slots.length; i++) {
+            Object o = SLOTS.getAcquire(slots, i);
+            if (o != null) {
+                consumer.accept(o);
+            }
+        }
+        others.values().forEach(consumer);
+    }
+
+    /**
+     * returns the ParameterValue or the ParamBuffer of the parameter or null if there is none
+     */
+    private Object get(Parameter param) {
+        int idx = param.getIndex();
+        if (idx >= 0 && idx < slots.length) {
+            Object o = SLOTS.getAcquire(slots, idx);
+            if (o == null || belongsTo(o, param)) {
+                return o;
+            }
+        }
+        return others.get(param);
+    }
+
+    /**
+     * Replaces the value o of the parameter with newValue if the value of the parameter is still o.
+     */
+    private boolean compareAndSet(Parameter param, Object o, Object newValue) {
+        int idx = param.getIndex();
+        if (idx >= 0 && idx < slots.length) {
+            Object o1 = SLOTS.getAcquire(slots, idx);
+            if (o1 == null || belongsTo(o1, param)) {
+                return SLOTS.compareAndSet(slots, idx, o, newValue);
+            }
+            // else the slot is used by another parameter with the same index (from another MDB)
+        }
+        return compareAndSetOther(param, o, newValue);
+    }
+
+    private boolean compareAndSetOther(Parameter param, Object o, Object newValue) {
+        if (o == null) {
+            return others.putIfAbsent(param, newValue) == null;
+        } else {
+            return others.replace(param, o, newValue);
+        }
+    }
+
+    private static boolean belongsTo(Object o, Parameter param) {
+        if (o instanceof ParamBuffer pb) {
+            return pb.param == param;
+        } else {
+            return ((ParameterValue) o).getParameter() == param;
+        }
+    }
+
+    /**
+     * Fixed size circular buffer.
+     * <p>
+     * The readers do not lock: they read the published count and then the slot of the requested value. The writers of
+     * one buffer are serialized on the buffer monitor; normally there is only one writer (the processor thread) so
+     * there is no contention.
+     * <p>
+     * If the writer wraps around while a reader reads an old value, the reader may obtain a newer value than the one
+     * requested.
+     */
     static class ParamBuffer {
+        static final VarHandle DATA = MethodHandles.arrayElementVarHandle(ParameterValue[].class);
+
+        final Parameter param;
         final ParameterValue[] data;
-        int end = -1;
+        // number of values written and visible to the readers
+        volatile long count;
+        // set when the buffer is replaced by a bigger one, no value can be added afterwards
+        boolean sealed;
 
         ParamBuffer(int capacity) {
+            this((Parameter) null, capacity);
+        }
+
+        ParamBuffer(Parameter param, int capacity) {
+            this.param = param;
             this.data = new ParameterValue[capacity];
         }
 
+        /**
+         * creates a new buffer with the given capacity containing the values of the sealed buffer pb1
+         */
         ParamBuffer(ParamBuffer pb1, int capacity) {
-            this.data = Arrays.copyOf(pb1.data, capacity);
-            this.end = pb1.end;
+            this(pb1.param, capacity);
+            long c = pb1.count;
+            for (long s = Math.max(0, c - pb1.data.length); s < c; s++) {
+                add((ParameterValue) DATA.getAcquire(pb1.data, (int) (s % pb1.data.length)));
+            }
         }
 
         public int capacity() {
@@ -254,48 +326,68 @@ public class LastValueCache {
         }
 
         public ParameterValue end() {
-            return end == -1 ? null : data[end];
+            return nth(0);
         }
 
         /**
          * Return the element end+n (n is negative)
-         * 
+         *
          */
         public ParameterValue nth(int n) {
             assert (n <= 0);
 
-            int k = end + n;
-            if (k < 0) {
-                k += data.length;
+            long seq = count - 1 + n;
+            if (seq < 0 || -n >= data.length) {
+                return null;
             }
-            return data[k];
+            return (ParameterValue) DATA.getAcquire(data, (int) (seq % data.length));
         }
 
         public void add(ParameterValue pv) {
-            end = incr(end);
-            data[end] = pv;
+            if (!tryAdd(pv)) {
+                throw new IllegalStateException("The buffer is sealed");
+            }
         }
 
-        private int incr(int k) {
-            int k1 = k + 1;
-            return k1 < data.length ? k1 : k1 - data.length;
+        /**
+         * adds the value to the buffer, returns false if the buffer has been sealed
+         */
+        synchronized boolean tryAdd(ParameterValue pv) {
+            if (sealed) {
+                return false;
+            }
+            long c = count;
+            DATA.setRelease(data, (int) (c % data.length), pv);
+            count = c + 1;
+            return true;
+        }
+
+        /**
+         * prevents further additions
+         */
+        synchronized void seal() {
+            sealed = true;
         }
 
         public boolean isEmpty() {
-            return end == -1;
+            return count == 0;
         }
 
         @Override
         public String toString() {
-
-            if (end == -1) {
+            long c = count;
+            if (c == 0) {
                 return "[]";
             }
             StringBuilder sb = new StringBuilder();
             sb.append("[");
-            int k = end;
-            while (true) {
-                ParameterValue pv = data[k];
+            boolean first = true;
+            for (int n = 0; -n < Math.min(c, data.length); n--) {
+                ParameterValue pv = nth(n);
+                if (!first) {
+                    sb.append(", ");
+                }
+                first = false;
                 if (pv == null) {
                     sb.append("null");
                 } else {
@@ -306,12 +398,8 @@ public class LastValueCache {
                             .append(pv.getEngValue())
                             .append(")");
                 }
-                k = incr(k);
-                if (k == end) {
-                    break;
-                }
-
             }
+            sb.append("]");
             return sb.toString();
         }
     }
@@ -9,5 +9,14 @@ import java.util.List;
  *
  */
 public interface ParameterConsumer {
+    /**
+     * Called when new values are available for the subscription.
+     * <p>
+     * The list is reused by the ParameterRequestManager after this method returns; the consumers processing the values
+     * asynchronously have to make a copy of it. The list received by the "subscribe all" consumers is read only.
+     * 
+     * @param subscriptionId
+     * @param items
+     */
     void updateItems(int subscriptionId, List<ParameterValue> items);
 }
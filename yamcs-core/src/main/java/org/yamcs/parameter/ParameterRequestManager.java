@@ -1,9 +1,9 @@
 package org.yamcs.parameter;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -15,6 +15,7 @@ import org.yamcs.InvalidRequestIdentification;
 import org.yamcs.Processor;
 import org.yamcs.logging.Log;
 import org.yamcs.protobuf.Yamcs.NamedObjectId;
+import org.yamcs.utils.IntArray;
 import org.yamcs.xtce.Parameter;
 
 /**
@@ -22,19 +23,29 @@ import org.yamcs.xtce.Parameter;
  * <p>
  * The consumers will subscribe to parameters, this class (we call it PRM) will subscribe itself to providers
  * and send to consumers each time the providers provide some values.
+ * <p>
+ * Each subscription is allocated a small integer slot, reused after the subscription is removed. The deliveries are
+ * built in per-thread buffers indexed by the slot, such that no map or list is allocated for each delivery. The lists
+ * passed to {@link ParameterConsumer#updateItems(int, List)} are reused for the next delivery.
  * 
  */
 public class ParameterRequestManager {
     Log log;
 
-    // Maps the parameters to the request(subscription id) in which they have been asked
-    private ConcurrentHashMap<Parameter, SubscriptionArray> param2RequestMap = new ConcurrentHashMap<>();
+    // Maps the parameters to the subscribers which have requested them (copy on write arrays)
+    private ConcurrentHashMap<Parameter, Subscriber[]> param2RequestMap = new ConcurrentHashMap<>();
+
+    // Maps the request (subscription id) to the subscriber
+    private Map<Integer, Subscriber> subscribers = new ConcurrentHashMap<>();
 
-    // Maps the request (subscription id) to the consumer
-    private Map<Integer, ParameterConsumer> request2ParameterConsumerMap = new ConcurrentHashMap<>();
+    // contains subscribe all (copy on write)
+    private volatile Subscriber[] subscribeAllConsumers = new Subscriber[0];
 
-    // contains subscribe all
-    private SubscriptionArray subscribeAllConsumers = new SubscriptionArray();
+    // slot allocation
+    private final IntArray freeSlots = new IntArray();
+    private int nextSlot = 0;
+
+    private final ThreadLocal<Delivery> deliveries = ThreadLocal.withInitial(Delivery::new);
 
     private static AtomicInteger lastSubscriptionId = new AtomicInteger();
 
@@ -62,8 +73,13 @@ public class ParameterRequestManager {
         log.debug("new subscribeAll with subscriptionId {}", id);
         ppm.subscribeAllToProviders();
 
-        subscribeAllConsumers.add(id);
-        request2ParameterConsumerMap.put(id, consumer);
+        Subscriber s = newSubscriber(id, consumer);
+        synchronized (this) {
+            Subscriber[] a = subscribeAllConsumers;
+            Subscriber[] b = Arrays.copyOf(a, a.length + 1);
+            b[a.length] = s;
+            subscribeAllConsumers = b;
+        }
         return id;
     }
 
@@ -76,7 +92,17 @@ public class ParameterRequestManager {
      * @return
      */
     public boolean unsubscribeAll(int subscriptionId) {
-        return subscribeAllConsumers.remove(subscriptionId);
+        synchronized (this) {
+            Subscriber[] a = subscribeAllConsumers;
+            for (int i = 0; i < a.length; i++) {
+                if (a[i].id == subscriptionId) {
+                    subscribeAllConsumers = remove(a, i);
+                    releaseSubscriber(subscriptionId);
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     /**
@@ -90,13 +116,13 @@ public class ParameterRequestManager {
         final int id = lastSubscriptionId.incrementAndGet();
         log.debug("new request with subscriptionId {} with {} items", id, paraList.size());
         subscribeToProviders(paraList);
+        Subscriber s = newSubscriber(id, tpc);
 
         for (Parameter p : paraList) {
             log.trace("adding to subscriptionID: {} item:{} ", id, p.getQualifiedName());
-            addItemToRequest(id, p);
+            addItemToRequest(s, p);
         }
 
-        request2ParameterConsumerMap.put(id, tpc);
         return id;
     }
 
@@ -111,8 +137,8 @@ public class ParameterRequestManager {
         final int id = lastSubscriptionId.incrementAndGet();
         log.debug("new request with subscriptionId {} for parameter: {}", id, para.getQualifiedName());
         subscribeToProviders(para);
-        addItemToRequest(id, para);
-        request2ParameterConsumerMap.put(id, tpc);
+        Subscriber s = newSubscriber(id, tpc);
+        addItemToRequest(s, para);
 
         return id;
     }
@@ -128,11 +154,11 @@ public class ParameterRequestManager {
      */
     public void addRequest(int subscriptionId, List<Parameter> paraList, ParameterConsumer tpc) {
         subscribeToProviders(paraList);
+        Subscriber s = getOrCreateSubscriber(subscriptionId, tpc);
         for (int i = 0; i < paraList.size(); i++) {
             log.trace("creating subscriptionID:{} with item:{}", subscriptionId, paraList.get(i));
-            addItemToRequest(subscriptionId, paraList.get(i));
+            addItemToRequest(s, paraList.get(i));
         }
-        request2ParameterConsumerMap.put(subscriptionId, tpc);
     }
 
     /**
@@ -143,9 +169,9 @@ public class ParameterRequestManager {
      */
     public void addItemsToRequest(final int subscriptionId, final Parameter para) throws InvalidRequestIdentification {
         log.debug("adding to subscriptionID {}: items: {} ", subscriptionId, para.getName());
-        verifySubscriptionId(subscriptionId);
+        Subscriber s = verifySubscriptionId(subscriptionId);
         subscribeToProviders(para);
-        addItemToRequest(subscriptionId, para);
+        addItemToRequest(s, para);
     }
 
     /**
@@ -159,18 +185,20 @@ public class ParameterRequestManager {
     public void addItemsToRequest(final int subscriptionId, final List<Parameter> paraList)
             throws InvalidRequestIdentification {
         log.debug("adding to subscriptionID {}: {} items ", subscriptionId, paraList.size());
-        verifySubscriptionId(subscriptionId);
+        Subscriber s = verifySubscriptionId(subscriptionId);
 
         subscribeToProviders(paraList);
         for (int i = 0; i < paraList.size(); i++) {
-            addItemToRequest(subscriptionId, paraList.get(i));
+            addItemToRequest(s, paraList.get(i));
         }
     }
 
-    private void verifySubscriptionId(int subscriptionId) throws InvalidRequestIdentification {
-        if (!request2ParameterConsumerMap.containsKey(subscriptionId)) {
+    private Subscriber verifySubscriptionId(int subscriptionId) throws InvalidRequestIdentification {
+        Subscriber s = subscribers.get(subscriptionId);
+        if (s == null) {
             throw new InvalidRequestIdentification("no such subscriptionID", subscriptionId);
         }
+        return s;
     }
 
     /**
@@ -199,33 +227,91 @@ public class ParameterRequestManager {
         }
     }
 
-    private void addItemToRequest(int id, Parameter para) {
-        SubscriptionArray al_req = param2RequestMap.computeIfAbsent(para, k -> new SubscriptionArray());
-        al_req.add(id);
+    private void addItemToRequest(Subscriber s, Parameter para) {
+        param2RequestMap.compute(para, (k, a) -> {
+            if (a == null) {
+                return new Subscriber[] { s };
+            }
+            for (Subscriber s1 : a) {
+                if (s1 == s) {
+                    return a;
+                }
+            }
+            Subscriber[] b = Arrays.copyOf(a, a.length + 1);
+            b[a.length] = s;
+            return b;
+        });
     }
 
     private void removeItemFromRequest(int subscriptionId, Parameter para) {
         if (param2RequestMap.containsKey(para)) { // is there really any request associated to this parameter?
-            SubscriptionArray al_req = param2RequestMap.get(para);
             // remove the subscription from the list of this parameter
-            if (al_req.remove(subscriptionId)) {
-                /*
-                 * Don't remove the al_req from the map and
-                 * don't ask provider to stop providing
-                 * because it is not thread safe (maybe another thread just asked to start providing after seeing that
-                 * the list is empty
-                 * if(al_req.isEmpty()) { //nobody wants this parameter anymore
-                 * if(!cacheAll) provider.stopProviding(para);
-                 * }
-                 */
-            } else {
+            if (!removeFromParameter(para, subscriptionId)) {
                 log.warn("parameter removal requested for {} but not part of subscription {}", para, subscriptionId);
             }
+            /*
+             * Don't remove the empty array from the map and
+             * don't ask provider to stop providing
+             * because it is not thread safe (maybe another thread just asked to start providing after seeing that
+             * the list is empty
+             */
         } else {
             log.warn("parameter removal requested for {} but not subscribed", para);
         }
     }
 
+    /**
+     * removes the subscription from the subscribers of the parameter
+     * 
+     * @return true if the subscription has been removed
+     */
+    private boolean removeFromParameter(Parameter para, int subscriptionId) {
+        boolean[] removed = new boolean[1];
+        param2RequestMap.computeIfPresent(para, (k, a) -> {
+            for (int i = 0; i < a.length; i++) {
+                if (a[i].id == subscriptionId) {
+                    removed[0] = true;
+                    return remove(a, i);
+                }
+            }
+            return a;
+        });
+        return removed[0];
+    }
+
+    private static Subscriber[] remove(Subscriber[] a, int pos) {
+        Subscriber[] b = new Subscriber[a.length - 1];
+        System.arraycopy(a, 0, b, 0, pos);
+        System.arraycopy(a, pos + 1, b, pos, a.length - pos - 1);
+        return b;
+    }
+
+    private synchronized Subscriber newSubscriber(int id, ParameterConsumer consumer) {
+        int slot = freeSlots.size() == 0 ? nextSlot++ : freeSlots.remove(freeSlots.size() - 1);
+        Subscriber s = new Subscriber(id, slot, consumer);
+        subscribers.put(id, s);
+        return s;
+    }
+
+    // reuses the subscriber if the subscription already exists, such that it keeps its slot and is not registered
+    // twice for the same parameter; the consumer is replaced
+    private synchronized Subscriber getOrCreateSubscriber(int id, ParameterConsumer consumer) {
+        Subscriber s = subscribers.get(id);
+        if (s == null) {
+            return newSubscriber(id, consumer);
+        }
+        s.consumer = consumer;
+        return s;
+    }
+
+    private synchronized void releaseSubscriber(int id) {
+        Subscriber s = subscribers.remove(id);
+        if (s != null) {
+            s.removed = true;
+            freeSlots.add(s.slot);
+        }
+    }
+
     /**
      * Removes all the parameters from a subscription and returns them into an List.
      * 
@@ -238,23 +324,14 @@ public class ParameterRequestManager {
         // loop through all the parameter definitions
         // find all the subscriptions with the requested subscriptionId and add their corresponding
         // itemId to the list.
-        Iterator<Map.Entry<Parameter, SubscriptionArray>> it = param2RequestMap.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry<Parameter, SubscriptionArray> m = it.next();
-            Parameter param = m.getKey();
-            SubscriptionArray al_req = m.getValue();
-            if (al_req.remove(subscriptionId)) {
+        for (Parameter param : param2RequestMap.keySet()) {
+            if (removeFromParameter(param, subscriptionId)) {
                 result.add(param);
             }
-            if (al_req.isEmpty()) { // nobody wants this parameter anymore
-                /*
-                 * if(!cacheAll) { commented out because not thread safe
-                 * getProvider(param).stopProviding(param);
-                 * }
-                 */
-            }
+            // if nobody wants this parameter anymore, we do not ask the provider to stop providing because it is not
+            // thread safe
         }
-        request2ParameterConsumerMap.remove(subscriptionId);
+        releaseSubscriber(subscriptionId);
         return result;
     }
 
@@ -313,66 +390,55 @@ public class ParameterRequestManager {
      * 
      */
     public void update(ParameterValueList pvlist) {
-        // build the customised lists for the subscribers and send it to them
-        HashMap<Integer, ArrayList<ParameterValue>> subscription = new HashMap<>();
-        updateSubscription(subscription, pvlist);
-
-        for (Map.Entry<Integer, ArrayList<ParameterValue>> entry : subscription.entrySet()) {
-            Integer subscriptionId = entry.getKey();
-
-            ArrayList<ParameterValue> al = entry.getValue();
-            ParameterConsumer consumer = request2ParameterConsumerMap.get(subscriptionId);
-            if (consumer == null) {
-                log.warn("subscriptionId {} appears in the delivery list, but there is no consumer for it",
-                        subscriptionId);
-            } else {
-                consumer.updateItems(subscriptionId, al);
-            }
+        Delivery delivery = deliveries.get();
+        if (delivery.inUse) {
+            // a consumer has caused a new delivery on the same thread, the buffers are busy
+            delivery = new Delivery();
+        }
+        delivery.inUse = true;
+        try {
+            deliver(delivery, pvlist);
+        } finally {
+            delivery.clear();
+            delivery.inUse = false;
         }
     }
 
     /**
-     * adds the passed parameters to the subscription
-     * 
-     * @param subscription
-     * @param currentDelivery
+     * builds the customised lists for the subscribers in the delivery buffers and send it to them
      */
-    private void updateSubscription(HashMap<Integer, ArrayList<ParameterValue>> subscription,
-            Collection<ParameterValue> currentDelivery) {
+    private void deliver(Delivery delivery, ParameterValueList currentDelivery) {
         if (currentDelivery == null) {
             return;
         }
 
-        for (Iterator<ParameterValue> it = currentDelivery.iterator(); it.hasNext();) {
-            ParameterValue pv = it.next();
-            Parameter pDef = pv.getParameter();
-            SubscriptionArray cowal = param2RequestMap.get(pDef);
-            // now walk through the requests and add this item to their delivery list
-            if (cowal == null) {
+        for (ParameterValue pv : currentDelivery) {
+            Subscriber[] a = param2RequestMap.get(pv.getParameter());
+            if (a == null) {
                 continue;
             }
-
-            for (int s : cowal.getArray()) {
-                ArrayList<ParameterValue> al = subscription.get(s);
-                if (al == null) {
-                    al = new ArrayList<>();
-                    subscription.put(s, al);
-                }
-                al.add(pv);
+            // walk through the subscribers and add this item to their delivery list
+            for (Subscriber s : a) {
+                delivery.add(s, pv);
             }
         }
 
-        // update the subscribeAll subscriptions
-        for (int id : subscribeAllConsumers.getArray()) {
-            ArrayList<ParameterValue> al = subscription.get(id);
-
-            if (al == null) {
-                al = new ArrayList<>();
-                subscription.put(id, al);
+        for (int i = 0; i < delivery.numTouched; i++) {
+            int slot = delivery.touched[i];
+            Subscriber s = delivery.owners[slot];
+            if (!s.removed) {
+                s.consumer.updateItems(s.id, delivery.lists[slot]);
             }
+        }
 
-            for (ParameterValue pv : currentDelivery) {
-                al.add(pv);
+        // update the subscribeAll subscriptions, they all receive the same read only list
+        Subscriber[] all = subscribeAllConsumers;
+        if (all.length > 0) {
+            delivery.allList.addAll(currentDelivery);
+            for (Subscriber s : all) {
+                if (!s.removed) {
+                    s.consumer.updateItems(s.id, delivery.allListView);
+                }
             }
         }
     }
@@ -384,9 +450,8 @@ public class ParameterRequestManager {
         for (Parameter param : param2RequestMap.keySet()) {
             sb.append(param);
             sb.append("requested by [");
-            SubscriptionArray al_req = param2RequestMap.get(param);
-            for (int id : al_req.getArray()) {
-                sb.append(id);
+            for (Subscriber subscr : param2RequestMap.get(param)) {
+                sb.append(subscr.id);
             }
             sb.append("]\n");
         }
@@ -419,4 +484,76 @@ public class ParameterRequestManager {
     public ParameterValue getLastValueFromCache(Parameter param) {
         return lastValueCache.getValue(param);
     }
+
+    static final class Subscriber {
+        final int id;
+        // index in the delivery buffers
+        final int slot;
+        volatile ParameterConsumer consumer;
+        volatile boolean removed = false;
+
+        Subscriber(int id, int slot, ParameterConsumer consumer) {
+            this.id = id;
+            this.slot = slot;
+            this.consumer = consumer;
+        }
+    }
+
+    /**
+     * Per thread buffers used to build the deliveries for each subscriber, indexed by the subscriber slot.
+     * <p>
+     * The lists are cleared and reused after each delivery.
+     */
+    static final class Delivery {
+        boolean inUse;
+        @SuppressWarnings("unchecked")
+        ArrayList<ParameterValue>[] lists = new ArrayList[16];
+        Subscriber[] owners = new Subscriber[16];
+        // slots which have received values in the current delivery
+        int[] touched = new int[16];
+        int numTouched;
+
+        final ArrayList<ParameterValue> allList = new ArrayList<>();
+        final List<ParameterValue> allListView = Collections.unmodifiableList(allList);
+
+        void add(Subscriber s, ParameterValue pv) {
+            if (s.removed) {
+                return;
+            }
+            int slot = s.slot;
+            if (slot >= lists.length) {
+                int n = Math.max(slot + 1, 2 * lists.length);
+                lists = Arrays.copyOf(lists, n);
+                owners = Arrays.copyOf(owners, n);
+            }
+            ArrayList<ParameterValue> al = lists[slot];
+            if (al == null) {
+                al = new ArrayList<>();
+                lists[slot] = al;
+            }
+            Subscriber owner = owners[slot];
+            if (owner == null) {
+                owners[slot] = s;
+                if (numTouched == touched.length) {
+                    touched = Arrays.copyOf(touched, 2 * numTouched);
+                }
+                touched[numTouched++] = slot;
+            } else if (owner != s) {
+                // the slot has been released by a removed subscription and reused by s during this delivery
+                owners[slot] = s;
+                al.clear();
+            }
+            al.add(pv);
+        }
+
+        void clear() {
+            for (int i = 0; i < numTouched; i++) {
+                int slot = touched[i];
+                lists[slot].clear();
+                owners[slot] = null;
+            }
+            numTouched = 0;
+            allList.clear();
+        }
+    }
 }
@@ -5,11 +5,16 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.yamcs.ConfigurationException;
 import org.yamcs.Processor;
@@ -36,7 +41,10 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
 /**
  * Back-fills the parameter archive by triggering replays: - either regularly scheduled replays - or monitor data
  * streams (tm, param) and keep track of which segments have to be rebuild
- * 
+ * <p>
+ * Each filling task is split into chunks of consecutive parameter archive intervals which are filled in parallel by
+ * {@link #numThreads} workers, each chunk with its own replay processor. There are a few chunks per worker and the
+ * workers take them one by one from the task, such that the ones finishing early continue with the remaining chunks.
  * 
  * @author nm
  *
@@ -53,6 +61,9 @@ public class BackFiller implements StreamSubscriber {
     static AtomicInteger count = new AtomicInteger();
     private final Log log;
     final ScheduledThreadPoolExecutor executor;
+    // executes the interval fillings
+    final ExecutorService fillingExecutor;
+    final int numThreads;
 
     // set of segments that have to be rebuilt following monitoring of streams
     private Set<Long> streamUpdates;
@@ -66,17 +77,30 @@ public class BackFiller implements StreamSubscriber {
 
     int compactCount = 0;
 
+    // the tasks are split in this number of chunks for each thread
+    static final int CHUNKS_PER_THREAD = 4;
+
+    private List<FillingTask> runningTasks = new CopyOnWriteArrayList<>();
+
     private List<BackFillerListener> listeners = new CopyOnWriteArrayList<>();
 
     BackFiller(ParameterArchive parchive, YConfiguration config) {
         this.parchive = parchive;
         this.log = new Log(BackFiller.class, parchive.getYamcsInstance());
         parseConfig(config);
+        numThreads = config.getInt("numThreads", getDefaultNumThreads());
         timeService = YamcsServer.getTimeService(parchive.getYamcsInstance());
         executor = new ScheduledThreadPoolExecutor(1,
                 new ThreadFactoryBuilder().setNameFormat("ParameterArchive-BackFiller-" + parchive.getYamcsInstance())
                         .build());
+        fillingExecutor = Executors.newFixedThreadPool(numThreads, new ThreadFactoryBuilder()
+                .setNameFormat("ParameterArchive-BackFiller-" + parchive.getYamcsInstance() + "-%d").build());
+    }
 
+    private static int getDefaultNumThreads() {
+        // each thread runs a replay processor and keeps the segments of one interval in memory
+        int n = Runtime.getRuntime().availableProcessors() / 2;
+        return n > 0 ? n : 1;
     }
 
     public static Spec getSpec() {
@@ -93,6 +117,9 @@ public class BackFiller implements StreamSubscriber {
 
         spec.addOption("schedule", OptionType.MAP).withSpec(schedSpec);
         spec.addOption("compactFrequency", OptionType.INTEGER).withDefault(5);
+        spec.addOption("numThreads", OptionType.INTEGER)
+                .withDescription("Number of intervals filled in parallel. "
+                        + "The default is half of the number of CPUs of the system.");
 
         return spec;
 
@@ -169,46 +196,130 @@ public class BackFiller implements StreamSubscriber {
         this.compactFrequency = config.getInt("compactFrequency", 5);
     }
 
+    /**
+     * Schedules a filling task. The tasks are executed one after the other, each of them being split into chunks
+     * filled in parallel.
+     * 
+     * @throws IllegalArgumentException
+     *             if stop is before start
+     */
     public Future<?> scheduleFillingTask(long start, long stop) {
+        if (stop < start) {
+            throw new IllegalArgumentException("The stop " + TimeEncoding.toString(stop) + " is before the start "
+                    + TimeEncoding.toString(start));
+        }
         return executor.schedule(() -> runTask(start, stop), 0, TimeUnit.SECONDS);
     }
 
+    /**
+     * Returns the filling tasks currently running
+     */
+    public List<FillingTask> getRunningTasks() {
+        return new ArrayList<>(runningTasks);
+    }
+
+    // runs the task and waits for it to finish
     private void runTask(long start, long stop) {
         try {
-            start = ParameterArchive.getIntervalStart(start);
-            stop = ParameterArchive.getIntervalEnd(stop) + 1;
-
-            BackFillerTask bft = new BackFillerTask(parchive);
-            bft.setCollectionStart(start);
-            String timePeriod = '[' + TimeEncoding.toString(start) + "-" + TimeEncoding.toString(stop) + ')';
-            log.debug("Starting parameter archive fillup for interval {}", timePeriod);
-            long t0 = System.nanoTime();
-            ReplayOptions rrb = ReplayOptions.getAfapReplay(start - warmupTime, stop, false);
-            Processor proc = ProcessorFactory.create(parchive.getYamcsInstance(),
-                    "ParameterArchive-backfilling_" + count.incrementAndGet(), "ParameterArchive", "internal",
-                    rrb);
-            bft.setProcessor(proc);
-            proc.getParameterRequestManager().subscribeAll(bft);
-
-            proc.start();
-            proc.awaitTerminated();
-            if (bft.aborted) {
-                log.warn("Parameter archive fillup for interval {} aborted", timePeriod);
-            } else {
-                bft.flush();
-                long t1 = System.nanoTime();
-                log.debug("Parameter archive fillup for interval {} finished, processed {} samples in {} millisec",
-                        timePeriod, bft.getNumProcessedParameters(), (t1 - t0) / 1_000_000);
-                for (BackFillerListener listener : listeners) {
-                    listener.onBackfillFinished(start, stop, bft.getNumProcessedParameters());
-                }
+            startTask(start, stop).future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("Error when running the archive filler task", e.getCause());
+        }
+    }
+
+    private FillingTask startTask(long start, long stop) {
+        FillingTask task = new FillingTask(ParameterArchive.getIntervalStart(start),
+                ParameterArchive.getIntervalEnd(stop) + 1);
+        if (task.numChunks <= 0) {
+            // reversed range, nothing to fill
+            log.warn("Ignoring parameter archive fillup for the empty interval {}", task.getTimePeriod());
+            task.future.complete(null);
+            return task;
+        }
+        log.debug("Starting parameter archive fillup for interval {} in {} chunks", task.getTimePeriod(),
+                task.numChunks);
+        runningTasks.add(task);
+        int n = Math.min(numThreads, task.numChunks);
+        for (int i = 0; i < n; i++) {
+            fillingExecutor.execute(() -> runWorker(task));
+        }
+        return task;
+    }
+
+    // takes chunks from the task until there are no more left
+    private void runWorker(FillingTask task) {
+        int idx;
+        while ((idx = task.nextChunk()) >= 0) {
+            long start = task.getChunkStart(idx);
+            long stop = task.getChunkStart(idx + 1);
+            try {
+                fillChunk(task, start, stop);
+            } catch (Exception e) {
+                log.error("Error when filling the parameter archive for [{}-{})", TimeEncoding.toString(start),
+                        TimeEncoding.toString(stop), e);
+                task.failed = true;
+            } catch (Throwable t) {
+                // this worker stops, the task is completed such that the ones waiting for it are not blocked
+                task.failed = true;
+                runningTasks.remove(task);
+                task.future.completeExceptionally(t);
+                throw t;
+            } finally {
+                task.chunkFinished();
             }
+        }
+    }
+
+    private void fillChunk(FillingTask task, long start, long stop) throws Exception {
+        BackFillerTask bft = new BackFillerTask(parchive);
+        bft.setCollectionStart(start);
+        ReplayOptions rrb = ReplayOptions.getAfapReplay(start - warmupTime, stop, false);
+        Processor proc = ProcessorFactory.create(parchive.getYamcsInstance(),
+                "ParameterArchive-backfilling_" + count.incrementAndGet(), "ParameterArchive", "internal", rrb);
+        bft.setProcessor(proc);
+        proc.getParameterRequestManager().subscribeAll(bft);
+
+        proc.start();
+        proc.awaitTerminated();
+        if (bft.aborted) {
+            log.warn("Parameter archive fillup for [{}-{}) aborted", TimeEncoding.toString(start),
+                    TimeEncoding.toString(stop));
+            task.failed = true;
+        } else {
+            bft.flush();
+            task.processedParameters.addAndGet(bft.getNumProcessedParameters());
+            for (BackFillerListener listener : listeners) {
+                listener.onBackfillFinished(start, stop, bft.getNumProcessedParameters());
+            }
+        }
+    }
+
+    private void taskFinished(FillingTask task) {
+        runningTasks.remove(task);
+        long millis = (System.nanoTime() - task.startNanos) / 1_000_000;
+        if (task.failed) {
+            log.warn("Parameter archive fillup for interval {} finished with errors", task.getTimePeriod());
+        } else {
+            log.debug("Parameter archive fillup for interval {} finished, processed {} samples in {} millisec",
+                    task.getTimePeriod(), task.processedParameters.get(), millis);
+        }
+        boolean compact = false;
+        synchronized (this) {
             if (compactFrequency != -1 && ++compactCount >= compactFrequency) {
                 compactCount = 0;
+                compact = true;
+            }
+        }
+        try {
+            if (compact) {
                 parchive.compact();
             }
         } catch (Exception e) {
-            log.error("Error when running the archive filler task", e);
+            log.error("Error when compacting the parameter archive", e);
+        } finally {
+            task.future.complete(null);
         }
     }
 
@@ -274,6 +385,89 @@ public class BackFiller implements StreamSubscriber {
         long frequency;
     }
 
+    /**
+     * A filling task covering a number of consecutive intervals, split into chunks.
+     */
+    public class FillingTask {
+        final long start;
+        final long stop;
+        final int numIntervals;
+        final int numChunks;
+        final long startNanos = System.nanoTime();
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        final AtomicLong processedParameters = new AtomicLong();
+        // the next chunk to be filled
+        private final AtomicInteger nextIdx = new AtomicInteger();
+        private final AtomicInteger finishedChunks = new AtomicInteger();
+        volatile boolean failed = false;
+
+        FillingTask(long start, long stop) {
+            this.start = start;
+            this.stop = stop;
+            this.numIntervals = (int) ((stop - start) / ParameterArchive.getIntervalDuration());
+            this.numChunks = Math.min(numIntervals, numThreads * CHUNKS_PER_THREAD);
+        }
+
+        /**
+         * returns the index of the next chunk to be filled or -1 if all the chunks have been distributed
+         */
+        int nextChunk() {
+            int idx = nextIdx.getAndIncrement();
+            return idx < numChunks ? idx : -1;
+        }
+
+        // the intervals are distributed as evenly as possible between the chunks
+        long getChunkStart(int idx) {
+            long intervalIdx = (long) idx * numIntervals / numChunks;
+            return start + intervalIdx * ParameterArchive.getIntervalDuration();
+        }
+
+        void chunkFinished() {
+            int n = finishedChunks.incrementAndGet();
+            log.debug("Parameter archive fillup for interval {}: {}/{} chunks done, {} samples/second",
+                    getTimePeriod(), n, numChunks, getThroughput());
+            if (n == numChunks) {
+                taskFinished(this);
+            }
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getStop() {
+            return stop;
+        }
+
+        public int getNumIntervals() {
+            return numIntervals;
+        }
+
+        public int getNumChunks() {
+            return numChunks;
+        }
+
+        public int getFinishedChunks() {
+            return finishedChunks.get();
+        }
+
+        public long getProcessedParameters() {
+            return processedParameters.get();
+        }
+
+        /**
+         * The number of processed parameter values per second since the start of the task
+         */
+        public long getThroughput() {
+            long nanos = System.nanoTime() - startNanos;
+            return nanos > 0 ? (long) (processedParameters.get() * 1e9 / nanos) : 0;
+        }
+
+        String getTimePeriod() {
+            return '[' + TimeEncoding.toString(start) + "-" + TimeEncoding.toString(stop) + ')';
+        }
+    }
+
     public void shutDown() throws InterruptedException {
         if (subscribedStreams != null) {
             for (Stream s : subscribedStreams) {
@@ -281,7 +475,9 @@ public class BackFiller implements StreamSubscriber {
             }
         }
         executor.shutdown();
+        fillingExecutor.shutdown();
         executor.awaitTermination(10, TimeUnit.SECONDS);
+        fillingExecutor.awaitTermination(10, TimeUnit.SECONDS);
     }
 
     @Override
@@ -0,0 +1,116 @@
+package org.yamcs.parameterarchive;
+
+import java.nio.ByteBuffer;
+
+import org.yamcs.utils.BitReader;
+import org.yamcs.utils.BitWriter;
+
+/**
+ * Implements the same XOR floating point compression scheme as {@link FloatCompressor}, adapted for 64 bit doubles:
+ * http://www.vldb.org/pvldb/vol8/p1816-teller.pdf
+ * <p>
+ * The number of leading zeros is stored on 6 bits and the number of meaningful bits on 6 bits (64 being stored as 0).
+ * <p>
+ * The {@link BitWriter} and {@link BitReader} work with at most 32 bits at a time, so the 64 bit quantities are
+ * written in two halves.
+ */
+public class DoubleCompressor {
+
+    /**
+     * compress the first n elements from the array of doubles into the ByteBuffer
+     * <p>
+     * A {@link java.nio.BufferOverflowException} is thrown if the data does not fit in the buffer.
+     */
+    static public void compress(double[] da, int n, ByteBuffer bb) {
+        BitWriter bw = new BitWriter(bb);
+
+        long prevV = Double.doubleToRawLongBits(da[0]);
+        writeLong(bw, prevV, 64);
+
+        int prevLz = 100; // such that the first comparison lz>=prevLz will fail
+        int prevTz = 0;
+
+        for (int i = 1; i < n; i++) {
+            long v = Double.doubleToRawLongBits(da[i]);
+            long xor = v ^ prevV;
+            if (xor == 0) {
+                // same value as the previous, store single '0' bit
+                bw.write(0, 1);
+            } else {
+                bw.write(1, 1);
+                int lz = Long.numberOfLeadingZeros(xor);
+                int tz = Long.numberOfTrailingZeros(xor);
+                if ((lz >= prevLz) && (tz >= prevTz) && (lz < prevLz + 13)) {
+                    // (a) the block of meaningful bits falls within the block of previous meaningful bits
+                    bw.write(0, 1);
+                    writeLong(bw, xor >>> prevTz, 64 - prevLz - prevTz);
+                } else {
+                    // (b) store the number of leading zeros, the number of meaningful bits and the meaningful bits
+                    int mb = 64 - lz - tz;
+                    bw.write(1, 1);
+                    bw.write(lz, 6);
+                    bw.write(mb, 6);
+                    writeLong(bw, xor >>> tz, mb);
+                    prevLz = lz;
+                    prevTz = tz;
+                }
+            }
+            prevV = v;
+        }
+        bw.flush();
+    }
+
+    public static double[] decompress(ByteBuffer bb, int n) {
+        BitReader br = new BitReader(bb);
+        double[] da = new double[n];
+        long v = readLong(br, 64);
+        da[0] = Double.longBitsToDouble(v);
+
+        int tz = 0; // trailing zeros
+        int mb = 0; // meaningful bits
+        for (int i = 1; i < n; i++) {
+            int bit = br.read(1);
+            if (bit == 0) {
+                // same with the previous value
+                da[i] = da[i - 1];
+            } else {
+                bit = br.read(1);
+                if (bit == 1) {
+                    int lz = br.read(6);
+                    mb = br.read(6);
+                    // this happens when mb is 64 and overflows the 6 bits
+                    if (mb == 0) {
+                        mb = 64;
+                    }
+                    tz = 64 - lz - mb;
+                }
+                long xor = readLong(br, mb) << tz;
+                v = xor ^ v;
+                da[i] = Double.longBitsToDouble(v);
+            }
+        }
+        return da;
+    }
+
+    public static void compress(double[] da, ByteBuffer bb) {
+        compress(da, da.length, bb);
+    }
+
+    private static void writeLong(BitWriter bw, long x, int numBits) {
+        if (numBits > 32) {
+            bw.write((int) (x >>> 32), numBits - 32);
+            bw.write((int) x, 32);
+        } else {
+            bw.write((int) x, numBits);
+        }
+    }
+
+    private static long readLong(BitReader br, int numBits) {
+        if (numBits > 32) {
+            long high = br.readLong(numBits - 32);
+            return (high << 32) | br.readLong(32);
+        } else {
+            return br.readLong(numBits);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package org.yamcs.parameterarchive;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 
 import org.yamcs.parameter.Value;
@@ -9,8 +10,14 @@ import org.yamcs.utils.DoubleArray;
 import org.yamcs.utils.ValueUtility;
 import org.yamcs.utils.VarIntUtil;
 
+/**
+ * Stores double values either raw (8 bytes per value) or compressed with the {@link DoubleCompressor}.
+ * <p>
+ * The compressed format is used whenever it results in a smaller size than the raw one.
+ */
 public class DoubleValueSegment extends BaseSegment implements ValueSegment {
     final static byte SUBFORMAT_ID_RAW = 0;
+    final static byte SUBFORMAT_ID_COMPRESSED = 1;
 
     DoubleArray values;
 
@@ -31,6 +38,31 @@ public class DoubleValueSegment extends BaseSegment implements ValueSegment {
 
     @Override
     public void writeTo(ByteBuffer bb) {
+        int n = values.size();
+        if (n == 0) {
+            writeRaw(bb);
+            return;
+        }
+        int position = bb.position();
+        int rawSize = 1 + VarIntUtil.getEncodedSize(n) + 8 * n;
+
+        // try to write it compressed, if we get an buffer overflow or the result is larger than the raw encoding,
+        // revert to raw encoding
+        try {
+            bb.put(SUBFORMAT_ID_COMPRESSED);
+            VarIntUtil.writeVarInt32(bb, n);
+            DoubleCompressor.compress(values.array(), n, bb);
+            if (bb.position() - position < rawSize) {
+                return;
+            }
+        } catch (BufferOverflowException e) {
+            // fall through to raw
+        }
+        bb.position(position);
+        writeRaw(bb);
+    }
+
+    private void writeRaw(ByteBuffer bb) {
         bb.put(SUBFORMAT_ID_RAW);
         int n = values.size();
         VarIntUtil.writeVarInt32(bb, n);
@@ -41,14 +73,16 @@ public class DoubleValueSegment extends BaseSegment implements ValueSegment {
 
     private void parse(ByteBuffer bb) throws DecodingException {
         byte fid = bb.get();
-        if (fid != SUBFORMAT_ID_RAW) {
-            throw new DecodingException("Uknown sub format id: " + fid);
-        }
         int n = VarIntUtil.readVarInt32(bb);
-        values = new DoubleArray(n);
-
-        for (int i = 0; i < n; i++) {
-            values.add(bb.getDouble());
+        if (fid == SUBFORMAT_ID_RAW) {
+            values = new DoubleArray(n);
+            for (int i = 0; i < n; i++) {
+                values.add(bb.getDouble());
+            }
+        } else if (fid == SUBFORMAT_ID_COMPRESSED) {
+            values = DoubleArray.wrap(DoubleCompressor.decompress(bb, n));
+        } else {
+            throw new DecodingException("Unknown sub format id: " + fid);
         }
     }
 
@@ -1,5 +1,6 @@
 package org.yamcs.parameterarchive;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 
 import org.yamcs.parameter.Value;
@@ -10,9 +11,23 @@ import org.yamcs.utils.LongArray;
 import org.yamcs.utils.ValueUtility;
 import org.yamcs.utils.VarIntUtil;
 
+import me.lemire.integercompression.FastPFOR128;
+import me.lemire.integercompression.IntWrapper;
+
+/**
+ * 64 bit integers stored either raw or encoded as zigzag deltas of deltas (good for counters and timestamps).
+ * <p>
+ * If all the deltas of deltas fit into 32 bits, they are compressed with FastPFOR128 plus VariableByte for the
+ * remaining; otherwise they are written as 64 bit VariableByte.
+ * <p>
+ * The compressed formats are used only if they result in a smaller size than the raw one.
+ */
 public class LongValueSegment extends BaseSegment implements ValueSegment {
 
-    final static int SUBFORMAT_ID_RAW = 0;
+    final static int SUBFORMAT_ID_RAW = 0; // uncompressed
+    final static int SUBFORMAT_ID_DELTAZG_FPF128_VB = 1; // DeltaZigzag and then FastPFOR128 plus VariableByte for
+                                                         // remaining
+    final static int SUBFORMAT_ID_DELTAZG_VB = 2; // DeltaZigzag plus 64 bit VariableByte
     LongArray values;
 
     // all possible types that can be stored by this segment
@@ -26,7 +41,7 @@ public class LongValueSegment extends BaseSegment implements ValueSegment {
     }
 
     private LongValueSegment() {
-        super(FORMAT_ID_IntValueSegment);
+        super(FORMAT_ID_LongValueSegment);
     }
 
     @Override
@@ -64,6 +79,27 @@ public class LongValueSegment extends BaseSegment implements ValueSegment {
 
     @Override
     public void writeTo(ByteBuffer bb) {
+        int n = values.size();
+        if (n == 0) {
+            writeRaw(bb);
+            return;
+        }
+        int position = bb.position();
+        int rawSize = 1 + VarIntUtil.getEncodedSize(n) + 8 * n;
+        // try first to write compressed, if we fail or the result is larger than the raw data, write in raw format
+        try {
+            writeCompressed(bb);
+            if (bb.position() - position < rawSize) {
+                return;
+            }
+        } catch (IndexOutOfBoundsException | BufferOverflowException e) {
+            // fall through to raw
+        }
+        bb.position(position);
+        writeRaw(bb);
+    }
+
+    private void writeRaw(ByteBuffer bb) {
         writeHeader(SUBFORMAT_ID_RAW, bb);
         int n = values.size();
         VarIntUtil.writeVarInt32(bb, n);
@@ -72,6 +108,61 @@ public class LongValueSegment extends BaseSegment implements ValueSegment {
         }
     }
 
+    // the first value is written as 64 bit varint, the remaining deltas of deltas are compressed
+    private void writeCompressed(ByteBuffer bb) {
+        int n = values.size();
+        long[] ddz = encodeDeltaDeltaZigZag(values);
+        boolean fitsInt = true;
+        for (int i = 1; i < n; i++) {
+            if ((ddz[i] >>> 32) != 0) {
+                fitsInt = false;
+                break;
+            }
+        }
+        if (!fitsInt) {
+            writeHeader(SUBFORMAT_ID_DELTAZG_VB, bb);
+            VarIntUtil.writeVarInt32(bb, n);
+            for (int i = 0; i < n; i++) {
+                VarIntUtil.writeVarInt64(bb, ddz[i]);
+            }
+            return;
+        }
+
+        int m = n - 1;
+        int[] iddz = new int[m];
+        for (int i = 0; i < m; i++) {
+            iddz[i] = (int) ddz[i + 1];
+        }
+        FastPFOR128 fastpfor = FastPFORFactory.get();
+        IntWrapper inputoffset = new IntWrapper(0);
+        IntWrapper outputoffset = new IntWrapper(0);
+        int[] xc = new int[m];
+
+        if (m > 0) {
+            fastpfor.compress(iddz, inputoffset, m, xc, outputoffset);
+        }
+        if (outputoffset.get() == 0) {
+            // fastpfor didn't compress anything, probably there were too few datapoints
+            writeHeader(SUBFORMAT_ID_DELTAZG_VB, bb);
+            VarIntUtil.writeVarInt32(bb, n);
+            if (n > 0) {
+                VarIntUtil.writeVarInt64(bb, ddz[0]);
+            }
+        } else {
+            writeHeader(SUBFORMAT_ID_DELTAZG_FPF128_VB, bb);
+            VarIntUtil.writeVarInt32(bb, n);
+            VarIntUtil.writeVarInt64(bb, ddz[0]);
+            int length = outputoffset.get();
+            for (int i = 0; i < length; i++) {
+                bb.putInt(xc[i]);
+            }
+        }
+        // write the remaining values varint compressed
+        for (int i = inputoffset.get(); i < m; i++) {
+            VarIntUtil.writeVarInt64(bb, iddz[i] & 0xFFFFFFFFL);
+        }
+    }
+
     // write header:
     // 1st byte: spare type subformatid
     // 2 bits 2 bits 4 bits
@@ -83,13 +174,52 @@ public class LongValueSegment extends BaseSegment implements ValueSegment {
     private void parse(ByteBuffer bb) throws DecodingException {
         byte x = bb.get();
         int subFormatId = x & 0xF;
-        if (subFormatId != SUBFORMAT_ID_RAW)
-            throw new DecodingException("Unknown subformatId " + subFormatId + " for LongValueSegment");
-
         numericType = (x >> 4) & 3;
-
         int n = VarIntUtil.readVarInt32(bb);
 
+        switch (subFormatId) {
+        case SUBFORMAT_ID_RAW:
+            parseRaw(bb, n);
+            break;
+        case SUBFORMAT_ID_DELTAZG_FPF128_VB: // intentional fall through
+        case SUBFORMAT_ID_DELTAZG_VB:
+            parseCompressed(bb, n, subFormatId);
+            break;
+        default:
+            throw new DecodingException("Unknown subformatId " + subFormatId + " for LongValueSegment");
+        }
+    }
+
+    private void parseCompressed(ByteBuffer bb, int n, int subFormatId) {
+        long[] ddz = new long[n];
+        int k = 0;
+        if (subFormatId == SUBFORMAT_ID_DELTAZG_FPF128_VB) {
+            ddz[0] = VarIntUtil.readVarInt64(bb);
+            int m = n - 1;
+            int position = bb.position();
+            int[] x = new int[(bb.limit() - bb.position()) / 4];
+            for (int i = 0; i < x.length; i++) {
+                x[i] = bb.getInt();
+            }
+            int[] iddz = new int[m];
+            IntWrapper inputoffset = new IntWrapper(0);
+            IntWrapper outputoffset = new IntWrapper(0);
+            FastPFOR128 fastpfor = FastPFORFactory.get();
+            fastpfor.uncompress(x, inputoffset, x.length, iddz, outputoffset);
+            bb.position(position + inputoffset.get() * 4);
+            k = outputoffset.get();
+            for (int i = 0; i < k; i++) {
+                ddz[i + 1] = iddz[i] & 0xFFFFFFFFL;
+            }
+            k++;
+        }
+        for (int i = k; i < n; i++) {
+            ddz[i] = VarIntUtil.readVarInt64(bb);
+        }
+        values = LongArray.wrap(decodeDeltaDeltaZigZag(ddz));
+    }
+
+    private void parseRaw(ByteBuffer bb, int n) throws DecodingException {
         if (bb.limit() - bb.position() < 8 * n) {
             throw new DecodingException("Cannot decode long segment: expected " + (8 * n) + " bytes and only "
                     + (bb.limit() - bb.position()) + " available");
@@ -100,6 +230,43 @@ public class LongValueSegment extends BaseSegment implements ValueSegment {
         }
     }
 
+    static long[] encodeDeltaDeltaZigZag(LongArray a) {
+        int n = a.size();
+        long[] ddz = new long[n];
+        if (n > 0) {
+            ddz[0] = encodeZigZag(a.get(0));
+            long d = 0;
+            for (int i = 1; i < n; i++) {
+                long d1 = a.get(i) - a.get(i - 1);
+                ddz[i] = encodeZigZag(d1 - d);
+                d = d1;
+            }
+        }
+        return ddz;
+    }
+
+    static long[] decodeDeltaDeltaZigZag(long[] ddz) {
+        int n = ddz.length;
+        long[] x = new long[n];
+        if (n > 0) {
+            x[0] = decodeZigZag(ddz[0]);
+            long d = 0;
+            for (int i = 1; i < n; i++) {
+                d = d + decodeZigZag(ddz[i]);
+                x[i] = x[i - 1] + d;
+            }
+        }
+        return x;
+    }
+
+    private static long encodeZigZag(long x) {
+        return (x << 1) ^ (x >> 63);
+    }
+
+    private static long decodeZigZag(long x) {
+        return (x >>> 1) ^ -(x & 1);
+    }
+
     public static LongValueSegment parseFrom(ByteBuffer bb) throws DecodingException {
         LongValueSegment r = new LongValueSegment();
         r.parse(bb);
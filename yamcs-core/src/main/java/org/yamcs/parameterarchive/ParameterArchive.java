@@ -23,6 +23,7 @@ import org.yamcs.Spec;
 import org.yamcs.Spec.OptionType;
 import org.yamcs.YConfiguration;
 import org.yamcs.YamcsServer;
+import org.yamcs.parameter.Value;
 import org.yamcs.parameterarchive.ParameterGroupIdDb.ParameterGroup;
 import org.yamcs.time.TimeService;
 import org.yamcs.utils.ByteArrayUtils;
@@ -88,6 +89,9 @@ public class ParameterArchive extends AbstractYamcsService {
     // from Yamcs 5.9.0, store the parameter archive data into a separate Column Family with this name
     public static final String CF_NAME = "parameter_archive";
 
+    // stores the rollups (see ParameterRollup); it does not use the merge operator
+    public static final String ROLLUP_CF_NAME = "parameter_archive_rollup";
+
     private ParameterIdDb parameterIdDb;
 
     private Tablespace tablespace;
@@ -244,6 +248,7 @@ public class ParameterArchive extends AbstractYamcsService {
                 writeToBatchVersion0(cfh, writeBatch, pgs);
             } else {
                 writeToBatch(rdb, cfh, writeBatch, pgs);
+                writeRollups(rdb, writeBatch, pgs);
             }
             rdb.write(wo, writeBatch);
         }
@@ -263,6 +268,7 @@ public class ParameterArchive extends AbstractYamcsService {
                     writeToBatchVersion0(cfh, writeBatch, pgs);
                 } else {
                     writeToBatch(rdb, cfh, writeBatch, pgs);
+                    writeRollups(rdb, writeBatch, pgs);
                 }
             }
             rdb.write(wo, writeBatch);
@@ -383,6 +389,8 @@ public class ParameterArchive extends AbstractYamcsService {
 
                     key.type = SegmentKey.TYPE_GAPS;
                     writeBatch.delete(cfh, key.encode());
+
+                    deleteRollups(rdb, writeBatch, pid, pgid, pgs.getInterval());
                 }
             }
         }
@@ -398,6 +406,58 @@ public class ParameterArchive extends AbstractYamcsService {
         }
     }
 
+    // write the rollups of the numeric parameters.
+    // Each segment has its own rollup (see ParameterRollup#key) written with put, such that no read is needed and
+    // rewriting a segment replaces its rollup. Like the put of the segment data, the first segment of the interval
+    // removes the rollups of the segments written previously in the interval.
+    private void writeRollups(YRDB rdb, WriteBatch writeBatch, PGSegment pgs) throws RocksDBException {
+        ColumnFamilyHandle cfh = rdb.createAndGetColumnFamilyHandle(ROLLUP_CF_NAME);
+        SortedTimeSegment timeSegment = pgs.getTimeSegment();
+        long interval = pgs.getInterval();
+        int pgid = pgs.getParameterGroupId();
+
+        for (var pvs : pgs.pvSegments) {
+            if (pgs.isFirstInInterval()) {
+                deleteRollups(rdb, writeBatch, pvs.pid, pgid, interval);
+            }
+            if (pvs.engValueSegment == null) {
+                continue;
+            }
+            ParameterRollup rollup = null;
+            for (int i = 0; i < timeSegment.size(); i++) {
+                Value v = pvs.getEngValue(i);
+                if (v == null) {
+                    continue;
+                }
+                if (rollup == null) {
+                    if (!ParameterRollup.isRollupType(v.getType())) {
+                        break;
+                    }
+                    rollup = new ParameterRollup(interval, 0, v.getType());
+                }
+                rollup.add(timeSegment.getTime(i), ParameterRollup.toDouble(v));
+            }
+            if (rollup == null) {
+                continue;
+            }
+            for (int level = 0; level < ParameterRollup.LEVEL_BITS.length; level++) {
+                ParameterRollup r = level == 0 ? rollup : rollup.toLevel(level);
+                byte[] key = ParameterRollup.key(pvs.pid, pgid, interval, level, pgs.getSegmentIdxInsideInterval());
+                writeBatch.put(cfh, key, r.encode());
+            }
+        }
+    }
+
+    // removes the rollups of all the segments of the parameter in the interval
+    private void deleteRollups(YRDB rdb, WriteBatch writeBatch, int pid, int pgid, long interval)
+            throws RocksDBException {
+        ColumnFamilyHandle cfh = rdb.createAndGetColumnFamilyHandle(ROLLUP_CF_NAME);
+        for (int level = 0; level < ParameterRollup.LEVEL_BITS.length; level++) {
+            writeBatch.deleteRange(cfh, ParameterRollup.key(pid, pgid, interval, level, 0),
+                    ParameterRollup.key(pid, pgid, interval, level, Integer.MAX_VALUE));
+        }
+    }
+
     // writes to the archive without using the rocksdb merge operator (which merges segments together into intervals).
     // The segment start is used part of the key (instead of the interval start) which means that we need to remove old
     // data as it may have a different start
@@ -598,7 +658,13 @@ public class ParameterArchive extends AbstractYamcsService {
     }
 
     /**
-     * Delete all partitions that overlap with [start, stop) segment.
+     * Delete all partitions fully contained in the [start, stop) segment.
+     * <p>
+     * The data of a partition stored in its own column family is removed by dropping the column family; for the
+     * partitions created before Yamcs 5.9.0 (stored in the default column family) it is removed by range and the ranges
+     * are compacted.
+     * <p>
+     * If the parameter archive is not partitioned by time, nothing is removed.
      * 
      * @param start
      * @param stop
@@ -606,8 +672,35 @@ public class ParameterArchive extends AbstractYamcsService {
      * @return all the partitions removed
      */
     public List<Partition> deletePartitions(long start, long stop) throws RocksDBException {
-        // List<Partition> parts = getPartitions(start, stop, true);
-        throw new UnsupportedOperationException("operation not supported");
+        List<Partition> removed;
+        synchronized (partitions) {
+            removed = partitions.removeIf(p -> p.hasStart() && p.hasEnd()
+                    && p.getStart() >= start && p.getEnd() <= stop);
+        }
+        if (removed.isEmpty()) {
+            return removed;
+        }
+        var allPids = parameterIdDb.getAllPids();
+
+        for (var p : removed) {
+            log.debug("Deleting partition {}", p);
+            YRDB rdb = tablespace.getRdb(p.partitionDir, false);
+            if (p.cfName == null || YRDB.DEFAULT_CF.equals(p.cfName)) {
+                for (int i = 0; i < allPids.size(); i++) {
+                    var tbsIndex = allPids.get(i);
+                    rdb.dropRange(null, dbKey(tbsIndex), dbKey(tbsIndex + 1), true);
+                }
+            } else {
+                rdb.dropColumnFamily(p.cfName);
+            }
+            rdb.dropColumnFamily(ROLLUP_CF_NAME);
+
+            byte[] key = new byte[TBS_INDEX_SIZE + 8];
+            ByteArrayUtils.encodeInt(partitionTbsIndex, key, 0);
+            ByteArrayUtils.encodeLong(p.getStart(), key, TBS_INDEX_SIZE);
+            tablespace.remove(key);
+        }
+        return removed;
     }
 
     /**
@@ -654,6 +747,9 @@ public class ParameterArchive extends AbstractYamcsService {
             } else {
                 rdb.dropColumnFamily(p.cfName);
             }
+            if (rdb.getColumnFamilyHandle(ROLLUP_CF_NAME) != null) {
+                rdb.dropColumnFamily(ROLLUP_CF_NAME);
+            }
         }
         partitions = new PartitionedTimeInterval<>();
 
@@ -691,6 +787,18 @@ public class ParameterArchive extends AbstractYamcsService {
         return rdb.newIterator(cfh(rdb, p));
     }
 
+    /**
+     * Returns an iterator over the rollups of the partition or null if the partition does not have rollups.
+     */
+    RocksIterator getRollupIterator(Partition p) throws RocksDBException, IOException {
+        if (p.version == 0) {
+            return null;
+        }
+        YRDB rdb = tablespace.getRdb(p.partitionDir, false);
+        ColumnFamilyHandle cfh = rdb.getColumnFamilyHandle(ROLLUP_CF_NAME);
+        return cfh == null ? null : rdb.newIterator(cfh);
+    }
+
     public SortedTimeSegment getTimeSegment(Partition p, long segmentStart, int parameterGroupId)
             throws RocksDBException, IOException {
 
@@ -0,0 +1,415 @@
+package org.yamcs.parameterarchive;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.yamcs.parameter.Value;
+import org.yamcs.protobuf.Yamcs.Value.Type;
+import org.yamcs.utils.ByteArrayUtils;
+import org.yamcs.utils.DecodingException;
+import org.yamcs.utils.UnsignedLong;
+import org.yamcs.utils.ValueUtility;
+
+/**
+ * Pre-computed aggregates of the numeric engineering values of one parameter from one parameter group over one
+ * interval.
+ * <p>
+ * The interval is divided into fixed buckets whose duration depends on the level (see {@link #LEVEL_BITS}). For each
+ * bucket containing data, the number of values, the minimum, maximum, sum, first and last values and their times are
+ * kept.
+ * <p>
+ * The rollups are written by the {@link ParameterArchive} together with the segments into the
+ * {@link ParameterArchive#ROLLUP_CF_NAME} column family. They allow answering the zoomed out retrievals (plots over
+ * long periods of time) without decoding all the values.
+ */
+public class ParameterRollup {
+    /**
+     * The bucket duration for each level is 2^LEVEL_BITS[level] milliseconds: ~8 seconds, ~131 seconds and one full
+     * interval (~139 minutes)
+     */
+    public static final int[] LEVEL_BITS = { 13, 17, ParameterArchive.NUMBITS_MASK };
+    static final byte VERSION = 0;
+
+    final long interval;
+    final int level;
+    final Type engType;
+    // sorted by index
+    final List<Bucket> buckets;
+
+    public ParameterRollup(long interval, int level, Type engType) {
+        this(interval, level, engType, new ArrayList<>());
+    }
+
+    private ParameterRollup(long interval, int level, Type engType, List<Bucket> buckets) {
+        this.interval = interval;
+        this.level = level;
+        this.engType = engType;
+        this.buckets = buckets;
+    }
+
+    public static long getBucketDuration(int level) {
+        return 1L << LEVEL_BITS[level];
+    }
+
+    /**
+     * Returns the coarsest level whose buckets are at least 4 times smaller than the given resolution or -1 if the
+     * resolution is too small for the rollups to be used.
+     */
+    public static int getLevel(long resolution) {
+        for (int level = LEVEL_BITS.length - 1; level >= 0; level--) {
+            if (4 * getBucketDuration(level) <= resolution) {
+                return level;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns true if the rollups are computed for the values of this type
+     */
+    public static boolean isRollupType(Type type) {
+        switch (type) {
+        case SINT32:
+        case UINT32:
+        case SINT64:
+        case UINT64:
+        case FLOAT:
+        case DOUBLE:
+        case BOOLEAN:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    static double toDouble(Value v) {
+        switch (v.getType()) {
+        case SINT32:
+            return v.getSint32Value();
+        case UINT32:
+            return v.getUint32Value() & 0xFFFFFFFFL;
+        case SINT64:
+            return v.getSint64Value();
+        case UINT64:
+            return UnsignedLong.toDouble(v.getUint64Value());
+        case FLOAT:
+            return v.getFloatValue();
+        case DOUBLE:
+            return v.getDoubleValue();
+        case BOOLEAN:
+            return v.getBooleanValue() ? 1 : 0;
+        default:
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Prefix of the keys of the rollups of one interval in the rollup column family; it is the key of the segments
+     * with the level in place of the segment type.
+     */
+    static byte[] key(int parameterId, int parameterGroupId, long interval, int level) {
+        return SegmentKey.encode(parameterId, parameterGroupId, interval, (byte) level);
+    }
+
+    /**
+     * Key of the rollup of one segment: the interval prefix followed by the index of the segment inside the interval.
+     * <p>
+     * Each segment has its own rollup such that writing it does not require reading the rollups of the previous
+     * segments and rewriting a segment replaces its rollup; the rollups of the segments are merged when retrieved.
+     */
+    static byte[] key(int parameterId, int parameterGroupId, long interval, int level, int segmentIdx) {
+        byte[] prefix = key(parameterId, parameterGroupId, interval, level);
+        byte[] k = Arrays.copyOf(prefix, prefix.length + 4);
+        ByteArrayUtils.encodeInt(segmentIdx, k, prefix.length);
+        return k;
+    }
+
+    public void add(long time, double value) {
+        Bucket b = getOrCreateBucket((int) ((time - interval) >> LEVEL_BITS[level]));
+        b.add(time, value);
+    }
+
+    /**
+     * Adds the buckets of the other rollup (covering the same interval, at the same or a lower level) to this one.
+     */
+    public void merge(ParameterRollup other) {
+        int shift = LEVEL_BITS[level] - LEVEL_BITS[other.level];
+        for (Bucket b : other.buckets) {
+            getOrCreateBucket(b.idx >> shift).merge(b);
+        }
+    }
+
+    /**
+     * Returns a new rollup with the buckets of this one combined at a higher level
+     */
+    public ParameterRollup toLevel(int newLevel) {
+        ParameterRollup r = new ParameterRollup(interval, newLevel, engType);
+        r.merge(this);
+        return r;
+    }
+
+    private Bucket getOrCreateBucket(int idx) {
+        int n = buckets.size();
+        if (n > 0 && buckets.get(n - 1).idx == idx) {
+            return buckets.get(n - 1);
+        }
+        int low = 0;
+        int high = n - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midIdx = buckets.get(mid).idx;
+            if (midIdx < idx) {
+                low = mid + 1;
+            } else if (midIdx > idx) {
+                high = mid - 1;
+            } else {
+                return buckets.get(mid);
+            }
+        }
+        Bucket b = new Bucket(this, idx);
+        buckets.add(low, b);
+        return b;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public Type getEngType() {
+        return engType;
+    }
+
+    public List<Bucket> getBuckets() {
+        return buckets;
+    }
+
+    /**
+     * If all the values in the bucket are equal, return the value, otherwise return null.
+     * <p>
+     * Returns null also for the 64 bit integers which cannot be reconstructed from the double representation.
+     */
+    public Value getConstantValue(Bucket b) {
+        if (b.min != b.max) {
+            return null;
+        }
+        switch (engType) {
+        case SINT32:
+            return ValueUtility.getSint32Value((int) b.min);
+        case UINT32:
+            return ValueUtility.getUint32Value((int) (long) b.min);
+        case FLOAT:
+            return ValueUtility.getFloatValue((float) b.min);
+        case DOUBLE:
+            return ValueUtility.getDoubleValue(b.min);
+        case BOOLEAN:
+            return ValueUtility.getBooleanValue(b.min != 0);
+        default:
+            return null;
+        }
+    }
+
+    public byte[] encode() {
+        ByteBuffer bb = ByteBuffer.allocate(7 + buckets.size() * Bucket.SIZE);
+        bb.put(VERSION);
+        bb.put((byte) engType.getNumber());
+        bb.put((byte) level);
+        bb.putInt(buckets.size());
+        for (Bucket b : buckets) {
+            b.writeTo(bb);
+        }
+        return bb.array();
+    }
+
+    public static ParameterRollup decode(byte[] data, long interval) throws DecodingException {
+        ByteBuffer bb = ByteBuffer.wrap(data);
+        byte version = bb.get();
+        if (version != VERSION) {
+            throw new DecodingException("Unknown rollup version " + version);
+        }
+        Type engType = Type.forNumber(bb.get());
+        int level = bb.get();
+        if (engType == null || level < 0 || level >= LEVEL_BITS.length) {
+            throw new DecodingException("Invalid rollup type or level");
+        }
+        int n = bb.getInt();
+        if (n < 0 || bb.remaining() != n * Bucket.SIZE) {
+            throw new DecodingException("Invalid number of rollup buckets " + n);
+        }
+        ParameterRollup r = new ParameterRollup(interval, level, engType, new ArrayList<>(n));
+        for (int i = 0; i < n; i++) {
+            r.buckets.add(Bucket.readFrom(r, bb));
+        }
+        return r;
+    }
+
+    @Override
+    public String toString() {
+        return "ParameterRollup [interval=" + interval + ", level=" + level + ", engType=" + engType + ", buckets="
+                + buckets.size() + "]";
+    }
+
+    /**
+     * Aggregates of the values in one bucket. The times are stored relative to the interval start.
+     */
+    public static class Bucket {
+        static final int SIZE = 2 + 4 + 5 * 8 + 4 * 4;
+
+        final ParameterRollup rollup;
+        final int idx;
+        int count;
+        double min, max, sum, first, last;
+        int firstTime, lastTime, minTime, maxTime;
+
+        Bucket(ParameterRollup rollup, int idx) {
+            this.rollup = rollup;
+            this.idx = idx;
+        }
+
+        void add(long time, double value) {
+            int t = (int) (time - rollup.interval);
+            if (count == 0) {
+                min = max = first = last = value;
+                minTime = maxTime = firstTime = lastTime = t;
+            } else {
+                if (value < min) {
+                    min = value;
+                    minTime = t;
+                }
+                if (value > max) {
+                    max = value;
+                    maxTime = t;
+                }
+                if (t < firstTime) {
+                    firstTime = t;
+                    first = value;
+                }
+                if (t >= lastTime) {
+                    lastTime = t;
+                    last = value;
+                }
+            }
+            sum += value;
+            count++;
+        }
+
+        void merge(Bucket b) {
+            if (count == 0) {
+                min = b.min;
+                max = b.max;
+                first = b.first;
+                last = b.last;
+                minTime = b.minTime;
+                maxTime = b.maxTime;
+                firstTime = b.firstTime;
+                lastTime = b.lastTime;
+            } else {
+                if (b.min < min) {
+                    min = b.min;
+                    minTime = b.minTime;
+                }
+                if (b.max > max) {
+                    max = b.max;
+                    maxTime = b.maxTime;
+                }
+                if (b.firstTime < firstTime) {
+                    firstTime = b.firstTime;
+                    first = b.first;
+                }
+                if (b.lastTime >= lastTime) {
+                    lastTime = b.lastTime;
+                    last = b.last;
+                }
+            }
+            sum += b.sum;
+            count += b.count;
+        }
+
+        void writeTo(ByteBuffer bb) {
+            bb.putShort((short) idx);
+            bb.putInt(count);
+            bb.putDouble(min);
+            bb.putDouble(max);
+            bb.putDouble(sum);
+            bb.putDouble(first);
+            bb.putDouble(last);
+            bb.putInt(firstTime);
+            bb.putInt(lastTime);
+            bb.putInt(minTime);
+            bb.putInt(maxTime);
+        }
+
+        static Bucket readFrom(ParameterRollup rollup, ByteBuffer bb) {
+            Bucket b = new Bucket(rollup, bb.getShort() & 0xFFFF);
+            b.count = bb.getInt();
+            b.min = bb.getDouble();
+            b.max = bb.getDouble();
+            b.sum = bb.getDouble();
+            b.first = bb.getDouble();
+            b.last = bb.getDouble();
+            b.firstTime = bb.getInt();
+            b.lastTime = bb.getInt();
+            b.minTime = bb.getInt();
+            b.maxTime = bb.getInt();
+            return b;
+        }
+
+        public long getStart() {
+            return rollup.interval + ((long) idx << LEVEL_BITS[rollup.level]);
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public double getMin() {
+            return min;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+        public double getSum() {
+            return sum;
+        }
+
+        public double getAvg() {
+            return sum / count;
+        }
+
+        public double getFirst() {
+            return first;
+        }
+
+        public double getLast() {
+            return last;
+        }
+
+        public long getFirstTime() {
+            return rollup.interval + firstTime;
+        }
+
+        public long getLastTime() {
+            return rollup.interval + lastTime;
+        }
+
+        public long getMinTime() {
+            return rollup.interval + minTime;
+        }
+
+        public long getMaxTime() {
+            return rollup.interval + maxTime;
+        }
+
+        @Override
+        public String toString() {
+            return "Bucket [idx=" + idx + ", count=" + count + ", min=" + min + ", max=" + max + ", sum=" + sum + "]";
+        }
+    }
+}
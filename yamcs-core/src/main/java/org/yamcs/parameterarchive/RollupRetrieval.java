@@ -0,0 +1,92 @@
+package org.yamcs.parameterarchive;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.yamcs.parameterarchive.ParameterArchive.Partition;
+import org.yamcs.utils.DatabaseCorruptionException;
+import org.yamcs.utils.DecodingException;
+import org.yamcs.yarch.rocksdb.AscendingRangeIterator;
+
+/**
+ * Retrieves the rollups of one parameter at a given level.
+ * <p>
+ * The rollups of all the parameter groups (and of all the types) of the parameter are merged such that one rollup is
+ * sent for each interval.
+ */
+public class RollupRetrieval {
+    final ParameterArchive parchive;
+    final String parameterFqn;
+    final int level;
+
+    public RollupRetrieval(ParameterArchive parchive, String parameterFqn, int level) {
+        this.parchive = parchive;
+        this.parameterFqn = parameterFqn;
+        this.level = level;
+    }
+
+    /**
+     * Sends in ascending order the rollups of the intervals completely included in [start, stop).
+     * <p>
+     * The intervals without rollups (no data or data written before the rollups have been introduced) are skipped.
+     */
+    public void retrieve(long start, long stop, Consumer<ParameterRollup> consumer)
+            throws RocksDBException, IOException {
+        ParameterId[] pids = parchive.getParameterIdDb().get(parameterFqn);
+        if (pids == null) {
+            return;
+        }
+        long firstInterval = ParameterArchive.getInterval(start);
+        if (firstInterval != start) {
+            firstInterval += ParameterArchive.getIntervalDuration();
+        }
+        long lastInterval = ParameterArchive.getInterval(stop) - ParameterArchive.getIntervalDuration();
+        if (firstInterval > lastInterval) {
+            return;
+        }
+
+        for (Partition p : parchive.getPartitions(firstInterval, lastInterval, true)) {
+            Map<Long, ParameterRollup> rollups = new TreeMap<>();
+            try (RocksIterator rit = parchive.getRollupIterator(p)) {
+                if (rit == null) {
+                    continue;
+                }
+                for (ParameterId pid : pids) {
+                    for (int pgid : parchive.getParameterGroupIdDb().getAllGroups(pid.getPid())) {
+                        retrieve(rit, pid.getPid(), pgid, firstInterval, lastInterval, rollups);
+                    }
+                }
+            }
+            rollups.values().forEach(consumer);
+        }
+    }
+
+    private void retrieve(RocksIterator rit, int pid, int pgid, long firstInterval, long lastInterval,
+            Map<Long, ParameterRollup> rollups) {
+        byte[] rangeStart = ParameterRollup.key(pid, pgid, firstInterval, level);
+        byte[] rangeEnd = ParameterRollup.key(pid, pgid, lastInterval, level);
+        // the underlying iterator is reused for all the groups so this one is not closed
+        AscendingRangeIterator it = new AscendingRangeIterator(rit, rangeStart, rangeEnd);
+        while (it.isValid()) {
+            SegmentKey key = SegmentKey.decode(it.key());
+            if (key.type == level) {
+                try {
+                    ParameterRollup r = ParameterRollup.decode(it.value(), key.segmentStart);
+                    ParameterRollup merged = rollups.get(key.segmentStart);
+                    if (merged == null) {
+                        rollups.put(key.segmentStart, r);
+                    } else {
+                        merged.merge(r);
+                    }
+                } catch (DecodingException e) {
+                    throw new DatabaseCorruptionException(e);
+                }
+            }
+            it.next();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package org.yamcs.replication;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.yamcs.logging.Log;
+
+/**
+ * Implements the group commit of the replication transactions.
+ * <p>
+ * The writers call {@link #awaitDurable(long)} after writing a transaction to the replication file and are blocked
+ * until the transaction has been synchronized to disk. The synchronization is performed by a dedicated thread: one
+ * synchronization covers all the transactions written by the time it starts, such that the writers waiting at the same
+ * time share the cost of one synchronization.
+ * <p>
+ * Optionally the thread waits a configurable delay before synchronizing, in order to collect more transactions in one
+ * synchronization at the expense of a higher latency.
+ */
+public class GroupCommitter {
+    final Supplier<ReplicationFile> fileSupplier;
+    final long commitDelayNanos;
+    final Log log;
+    final Thread thread;
+
+    // the highest transaction id some writer waits for
+    private long requestedTxId = -1;
+    // the highest transaction id synchronized to disk
+    private long durableTxId = -1;
+    private boolean quitting = false;
+
+    private Stats stats = new Stats();
+
+    /**
+     * @param fileSupplier
+     *            provides the file currently written
+     * @param commitDelayMillis
+     *            how long to wait before synchronizing once a writer is waiting
+     */
+    public GroupCommitter(String yamcsInstance, Supplier<ReplicationFile> fileSupplier, long commitDelayMillis) {
+        this.fileSupplier = fileSupplier;
+        this.commitDelayNanos = TimeUnit.MILLISECONDS.toNanos(commitDelayMillis);
+        this.log = new Log(GroupCommitter.class, yamcsInstance);
+        this.thread = new Thread(this::run, "ReplicationGroupCommit-" + yamcsInstance);
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public void quit() {
+        synchronized (this) {
+            quitting = true;
+            notifyAll();
+        }
+        thread.interrupt();
+    }
+
+    /**
+     * Blocks until the transaction with the given id (and all the transactions before it) has been synchronized to disk
+     * or until the committer is stopped.
+     */
+    public void awaitDurable(long txId) throws InterruptedException {
+        long t0 = System.nanoTime();
+        synchronized (this) {
+            if (durableTxId >= txId) {
+                return;
+            }
+            if (txId > requestedTxId) {
+                requestedTxId = txId;
+                notifyAll();
+            }
+            while (durableTxId < txId && !quitting) {
+                wait();
+            }
+            stats.addLatency(System.nanoTime() - t0);
+        }
+    }
+
+    /**
+     * Called when the transactions up to the given id have been synchronized to disk by other means (e.g. when the
+     * file is closed).
+     */
+    public synchronized void markDurable(long txId) {
+        if (txId > durableTxId) {
+            durableTxId = txId;
+            notifyAll();
+        }
+    }
+
+    public synchronized long getDurableTxId() {
+        return durableTxId;
+    }
+
+    /**
+     * Returns the statistics since the previous call
+     */
+    public synchronized Stats getStats() {
+        Stats s = stats;
+        stats = new Stats();
+        return s;
+    }
+
+    private void run() {
+        while (true) {
+            synchronized (this) {
+                while (requestedTxId <= durableTxId && !quitting) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (quitting) {
+                    return;
+                }
+            }
+            if (commitDelayNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(commitDelayNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            ReplicationFile rf = fileSupplier.get();
+            try {
+                long txId = rf.sync();
+                synchronized (this) {
+                    stats.numSyncs++;
+                    stats.numTx += Math.max(0, txId - durableTxId);
+                }
+                markDurable(txId);
+            } catch (IOException | RuntimeException e) {
+                log.error("Failed to synchronize the replication file {}", rf.path, e);
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e1) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Group commit statistics
+     */
+    public static class Stats {
+        long numSyncs;
+        long numTx;
+        long numWaits;
+        long totalLatencyNanos;
+        long maxLatencyNanos;
+
+        void addLatency(long latencyNanos) {
+            numWaits++;
+            totalLatencyNanos += latencyNanos;
+            maxLatencyNanos = Math.max(maxLatencyNanos, latencyNanos);
+        }
+
+        /**
+         * the number of synchronizations
+         */
+        public long getNumSyncs() {
+            return numSyncs;
+        }
+
+        /**
+         * the number of transactions made durable by the synchronizations
+         */
+        public long getNumTx() {
+            return numTx;
+        }
+
+        public double getAvgTxPerSync() {
+            return numSyncs == 0 ? 0 : (double) numTx / numSyncs;
+        }
+
+        /**
+         * average time (in microseconds) the writers have waited for their transactions to become durable
+         */
+        public double getAvgLatency() {
+            return numWaits == 0 ? 0 : totalLatencyNanos / 1000.0 / numWaits;
+        }
+
+        /**
+         * maximum time (in microseconds) a writer has waited for its transaction to become durable
+         */
+        public double getMaxLatency() {
+            return maxLatencyNanos / 1000.0;
+        }
+    }
+}
@@ -2,12 +2,15 @@ package org.yamcs.replication;
 
 import static org.yamcs.replication.ReplicationServer.workerGroup;
 
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.concurrent.TimeUnit;
 
 import org.yamcs.logging.Log;
 import org.yamcs.replication.ReplicationMaster.SlaveServer;
+import org.yamcs.replication.protobuf.Compression;
 import org.yamcs.replication.protobuf.Request;
 import org.yamcs.replication.protobuf.Response;
 import org.yamcs.replication.protobuf.TimeMessage;
@@ -20,14 +23,28 @@ import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.handler.codec.compression.Snappy;
+import io.netty.handler.ssl.SslHandler;
 import io.netty.util.concurrent.ScheduledFuture;
 
 /**
  * 
  * runs on the master side sending data to slave
- *
+ * <p>
+ * The data is sent directly from the replication files:
+ * <ul>
+ * <li>if the slave requested compression, the transactions are compressed in groups into COMPRESSED messages.</li>
+ * <li>otherwise the data from the full (read-only) files is sent using a {@link DefaultFileRegion} which allows the
+ * operating system to transfer it from the file to the socket without copying (this is not possible if TLS is
+ * used).</li>
+ * <li>otherwise the memory mapped data is wrapped into a netty buffer.</li>
+ * </ul>
  */
 public class MasterChannelHandler extends ChannelInboundHandlerAdapter {
+    // maximum number of bytes read from the file for sending in one go when the data is compressed
+    static final int MAX_COMPRESSED_BATCH = 1024 * 1024;
+
     final ReplicationMaster replMaster;
     final TimeService timeService;
     final Log log;
@@ -35,9 +52,11 @@ public class MasterChannelHandler extends ChannelInboundHandlerAdapter {
     Request req;
     private ChannelHandlerContext channelHandlerContext;
     ChannelFuture dataHandlingFuture;
-    ReplicationFile currentFile;
-    long nextTxToSend;
-    ReplicationTail fileTail;
+    volatile ReplicationFile currentFile;
+    volatile long nextTxToSend;
+    volatile ReplicationTail fileTail;
+    // not null if the slave requested compression
+    Snappy snappy;
     SlaveServer slaveServer;
     private ScheduledFuture<?> timeMsgFuture;
 
@@ -104,6 +123,7 @@ public class MasterChannelHandler extends ChannelInboundHandlerAdapter {
     public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
         super.handlerAdded(ctx);
         this.channelHandlerContext = ctx;
+        replMaster.addChannelHandler(this);
         if (req != null) {// this is the request in the constructor, if tcpRole=Server
             processRequest();
         }
@@ -120,6 +140,12 @@ public class MasterChannelHandler extends ChannelInboundHandlerAdapter {
         if (dataHandlingFuture != null) {
             dataHandlingFuture.cancel(true);
         }
+        if (req.getCompression() == Compression.SNAPPY && replMaster.enableCompression) {
+            log.debug("Sending compressed data");
+            snappy = new Snappy();
+        } else {
+            snappy = null;
+        }
         if (req.hasStartTxId()) {
             nextTxToSend = req.getStartTxId();
         } else {
@@ -184,9 +210,18 @@ public class MasterChannelHandler extends ChannelInboundHandlerAdapter {
             } else { // check back in 200 millisec
                 workerGroup.schedule(() -> sendMoreData(), 200, TimeUnit.MILLISECONDS);
             }
+        } else if (snappy != null) {
+            sendCompressed();
         } else {// got some data, send it and check back for more once the data has been sent
-            ByteBuf buf = Unpooled.wrappedBuffer(fileTail.buf);
-            dataHandlingFuture = channelHandlerContext.writeAndFlush(buf).addListener(a -> {
+            Object msg;
+            if (fileTail.eof && channelHandlerContext.pipeline().get(SslHandler.class) == null) {
+                // the file is not modified anymore, the data can be sent directly from the file
+                msg = new DefaultFileRegion(currentFile.path.toFile(), fileTail.buf.position(),
+                        fileTail.buf.remaining());
+            } else {
+                msg = Unpooled.wrappedBuffer(fileTail.buf);
+            }
+            dataHandlingFuture = channelHandlerContext.writeAndFlush(msg).addListener(a -> {
                 fileTail.buf.position(fileTail.buf.limit());
                 nextTxToSend = fileTail.nextTxId;
                 sendMoreData();
@@ -194,6 +229,90 @@ public class MasterChannelHandler extends ChannelInboundHandlerAdapter {
         }
     }
 
+    /**
+     * Sends compressed up to {@link #MAX_COMPRESSED_BATCH} bytes of transactions and checks back for more once they
+     * have been sent.
+     * <p>
+     * The transactions are grouped such that the compressed messages do not exceed the maximum tuple size; a
+     * transaction which does not fit alone or which cannot be compressed is sent as it is.
+     */
+    private void sendCompressed() {
+        ByteBuffer data = fileTail.buf.duplicate();
+        int maxUncompressedSize = (replMaster.maxTupleSize - 16) * 5 / 6;
+        int end = Math.min(data.limit(), data.position() + MAX_COMPRESSED_BATCH);
+        ChannelFuture future = null;
+        long lastTxId = -1;
+
+        while (data.position() < end) {
+            int start = data.position();
+            int pos = start;
+            while (pos < data.limit()) {
+                int txSize = 4 + (data.getInt(pos) & 0xFFFFFF);
+                if (pos > start && pos + txSize - start > maxUncompressedSize) {
+                    break;
+                }
+                lastTxId = data.getLong(pos + 8);
+                pos += txSize;
+            }
+            ByteBuf in = Unpooled.wrappedBuffer(data.duplicate().limit(pos));
+            int length = pos - start;
+            ByteBuf msg = null;
+            if (length <= maxUncompressedSize) {
+                msg = Message.encodeCompressed(snappy, in, length);
+                if (msg.readableBytes() >= length) {// compression did not help
+                    msg.release();
+                    msg = null;
+                    in.readerIndex(0);
+                }
+            }
+            future = channelHandlerContext.write(msg == null ? in : msg);
+            data.position(pos);
+        }
+        channelHandlerContext.flush();
+        int sentPosition = data.position();
+        long nextTxId = lastTxId + 1;
+        dataHandlingFuture = future.addListener(a -> {
+            fileTail.buf.position(sentPosition);
+            nextTxToSend = nextTxId;
+            sendMoreData();
+        });
+    }
+
+    /**
+     * Returns the number of transactions written in the replication files but not yet sent to the slave
+     */
+    public long getTxLag() {
+        return Math.max(0, replMaster.getTxId() + 1 - nextTxToSend);
+    }
+
+    /**
+     * Returns the approximate number of bytes written in the replication files but not yet sent to the slave
+     */
+    public long getByteLag() {
+        ReplicationFile rf = currentFile;
+        ReplicationTail tail = fileTail;
+        if (rf == null || tail == null) {
+            return 0;
+        }
+        return replMaster.getBytesAfter(rf, tail.buf.position());
+    }
+
+    /**
+     * Returns a name identifying the slave: the host and port if we are TCP client or the remote host if we are TCP
+     * server.
+     */
+    public String getSlaveName() {
+        if (slaveServer != null) {
+            return slaveServer.host + ":" + slaveServer.port;
+        }
+        SocketAddress addr = channelHandlerContext.channel().remoteAddress();
+        if (addr instanceof InetSocketAddress) {
+            return ((InetSocketAddress) addr).getHostString();
+        } else {
+            return String.valueOf(addr);
+        }
+    }
+
     public long getNextTxId() {
         return nextTxToSend;
     }
@@ -233,6 +352,7 @@ public class MasterChannelHandler extends ChannelInboundHandlerAdapter {
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
         log.info("Replication connection {} closed", ctx.channel().remoteAddress());
         super.channelInactive(ctx);
+        replMaster.removeChannelHandler(this);
         if (dataHandlingFuture != null) {
             dataHandlingFuture.cancel(true);
         }
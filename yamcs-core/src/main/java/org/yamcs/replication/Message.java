@@ -2,6 +2,8 @@ package org.yamcs.replication;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.zip.CRC32;
 
 import org.yamcs.replication.protobuf.Request;
@@ -14,6 +16,11 @@ import org.yamcs.utils.DecodingException;
 import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.MessageLite;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.compression.DecompressionException;
+import io.netty.handler.codec.compression.Snappy;
+
 /**
  * Defines all the message types that are exchanged between master and slave.
  * 
@@ -30,6 +37,14 @@ import com.google.protobuf.MessageLite;
  * This is the same structure used in the replication file to be able to play it directly over the network.
  * <p>
  * The replication file contains only STREAM_INFO and DATA messages (and we call them transactions)
+ * <p>
+ * If requested by the slave, the master can send a sequence of transactions compressed into one COMPRESSED message.
+ * The data of the COMPRESSED message is:
+ * 
+ * <pre>
+ * 4 bytes size of the uncompressed data
+ * n bytes transactions (including their type, size and CRC) compressed with the Snappy algorithm
+ * </pre>
  */
 public class Message {
     public final static byte WAKEUP = 1;
@@ -38,6 +53,7 @@ public class Message {
     public final static byte STREAM_INFO = 4;
     public final static byte DATA = 5;
     public final static byte TIME = 6;
+    public final static byte COMPRESSED = 7;
 
     final byte type;
     MessageLite protoMsg;
@@ -85,6 +101,9 @@ public class Message {
             msg = new Message(type);
             msg.protoMsg = decodeProto(buf, TimeMessage.newBuilder()).build();
             break;
+        case COMPRESSED:
+            msg = new CompressedMessage(buf);
+            break;
         default:
             throw new DecodingException("unknown message type " + type);
 
@@ -178,6 +197,93 @@ public class Message {
         return buf;
     }
 
+    /**
+     * Compresses length bytes of the buffer (containing complete transactions) starting from the reader index into a
+     * COMPRESSED message.
+     * <p>
+     * The returned buffer contains the message including the type, size and CRC
+     */
+    public static ByteBuf encodeCompressed(Snappy snappy, ByteBuf data, int length) {
+        ByteBuf buf = Unpooled.buffer(length / 2 + 64);
+        buf.writeInt(0);
+        buf.writeInt(length);
+        snappy.encode(data, buf, length);
+        buf.setInt(0, (COMPRESSED << 24) | (buf.readableBytes()));
+
+        CRC32 crc = new CRC32();
+        crc.update(buf.nioBuffer());
+        buf.writeInt((int) crc.getValue());
+        return buf;
+    }
+
+    /**
+     * A COMPRESSED message containing several transactions
+     */
+    public static class CompressedMessage extends Message {
+        // the data of the message: the uncompressed size followed by the compressed transactions
+        final ByteBuffer buf;
+
+        CompressedMessage(ByteBuffer buf) {
+            super(COMPRESSED);
+            this.buf = buf;
+        }
+
+        /**
+         * Decompresses and decodes the messages contained in this one.
+         */
+        public List<Message> decompress(Snappy snappy) throws DecodingException {
+            ByteBuffer data = buf.duplicate();
+            int length = data.getInt();
+            ByteBuf out = Unpooled.buffer(length);
+            try {
+                snappy.reset();
+                snappy.decode(Unpooled.wrappedBuffer(data), out);
+            } catch (DecompressionException e) {
+                throw new DecodingException("Failed to decompress message: " + e.getMessage());
+            }
+            if (out.readableBytes() != length) {
+                throw new DecodingException("Decompressed length " + out.readableBytes() + " does not match the "
+                        + "expected length " + length);
+            }
+            ByteBuffer bb = out.nioBuffer();
+            List<Message> msgs = new ArrayList<>();
+            while (bb.hasRemaining()) {
+                if (bb.remaining() < 4) {
+                    throw new DecodingException("Truncated message inside the compressed message");
+                }
+                int msgLength = 4 + (bb.getInt(bb.position()) & 0xFFFFFF);
+                if (msgLength > bb.remaining()) {
+                    throw new DecodingException("Truncated message inside the compressed message");
+                }
+                ByteBuffer msgBuf = bb.slice();
+                msgBuf.limit(msgLength);
+                msgs.add(Message.decode(msgBuf));
+                bb.position(bb.position() + msgLength);
+            }
+            return msgs;
+        }
+
+        /**
+         * Encodes the message as received, without decompressing it.
+         */
+        @Override
+        public ByteBuffer encode() {
+            ByteBuffer data = buf.duplicate();
+            int n = data.remaining();
+            ByteBuffer out = ByteBuffer.allocate(n + 8);
+            out.putInt((COMPRESSED << 24) | (n + 4));
+            out.put(data);
+
+            CRC32 crc = new CRC32();
+            out.flip();
+            crc.update(out);
+            out.limit(n + 8);
+            out.putInt((int) crc.getValue());
+            out.position(0);
+            return out;
+        }
+    }
+
     // this is a message that comes from a replication file
     public static class TransactionMessage extends Message {
         long txId;
@@ -613,6 +613,18 @@ public class ReplicationFile implements Closeable {
         return pos + 4 + (typeSize & 0xFFFFFF);
     }
 
+    /**
+     * Returns the position in the file where the next transaction will be written.
+     */
+    public int getDataEnd() {
+        rwlock.readLock().lock();
+        try {
+            return buf.position();
+        } finally {
+            rwlock.readLock().unlock();
+        }
+    }
+
     public boolean isFull() {
         return fileFull;
     }
@@ -657,17 +669,20 @@ public class ReplicationFile implements Closeable {
      * then call again {@link FileChannel#force(boolean)} to force also the header on the disk.
      * <p>
      * This way should guarantee that the transaction data is written on the disk before the header
+     * 
+     * @return the id of the last transaction written on the disk, that is {@link #getNextTxId()} - 1
      */
-    public void sync() throws IOException {
-        if (!readOnly) {
-            rwlock.readLock().lock();
-            try {
+    public long sync() throws IOException {
+        rwlock.readLock().lock();
+        try {
+            if (!readOnly) {
                 fc.force(true);
                 hdr2.write();
                 fc.force(true);
-            } finally {
-                rwlock.readLock().unlock();
             }
+            return getNextTxId() - 1;
+        } finally {
+            rwlock.readLock().unlock();
         }
     }
 
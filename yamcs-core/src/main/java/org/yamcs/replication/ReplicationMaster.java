@@ -13,8 +13,12 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
@@ -30,9 +34,20 @@ import org.yamcs.Spec;
 import org.yamcs.Spec.OptionType;
 import org.yamcs.YConfiguration;
 import org.yamcs.YamcsServer;
+import org.yamcs.parameter.AggregateValue;
+import org.yamcs.parameter.ParameterValue;
+import org.yamcs.parameter.SystemParametersProducer;
+import org.yamcs.parameter.SystemParametersService;
+import org.yamcs.protobuf.Pvalue.AcquisitionStatus;
+import org.yamcs.protobuf.Yamcs.Value.Type;
 import org.yamcs.replication.protobuf.ColumnInfo;
 import org.yamcs.replication.protobuf.Request;
 import org.yamcs.replication.protobuf.StreamInfo;
+import org.yamcs.utils.ValueUtility;
+import org.yamcs.xtce.AggregateParameterType;
+import org.yamcs.xtce.Member;
+import org.yamcs.xtce.Parameter;
+import org.yamcs.xtce.UnitType;
 import org.yamcs.yarch.ColumnDefinition;
 import org.yamcs.yarch.ColumnSerializer;
 import org.yamcs.yarch.ColumnSerializerFactory;
@@ -55,11 +70,18 @@ import io.netty.handler.ssl.SslContextBuilder;
  * 
  * Implements the master part of the replication. At any moment there is one current file where the replication data is
  * written.
+ * <p>
+ * For each connected slave, a system parameter {@code <serviceName>/lag/<slave>} gives the number of transactions and
+ * the approximate number of bytes which have been written to the replication files but not yet sent to the slave.
+ * <p>
+ * With the {@link SyncMode#GROUP_COMMIT} sync mode, the writers (the stream subscribers) wait until their transaction
+ * is synchronized to disk, see {@link GroupCommitter}. The statistics of the group commit are published in the system
+ * parameter {@code <serviceName>/groupCommit}.
  * 
  * @author nm
  *
  */
-public class ReplicationMaster extends AbstractYamcsService {
+public class ReplicationMaster extends AbstractYamcsService implements SystemParametersProducer {
 
     ConcurrentSkipListMap<Long, ReplFileAccess> replFiles = new ConcurrentSkipListMap<>();
     volatile ReplicationFile currentFile = null;
@@ -86,6 +108,17 @@ public class ReplicationMaster extends AbstractYamcsService {
     Pattern filePattern;
     int maxTupleSize;
     long timeMsgFreqMillis;
+    boolean enableCompression;
+    SyncMode syncMode;
+    GroupCommitter groupCommitter;
+
+    Set<MasterChannelHandler> channelHandlers = ConcurrentHashMap.newKeySet();
+    private SystemParametersService sysParamsService;
+    private AggregateParameterType lagType;
+    // slave name -> lag parameter
+    private Map<String, Parameter> lagParams = new HashMap<>();
+    private AggregateParameterType groupCommitType;
+    private Parameter groupCommitParam;
 
     @Override
     public void init(String yamcsInstance, String serviceName, YConfiguration config) throws InitException {
@@ -100,6 +133,8 @@ public class ReplicationMaster extends AbstractYamcsService {
         maxFileSize = 1024 * config.getInt("maxFileSizeKB", 100 * 1024);
         this.maxTupleSize = config.getInt("maxTupleSize");
         this.timeMsgFreqMillis = config.getLong("timeMsgFreqSec") * 1000;
+        this.enableCompression = config.getBoolean("enableCompression");
+        this.syncMode = config.getEnum("syncMode", SyncMode.class);
 
         int hdrSize = ReplicationFile.headerSize(pageSize, maxPages);
         if (maxFileSize < hdrSize) {
@@ -115,6 +150,10 @@ public class ReplicationMaster extends AbstractYamcsService {
         YamcsServer.getServer().getThreadPoolExecutor().scheduleAtFixedRate(() -> deleteExpiredFiles(), fileCloseTime,
                 fileCloseTime, TimeUnit.MILLISECONDS);
 
+        if (syncMode == SyncMode.GROUP_COMMIT) {
+            groupCommitter = new GroupCommitter(yamcsInstance, () -> currentFile,
+                    config.getLong("groupCommitDelayMillis"));
+        }
         fileSyncTime = config.getLong("fileSyncTime", 10) * 1000;
         YamcsServer.getServer().getThreadPoolExecutor().scheduleAtFixedRate(() -> syncCurrentFile(), fileSyncTime,
                 fileSyncTime, TimeUnit.MILLISECONDS);
@@ -191,6 +230,14 @@ public class ReplicationMaster extends AbstractYamcsService {
                 .withDescription("Maximum size of the serialized tuple");
         spec.addOption("timeMsgFreqSec", OptionType.INTEGER).withDefault(10)
                 .withDescription("How often (in seconds) to send the time message to the slaves");
+        spec.addOption("enableCompression", OptionType.BOOLEAN).withDefault(true)
+                .withDescription("If true, the data is sent compressed to the slaves which request it");
+        spec.addOption("syncMode", OptionType.STRING).withChoices(SyncMode.class).withDefault("PERIODIC")
+                .withDescription("PERIODIC: the current file is synchronized to disk at regular intervals. "
+                        + "GROUP_COMMIT: the writers wait until their data is synchronized to disk.");
+        spec.addOption("groupCommitDelayMillis", OptionType.INTEGER).withDefault(0)
+                .withDescription("In GROUP_COMMIT mode, how long to wait before synchronizing the file in order "
+                        + "to collect more transactions in one synchronization");
 
         return spec;
     }
@@ -235,6 +282,11 @@ public class ReplicationMaster extends AbstractYamcsService {
             }
             translators.add(new StreamToFile(s, i));
         }
+        setupSystemParameters();
+        if (groupCommitter != null) {
+            groupCommitter.markDurable(getTxId());
+            groupCommitter.start();
+        }
         if (tcpRole == TcpRole.CLIENT) {
             // connect to all slaves
             for (SlaveServer sa : slaves) {
@@ -251,9 +303,15 @@ public class ReplicationMaster extends AbstractYamcsService {
 
     @Override
     protected void doStop() {
+        if (sysParamsService != null) {
+            sysParamsService.unregisterProducer(this);
+        }
         for (StreamToFile stf : translators) {
             stf.quit();
         }
+        if (groupCommitter != null) {
+            groupCommitter.quit();
+        }
 
         for (ReplFileAccess rf : replFiles.values()) {
             if (rf.rf != null) {
@@ -276,7 +334,17 @@ public class ReplicationMaster extends AbstractYamcsService {
 
         if (currentFile != null) {
             firstTxId = currentFile.getNextTxId();
-            currentFile.setSyncRequired(true);
+            if (groupCommitter != null) {
+                // the group committer synchronizes only the current file
+                try {
+                    groupCommitter.markDurable(currentFile.sync());
+                } catch (IOException e) {
+                    log.error("Failed to synchronize the replication file {}", currentFile.path, e);
+                    currentFile.setSyncRequired(true);
+                }
+            } else {
+                currentFile.setSyncRequired(true);
+            }
         }
 
         try {
@@ -326,10 +394,12 @@ public class ReplicationMaster extends AbstractYamcsService {
         return (currentFile) == null ? -1 : currentFile.getNextTxId() - 1;
     }
 
-    private void writeToFile(Transaction tx) {
+    // returns the id of the written transaction or -1 if it could not be written
+    private long writeToFile(Transaction tx) {
         ReplicationFile cf = currentFile;
+        long txId = -1;
         try {
-            long txId = cf.writeData(tx);
+            txId = cf.writeData(tx);
             if (txId == -1) {// file full
                 openNewFile(cf);
                 cf = currentFile;
@@ -346,6 +416,7 @@ public class ReplicationMaster extends AbstractYamcsService {
             replFiles.remove(cf.getFirstId());
             openNewFile(cf);
         }
+        return txId;
     }
 
     private void abort(String msg) {
@@ -384,6 +455,118 @@ public class ReplicationMaster extends AbstractYamcsService {
         };
     }
 
+    private void setupSystemParameters() {
+        sysParamsService = SystemParametersService.getInstance(yamcsInstance);
+        if (sysParamsService == null) {
+            return;
+        }
+        Member txLagMember = new Member("transactions", sysParamsService.getBasicType(Type.UINT64));
+        txLagMember.setShortDescription("The number of transactions not yet sent to the slave");
+        Member byteLagMember = new Member("bytes", sysParamsService.getBasicType(Type.UINT64, new UnitType("B")));
+        byteLagMember.setShortDescription("The approximate number of bytes not yet sent to the slave");
+        lagType = new AggregateParameterType.Builder().setName("ReplicationLag")
+                .addMember(txLagMember)
+                .addMember(byteLagMember)
+                .build();
+        if (groupCommitter != null) {
+            UnitType usunit = new UnitType("us");
+            Member numSyncsMember = new Member("numSyncs", sysParamsService.getBasicType(Type.UINT64));
+            numSyncsMember.setShortDescription("The number of synchronizations since the previous value");
+            Member numTxMember = new Member("numTx", sysParamsService.getBasicType(Type.UINT64));
+            numTxMember.setShortDescription("The number of transactions committed since the previous value");
+            Member avgTxPerSyncMember = new Member("avgTxPerSync", sysParamsService.getBasicType(Type.DOUBLE));
+            avgTxPerSyncMember.setShortDescription("The average number of transactions committed by one "
+                    + "synchronization");
+            Member avgLatencyMember = new Member("avgLatency", sysParamsService.getBasicType(Type.DOUBLE, usunit));
+            avgLatencyMember.setShortDescription("The average time the writers waited for their transaction to be "
+                    + "committed");
+            Member maxLatencyMember = new Member("maxLatency", sysParamsService.getBasicType(Type.DOUBLE, usunit));
+            maxLatencyMember.setShortDescription("The maximum time a writer waited for its transaction to be "
+                    + "committed");
+            groupCommitType = new AggregateParameterType.Builder().setName("GroupCommit")
+                    .addMember(numSyncsMember)
+                    .addMember(numTxMember)
+                    .addMember(avgTxPerSyncMember)
+                    .addMember(avgLatencyMember)
+                    .addMember(maxLatencyMember)
+                    .build();
+            groupCommitParam = sysParamsService.createSystemParameter(serviceName + "/groupCommit",
+                    groupCommitType, "Statistics about the group commit since the previous value");
+        }
+        sysParamsService.registerProducer(this);
+    }
+
+    @Override
+    public Collection<ParameterValue> getSystemParameters(long gentime) {
+        List<ParameterValue> pvlist = new ArrayList<>();
+        for (MasterChannelHandler mch : channelHandlers) {
+            String slaveName = mch.getSlaveName().replaceAll("[^\\w\\-]", "_");
+            Parameter p = lagParams.computeIfAbsent(slaveName,
+                    n -> sysParamsService.createSystemParameter(serviceName + "/lag/" + n, lagType,
+                            "Replication lag of the slave " + n));
+
+            AggregateValue v = new AggregateValue(lagType.getMemberNames());
+            v.setMemberValue("transactions", ValueUtility.getUint64Value(mch.getTxLag()));
+            v.setMemberValue("bytes", ValueUtility.getUint64Value(mch.getByteLag()));
+
+            pvlist.add(getPv(p, gentime, v));
+        }
+        if (groupCommitter != null) {
+            GroupCommitter.Stats stats = groupCommitter.getStats();
+            AggregateValue v = new AggregateValue(groupCommitType.getMemberNames());
+            v.setMemberValue("numSyncs", ValueUtility.getUint64Value(stats.getNumSyncs()));
+            v.setMemberValue("numTx", ValueUtility.getUint64Value(stats.getNumTx()));
+            v.setMemberValue("avgTxPerSync", ValueUtility.getDoubleValue(stats.getAvgTxPerSync()));
+            v.setMemberValue("avgLatency", ValueUtility.getDoubleValue(stats.getAvgLatency()));
+            v.setMemberValue("maxLatency", ValueUtility.getDoubleValue(stats.getMaxLatency()));
+            pvlist.add(getPv(groupCommitParam, gentime, v));
+        }
+        return pvlist;
+    }
+
+    private ParameterValue getPv(Parameter p, long gentime, AggregateValue v) {
+        ParameterValue pv = new ParameterValue(p);
+        pv.setGenerationTime(gentime);
+        pv.setAcquisitionTime(gentime);
+        pv.setAcquisitionStatus(AcquisitionStatus.ACQUIRED);
+        pv.setEngValue(v);
+        pv.setExpireMillis((long) (1.9 * getFrequency() * 1000));
+        return pv;
+    }
+
+    void addChannelHandler(MasterChannelHandler mch) {
+        channelHandlers.add(mch);
+    }
+
+    void removeChannelHandler(MasterChannelHandler mch) {
+        channelHandlers.remove(mch);
+    }
+
+    /**
+     * Returns the approximate number of bytes written in the replication files after the given position in the given
+     * file.
+     * <p>
+     * For the files not currently open, the size of the file (including the header) is used.
+     */
+    long getBytesAfter(ReplicationFile rf, int position) {
+        long n = Math.max(0, rf.getDataEnd() - position);
+        for (Map.Entry<Long, ReplFileAccess> e : replFiles.tailMap(rf.getFirstId(), false).entrySet()) {
+            ReplFileAccess rfa = e.getValue();
+            synchronized (rfa) {
+                if (rfa.rf != null) {
+                    n += rfa.rf.getDataEnd();
+                } else {
+                    try {
+                        n += Files.size(getPath(e.getKey()));
+                    } catch (IOException e1) {
+                        // the file has been removed in the meanwhile
+                    }
+                }
+            }
+        }
+        return n;
+    }
+
     public ChannelHandler newChannelHandler(Request req) {
         return new MasterChannelHandler(YamcsServer.getTimeService(yamcsInstance), this, req);
     }
@@ -449,7 +632,14 @@ public class ReplicationMaster extends AbstractYamcsService {
                     return instanceId;
                 }
             };
-            writeToFile(tx);
+            long txId = writeToFile(tx);
+            if (groupCommitter != null && txId >= 0) {
+                try {
+                    groupCommitter.awaitDurable(txId);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
         }
 
         private synchronized void ensureIndices(TupleDefinition tdef) {
@@ -610,7 +800,10 @@ public class ReplicationMaster extends AbstractYamcsService {
     private void syncCurrentFile() {
         try {
             log.trace("Syncing current replication file {}", currentFile.path);
-            currentFile.sync();
+            long txId = currentFile.sync();
+            if (groupCommitter != null) {
+                groupCommitter.markDurable(txId);
+            }
         } catch (Exception e) {
             log.error("Error syncing current replication file", e);
         }
@@ -23,8 +23,10 @@ import org.yamcs.YamcsException;
 import org.yamcs.YamcsServer;
 import org.yamcs.YamcsServerInstance;
 import org.yamcs.Spec.OptionType;
+import org.yamcs.replication.Message.CompressedMessage;
 import org.yamcs.replication.Message.TransactionMessage;
 import org.yamcs.replication.protobuf.ColumnInfo;
+import org.yamcs.replication.protobuf.Compression;
 import org.yamcs.replication.protobuf.Request;
 import org.yamcs.replication.protobuf.Response;
 import org.yamcs.replication.protobuf.StreamInfo;
@@ -50,6 +52,7 @@ import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.compression.Snappy;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.util.concurrent.ScheduledFuture;
@@ -72,6 +75,7 @@ public class ReplicationSlave extends AbstractYamcsService {
     SslContext sslCtx = null;
     int maxTupleSize;
     long timeoutMillis;
+    boolean enableCompression;
     SimulationTimeService simTimeService = null;
 
     @Override
@@ -127,6 +131,7 @@ public class ReplicationSlave extends AbstractYamcsService {
         String lastTxFilename = config.getString("lastTxFile", serviceName + "-lastid.txt");
         this.maxTupleSize = config.getInt("maxTupleSize");
         this.timeoutMillis = (long) (config.getDouble("timeoutSec") * 1000);
+        this.enableCompression = config.getBoolean("enableCompression");
 
         txtfilePath = replicationDir.resolve(lastTxFilename);
         try {
@@ -165,6 +170,8 @@ public class ReplicationSlave extends AbstractYamcsService {
 
         spec.addOption("updateSimTime", OptionType.BOOLEAN).withDefault(false)
                 .withDescription("If true, update the simulation time with the time received from the master");
+        spec.addOption("enableCompression", OptionType.BOOLEAN).withDefault(false)
+                .withDescription("If true, request the master to send the data compressed");
         return spec;
     }
 
@@ -302,6 +309,7 @@ public class ReplicationSlave extends AbstractYamcsService {
         Map<Integer, ByteBufToStream> streamWriters = new HashMap<>();
         long lastMsgReceivedTime;
         private ScheduledFuture<?> timeoutFuture;
+        private Snappy snappy;
 
         public SlaveChannelHandler(ReplicationSlave slave) {
             this.replSlave = slave;
@@ -335,6 +343,30 @@ public class ReplicationSlave extends AbstractYamcsService {
                 return;
             }
             lastMsgReceivedTime = System.currentTimeMillis();
+            if (msg.type == Message.COMPRESSED) {
+                if (snappy == null) {
+                    snappy = new Snappy();
+                }
+                List<Message> msgs;
+                try {
+                    msgs = ((CompressedMessage) msg).decompress(snappy);
+                } catch (DecodingException e) {
+                    log.warn("TX{} Failed to decode compressed message; closing connection", lastTxId, e);
+                    ctx.close();
+                    return;
+                }
+                for (Message m : msgs) {
+                    processMessage(m);
+                    if (state() != State.RUNNING) {
+                        return;
+                    }
+                }
+            } else {
+                processMessage(msg);
+            }
+        }
+
+        private void processMessage(Message msg) {
             if (msg.type == Message.DATA) {
                 TransactionMessage tmsg = (TransactionMessage) msg;
 
@@ -432,6 +464,9 @@ public class ReplicationSlave extends AbstractYamcsService {
 
         private void sendRequest() {
             Request.Builder reqb = Request.newBuilder().setRequestSeq(1).setYamcsInstance(masterInstance);
+            if (enableCompression) {
+                reqb.setCompression(Compression.SNAPPY);
+            }
             if (lastTxId >= 0) {
                 reqb.setStartTxId(lastTxId + 1);
             }
@@ -0,0 +1,16 @@
+package org.yamcs.replication;
+
+/**
+ * How the {@link ReplicationMaster} synchronizes the replication files to disk
+ */
+public enum SyncMode {
+    /**
+     * The current file is synchronized at regular intervals; the writers do not wait.
+     */
+    PERIODIC,
+    /**
+     * The writers wait until their transaction is synchronized; the synchronizations are shared between the writers
+     * waiting at the same time.
+     */
+    GROUP_COMMIT;
+}
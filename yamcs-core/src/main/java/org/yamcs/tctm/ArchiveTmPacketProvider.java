@@ -2,6 +2,7 @@ package org.yamcs.tctm;
 
 import org.yamcs.TmPacketProvider;
 import org.yamcs.protobuf.Yamcs.EndAction;
+import org.yamcs.protobuf.Yamcs.ReplayProgress;
 import org.yamcs.protobuf.Yamcs.ReplayRequest;
 import org.yamcs.protobuf.Yamcs.ReplaySpeed;
 import org.yamcs.protobuf.Yamcs.ReplayStatus.ReplayState;
@@ -29,4 +30,11 @@ public interface ArchiveTmPacketProvider extends TmPacketProvider {
     public ReplayRequest getReplayRequest();
 
     public long getReplayTime();
+
+    /**
+     * @return the progress of the replay or null if not available
+     */
+    public default ReplayProgress getReplayProgress() {
+        return null;
+    }
 }
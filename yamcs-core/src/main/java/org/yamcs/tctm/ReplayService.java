@@ -26,6 +26,7 @@ import org.yamcs.archive.YarchReplay;
 import org.yamcs.cmdhistory.CommandHistoryProvider;
 import org.yamcs.cmdhistory.CommandHistoryRequestManager;
 import org.yamcs.commanding.PreparedCommand;
+import org.yamcs.mdb.ContainerProcessingResult;
 import org.yamcs.mdb.ParameterTypeProcessor;
 import org.yamcs.mdb.ProcessingData;
 import org.yamcs.mdb.Subscription;
@@ -44,6 +45,7 @@ import org.yamcs.protobuf.Yamcs.NamedObjectId;
 import org.yamcs.protobuf.Yamcs.NamedObjectList;
 import org.yamcs.protobuf.Yamcs.PacketReplayRequest;
 import org.yamcs.protobuf.Yamcs.PpReplayRequest;
+import org.yamcs.protobuf.Yamcs.ReplayProgress;
 import org.yamcs.protobuf.Yamcs.ReplayRequest;
 import org.yamcs.protobuf.Yamcs.ReplaySpeed;
 import org.yamcs.protobuf.Yamcs.ReplaySpeed.ReplaySpeedType;
@@ -131,19 +133,21 @@ public class ReplayService extends AbstractProcessorService
     public void newData(ProtoDataType type, Object data) {
         switch (type) {
         case TM_PACKET:
+            if (data instanceof ContainerProcessingResult result) {
+                // already decoded in the fast-forward mode
+                ((XtceTmProcessor) tmProcessor).deliverResult(result);
+                break;
+            }
+            if (data instanceof DeferredPacket dp) {
+                // fast-forward mode, decoded now that the values of the preceding packets have been delivered
+                XtceTmProcessor xtceTmProcessor = (XtceTmProcessor) tmProcessor;
+                xtceTmProcessor.deliverResult(xtceTmProcessor.decodePacket(toTmPacket(dp.rp), dp.container));
+                break;
+            }
             ReplayPacket rp = (ReplayPacket) data;
-            String qn = rp.getQualifiedName();
-            SequenceContainer container = mdb.getSequenceContainer(qn);
-            if (container == null) {
-                log.warn("Unknown sequence container '" + qn + "' found when replaying", qn);
-            } else {
-                SequenceContainer parent;
-                while ((parent = container.getBaseContainer()) != null) {
-                    container = parent;
-                }
-
-                tmProcessor.processPacket(new TmPacket(rp.getReceptionTime(), rp.getGenerationTime(),
-                        rp.getSequenceNumber(), rp.getPacket()), container);
+            SequenceContainer container = getRootContainer(rp);
+            if (container != null) {
+                tmProcessor.processPacket(toTmPacket(rp), container);
             }
             break;
         case PP:
@@ -167,6 +171,48 @@ public class ReplayService extends AbstractProcessorService
         }
     }
 
+    /**
+     * Called in the fast-forward mode, possibly concurrently, by the replay decoding threads.
+     * <p>
+     * The packets whose decoding depends on the parameters of other packets are not decoded here because the last
+     * value cache does not yet contain the values of the preceding packets; they are decoded in order by
+     * {@link #newData(ProtoDataType, Object)}.
+     */
+    @Override
+    public Object decode(ProtoDataType type, Object data) {
+        if (type != ProtoDataType.TM_PACKET || !(tmProcessor instanceof XtceTmProcessor)) {
+            return data;
+        }
+        ReplayPacket rp = (ReplayPacket) data;
+        SequenceContainer container = getRootContainer(rp);
+        if (container == null) {
+            return null;
+        }
+        XtceTmProcessor xtceTmProcessor = (XtceTmProcessor) tmProcessor;
+        if (xtceTmProcessor.dependsOnOtherPackets(container)) {
+            return new DeferredPacket(rp, container);
+        }
+        return xtceTmProcessor.decodePacket(toTmPacket(rp), container);
+    }
+
+    private SequenceContainer getRootContainer(ReplayPacket rp) {
+        String qn = rp.getQualifiedName();
+        SequenceContainer container = mdb.getSequenceContainer(qn);
+        if (container == null) {
+            log.warn("Unknown sequence container '{}' found when replaying", qn);
+            return null;
+        }
+        SequenceContainer parent;
+        while ((parent = container.getBaseContainer()) != null) {
+            container = parent;
+        }
+        return container;
+    }
+
+    private static TmPacket toTmPacket(ReplayPacket rp) {
+        return new TmPacket(rp.getReceptionTime(), rp.getGenerationTime(), rp.getSequenceNumber(), rp.getPacket());
+    }
+
     private void calibrate(List<ParameterValue> pvlist, ProcessingData processingData) {
         ParameterTypeProcessor ptypeProcessor = processor.getProcessorData().getParameterTypeProcessor();
 
@@ -434,6 +480,11 @@ public class ReplayService extends AbstractProcessorService
         }
     }
 
+    @Override
+    public ReplayProgress getReplayProgress() {
+        return yarchReplay != null ? yarchReplay.getProgress() : null;
+    }
+
     @Override
     public void changeSpeed(ReplaySpeed speed) {
         yarchReplay.changeSpeed(SpeedSpec.fromProtobuf(speed));
@@ -457,4 +508,15 @@ public class ReplayService extends AbstractProcessorService
     public void setCommandHistoryRequestManager(CommandHistoryRequestManager chrm) {
         this.commandHistoryRequestManager = chrm;
     }
+
+    // packet to be decoded in the delivery thread in the fast-forward mode
+    static class DeferredPacket {
+        final ReplayPacket rp;
+        final SequenceContainer container;
+
+        DeferredPacket(ReplayPacket rp, SequenceContainer container) {
+            this.rp = rp;
+            this.container = container;
+        }
+    }
 }
@@ -1,9 +1,12 @@
 package org.yamcs.utils;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
 
 /**
  * A list of sorted, non overlapping {@link TimeInterval}
@@ -155,6 +158,33 @@ public class PartitionedTimeInterval<T extends TimeInterval> implements Iterable
         }
     }
 
+    /**
+     * Removes all the intervals matching the filter.
+     * 
+     * @return the removed intervals, sorted
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> removeIf(Predicate<T> filter) {
+        lock.lock();
+        try {
+            List<T> removed = new ArrayList<>();
+            List<TimeInterval> kept = new ArrayList<>();
+            for (TimeInterval ti : intervals) {
+                if (filter.test((T) ti)) {
+                    removed.add((T) ti);
+                } else {
+                    kept.add(ti);
+                }
+            }
+            if (!removed.isEmpty()) {
+                intervals = kept.toArray(new TimeInterval[0]);
+            }
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * Creates an iterator that iterates over all the timeintervals overlapping
      * with timeInterval The timeInterval is considered closed at both ends
@@ -57,7 +57,7 @@ public class VarIntUtil {
         long v = b & 0x7F;
         for (int shift = 7; (b & 0x80) != 0; shift += 7) {
             b = bb.get();
-            v |= (b & 0x7F) << shift;
+            v |= (long) (b & 0x7F) << shift;
         }
         return v;
     }
@@ -1,6 +1,9 @@
 package org.yamcs.yarch;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 import org.yamcs.logging.Log;
@@ -26,6 +29,9 @@ public abstract class AbstractTableWalker implements TableWalker {
     //by default everything
     private DbRange range = new DbRange();
 
+    // if not null, the iterate runs only in these ranges (sorted ascending by rangeStart) instead of the range above
+    private List<DbRange> ranges;
+
     //// if not null, only includes data from these partitions
     private Set<Object> partitionValueFilter;
     TimeInterval partitionTimeFilter;
@@ -34,6 +40,7 @@ public abstract class AbstractTableWalker implements TableWalker {
     final protected boolean follow;
    
     protected long numRecordsRead = 0;
+    protected boolean bulkRead = false;
   
     volatile protected boolean running = false;
 
@@ -51,6 +58,11 @@ public abstract class AbstractTableWalker implements TableWalker {
         log = new Log(getClass(), ydb.getName());
     }
 
+    @Override
+    public void setBulkRead(boolean bulkRead) {
+        this.bulkRead = bulkRead;
+    }
+
     @Override
     public void walk(TableVisitor visitor) throws StreamSqlException {
         if (visitor == null) {
@@ -63,6 +75,10 @@ public abstract class AbstractTableWalker implements TableWalker {
         try {
             while (isRunning() && partitionIterator.hasNext()) {
                 PartitionManager.Interval interval = partitionIterator.next();
+                if (ranges != null) {
+                    walkRanges(interval, visitor);
+                    continue;
+                }
                 boolean endReached = walkInterval(interval, range, visitor);
                 if (endReached) {
                     break;
@@ -74,7 +90,35 @@ public abstract class AbstractTableWalker implements TableWalker {
     }
 
 
-    private Iterator<PartitionManager.Interval> getIntervalIterator() {
+    /**
+     * Walks the interval in each of the ranges. If the table is partitioned by time on the first column of the primary
+     * key, the ranges outside the interval are skipped.
+     */
+    private void walkRanges(PartitionManager.Interval interval, TableVisitor visitor) throws StreamSqlException {
+        TableColumnDefinition col0 = tableDefinition.getKeyDefinition().get(0);
+        PartitioningSpec pspec = tableDefinition.getPartitioningSpec();
+        boolean timeFiltering = tableDefinition.isPartitionedByTime() && col0.getName().equals(pspec.timeColumn);
+
+        List<DbRange> l = ranges;
+        if (!ascending) {
+            l = new ArrayList<>(ranges);
+            Collections.reverse(l);
+        }
+        for (DbRange r : l) {
+            if (!isRunning()) {
+                break;
+            }
+            if (timeFiltering && r.rangeStart != null) {
+                long t = (Long) col0.getSerializer().fromByteArray(r.rangeStart, col0);
+                if (!interval.contains0(t)) {
+                    continue;
+                }
+            }
+            walkInterval(interval, r, visitor);
+        }
+    }
+
+    protected Iterator<PartitionManager.Interval> getIntervalIterator() {
         PartitionManager partitionManager = ydb.getPartitionManager(tableDefinition);
         Iterator<PartitionManager.Interval> partitionIterator;
 
@@ -94,7 +138,10 @@ public abstract class AbstractTableWalker implements TableWalker {
                 }
             }
         } else {
-            if (ascending) {
+            if ((ascending) && (partitionTimeFilter != null) && partitionTimeFilter.hasStart()) {
+                // skip the time partitions ending before the start
+                partitionIterator = partitionManager.iterator(partitionTimeFilter.getStart(), partitionValueFilter);
+            } else if (ascending) {
                 partitionIterator = partitionManager.iterator(partitionValueFilter);
             } else {
                 partitionIterator = partitionManager.reverseIterator(partitionValueFilter);
@@ -142,7 +189,30 @@ public abstract class AbstractTableWalker implements TableWalker {
         }
         this.range = range;
     }
+
+    @Override
+    public void setPrimaryIndexRanges(List<DbRange> ranges) {
+        if (ranges == null) {
+            throw new NullPointerException();
+        }
+        List<DbRange> l = new ArrayList<>(ranges);
+        l.sort((r1, r2) -> ByteArrayUtils.compare(r1.rangeStart, r2.rangeStart));
+        this.ranges = l;
+    }
     
+    protected DbRange getPrimaryIndexRange() {
+        return range;
+    }
+
+    /**
+     * 
+     * @return the primary key ranges or null if the walker runs in the single range returned by
+     *         {@link #getPrimaryIndexRange()}
+     */
+    protected List<DbRange> getPrimaryIndexRanges() {
+        return ranges;
+    }
+
     /**
      * Runs the data in a time interval (corresponding to a time partition) sending data only that conform with the
      * start and end filters. Returns true if the stop condition is met
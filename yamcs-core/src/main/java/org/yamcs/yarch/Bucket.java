@@ -1,6 +1,11 @@
 package org.yamcs.yarch;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Predicate;
@@ -59,6 +64,16 @@ public interface Bucket {
     void putObject(String objectName, String contentType, Map<String, String> metadata, byte[] objectData)
             throws IOException;
 
+    /**
+     * Stores the object read from the stream. The stream is read until the end but not closed.
+     * <p>
+     * The default implementation reads the full stream in memory.
+     */
+    default void putObject(String objectName, String contentType, Map<String, String> metadata,
+            InputStream objectData) throws IOException {
+        putObject(objectName, contentType, metadata, objectData.readAllBytes());
+    }
+
     /**
      * Retrieve object from the bucket. Returns null if object does not exist.
      * 
@@ -68,6 +83,52 @@ public interface Bucket {
      */
     byte[] getObject(String objectName) throws IOException;
 
+    /**
+     * Returns a stream over the object data or null if the object does not exist.
+     */
+    default InputStream getObjectStream(String objectName) throws IOException {
+        return getObjectStream(objectName, 0, -1);
+    }
+
+    /**
+     * Returns a stream over a range of the object data or null if the object does not exist.
+     * <p>
+     * The default implementation retrieves the full object in memory.
+     * 
+     * @param offset
+     *            offset of the first byte to be returned
+     * @param length
+     *            maximum number of bytes to be returned or -1 to read until the end of the object
+     */
+    default InputStream getObjectStream(String objectName, long offset, long length) throws IOException {
+        byte[] data = getObject(objectName);
+        if (data == null) {
+            return null;
+        }
+        int start = (int) Math.min(offset, data.length);
+        int end = length < 0 ? data.length : (int) Math.min(data.length, offset + length);
+        return new ByteArrayInputStream(data, start, end - start);
+    }
+
+    /**
+     * Writes a range of the object data to the target channel and returns the number of bytes written.
+     * 
+     * @param length
+     *            maximum number of bytes to be transferred or -1 to transfer until the end of the object
+     * @throws IOException
+     *             if the object does not exist or cannot be read
+     */
+    default long transferObject(String objectName, long offset, long length, WritableByteChannel target)
+            throws IOException {
+        try (InputStream is = getObjectStream(objectName, offset, length)) {
+            if (is == null) {
+                throw new IOException("No object by name '" + objectName + "' found");
+            }
+            OutputStream os = Channels.newOutputStream(target);
+            return is.transferTo(os);
+        }
+    }
+
     void deleteObject(String objectName) throws IOException;
 
     /**
@@ -84,4 +84,20 @@ public interface ColumnSerializer<T> {
         return deserialize(ba, cd);
     }
 
+    /**
+     * Read one integral column value (SHORT, INT, LONG or TIMESTAMP) without boxing it.
+     * <p>
+     * The serializers of these types override this method; the default implementation unboxes the deserialized value.
+     */
+    public default long deserializeLong(ByteArray array, ColumnDefinition cd) {
+        return ((Number) deserialize(array, cd)).longValue();
+    }
+
+    /**
+     * Read one DOUBLE column value without boxing it.
+     */
+    public default double deserializeDouble(ByteArray array, ColumnDefinition cd) {
+        return ((Number) deserialize(array, cd)).doubleValue();
+    }
+
 }
@@ -13,6 +13,11 @@ import org.yamcs.utils.ByteArrayUtils;
  */
 public class ColumnSerializerV2 {
     static class ShortColumnSerializer implements ColumnSerializer<Short> {
+        @Override
+        public long deserializeLong(ByteArray byteArray, ColumnDefinition cd) {
+            return byteArray.getShort();
+        }
+
         @Override
         public Short deserialize(ByteArray byteArray, ColumnDefinition cd) {
             return byteArray.getShort();
@@ -35,6 +40,11 @@ public class ColumnSerializerV2 {
     }
 
     static class IntegerColumnSerializer implements ColumnSerializer<Integer> {
+        @Override
+        public long deserializeLong(ByteArray byteArray, ColumnDefinition cd) {
+            return byteArray.getInt();
+        }
+
         @Override
         public Integer deserialize(ByteArray byteArray, ColumnDefinition cd) {
             return byteArray.getInt();
@@ -57,6 +67,11 @@ public class ColumnSerializerV2 {
     }
 
     static class LongColumnSerializer implements ColumnSerializer<Long> {
+        @Override
+        public long deserializeLong(ByteArray byteArray, ColumnDefinition cd) {
+            return byteArray.getLong();
+        }
+
         @Override
         public Long deserialize(ByteArray byteArray, ColumnDefinition cd) {
             return byteArray.getLong();
@@ -133,6 +148,11 @@ public class ColumnSerializerV2 {
         }
     }
     static class DoubleColumnSerializer implements ColumnSerializer<Double> {
+        @Override
+        public double deserializeDouble(ByteArray byteArray, ColumnDefinition cd) {
+            return byteArray.getDouble();
+        }
+
 
         @Override
         public Double deserialize(ByteArray byteArray, ColumnDefinition cd) {
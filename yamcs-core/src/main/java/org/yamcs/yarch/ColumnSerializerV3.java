@@ -24,6 +24,11 @@ public class ColumnSerializerV3 {
     } 
 
     static class ShortColumnSerializer implements ColumnSerializer<Short> {
+        @Override
+        public long deserializeLong(ByteArray byteArray, ColumnDefinition cd) {
+            return invertSign(byteArray.getShort());
+        }
+
         @Override
         public Short deserialize(ByteArray byteArray, ColumnDefinition cd) {
             return invertSign(byteArray.getShort());
@@ -57,6 +62,11 @@ public class ColumnSerializerV3 {
     }
 
     static class IntegerColumnSerializer implements ColumnSerializer<Integer> {
+        @Override
+        public long deserializeLong(ByteArray byteArray, ColumnDefinition cd) {
+            return invertSign(byteArray.getInt());
+        }
+
         @Override
         public Integer deserialize(ByteArray byteArray, ColumnDefinition cd) {
             return invertSign(byteArray.getInt());
@@ -80,6 +90,11 @@ public class ColumnSerializerV3 {
 
     
     static class LongColumnSerializer implements ColumnSerializer<Long> {
+        @Override
+        public long deserializeLong(ByteArray byteArray, ColumnDefinition cd) {
+            return invertSign(byteArray.getLong());
+        }
+
         @Override
         public Long deserialize(ByteArray byteArray, ColumnDefinition cd) {
             return invertSign(byteArray.getLong());
@@ -102,6 +117,11 @@ public class ColumnSerializerV3 {
     }
 
     static class DoubleColumnSerializer implements ColumnSerializer<Double> {
+        @Override
+        public double deserializeDouble(ByteArray byteArray, ColumnDefinition cd) {
+            return longToDouble(byteArray.getLong());
+        }
+
         static long doubleToLong(double x) {
             long v = Double.doubleToLongBits(x);
             
@@ -1,12 +1,20 @@
 package org.yamcs.yarch;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileVisitOption;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -23,6 +31,8 @@ import org.yamcs.yarch.rocksdb.protobuf.Tablespace.BucketProperties;
 import org.yamcs.yarch.rocksdb.protobuf.Tablespace.ObjectProperties;
 import org.yamcs.yarch.rocksdb.protobuf.Tablespace.ObjectPropertiesOrBuilder;
 
+import com.google.common.io.ByteStreams;
+
 public class FileSystemBucket implements Bucket {
 
     private static final long DEFAULT_MAX_SIZE = 100L * 1024 * 1024; // 100MB
@@ -140,6 +150,16 @@ public class FileSystemBucket implements Bucket {
     @Override
     public void putObject(String objectName, String contentType, Map<String, String> metadata, byte[] objectData)
             throws IOException {
+        putObject(objectName, contentType, metadata, new ByteArrayInputStream(objectData));
+    }
+
+    /**
+     * The data is first copied into a hidden temporary file in the target directory which is then moved in place of
+     * the object, such that the readers never see a partial object.
+     */
+    @Override
+    public void putObject(String objectName, String contentType, Map<String, String> metadata, InputStream objectData)
+            throws IOException {
         // TODO: do something with metadata
 
         Path path = resolvePath(objectName);
@@ -168,11 +188,6 @@ public class FileSystemBucket implements Bucket {
                 }
             });
 
-            long newSize = size.get() + objectData.length;
-            if (newSize > maxSize) {
-                throw new IOException("Maximum bucket size " + maxSize + " exceeded");
-            }
-
             int newCount = count.get() + 1;
             if (newCount > maxObjects) {
                 throw new IOException(
@@ -182,7 +197,21 @@ public class FileSystemBucket implements Bucket {
             if (!Files.exists(path.getParent())) { // Check to avoid error when the parent is a symlink
                 Files.createDirectories(path.getParent());
             }
-            Files.write(path, objectData);
+            Path tmpPath = Files.createTempFile(path.getParent(), "." + path.getFileName(), ".part");
+            try {
+                // read one byte more than allowed to detect when the limit is exceeded
+                long maxObjectSize = maxSize - size.get();
+                long n;
+                try (OutputStream os = Files.newOutputStream(tmpPath)) {
+                    n = ByteStreams.limit(objectData, maxObjectSize + 1).transferTo(os);
+                }
+                if (n > maxObjectSize) {
+                    throw new IOException("Maximum bucket size " + maxSize + " exceeded");
+                }
+                Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmpPath);
+            }
         }
     }
 
@@ -196,6 +225,43 @@ public class FileSystemBucket implements Bucket {
         }
     }
 
+    @Override
+    public InputStream getObjectStream(String objectName, long offset, long length) throws IOException {
+        Path path = resolvePath(objectName);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        FileChannel fc = FileChannel.open(path, StandardOpenOption.READ);
+        fc.position(offset);
+        InputStream is = Channels.newInputStream(fc);
+        return length < 0 ? is : ByteStreams.limit(is, length);
+    }
+
+    /**
+     * Uses {@link FileChannel#transferTo(long, long, WritableByteChannel)} such that the data can be copied by the
+     * operating system directly from the file to the target (e.g. a socket) without passing through the user space.
+     */
+    @Override
+    public long transferObject(String objectName, long offset, long length, WritableByteChannel target)
+            throws IOException {
+        Path path = resolvePath(objectName);
+        if (!Files.isRegularFile(path)) {
+            throw new IOException("No object by name '" + objectName + "' found");
+        }
+        try (FileChannel fc = FileChannel.open(path, StandardOpenOption.READ)) {
+            long end = length < 0 ? fc.size() : Math.min(fc.size(), offset + length);
+            long pos = offset;
+            while (pos < end) {
+                long n = fc.transferTo(pos, end - pos, target);
+                if (n <= 0) {
+                    break;
+                }
+                pos += n;
+            }
+            return Math.max(0, pos - offset);
+        }
+    }
+
     @Override
     public void deleteObject(String objectName) throws IOException {
         Path path = resolvePath(objectName);
@@ -0,0 +1,107 @@
+package org.yamcs.yarch;
+
+import org.yamcs.utils.TimeInterval;
+
+/**
+ * Time resolution of the histogram segments.
+ * <p>
+ * The {@link #HOUR} level is made of the {@link HistogramSegment}s built from the individual tuples. The coarser levels
+ * are roll-ups ({@link HistogramRollupSegment}) in which the records closer than {@link #getMergeGap()} are merged,
+ * such that a long time range can be read with few segments. They are stored together with the hour segments, the
+ * level being encoded in the most significant byte of the segment start.
+ */
+public enum HistogramLevel {
+    HOUR(0, HistogramSegment.GROUPING_FACTOR, 0),
+    DAY(1, 24 * 3600 * 1000L, 60_000),
+    MONTH(2, 30 * 24 * 3600 * 1000L, 3600_000);
+
+    /**
+     * The levels maintained as roll-ups of the hour segments, from the finest to the coarsest
+     */
+    public static final HistogramLevel[] ROLLUP_LEVELS = { DAY, MONTH };
+
+    /**
+     * The roll-ups are used only if the requested time range covers at least this number of segments of that level
+     */
+    static final int MIN_SEGMENTS = 2;
+
+    final long keyBase;
+    final long segmentDuration;
+    final long mergeGap;
+
+    HistogramLevel(int id, long segmentDuration, long mergeGap) {
+        this.keyBase = ((long) id) << 56;
+        this.segmentDuration = segmentDuration;
+        this.mergeGap = mergeGap;
+    }
+
+    /**
+     * @return the duration in milliseconds of one segment
+     */
+    public long getSegmentDuration() {
+        return segmentDuration;
+    }
+
+    /**
+     * @return the records of the same value separated by less than this number of milliseconds are merged into one
+     *         record
+     */
+    public long getMergeGap() {
+        return mergeGap;
+    }
+
+    /**
+     * @return the segment start corresponding to the instant, in units of segment duration
+     */
+    public long segmentStart(long instant) {
+        return instant / segmentDuration;
+    }
+
+    /**
+     * @return the segment start as used in the database key: the segment start with the level encoded in the most
+     *         significant byte
+     */
+    public long keySstart(long sstart) {
+        return keyBase | sstart;
+    }
+
+    /**
+     * @return the highest key segment start of this level
+     */
+    public long maxKeySstart() {
+        return keyBase | 0x00FF_FFFF_FFFF_FFFFL;
+    }
+
+    /**
+     * @return the segment start (without the level) from the key segment start
+     */
+    public long sstart(long keySstart) {
+        return keySstart & 0x00FF_FFFF_FFFF_FFFFL;
+    }
+
+    /**
+     * Selects the coarsest level which can be used to retrieve the histogram for the interval, when the records closer
+     * than mergeTime may be merged.
+     * <p>
+     * A roll-up level is selected if its merge gap is not greater than mergeTime and if the interval covers at least
+     * {@value #MIN_SEGMENTS} of its segments (an interval open at one end covers all of them).
+     *
+     * @param mergeTime
+     *            the maximum gap in milliseconds between two records which can be merged; zero or negative means no
+     *            merging.
+     */
+    public static HistogramLevel select(TimeInterval interval, long mergeTime) {
+        HistogramLevel level = HOUR;
+        for (HistogramLevel l : ROLLUP_LEVELS) {
+            if (l.mergeGap > mergeTime) {
+                break;
+            }
+            if (interval.hasStart() && interval.hasEnd()
+                    && interval.getEnd() - interval.getStart() < MIN_SEGMENTS * l.segmentDuration) {
+                break;
+            }
+            level = l;
+        }
+        return level;
+    }
+}
@@ -0,0 +1,133 @@
+package org.yamcs.yarch;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import org.yamcs.utils.StringConverter;
+
+/**
+ * Segment of a roll-up histogram level ({@link HistogramLevel#DAY}, {@link HistogramLevel#MONTH}).
+ * <p>
+ * Keeps the records of one column value in a segment of the level. Contrary to the {@link HistogramSegment}, the
+ * records are not split according to the packet rate; two records are merged as soon as the gap between them is
+ * smaller than the merge gap of the level.
+ * <p>
+ * The records are serialized on {@value #REC_SIZE} bytes: the start and stop as unsigned 4 bytes deltas from the
+ * segment start (a month segment is longer than the positive int range) and the number of tuples on 4 bytes.
+ */
+public class HistogramRollupSegment {
+    static final int REC_SIZE = 12;
+
+    final HistogramLevel level;
+    final byte[] columnv;
+    final long sstart;
+    final ArrayList<Rec> recs = new ArrayList<>();
+
+    /**
+     * Constructs an empty segment
+     */
+    public HistogramRollupSegment(HistogramLevel level, byte[] columnv, long sstart) {
+        this.level = level;
+        this.columnv = columnv;
+        this.sstart = sstart;
+    }
+
+    /**
+     * Constructs a segment from its serialized value
+     */
+    public HistogramRollupSegment(HistogramLevel level, byte[] columnv, long sstart, byte[] val) {
+        this(level, columnv, sstart);
+        ByteBuffer v = ByteBuffer.wrap(val);
+        while (v.hasRemaining()) {
+            recs.add(new Rec(Integer.toUnsignedLong(v.getInt()), Integer.toUnsignedLong(v.getInt()), v.getInt()));
+        }
+    }
+
+    /**
+     * Adds one tuple to the segment.
+     *
+     * @param dtime
+     *            delta time from the segment start in milliseconds
+     */
+    public void add(long dtime) {
+        long gap = level.getMergeGap();
+        // binary search for the first record ending at or after dtime
+        int lo = 0, hi = recs.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (recs.get(mid).dstop < dtime) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int i = lo;
+        Rec left = i > 0 ? recs.get(i - 1) : null;
+        Rec right = i < recs.size() ? recs.get(i) : null;
+
+        if (right != null && right.dstart <= dtime) { // inside right
+            right.num++;
+            return;
+        }
+        boolean mergeLeft = left != null && dtime - left.dstop < gap;
+        boolean mergeRight = right != null && right.dstart - dtime < gap;
+
+        if (mergeLeft && mergeRight) {
+            left.dstop = right.dstop;
+            left.num += right.num + 1;
+            recs.remove(i);
+        } else if (mergeLeft) {
+            left.dstop = dtime;
+            left.num++;
+        } else if (mergeRight) {
+            right.dstart = dtime;
+            right.num++;
+        } else {
+            recs.add(i, new Rec(dtime, dtime, 1));
+        }
+    }
+
+    public byte[] val() {
+        ByteBuffer bbv = ByteBuffer.allocate(REC_SIZE * recs.size());
+        for (Rec r : recs) {
+            bbv.putInt((int) r.dstart);
+            bbv.putInt((int) r.dstop);
+            bbv.putInt(r.num);
+        }
+        return bbv.array();
+    }
+
+    public int size() {
+        return recs.size();
+    }
+
+    public long getSegmentStart() {
+        return sstart;
+    }
+
+    public HistogramLevel getLevel() {
+        return level;
+    }
+
+    @Override
+    public String toString() {
+        return "level: " + level + ", start: " + sstart + ", columnv: " + StringConverter.arrayToHexString(columnv)
+                + " recs:" + recs;
+    }
+
+    static class Rec {
+        long dstart, dstop; // deltas from the segment start in milliseconds
+        int num;
+
+        Rec(long dstart, long dstop, int num) {
+            this.dstart = dstart;
+            this.dstop = dstop;
+            this.num = num;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("time:(%d,%d), num: %d", dstart, dstop, num);
+        }
+    }
+}
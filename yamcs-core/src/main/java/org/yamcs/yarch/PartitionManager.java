@@ -225,6 +225,21 @@ public abstract class PartitionManager {
         return createAndGetPartition(time, value);
     }
 
+    /**
+     * Removes the time intervals (with all their partitions and histograms) which end before or at the given time.
+     * <p>
+     * Only the time partitioned tables have bounded intervals; for the other tables nothing is removed.
+     * 
+     * @return the removed intervals
+     */
+    public synchronized List<Interval> removeIntervalsBefore(long instant) {
+        List<Interval> removed = intervals.removeIf(intv -> intv.hasEnd() && intv.getEnd() <= instant);
+        if (removed.contains(pcache)) {
+            pcache = null;
+        }
+        return removed;
+    }
+
     /**
      * Get the name of the table whose partitions are managed by this object.
      * 
@@ -0,0 +1,117 @@
+package org.yamcs.yarch;
+
+import java.util.List;
+
+/**
+ * A block of rows stored by column: the integral and double columns are stored in primitive vectors and the other
+ * columns in object vectors.
+ * <p>
+ * Used by the vectorized execution of the aggregate queries, see {@link VectorizedAggregateStream}.
+ */
+public class RowBlock {
+    public enum VectorType {
+        /**
+         * SHORT, INT, LONG and TIMESTAMP columns
+         */
+        LONG,
+        DOUBLE,
+        OBJECT
+    }
+
+    final ColumnDefinition[] columns;
+    final VectorType[] types;
+    final long[][] longs;
+    final double[][] doubles;
+    final Object[][] objects;
+    final boolean[][] nulls;
+    int size;
+
+    public RowBlock(List<? extends ColumnDefinition> columns, int capacity) {
+        int n = columns.size();
+        this.columns = columns.toArray(new ColumnDefinition[n]);
+        types = new VectorType[n];
+        longs = new long[n][];
+        doubles = new double[n][];
+        objects = new Object[n][];
+        nulls = new boolean[n][capacity];
+        for (int i = 0; i < n; i++) {
+            types[i] = vectorType(this.columns[i].getType());
+            switch (types[i]) {
+            case LONG:
+                longs[i] = new long[capacity];
+                break;
+            case DOUBLE:
+                doubles[i] = new double[capacity];
+                break;
+            default:
+                objects[i] = new Object[capacity];
+            }
+        }
+    }
+
+    public static VectorType vectorType(DataType dt) {
+        if (dt == DataType.SHORT || dt == DataType.INT || dt == DataType.LONG || dt == DataType.TIMESTAMP) {
+            return VectorType.LONG;
+        } else if (dt == DataType.DOUBLE) {
+            return VectorType.DOUBLE;
+        } else {
+            return VectorType.OBJECT;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    public ColumnDefinition getColumnDefinition(int col) {
+        return columns[col];
+    }
+
+    public VectorType getType(int col) {
+        return types[col];
+    }
+
+    public boolean isNull(int col, int row) {
+        return nulls[col][row];
+    }
+
+    public long getLong(int col, int row) {
+        return longs[col][row];
+    }
+
+    public double getDouble(int col, int row) {
+        return doubles[col][row];
+    }
+
+    /**
+     * Returns the value of the row boxed in the type of the column (e.g. Integer for INT columns) or null if the value
+     * is null.
+     */
+    public Object getValue(int col, int row) {
+        if (nulls[col][row]) {
+            return null;
+        }
+        switch (types[col]) {
+        case LONG:
+            return box(columns[col].getType(), longs[col][row]);
+        case DOUBLE:
+            return doubles[col][row];
+        default:
+            return objects[col][row];
+        }
+    }
+
+    static Object box(DataType dt, long v) {
+        if (dt == DataType.SHORT) {
+            return (short) v;
+        } else if (dt == DataType.INT) {
+            return (int) v;
+        } else {
+            return v;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package org.yamcs.yarch;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.yamcs.utils.ByteArray;
+import org.yamcs.utils.DatabaseCorruptionException;
+import org.yamcs.utils.StringConverter;
+
+/**
+ * Decodes the serialized table rows into a {@link RowBlock}.
+ * <p>
+ * Only the columns of the block are decoded; the integral and double columns are decoded without boxing. The
+ * serialization format is the one of {@link TableDefinition#deserialize(byte[], byte[])}.
+ */
+class RowBlockDecoder {
+    final TableDefinition tableDefinition;
+    final List<TableColumnDefinition> keyDef;
+    final List<TableColumnDefinition> valueDef;
+
+    // for each key and value column, the index of the column in the block or -1 if not part of the block
+    final int[] keyIdx;
+    final int[] valueIdx;
+    // the number of key columns to decode
+    final int keyCount;
+    // block indices of the value columns
+    final int[] valueColumns;
+
+    RowBlockDecoder(TableDefinition tableDefinition, RowBlock block) {
+        this.tableDefinition = tableDefinition;
+        this.keyDef = tableDefinition.getKeyDefinition();
+        this.valueDef = tableDefinition.getValueDefinition();
+        keyIdx = new int[keyDef.size()];
+        valueIdx = new int[valueDef.size()];
+
+        int kc = 0;
+        for (int i = 0; i < keyIdx.length; i++) {
+            keyIdx[i] = indexOf(block, keyDef.get(i).getName());
+            if (keyIdx[i] >= 0) {
+                kc = i + 1;
+            }
+        }
+        keyCount = kc;
+
+        int vc = 0;
+        for (int i = 0; i < valueIdx.length; i++) {
+            valueIdx[i] = indexOf(block, valueDef.get(i).getName());
+            if (valueIdx[i] >= 0) {
+                vc++;
+            }
+        }
+        valueColumns = new int[vc];
+        vc = 0;
+        for (int i = 0; i < valueIdx.length; i++) {
+            if (valueIdx[i] >= 0) {
+                valueColumns[vc++] = valueIdx[i];
+            }
+        }
+    }
+
+    private static int indexOf(RowBlock block, String name) {
+        for (int i = 0; i < block.columns.length; i++) {
+            if (block.columns[i].getName().equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes n rows into the block, replacing its content.
+     */
+    void decode(byte[][] keys, byte[][] values, int n, RowBlock block) {
+        for (int r = 0; r < n; r++) {
+            try {
+                decodeKey(keys[r], r, block);
+                if (valueColumns.length > 0) {
+                    decodeValue(values[r], r, block);
+                }
+            } catch (IOException | RuntimeException e) {
+                throw new DatabaseCorruptionException("Cannot deserialize row from " + tableDefinition.getName()
+                        + " (key:" + StringConverter.byteBufferToHexString(ByteBuffer.wrap(keys[r]))
+                        + ", value: " + StringConverter.byteBufferToHexString(ByteBuffer.wrap(values[r])) + ")", e);
+            }
+        }
+        block.size = n;
+    }
+
+    private void decodeKey(byte[] k, int r, RowBlock block) throws IOException {
+        ByteArray byteArray = ByteArray.wrap(k);
+        for (int i = 0; i < keyCount; i++) {
+            TableColumnDefinition tcd = keyDef.get(i);
+            int c = keyIdx[i];
+            if (c < 0) {
+                tcd.deserializeValue(byteArray);
+            } else {
+                decodeColumn(byteArray, tcd, c, r, block);
+            }
+        }
+    }
+
+    private void decodeValue(byte[] v, int r, RowBlock block) throws IOException {
+        for (int c : valueColumns) {
+            block.nulls[c][r] = true;
+        }
+        ByteArray byteArray = ByteArray.wrap(v);
+        while (true) {
+            int cidx = byteArray.getInt(); // column index
+            if (cidx == -1) {
+                break;
+            }
+            byte dt = (byte) (cidx >>> 24);
+            cidx &= 0xFFFFFF;
+            if (cidx >= valueDef.size()) {
+                throw new DatabaseCorruptionException("Reference to index " + cidx + " found in table"
+                        + tableDefinition.getName() + " but the table definition does not have this column");
+            }
+            TableColumnDefinition tcd = valueDef.get(cidx);
+            if (tableDefinition.getFormatVersion() >= 3 && tcd.getType().getTypeId() != dt) {
+                throw new DatabaseCorruptionException(String.format(
+                        "Data type for table %s, column %s (id: %d) does not match the data read: expected %d, read: %d",
+                        tableDefinition.getName(), tcd.getName(), cidx, tcd.getType().getTypeId(), dt));
+            }
+            int c = valueIdx[cidx];
+            if (c < 0) {
+                tcd.deserializeValue(byteArray);
+            } else {
+                decodeColumn(byteArray, tcd, c, r, block);
+            }
+        }
+    }
+
+    private static void decodeColumn(ByteArray byteArray, TableColumnDefinition tcd, int c, int r, RowBlock block)
+            throws IOException {
+        block.nulls[c][r] = false;
+        switch (block.types[c]) {
+        case LONG:
+            block.longs[c][r] = tcd.getSerializer().deserializeLong(byteArray, tcd);
+            break;
+        case DOUBLE:
+            block.doubles[c][r] = tcd.getSerializer().deserializeDouble(byteArray, tcd);
+            break;
+        default:
+            block.objects[c][r] = tcd.deserializeValue(byteArray);
+        }
+    }
+}
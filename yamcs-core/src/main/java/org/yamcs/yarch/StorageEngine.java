@@ -76,6 +76,21 @@ public interface StorageEngine {
     public HistogramIterator getHistogramIterator(YarchDatabaseInstance ydb, TableDefinition tblDef, String columnName,
             TimeInterval interval) throws YarchException;
 
+    /**
+     * Returns a histogram iterator whose records may be coarser than the ones returned by
+     * {@link #getHistogramIterator(YarchDatabaseInstance, TableDefinition, String, TimeInterval)}: the records
+     * separated by less than mergeTime milliseconds may be merged together.
+     * <p>
+     * This allows the storage engine to read a long time interval from a coarser {@link HistogramLevel}.
+     * 
+     * @param mergeTime
+     *            maximum gap between the records which can be merged; zero or negative for no merging
+     */
+    public default HistogramIterator getHistogramIterator(YarchDatabaseInstance ydb, TableDefinition tblDef,
+            String columnName, TimeInterval interval, long mergeTime) throws YarchException {
+        return getHistogramIterator(ydb, tblDef, columnName, interval);
+    }
+
     public BucketDatabase getBucketDatabase(YarchDatabaseInstance yarchDatabaseInstance) throws YarchException;
 
     public ProtobufDatabase getProtobufDatabase(YarchDatabaseInstance ydb) throws YarchException;
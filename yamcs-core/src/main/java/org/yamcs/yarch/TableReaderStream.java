@@ -1,31 +1,58 @@
 package org.yamcs.yarch;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Implements skeleton for table streamer that uses PartitionManager to handle partitioning.
- * 
+ * <p>
+ * If the read-ahead queue size is greater than 0, the stream works in pipelined mode: one thread iterates through the
+ * table and deserializes the rows into tuples and another thread emits them to the subscribers. At most the queue size
+ * tuples are kept in between; the reading thread is blocked when the queue is full.
  * 
  * @author nm
  *
  */
 public class TableReaderStream extends Stream implements Runnable, TableVisitor {
     static AtomicInteger count = new AtomicInteger(0);
+    // put in the read-ahead queue after the last tuple
+    static final Object END_SIGNAL = new Object();
+
     TableWalker tblIterator;
     
     protected TableDefinition tableDefinition;;
     Thread thread;
-    
+    Thread emitterThread;
+    final BlockingQueue<Object> readAheadQueue;
+
     public TableReaderStream(YarchDatabaseInstance ydb, TableDefinition tblDef, TableWalker iterator) {
+        this(ydb, tblDef, iterator, 0);
+    }
+
+    /**
+     * 
+     * @param readAheadQueueSize
+     *            if greater than 0, the rows are read and deserialized by a different thread than the one emitting them,
+     *            keeping at most this number of tuples in between.
+     */
+    public TableReaderStream(YarchDatabaseInstance ydb, TableDefinition tblDef, TableWalker iterator,
+            int readAheadQueueSize) {
        super(ydb, tblDef.getName() + "_" + count.getAndIncrement(),
                tblDef.getTupleDefinition());
        this.tblIterator = iterator;
        this.tableDefinition = tblDef;
+       this.readAheadQueue = readAheadQueueSize > 0 ? new ArrayBlockingQueue<>(readAheadQueueSize) : null;
     }
   
     @Override
     public void doStart() {
         thread = new Thread(this, "RdbTableReaderStream[" + getName() + "]");
+        if (readAheadQueue != null) {
+            emitterThread = new Thread(this::emitQueued, "RdbTableReaderStream[" + getName() + "]-emitter");
+            emitterThread.start();
+        }
         thread.start();
     }
 
@@ -37,15 +64,60 @@ public class TableReaderStream extends Stream implements Runnable, TableVisitor
         } catch (Exception e) {
             log.error("got exception ", e);
         } finally {
-            close();
+            if (readAheadQueue == null) {
+                close();
+            } else {
+                // the emitter thread closes the stream after emitting the tuples still in the queue
+                enqueue(END_SIGNAL);
+            }
         }
     }
 
-
     @Override
     public Action visit(byte[] key, byte[] value) {
-        emitTuple(dataToTuple(key, value));
-        return ACTION_CONTINUE;
+        if (readAheadQueue == null) {
+            emitTuple(dataToTuple(key, value));
+            return ACTION_CONTINUE;
+        } else {
+            return enqueue(dataToTuple(key, value)) ? ACTION_CONTINUE : ACTION_STOP;
+        }
+    }
+
+    /**
+     * blocks until there is space in the read-ahead queue or the stream is closed
+     * 
+     * @return false if the stream has been closed
+     */
+    private boolean enqueue(Object o) {
+        try {
+            while (!quitting()) {
+                if (readAheadQueue.offer(o, 1, TimeUnit.SECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    private void emitQueued() {
+        try {
+            while (!quitting()) {
+                Object o = readAheadQueue.poll(1, TimeUnit.SECONDS);
+                if (o == END_SIGNAL) {
+                    break;
+                } else if (o != null) {
+                    emitTuple((Tuple) o);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("got exception ", e);
+        } finally {
+            close();
+        }
     }
 
 
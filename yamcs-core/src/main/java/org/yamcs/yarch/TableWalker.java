@@ -1,5 +1,6 @@
 package org.yamcs.yarch;
 
+import java.util.List;
 import java.util.Set;
 
 import org.yamcs.utils.TimeInterval;
@@ -19,10 +20,24 @@ public interface TableWalker {
 
     void setPrimaryIndexRange(DbRange tableRange);
 
+    /**
+     * Restricts the walk to the union of the given ranges; it replaces the range set with
+     * {@link #setPrimaryIndexRange(DbRange)}. The ranges should not overlap.
+     */
+    void setPrimaryIndexRanges(List<DbRange> ranges);
+
     default void setSecondaryIndexRange(DbRange skRange) {
         throw new UnsupportedOperationException();
     }
     
+    /**
+     * Indicates that the walk is part of a large sequential read (e.g. a stream reading the table for a replay or an
+     * export). The implementation may use read options optimized for that, for example a larger read-ahead and not
+     * filling the block cache.
+     */
+    default void setBulkRead(boolean bulkRead) {
+    }
+
     void walk(TableVisitor visitor) throws YarchException, StreamSqlException;
 
     void close();
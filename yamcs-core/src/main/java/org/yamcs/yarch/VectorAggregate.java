@@ -0,0 +1,148 @@
+package org.yamcs.yarch;
+
+import org.yamcs.yarch.RowBlock.VectorType;
+
+/**
+ * Aggregate function computed on blocks of rows, the vectorized equivalent of {@link CompiledAggregateExpression}.
+ */
+public interface VectorAggregate {
+
+    /**
+     * Adds to the aggregate the rows of the block whose indices are given by the first n elements of the selection
+     * vector.
+     */
+    void aggregate(RowBlock block, int[] sel, int n);
+
+    Object getValue();
+
+    /**
+     * count(*) or count(x): counts all the rows
+     */
+    static VectorAggregate count() {
+        return new Count();
+    }
+
+    /**
+     * sum(x) where x is the column col of the block. The null values are skipped.
+     *
+     * @return the aggregate or null if the column cannot be summed in a vector
+     */
+    static VectorAggregate sum(int col, DataType type) {
+        VectorType vt = RowBlock.vectorType(type);
+        if (vt == VectorType.LONG) {
+            return new LongSum(col, type);
+        } else if (vt == VectorType.DOUBLE) {
+            return new DoubleSum(col);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * first_val(x) where x is the column col of the block: the first non-null value
+     */
+    static VectorAggregate firstVal(int col) {
+        return new FirstVal(col);
+    }
+
+    static class Count implements VectorAggregate {
+        long count;
+
+        @Override
+        public void aggregate(RowBlock block, int[] sel, int n) {
+            count += n;
+        }
+
+        @Override
+        public Object getValue() {
+            return count;
+        }
+    }
+
+    static class LongSum implements VectorAggregate {
+        final int col;
+        final DataType type;
+        long sum;
+
+        LongSum(int col, DataType type) {
+            this.col = col;
+            this.type = type;
+        }
+
+        @Override
+        public void aggregate(RowBlock block, int[] sel, int n) {
+            long[] v = block.longs[col];
+            boolean[] nulls = block.nulls[col];
+            long s = 0;
+            for (int i = 0; i < n; i++) {
+                int r = sel[i];
+                if (!nulls[r]) {
+                    s += v[r];
+                }
+            }
+            sum += s;
+        }
+
+        @Override
+        public Object getValue() {
+            // the sum has the type of the column, same as the compiled aggregate
+            return RowBlock.box(type, sum);
+        }
+    }
+
+    static class DoubleSum implements VectorAggregate {
+        final int col;
+        double sum;
+
+        DoubleSum(int col) {
+            this.col = col;
+        }
+
+        @Override
+        public void aggregate(RowBlock block, int[] sel, int n) {
+            double[] v = block.doubles[col];
+            boolean[] nulls = block.nulls[col];
+            double s = sum;
+            for (int i = 0; i < n; i++) {
+                int r = sel[i];
+                if (!nulls[r]) {
+                    s += v[r];
+                }
+            }
+            sum = s;
+        }
+
+        @Override
+        public Object getValue() {
+            return sum;
+        }
+    }
+
+    static class FirstVal implements VectorAggregate {
+        final int col;
+        Object value;
+
+        FirstVal(int col) {
+            this.col = col;
+        }
+
+        @Override
+        public void aggregate(RowBlock block, int[] sel, int n) {
+            if (value != null) {
+                return;
+            }
+            for (int i = 0; i < n; i++) {
+                Object v = block.getValue(col, sel[i]);
+                if (v != null) {
+                    value = v;
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public Object getValue() {
+            return value;
+        }
+    }
+}
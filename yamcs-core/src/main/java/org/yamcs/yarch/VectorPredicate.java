@@ -0,0 +1,275 @@
+package org.yamcs.yarch;
+
+import java.util.Set;
+
+import org.yamcs.yarch.RowBlock.VectorType;
+import org.yamcs.yarch.streamsql.RelOp;
+import org.yamcs.yarch.utils.SqlExpressions;
+
+/**
+ * Filter evaluated on a block of rows.
+ * <p>
+ * The rows are given by a selection vector containing the indices of the rows in the block which passed the previous
+ * filters. The filter compacts the selection vector such that it contains only the rows that also pass this filter.
+ * <p>
+ * The results are the same as the ones of the compiled where clause: a comparison with a null value is null and the
+ * rows for which the filter is null are discarded.
+ */
+public interface VectorPredicate {
+
+    /**
+     * Filters the first n rows of the selection vector.
+     *
+     * @return the number of rows passing the filter, now at the beginning of the selection vector
+     */
+    int filter(RowBlock block, int[] sel, int n);
+
+    /**
+     * Creates a predicate comparing the column col of the block with a constant value.
+     *
+     * @return the predicate or null if the comparison cannot be vectorized.
+     */
+    static VectorPredicate compare(int col, DataType colType, RelOp relOp, Object value) {
+        if (value == null || relOp == RelOp.OVERLAP || !colType.isComparable()) {
+            return null;
+        }
+        VectorType vt = RowBlock.vectorType(colType);
+        if (vt == VectorType.LONG) {
+            if (!(value instanceof Number)) {
+                return null;
+            }
+            // the column values are never floating point so the comparison is done on long values
+            return new LongCompare(col, relOp, ((Number) value).longValue());
+        } else if (vt == VectorType.DOUBLE) {
+            if (!(value instanceof Number)) {
+                return null;
+            }
+            return new DoubleCompare(col, relOp, (Number) value);
+        } else {
+            return new ObjectCompare(col, relOp, value);
+        }
+    }
+
+    /**
+     * Creates a predicate checking if the column col of the block is in (or not in if negation is true) the set of
+     * values.
+     *
+     * @return the predicate or null if the check cannot be vectorized.
+     */
+    static VectorPredicate in(int col, DataType colType, boolean negation, Set<Object> values) {
+        // the values are compared with equals so the boxed type of the column has to be kept
+        if (RowBlock.vectorType(colType) != VectorType.OBJECT) {
+            return null;
+        }
+        return new In(col, negation, values);
+    }
+
+    static class LongCompare implements VectorPredicate {
+        final int col;
+        final RelOp relOp;
+        final long value;
+
+        LongCompare(int col, RelOp relOp, long value) {
+            this.col = col;
+            this.relOp = relOp;
+            this.value = value;
+        }
+
+        @Override
+        public int filter(RowBlock block, int[] sel, int n) {
+            long[] v = block.longs[col];
+            boolean[] nulls = block.nulls[col];
+            long c = value;
+            int k = 0;
+            switch (relOp) {
+            case EQUAL:
+                for (int i = 0; i < n; i++) {
+                    int r = sel[i];
+                    if (!nulls[r] && v[r] == c) {
+                        sel[k++] = r;
+                    }
+                }
+                break;
+            case NOT_EQUAL:
+                for (int i = 0; i < n; i++) {
+                    int r = sel[i];
+                    if (!nulls[r] && v[r] != c) {
+                        sel[k++] = r;
+                    }
+                }
+                break;
+            case GREATER:
+                for (int i = 0; i < n; i++) {
+                    int r = sel[i];
+                    if (!nulls[r] && v[r] > c) {
+                        sel[k++] = r;
+                    }
+                }
+                break;
+            case GREATER_OR_EQUAL:
+                for (int i = 0; i < n; i++) {
+                    int r = sel[i];
+                    if (!nulls[r] && v[r] >= c) {
+                        sel[k++] = r;
+                    }
+                }
+                break;
+            case LESS:
+                for (int i = 0; i < n; i++) {
+                    int r = sel[i];
+                    if (!nulls[r] && v[r] < c) {
+                        sel[k++] = r;
+                    }
+                }
+                break;
+            case LESS_OR_EQUAL:
+                for (int i = 0; i < n; i++) {
+                    int r = sel[i];
+                    if (!nulls[r] && v[r] <= c) {
+                        sel[k++] = r;
+                    }
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unexpected operator " + relOp);
+            }
+            return k;
+        }
+    }
+
+    static class DoubleCompare implements VectorPredicate {
+        final int col;
+        final RelOp relOp;
+        final double value;
+        final long longValue;
+        // the compiled expressions compare a floating point value with an integral value as long values
+        final boolean integral;
+
+        DoubleCompare(int col, RelOp relOp, Number value) {
+            this.col = col;
+            this.relOp = relOp;
+            this.value = value.doubleValue();
+            this.longValue = value.longValue();
+            this.integral = !(value instanceof Double || value instanceof Float);
+        }
+
+        @Override
+        public int filter(RowBlock block, int[] sel, int n) {
+            double[] v = block.doubles[col];
+            boolean[] nulls = block.nulls[col];
+            int k = 0;
+            for (int i = 0; i < n; i++) {
+                int r = sel[i];
+                if (nulls[r]) {
+                    continue;
+                }
+                // Double.compare is used by the compiled expressions, it differs from the operators for NaN and -0.0
+                int cmp = integral ? Long.compare((long) v[r], longValue) : Double.compare(v[r], value);
+                if (test(cmp)) {
+                    sel[k++] = r;
+                }
+            }
+            return k;
+        }
+
+        private boolean test(int cmp) {
+            switch (relOp) {
+            case EQUAL:
+                return cmp == 0;
+            case NOT_EQUAL:
+                return cmp != 0;
+            case GREATER:
+                return cmp > 0;
+            case GREATER_OR_EQUAL:
+                return cmp >= 0;
+            case LESS:
+                return cmp < 0;
+            case LESS_OR_EQUAL:
+                return cmp <= 0;
+            default:
+                throw new IllegalStateException("Unexpected operator " + relOp);
+            }
+        }
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    static class ObjectCompare implements VectorPredicate {
+        final int col;
+        final RelOp relOp;
+        final Comparable value;
+
+        ObjectCompare(int col, RelOp relOp, Object value) {
+            this.col = col;
+            this.relOp = relOp;
+            this.value = (Comparable) value;
+        }
+
+        @Override
+        public int filter(RowBlock block, int[] sel, int n) {
+            Object[] v = block.objects[col];
+            boolean[] nulls = block.nulls[col];
+            int k = 0;
+            for (int i = 0; i < n; i++) {
+                int r = sel[i];
+                if (!nulls[r] && test((Comparable) v[r])) {
+                    sel[k++] = r;
+                }
+            }
+            return k;
+        }
+
+        private boolean test(Comparable x) {
+            Object res;
+            switch (relOp) {
+            case EQUAL:
+                res = SqlExpressions.EQUAL(x, value);
+                break;
+            case NOT_EQUAL:
+                res = SqlExpressions.NOT_EQUAL(x, value);
+                break;
+            case GREATER:
+                res = SqlExpressions.GREATER(x, value);
+                break;
+            case GREATER_OR_EQUAL:
+                res = SqlExpressions.GREATER_OR_EQUAL(x, value);
+                break;
+            case LESS:
+                res = SqlExpressions.LESS(x, value);
+                break;
+            case LESS_OR_EQUAL:
+                res = SqlExpressions.LESS_OR_EQUAL(x, value);
+                break;
+            default:
+                throw new IllegalStateException("Unexpected operator " + relOp);
+            }
+            return Boolean.TRUE.equals(res);
+        }
+    }
+
+    static class In implements VectorPredicate {
+        final int col;
+        final boolean negation;
+        final Set<Object> values;
+
+        In(int col, boolean negation, Set<Object> values) {
+            this.col = col;
+            this.negation = negation;
+            this.values = values;
+        }
+
+        @Override
+        public int filter(RowBlock block, int[] sel, int n) {
+            Object[] v = block.objects[col];
+            boolean[] nulls = block.nulls[col];
+            int k = 0;
+            for (int i = 0; i < n; i++) {
+                int r = sel[i];
+                Object x = nulls[r] ? null : v[r];
+                if (values.contains(x) != negation) {
+                    sel[k++] = r;
+                }
+            }
+            return k;
+        }
+    }
+}
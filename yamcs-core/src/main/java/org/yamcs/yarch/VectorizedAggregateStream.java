@@ -0,0 +1,142 @@
+package org.yamcs.yarch;
+
+import java.util.List;
+
+/**
+ * Computes aggregates over a table by processing the rows in blocks.
+ * <p>
+ * The rows read by the table walker are collected in blocks of {@link #BLOCK_SIZE} rows. For each block, the columns
+ * required by the filters and the aggregates are decoded into a {@link RowBlock} (the integral and floating point
+ * columns into primitive arrays), then the filters and the aggregates are evaluated in loops over the column vectors
+ * instead of deserializing each row into a tuple and passing it through the compiled expressions.
+ * <p>
+ * The stream emits one tuple with the values of the aggregates after the walk is finished, the same as an infinite
+ * window aggregation.
+ *
+ * @see org.yamcs.yarch.streamsql.SelectExpression
+ */
+public class VectorizedAggregateStream extends Stream implements Runnable, TableVisitor {
+    public static final int BLOCK_SIZE = 1024;
+
+    static volatile boolean enabled = Boolean
+            .parseBoolean(System.getProperty("org.yamcs.yarch.vectorizedAggregates", "true"));
+
+    final TableDefinition tableDefinition;
+    final TableWalker tblIterator;
+    final VectorPredicate[] filters;
+    final VectorAggregate[] aggregates;
+
+    final RowBlock block;
+    final RowBlockDecoder decoder;
+    final byte[][] keys = new byte[BLOCK_SIZE][];
+    final byte[][] values = new byte[BLOCK_SIZE][];
+    final int[] sel = new int[BLOCK_SIZE];
+    int n;
+
+    /**
+     *
+     * @param columns
+     *            the table columns decoded in the blocks; the filters and aggregates refer to the columns by their
+     *            index in this list
+     * @param aggOutputDef
+     *            the definition of the output tuple, one column for each aggregate
+     */
+    public VectorizedAggregateStream(YarchDatabaseInstance ydb, TableDefinition tblDef, TableWalker iterator,
+            List<? extends ColumnDefinition> columns, List<VectorPredicate> filters, List<VectorAggregate> aggregates,
+            TupleDefinition aggOutputDef) {
+        super(ydb, tblDef.getName() + "_vagg", aggOutputDef);
+        this.tableDefinition = tblDef;
+        this.tblIterator = iterator;
+        this.filters = filters.toArray(new VectorPredicate[0]);
+        this.aggregates = aggregates.toArray(new VectorAggregate[0]);
+        this.block = new RowBlock(columns, BLOCK_SIZE);
+        this.decoder = new RowBlockDecoder(tblDef, block);
+    }
+
+    /**
+     *
+     * @return true if the aggregate queries on tables are executed with this stream whenever possible
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables the vectorized execution of the aggregate queries. It is enabled by default, and can be
+     * disabled at startup by setting the system property <code>org.yamcs.yarch.vectorizedAggregates</code> to false.
+     */
+    public static void setEnabled(boolean enabled) {
+        VectorizedAggregateStream.enabled = enabled;
+    }
+
+    @Override
+    public void doStart() {
+        Thread thread = new Thread(this, "VectorizedAggregateStream[" + getName() + "]");
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        log.debug("starting a vectorized aggregation on table {} ", tableDefinition.getName());
+        try {
+            tblIterator.walk(this);
+            if (n > 0) {
+                processBlock();
+            }
+            if (isRunning()) {
+                Object[] v = new Object[aggregates.length];
+                for (int i = 0; i < v.length; i++) {
+                    v[i] = aggregates[i].getValue();
+                }
+                emitTuple(new Tuple(outputDefinition, v));
+            }
+        } catch (Exception e) {
+            log.error("got exception ", e);
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public Action visit(byte[] key, byte[] value) {
+        if (!isRunning()) {
+            return ACTION_STOP;
+        }
+        keys[n] = key;
+        values[n] = value;
+        n++;
+        if (n == BLOCK_SIZE) {
+            processBlock();
+        }
+        return ACTION_CONTINUE;
+    }
+
+    private void processBlock() {
+        decoder.decode(keys, values, n, block);
+        int k = n;
+        for (int i = 0; i < k; i++) {
+            sel[i] = i;
+        }
+        for (VectorPredicate f : filters) {
+            k = f.filter(block, sel, k);
+            if (k == 0) {
+                break;
+            }
+        }
+        if (k > 0) {
+            for (VectorAggregate agg : aggregates) {
+                agg.aggregate(block, sel, k);
+            }
+        }
+        n = 0;
+    }
+
+    @Override
+    public void doClose() {
+        try {
+            tblIterator.close();
+        } catch (YarchException e) {
+            log.error("got exception ", e);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.yamcs.yarch.rocksdb;
+
+import org.rocksdb.Statistics;
+import org.rocksdb.TickerType;
+
+/**
+ * Block cache hits and misses by block type computed from the RocksDB statistics tickers.
+ * <p>
+ * The RocksDB statistics are collected per database options (i.e. for all the databases using the same
+ * {@link RdbConfig.TablespaceConfig}) and the tickers are never reset such that they can be shared between multiple
+ * readers; each instance of this class keeps the previous values and reports the difference.
+ */
+class BlockCacheStats {
+    static final TickerType[] TICKERS = { TickerType.BLOCK_CACHE_DATA_HIT, TickerType.BLOCK_CACHE_DATA_MISS,
+            TickerType.BLOCK_CACHE_INDEX_HIT, TickerType.BLOCK_CACHE_INDEX_MISS,
+            TickerType.BLOCK_CACHE_FILTER_HIT, TickerType.BLOCK_CACHE_FILTER_MISS };
+
+    final Statistics statistics;
+    private final long[] prev = new long[TICKERS.length];
+    private final long[] delta = new long[TICKERS.length];
+
+    BlockCacheStats(Statistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * computes the hits and misses since the previous call
+     */
+    synchronized void update() {
+        for (int i = 0; i < TICKERS.length; i++) {
+            long v = statistics.getTickerCount(TICKERS[i]);
+            delta[i] = v - prev[i];
+            prev[i] = v;
+        }
+    }
+
+    synchronized long getHits() {
+        return delta[0] + delta[2] + delta[4];
+    }
+
+    synchronized long getMisses() {
+        return delta[1] + delta[3] + delta[5];
+    }
+
+    synchronized double getDataHitRatio() {
+        return ratio(delta[0], delta[1]);
+    }
+
+    synchronized double getIndexHitRatio() {
+        return ratio(delta[2], delta[3]);
+    }
+
+    synchronized double getFilterHitRatio() {
+        return ratio(delta[4], delta[5]);
+    }
+
+    /**
+     * returns the fraction of lookups which have found the block in the cache or NaN if there was no lookup
+     */
+    static double ratio(long hits, long misses) {
+        long n = hits + misses;
+        return n == 0 ? Double.NaN : (double) hits / n;
+    }
+}
@@ -19,6 +19,8 @@ import org.yamcs.yarch.ColumnSerializer;
 import org.yamcs.yarch.DbRange;
 import org.yamcs.yarch.ExecutionContext;
 import org.yamcs.yarch.HistogramInfo;
+import org.yamcs.yarch.HistogramLevel;
+import org.yamcs.yarch.HistogramRollupSegment;
 import org.yamcs.yarch.HistogramSegment;
 import org.yamcs.yarch.PartitionManager;
 import org.yamcs.yarch.PartitionManager.Interval;
@@ -148,6 +150,11 @@ public class HistogramRebuilder {
             for (String columnName : tableDefinition.getHistogramColumns()) {
                 RdbHistogramInfo histInfo = (RdbHistogramInfo) partitionManager
                         .createAndGetHistogram(interval.getStart(), columnName);
+                try {
+                    histInfo.writeRollupMarker(tablespace.getRdb(histInfo.partitionDir, false));
+                } catch (RocksDBException e) {
+                    throw new IOException(e);
+                }
                 clist.add(new ColumnHistoRebuilder(histInfo, columnName));
             }
         }
@@ -185,12 +192,17 @@ public class HistogramRebuilder {
                 if (histoInfo == null) {
                     throw new NullPointerException();
                 }
+                for (int i = 0; i < HistogramLevel.ROLLUP_LEVELS.length; i++) {
+                    rollupValues.add(new HashMap<>());
+                }
             }
 
             // we know the data will be sorted so we need to maintain for each column value just the last segment.
             // As soon as a data point falling in the next segment comes, we write out the segment to the database and
             // start a new one
             Map<ByteArrayWrapper, HistogramSegment> values = new HashMap<>();
+            // same for the roll-up levels, one map for each level
+            List<Map<ByteArrayWrapper, HistogramRollupSegment>> rollupValues = new ArrayList<>();
 
             void addTuple(Tuple tuple) throws IOException, RocksDBException {
                 long time = (Long) tuple.getColumn(0);
@@ -217,6 +229,33 @@ public class HistogramRebuilder {
                     values.put(valuew, segment);
                 }
                 segment.merge(dtime);
+
+                if (time >= 0) {
+                    for (int i = 0; i < HistogramLevel.ROLLUP_LEVELS.length; i++) {
+                        addRollup(rollupValues.get(i), HistogramLevel.ROLLUP_LEVELS[i], time, valuew);
+                    }
+                }
+            }
+
+            private void addRollup(Map<ByteArrayWrapper, HistogramRollupSegment> rvalues, HistogramLevel level,
+                    long time, ByteArrayWrapper valuew) throws IOException, RocksDBException {
+                long sstart = level.segmentStart(time);
+                HistogramRollupSegment segment = rvalues.get(valuew);
+                if (segment == null || segment.getSegmentStart() != sstart) {
+                    if (segment != null) {
+                        writeRollup(tablespace.getRdb(partitionDir, false), segment, valuew.getData());
+                    }
+                    segment = new HistogramRollupSegment(level, valuew.getData(), sstart);
+                    rvalues.put(valuew, segment);
+                }
+                segment.add(time - sstart * level.getSegmentDuration());
+            }
+
+            private void writeRollup(YRDB rdb, HistogramRollupSegment segment, byte[] columnv)
+                    throws RocksDBException {
+                HistogramLevel level = segment.getLevel();
+                byte[] dbKey = histoDbKey(histoInfo.tbsIndex, level.keySstart(segment.getSegmentStart()), columnv);
+                rdb.put(dbKey, segment.val());
             }
 
             void flush() throws IOException, RocksDBException {
@@ -228,6 +267,11 @@ public class HistogramRebuilder {
                     byte[] dbKey = histoDbKey(histoInfo.tbsIndex, segment.getSegmentStart(), columnv);
                     rdb.put(dbKey, segment.val());
                 }
+                for (Map<ByteArrayWrapper, HistogramRollupSegment> rvalues : rollupValues) {
+                    for (Map.Entry<ByteArrayWrapper, HistogramRollupSegment> me : rvalues.entrySet()) {
+                        writeRollup(rdb, me.getValue(), me.getKey().getData());
+                    }
+                }
             }
         }
     }
@@ -9,10 +9,16 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.rocksdb.RocksDBException;
 import org.rocksdb.Snapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.yamcs.utils.ByteArrayWrapper;
+import org.yamcs.yarch.HistogramLevel;
+import org.yamcs.yarch.HistogramRollupSegment;
 import org.yamcs.yarch.HistogramSegment;
 import org.yamcs.yarch.Row;
 import org.yamcs.yarch.TableDefinition;
@@ -24,6 +30,12 @@ import org.yamcs.yarch.YarchException;
  * There is one of these objects for each table used by the table writers.
  * <p>
  * The {@link HistogramRebuilder} will use another writer during build
+ * <p>
+ * Besides the hour segments, the writer maintains the {@link HistogramLevel#ROLLUP_LEVELS} if the histogram of the
+ * partition has been created with them. The roll-up segments are updated in memory and written to the database at
+ * most {@link #ROLLUP_FLUSH_INTERVAL} milliseconds later, when the writer is flushed (when a table writer is closed,
+ * before reading the roll-ups and when the tablespace is closed) or when too many of them are pending. A crash may
+ * lose the roll-up counts of the last seconds; they can be recovered by rebuilding the histogram.
  * 
  * <p>
  * It does allow concurrent access
@@ -33,6 +45,8 @@ import org.yamcs.yarch.YarchException;
  */
 public abstract class HistogramWriter {
     static final int CLEANUP_INTERVAL = 60_000;
+    static final int ROLLUP_FLUSH_INTERVAL = 10_000;
+    static final Logger log = LoggerFactory.getLogger(HistogramWriter.class);
     final protected Tablespace tablespace;
     final protected TableDefinition tableDefinition;
     final protected RdbTable table;
@@ -66,6 +80,11 @@ public abstract class HistogramWriter {
      */
     public abstract void stopQueueing(String partitionDir);
 
+    /**
+     * Writes to the database the roll-up segments modified since the last flush.
+     */
+    public abstract void flush();
+
     
     public static HistogramWriter newWriter(RdbTable table) {
         TableDefinition tblDef = table.getDefinition();
@@ -95,6 +114,19 @@ public abstract class HistogramWriter {
             };
         };
 
+        // the roll-up segments recently used (written or not)
+        private LinkedHashMap<ByteArrayWrapper, HistogramRollupSegment> rollupSegments = new LinkedHashMap<ByteArrayWrapper, HistogramRollupSegment>() {
+            protected boolean removeEldestEntry(Map.Entry<ByteArrayWrapper, HistogramRollupSegment> eldest) {
+                return size() > MAX_ENTRIES;
+            };
+        };
+
+        // roll-up segments modified and not yet written to the database
+        private final Map<ByteArrayWrapper, PendingRollup> pendingRollups = new LinkedHashMap<>();
+        private boolean flushScheduled;
+        // number of roll-up segments written to the database
+        long numRollupWrites;
+
         public ColumnHistogramWriter(String columnName) {
             this.columnName = columnName;
         }
@@ -104,6 +136,8 @@ public abstract class HistogramWriter {
             try {
                 histo = (RdbHistogramInfo) table.createAndGetHistogram(time, columnName);
                 YRDB rdb = tablespace.getRdb(histo.partitionDir, false);
+                // checked before writing, a new histogram is created with the roll-ups
+                boolean rollups = histo.hasRollups(rdb, true);
 
                 long sstart = segmentStart(time);
                 int dtime = (int) (time % HistogramSegment.GROUPING_FACTOR);
@@ -123,13 +157,101 @@ public abstract class HistogramWriter {
                 rdb.put(histoDbKey, segment.val());
 
                 segments.put(hmkey, segment);
+
+                if (rollups && time >= 0) {
+                    for (HistogramLevel level : HistogramLevel.ROLLUP_LEVELS) {
+                        addRollup(rdb, histo, level, time, value);
+                    }
+                    if (pendingRollups.size() > MAX_ENTRIES) {
+                        flushRollups();
+                    } else {
+                        scheduleFlush();
+                    }
+                }
             } catch (RocksDBException e) {
                 throw new YarchException(e);
             }
         }
 
+        private void addRollup(YRDB rdb, RdbHistogramInfo histo, HistogramLevel level, long time, byte[] value)
+                throws RocksDBException {
+            long sstart = level.segmentStart(time);
+            byte[] histoDbKey = histoDbKey(histo.tbsIndex, level.keySstart(sstart), value);
+            ByteArrayWrapper hmkey = new ByteArrayWrapper(histoDbKey);
+
+            PendingRollup pending = pendingRollups.get(hmkey);
+            HistogramRollupSegment segment;
+            if (pending != null) {
+                segment = pending.segment;
+            } else {
+                segment = rollupSegments.get(hmkey);
+                if (segment == null) {
+                    byte[] val = rdb.get(histoDbKey);
+                    if (val == null) {
+                        segment = new HistogramRollupSegment(level, value, sstart);
+                    } else {
+                        segment = new HistogramRollupSegment(level, value, sstart, val);
+                    }
+                }
+                pendingRollups.put(hmkey, new PendingRollup(histo.partitionDir, histoDbKey, segment));
+            }
+            segment.add(time - sstart * level.getSegmentDuration());
+
+            rollupSegments.put(hmkey, segment);
+        }
+
+        private void scheduleFlush() {
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+            try {
+                tablespace.getExecutor().schedule(() -> {
+                    try {
+                        flush();
+                    } catch (Exception e) {
+                        log.error("Error writing the histogram roll-ups of table {}", tableDefinition.getName(), e);
+                    }
+                }, ROLLUP_FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // the tablespace is closing, it flushes the writer
+                flushScheduled = false;
+            }
+        }
+
+        void flushRollups() {
+            flushScheduled = false;
+            if (pendingRollups.isEmpty()) {
+                return;
+            }
+            try {
+                for (PendingRollup pr : pendingRollups.values()) {
+                    YRDB rdb = tablespace.getRdb(pr.partitionDir, false);
+                    rdb.put(pr.histoDbKey, pr.segment.val());
+                    numRollupWrites++;
+                }
+            } catch (RocksDBException e) {
+                throw new YarchException(e);
+            } finally {
+                pendingRollups.clear();
+            }
+        }
+
         public void cleanup() {
             segments.clear();
+            rollupSegments.clear();
+        }
+    }
+
+    static class PendingRollup {
+        final String partitionDir;
+        final byte[] histoDbKey;
+        final HistogramRollupSegment segment;
+
+        PendingRollup(String partitionDir, byte[] histoDbKey, HistogramRollupSegment segment) {
+            this.partitionDir = partitionDir;
+            this.histoDbKey = histoDbKey;
+            this.segment = segment;
         }
     }
 }
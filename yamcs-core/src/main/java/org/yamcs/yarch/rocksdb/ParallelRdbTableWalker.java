@@ -0,0 +1,437 @@
+package org.yamcs.yarch.rocksdb;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ReadOptions;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.Snapshot;
+import org.yamcs.yarch.DbRange;
+import org.yamcs.yarch.ExecutionContext;
+import org.yamcs.yarch.Partition;
+import org.yamcs.yarch.PartitionManager;
+import org.yamcs.yarch.TableDefinition;
+import org.yamcs.yarch.TableVisitor;
+import org.yamcs.yarch.YarchException;
+import org.yamcs.yarch.streamsql.StreamSqlException;
+
+/**
+ * Table walker reading multiple partitions in parallel.
+ * <p>
+ * The partitions are read in chunks of rows by tasks running on a thread pool shared by all the walkers of the
+ * tablespace. The partitions of one time interval are merged in key order by a {@link MergingIterator} running in the
+ * walker thread, whereas the intervals are output one after the other, the same as the {@link RdbTableWalker}. The
+ * partitions of the next intervals are read ahead such that up to <code>parallelism</code> partitions are read at the
+ * same time.
+ * <p>
+ * Each partition keeps at most {@link #MAX_CHUNKS} chunks in memory. When the limit is reached, the reading task is not
+ * resubmitted until the walker consumes a chunk, such that the pool threads never block. When the walker is closed
+ * (for example because the limit of a query has been reached), the reading of all the partitions is stopped.
+ * <p>
+ * The reading tasks may still run after the execution context of the query has been closed, therefore the walker does
+ * not use the snapshots of the execution context but takes its own snapshot of each database, used for all the
+ * intervals stored in that database and released at the end of the walk.
+ * <p>
+ * The parallel reading is only used for bulk reads on a single primary key range; the other walks (e.g. for deleting
+ * or updating rows) fall back to the sequential walk.
+ */
+public class ParallelRdbTableWalker extends RdbTableWalker {
+    static final int CHUNK_SIZE = 256;
+    static final int MAX_CHUNKS = 4;
+
+    final ExecutorService executor;
+    final int parallelism;
+    // the databases read by the walk with their snapshot, by partition directory (null for the main database)
+    private final Map<String, RdbSnapshot> snapshots = new HashMap<>();
+
+    ParallelRdbTableWalker(ExecutionContext ctx, TableDefinition tableDefinition, boolean ascending,
+            ExecutorService executor, int parallelism) {
+        super(ctx, tableDefinition, ascending, false);
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public void walk(TableVisitor visitor) throws StreamSqlException {
+        if (!bulkRead || getPrimaryIndexRanges() != null) {
+            super.walk(visitor);
+            return;
+        }
+        if (visitor == null) {
+            throw new NullPointerException("visitor cannot be null");
+        }
+        this.visitor = visitor;
+        DbRange range = getPrimaryIndexRange();
+        log.debug("Starting to walk ascending: {}, rangeIndexFilter: {}, parallelism: {}", ascending, range,
+                parallelism);
+
+        running = true;
+        Iterator<PartitionManager.Interval> intervalIterator = getIntervalIterator();
+        Deque<IntervalScan> scans = new ArrayDeque<>();
+        try {
+            while (isRunning()) {
+                readAhead(intervalIterator, scans, range);
+                IntervalScan scan = scans.poll();
+                if (scan == null) {
+                    break;
+                }
+                boolean endReached;
+                try {
+                    endReached = scan.run(range);
+                } finally {
+                    scan.close();
+                }
+                if (endReached) {
+                    break;
+                }
+            }
+        } catch (RocksDBException e) {
+            throw new YarchException(e);
+        } finally {
+            for (IntervalScan scan : scans) {
+                scan.close();
+            }
+            releaseSnapshots();
+            close();
+        }
+    }
+
+    private RdbSnapshot getRdbSnapshot(String dir) {
+        return snapshots.computeIfAbsent(dir, d -> {
+            YRDB rdb;
+            if (d != null) {
+                log.debug("opening database {}", d);
+                rdb = tablespace.getRdb(d, false);
+            } else {
+                rdb = tablespace.getRdb();
+            }
+            return new RdbSnapshot(rdb, rdb.getSnapshot());
+        });
+    }
+
+    // called after all the interval scans have been closed
+    private void releaseSnapshots() {
+        for (RdbSnapshot rs : snapshots.values()) {
+            rs.rdb.releaseSnapshot(rs.snapshot);
+            rs.snapshot.close();
+            tablespace.dispose(rs.rdb);
+        }
+        snapshots.clear();
+    }
+
+    static class RdbSnapshot {
+        final YRDB rdb;
+        final Snapshot snapshot;
+
+        RdbSnapshot(YRDB rdb, Snapshot snapshot) {
+            this.rdb = rdb;
+            this.snapshot = snapshot;
+        }
+    }
+
+    // starts reading the next intervals until at least one interval is open and the number of partitions being read
+    // reaches the parallelism
+    private void readAhead(Iterator<PartitionManager.Interval> intervalIterator, Deque<IntervalScan> scans,
+            DbRange range) {
+        int n = 0;
+        for (IntervalScan scan : scans) {
+            n += scan.partitions.size();
+        }
+        while (isRunning() && intervalIterator.hasNext() && (scans.isEmpty() || n < parallelism)) {
+            IntervalScan scan = new IntervalScan(intervalIterator.next(), range);
+            scans.add(scan);
+            n += scan.partitions.size();
+        }
+    }
+
+    /**
+     * The partitions of one time interval, all stored in the same RocksDB database.
+     */
+    class IntervalScan {
+        final YRDB rdb;
+        final ReadOptions readOptions;
+        final ColumnFamilyHandle cfh;
+        final List<PartitionScan> partitions = new ArrayList<>();
+
+        IntervalScan(PartitionManager.Interval interval, DbRange range) {
+            RdbPartition p1 = (RdbPartition) interval.iterator().next();
+            RdbSnapshot rs = getRdbSnapshot(p1.dir);
+            rdb = rs.rdb;
+            readOptions = createReadOptions(rs.snapshot);
+            cfh = rdb.getColumnFamilyHandle(table.cfName());
+            for (Partition p : interval) {
+                RocksIterator rocksIt = rdb.getDb().newIterator(cfh, readOptions);
+                PartitionScan ps = new PartitionScan(rocksIt, ((RdbPartition) p).tbsIndex, range);
+                partitions.add(ps);
+                ps.start();
+            }
+        }
+
+        // returns true if the end condition has been reached
+        boolean run(DbRange range) throws RocksDBException, StreamSqlException {
+            List<DbIterator> itList = new ArrayList<>(partitions);
+            DbIterator iterator;
+            if (itList.size() == 1) {
+                iterator = itList.get(0);
+            } else {
+                iterator = new MergingIterator(itList,
+                        ascending ? new SuffixAscendingComparator(4) : new SuffixDescendingComparator(4));
+            }
+            if (ascending) {
+                return runAscending(rdb, cfh, iterator, null, range.rangeEnd);
+            } else {
+                return runDescending(rdb, cfh, iterator, null, range.rangeStart);
+            }
+        }
+
+        void close() {
+            for (PartitionScan ps : partitions) {
+                ps.close();
+            }
+            readOptions.close();
+        }
+    }
+
+    /**
+     * Task reading one chunk of a partition.
+     * <p>
+     * If the executor is shut down before the task runs, {@link #cancel()} has to be called to release the waiting
+     * walker.
+     */
+    static class FillTask implements Runnable {
+        final PartitionScan scan;
+
+        FillTask(PartitionScan scan) {
+            this.scan = scan;
+        }
+
+        @Override
+        public void run() {
+            scan.fill();
+        }
+
+        void cancel() {
+            scan.fillDropped();
+        }
+    }
+
+    static class Chunk {
+        final byte[][] keys = new byte[CHUNK_SIZE][];
+        final byte[][] values = new byte[CHUNK_SIZE][];
+        int size;
+    }
+
+    /**
+     * Iterator over one partition whose data is read by tasks running on the executor.
+     * <p>
+     * The DbIterator methods are called from the walker thread; the underlying RocksDB iterator is only used by the
+     * reading tasks, one at a time.
+     */
+    class PartitionScan implements DbIterator {
+        final RocksIterator rocksIt;
+        final int tbsIndex;
+        final DbRange range;
+        // created by the first reading task
+        DbIterator it;
+
+        final Deque<Chunk> chunks = new ArrayDeque<>();
+        boolean scheduled;
+        boolean finished;
+        boolean closed;
+        Exception error;
+
+        // accessed only by the walker thread
+        Chunk current;
+        int pos;
+
+        PartitionScan(RocksIterator rocksIt, int tbsIndex, DbRange range) {
+            this.rocksIt = rocksIt;
+            this.tbsIndex = tbsIndex;
+            this.range = range;
+        }
+
+        synchronized void start() {
+            schedule();
+        }
+
+        // called with the lock held
+        private void schedule() {
+            scheduled = true;
+            try {
+                executor.execute(new FillTask(this));
+            } catch (RejectedExecutionException e) {
+                error = e;
+                finished = true;
+                scheduled = false;
+            }
+        }
+
+        private void fill() {
+            synchronized (this) {
+                if (closed) {
+                    scheduled = false;
+                    notifyAll();
+                    return;
+                }
+            }
+            Chunk chunk = new Chunk();
+            boolean end;
+            try {
+                if (it == null) {
+                    it = getPartitionIterator(rocksIt, tbsIndex, ascending, range);
+                }
+                while (chunk.size < CHUNK_SIZE && it.isValid()) {
+                    chunk.keys[chunk.size] = it.key();
+                    chunk.values[chunk.size] = it.value();
+                    chunk.size++;
+                    if (ascending) {
+                        it.next();
+                    } else {
+                        it.prev();
+                    }
+                }
+                end = !it.isValid();
+            } catch (Exception e) {
+                synchronized (this) {
+                    error = e;
+                    finished = true;
+                    scheduled = false;
+                    notifyAll();
+                }
+                return;
+            }
+            synchronized (this) {
+                if (chunk.size > 0) {
+                    chunks.add(chunk);
+                }
+                finished = end;
+                scheduled = false;
+                if (!finished && !closed && chunks.size() < MAX_CHUNKS) {
+                    schedule();
+                }
+                notifyAll();
+            }
+        }
+
+        // called when the task has been dropped from the executor queue without running
+        synchronized void fillDropped() {
+            if (!closed) {
+                error = new YarchException("The table scan executor has been shut down");
+            }
+            finished = true;
+            scheduled = false;
+            notifyAll();
+        }
+
+        // makes sure that the current chunk contains data, waiting for the reading task if necessary
+        // returns false if there is no more data
+        private boolean ensureData() {
+            if (current != null && pos < current.size) {
+                return true;
+            }
+            synchronized (this) {
+                while (true) {
+                    if (error != null) {
+                        throw new YarchException(error);
+                    }
+                    Chunk c = chunks.poll();
+                    if (c != null) {
+                        current = c;
+                        pos = 0;
+                        if (!scheduled && !finished && !closed) {
+                            schedule();
+                        }
+                        return true;
+                    }
+                    if (finished || closed) {
+                        current = null;
+                        return false;
+                    }
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new YarchException("Interrupted while waiting for data", e);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public boolean isValid() {
+            return ensureData();
+        }
+
+        @Override
+        public byte[] key() {
+            checkValid();
+            return current.keys[pos];
+        }
+
+        @Override
+        public byte[] value() {
+            checkValid();
+            return current.values[pos];
+        }
+
+        // the direction is given by the walker, next and prev both advance in that direction
+        @Override
+        public void next() {
+            checkValid();
+            pos++;
+        }
+
+        @Override
+        public void prev() {
+            next();
+        }
+
+        private void checkValid() {
+            if (!ensureData()) {
+                throw new IllegalStateException("iterator is not valid");
+            }
+        }
+
+        /**
+         * Stops the reading and waits for the running task to finish before releasing the RocksDB iterator.
+         * <p>
+         * Can be called multiple times.
+         */
+        @Override
+        public void close() {
+            boolean interrupted = false;
+            synchronized (this) {
+                if (closed && !rocksIt.isOwningHandle()) {
+                    return;
+                }
+                closed = true;
+                chunks.clear();
+                current = null;
+                while (scheduled) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (it != null) {
+                    it.close();
+                } else {
+                    rocksIt.close();
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
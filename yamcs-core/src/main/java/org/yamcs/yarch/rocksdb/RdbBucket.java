@@ -1,11 +1,15 @@
 package org.yamcs.yarch.rocksdb;
 
 import static org.yamcs.utils.ByteArrayUtils.encodeInt;
+import static org.yamcs.yarch.rocksdb.RdbBucketDatabase.TYPE_OBJ_CHUNK;
 import static org.yamcs.yarch.rocksdb.RdbBucketDatabase.TYPE_OBJ_DATA;
 import static org.yamcs.yarch.rocksdb.RdbBucketDatabase.TYPE_OBJ_METADATA;
+import static org.yamcs.yarch.rocksdb.RdbBucketDatabase.TYPE_OBJ_UPLOAD;
 import static org.yamcs.yarch.rocksdb.RdbStorageEngine.TBS_INDEX_SIZE;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
@@ -29,7 +33,22 @@ import org.yamcs.yarch.rocksdb.protobuf.Tablespace.TablespaceRecord.Type;
 
 import com.google.protobuf.InvalidProtocolBufferException;
 
+/**
+ * Bucket stored in the RocksDB tablespace.
+ * <p>
+ * The objects are split into chunks of {@link #CHUNK_SIZE} bytes such that they can be written from and read into
+ * streams without keeping the full object in memory. See {@link RdbBucketDatabase} for the format of the keys.
+ * <p>
+ * Each version of an object gets a new objectId from a counter stored in the bucket properties, such that the chunks
+ * of a new version never have the keys of the chunks of a previous (possibly still being read) version. The chunks
+ * are written before the object metadata. An upload marker is stored while the chunks of an object are being written
+ * in more than one batch; the chunks of the uploads interrupted by a crash are removed when the bucket is opened.
+ */
 public class RdbBucket implements Bucket {
+    static int CHUNK_SIZE = 1024 * 1024;
+    // how many chunks are accumulated in one write batch when uploading an object
+    static final int CHUNKS_PER_BATCH = 4;
+
     final int tbsIndex;
     BucketProperties bucketProps;
     final Tablespace tablespace;
@@ -42,6 +61,57 @@ public class RdbBucket implements Bucket {
         this.tbsIndex = tbsIndex;
         this.bucketProps = bucketProps;
         this.tablespace = tablespace;
+        try {
+            removeInterruptedUploads();
+        } catch (RocksDBException e) {
+            throw new IOException("Error removing the interrupted uploads: " + e.toString(), e);
+        }
+    }
+
+    /**
+     * Removes the chunks of the uploads interrupted by a crash, found by their upload marker. Only the (normally empty)
+     * list of markers is read, the chunks are removed by range.
+     * <p>
+     * The objectId of the interrupted uploads are not reused.
+     */
+    private void removeInterruptedUploads() throws RocksDBException, IOException {
+        byte[] prefix = new byte[TBS_INDEX_SIZE + 1];
+        encodeInt(tbsIndex, prefix, 0);
+        prefix[TBS_INDEX_SIZE] = TYPE_OBJ_UPLOAD;
+        int nextObjectId = bucketProps.getNextObjectId();
+        int count = 0;
+
+        try (WriteBatch writeBatch = new WriteBatch();
+                WriteOptions writeOpts = new WriteOptions()) {
+            try (DbIterator it = tablespace.getRdb().newPrefixIterator(prefix)) {
+                while (it.isValid()) {
+                    byte[] k = it.key();
+                    int objectId = ByteArrayUtils.decodeInt(k, TBS_INDEX_SIZE + 1);
+                    // the objectId is unique in the bucket, all the chunks with this id belong to the upload
+                    writeBatch.deleteRange(getChunkPrefix(objectId), getChunkPrefix(objectId + 1));
+                    writeBatch.delete(k);
+                    count++;
+                    nextObjectId = Math.max(nextObjectId, objectId + 1);
+                    it.next();
+                }
+            }
+            if (nextObjectId != bucketProps.getNextObjectId()) {
+                bucketProps = BucketProperties.newBuilder().mergeFrom(bucketProps)
+                        .setNextObjectId(nextObjectId)
+                        .build();
+                TablespaceRecord.Builder trb = TablespaceRecord.newBuilder()
+                        .setType(Type.BUCKET)
+                        .setBucketProperties(bucketProps)
+                        .setTbsIndex(tbsIndex);
+                tablespace.writeToBatch(yamcsInstance, writeBatch, trb);
+            }
+            if (writeBatch.count() > 0) {
+                tablespace.getRdb().getDb().write(writeOpts, writeBatch);
+            }
+        }
+        if (count > 0) {
+            log.info("Removed the data of {} interrupted uploads from bucket {}", count, bucketProps.getName());
+        }
     }
 
     @Override
@@ -108,51 +178,110 @@ public class RdbBucket implements Bucket {
     }
 
     @Override
-    public synchronized void putObject(String objectName, String contentType,
+    public void putObject(String objectName, String contentType,
             Map<String, String> metadata, byte[] objectData) throws IOException {
+        putObject(objectName, contentType, metadata, new ByteArrayInputStream(objectData));
+    }
+
+    /**
+     * Writes the object chunk by chunk while reading from the input stream.
+     * <p>
+     * The chunks are written in batches of {@link #CHUNKS_PER_BATCH} while the metadata, the bucket properties and
+     * the removal of the previous version of the object are written in the last batch. The object becomes visible
+     * only after the last batch is written; if an error occurs before, the chunks already written are removed (or at
+     * the next opening of the bucket if the error is a crash, thanks to the upload marker written with the first
+     * batch and removed with the last one).
+     */
+    @Override
+    public synchronized void putObject(String objectName, String contentType,
+            Map<String, String> metadata, InputStream objectData) throws IOException {
         if (objectName.isEmpty()) {
             throw new IllegalArgumentException("object name cannot be empty");
         }
         log.debug("Uploading object {} to bucket {}; contentType: {}", objectName, bucketProps.getName(), contentType);
-        ObjectProperties.Builder props = ObjectProperties.newBuilder();
-        if (metadata != null) {
-            props.putAllMetadata(metadata);
-        }
-        props.setCreated(TimeEncoding.getWallclockTime());
-        props.setSize(objectData.length);
-        if (contentType != null) {
-            props.setContentType(contentType);
+        ObjectProperties oldProps = findObject(objectName);
+        int numobj = bucketProps.getNumObjects() + ((oldProps == null) ? 1 : 0);
+        if (numobj > bucketProps.getMaxNumObjects()) {
+            throw new IOException(
+                    "Maximum number of objects in the bucket " + bucketProps.getNumObjects() + " exceeded");
         }
+        long oldSize = (oldProps == null) ? 0 : oldProps.getSize();
+        long maxObjSize = bucketProps.getMaxSize() - bucketProps.getSize() + oldSize;
+        int objectId = bucketProps.getNextObjectId();
+        int chunkSize = CHUNK_SIZE;
 
+        YRDB rdb = tablespace.getRdb();
+        byte[] uploadKey = getUploadKey(objectName, objectId);
+        boolean uploadMarked = false;
+        long size = 0;
+        int numChunks = 0;
         try (WriteBatch writeBatch = new WriteBatch();
                 WriteOptions writeOpts = new WriteOptions()) {
-            ObjectProperties oldProps = findObject(objectName);
-
-            byte[] mk = getKey(TYPE_OBJ_METADATA, objectName);
-            byte[] dk = getKey(TYPE_OBJ_DATA, objectName);
-            writeBatch.put(mk, props.build().toByteArray());
-            writeBatch.put(dk, objectData);
-            long bsize = bucketProps.getSize() + props.getSize() - ((oldProps == null) ? 0 : oldProps.getSize());
-            if (bsize > bucketProps.getMaxSize()) {
-                throw new IOException("Maximum bucket size " + bucketProps.getMaxSize() + " exceeded");
-            }
-            int numobj = bucketProps.getNumObjects() + ((oldProps == null) ? 1 : 0);
-            if (numobj > bucketProps.getMaxNumObjects()) {
-                throw new IOException(
-                        "Maximum number of objects in the bucket " + bucketProps.getNumObjects() + " exceeded");
-            }
-            BucketProperties bucketProps1 = BucketProperties.newBuilder().mergeFrom(bucketProps)
-                    .setNumObjects(numobj)
-                    .setSize(bsize)
-                    .build();
-            TablespaceRecord.Builder trb = TablespaceRecord.newBuilder()
-                    .setType(Type.BUCKET)
-                    .setBucketProperties(bucketProps1)
-                    .setTbsIndex(tbsIndex);
-            tablespace.writeToBatch(yamcsInstance, writeBatch, trb);
+            try {
+                byte[] chunk;
+                while ((chunk = objectData.readNBytes(chunkSize)).length > 0) {
+                    size += chunk.length;
+                    if (size > maxObjSize) {
+                        throw new IOException("Maximum bucket size " + bucketProps.getMaxSize() + " exceeded");
+                    }
+                    writeBatch.put(getChunkKey(objectName, objectId, numChunks), chunk);
+                    numChunks++;
+                    if (writeBatch.count() >= CHUNKS_PER_BATCH) {
+                        if (!uploadMarked) {
+                            writeBatch.put(uploadKey, ByteArrayUtils.EMPTY);
+                            uploadMarked = true;
+                        }
+                        rdb.getDb().write(writeOpts, writeBatch);
+                        writeBatch.clear();
+                    }
+                    if (chunk.length < chunkSize) {
+                        break;
+                    }
+                }
 
-            tablespace.getRdb().getDb().write(writeOpts, writeBatch);
-            bucketProps = bucketProps1;
+                ObjectProperties.Builder props = ObjectProperties.newBuilder();
+                if (metadata != null) {
+                    props.putAllMetadata(metadata);
+                }
+                props.setCreated(TimeEncoding.getWallclockTime());
+                props.setSize(size);
+                props.setObjectId(objectId);
+                props.setChunkSize(chunkSize);
+                if (contentType != null) {
+                    props.setContentType(contentType);
+                }
+                if (oldProps != null) {
+                    deleteData(writeBatch, objectName, oldProps);
+                }
+                writeBatch.put(getKey(TYPE_OBJ_METADATA, objectName), props.build().toByteArray());
+                if (uploadMarked) {
+                    writeBatch.delete(uploadKey);
+                }
+
+                BucketProperties bucketProps1 = BucketProperties.newBuilder().mergeFrom(bucketProps)
+                        .setNumObjects(numobj)
+                        .setSize(bucketProps.getSize() + size - oldSize)
+                        .setNextObjectId(objectId + 1)
+                        .build();
+                TablespaceRecord.Builder trb = TablespaceRecord.newBuilder()
+                        .setType(Type.BUCKET)
+                        .setBucketProperties(bucketProps1)
+                        .setTbsIndex(tbsIndex);
+                tablespace.writeToBatch(yamcsInstance, writeBatch, trb);
+
+                rdb.getDb().write(writeOpts, writeBatch);
+                bucketProps = bucketProps1;
+            } catch (IOException | RocksDBException e) {
+                writeBatch.clear();
+                for (int i = 0; i < numChunks; i++) {
+                    writeBatch.delete(getChunkKey(objectName, objectId, i));
+                }
+                if (uploadMarked) {
+                    writeBatch.delete(uploadKey);
+                }
+                rdb.getDb().write(writeOpts, writeBatch);
+                throw e;
+            }
         } catch (RocksDBException e) {
             throw new IOException("Error writing object data: " + e.toString(), e);
         }
@@ -176,16 +305,56 @@ public class RdbBucket implements Bucket {
 
     @Override
     public byte[] getObject(String objectName) throws IOException {
+        ObjectProperties props = findObject(objectName);
+        if (props == null) {
+            return null;
+        }
         try {
-            byte[] k = getKey(TYPE_OBJ_DATA, objectName);
-            YRDB rdb = tablespace.getRdb();
-
-            return rdb.get(k);
+            if (!props.hasChunkSize()) {
+                return tablespace.getRdb().get(getKey(TYPE_OBJ_DATA, objectName));
+            }
+            if (props.getSize() > Integer.MAX_VALUE) {
+                throw new IOException("Object too large to be retrieved in memory");
+            }
+            byte[] data = new byte[(int) props.getSize()];
+            try (InputStream is = new ChunkInputStream(objectName, props, 0, data.length)) {
+                is.readNBytes(data, 0, data.length);
+            }
+            return data;
         } catch (RocksDBException e) {
             throw new IOException("Failed to retrieve object: " + e.toString(), e);
         }
     }
 
+    /**
+     * Returns a stream reading the chunks of the object on demand; only the chunks overlapping with the requested range
+     * are read.
+     * <p>
+     * If the object is overwritten or deleted while being read, the stream throws an IOException.
+     */
+    @Override
+    public InputStream getObjectStream(String objectName, long offset, long length) throws IOException {
+        ObjectProperties props = findObject(objectName);
+        if (props == null) {
+            return null;
+        }
+        long start = Math.min(offset, props.getSize());
+        long end = length < 0 ? props.getSize() : Math.min(props.getSize(), offset + length);
+        if (!props.hasChunkSize()) {
+            byte[] data;
+            try {
+                data = tablespace.getRdb().get(getKey(TYPE_OBJ_DATA, objectName));
+            } catch (RocksDBException e) {
+                throw new IOException("Failed to retrieve object: " + e.toString(), e);
+            }
+            if (data == null) {
+                return null;
+            }
+            return new ByteArrayInputStream(data, (int) start, (int) (end - start));
+        }
+        return new ChunkInputStream(objectName, props, start, end);
+    }
+
     @Override
     public synchronized void deleteObject(String objectName) throws IOException {
         log.debug("Deleting {} from {}", objectName, bucketProps.getName());
@@ -197,9 +366,8 @@ public class RdbBucket implements Bucket {
             try (WriteBatch writeBatch = new WriteBatch();
                     WriteOptions writeOpts = new WriteOptions()) {
                 byte[] mk = getKey(TYPE_OBJ_METADATA, objectName);
-                byte[] dk = getKey(TYPE_OBJ_DATA, objectName);
                 writeBatch.delete(mk);
-                writeBatch.delete(dk);
+                deleteData(writeBatch, objectName, props);
                 BucketProperties bucketProps1 = BucketProperties.newBuilder().mergeFrom(bucketProps)
                         .setNumObjects(bucketProps.getNumObjects() - 1).setSize(bucketProps.getSize() - props.getSize())
                         .build();
@@ -215,6 +383,19 @@ public class RdbBucket implements Bucket {
         }
     }
 
+    // adds to the batch the removal of the data of the object with the given properties
+    private void deleteData(WriteBatch writeBatch, String objectName, ObjectProperties props)
+            throws RocksDBException {
+        if (props.hasChunkSize()) {
+            long numChunks = (props.getSize() + props.getChunkSize() - 1) / props.getChunkSize();
+            for (int i = 0; i < numChunks; i++) {
+                writeBatch.delete(getChunkKey(objectName, props.getObjectId(), i));
+            }
+        } else {
+            writeBatch.delete(getKey(TYPE_OBJ_DATA, objectName));
+        }
+    }
+
     @Override
     public String getName() {
         return bucketProps.getName();
@@ -239,6 +420,40 @@ public class RdbBucket implements Bucket {
         return k;
     }
 
+    byte[] getChunkKey(String objectName, int objectId, int chunkIdx) {
+        byte[] a = objectName.getBytes(StandardCharsets.UTF_8);
+        byte[] k = new byte[TBS_INDEX_SIZE + 9 + a.length];
+
+        encodeInt(tbsIndex, k, 0);
+        k[TBS_INDEX_SIZE] = TYPE_OBJ_CHUNK;
+        encodeInt(objectId, k, TBS_INDEX_SIZE + 1);
+        encodeInt(chunkIdx, k, TBS_INDEX_SIZE + 5);
+        System.arraycopy(a, 0, k, TBS_INDEX_SIZE + 9, a.length);
+
+        return k;
+    }
+
+    // the prefix of the keys of all the chunks with the given objectId
+    private byte[] getChunkPrefix(int objectId) {
+        byte[] k = new byte[TBS_INDEX_SIZE + 5];
+        encodeInt(tbsIndex, k, 0);
+        k[TBS_INDEX_SIZE] = TYPE_OBJ_CHUNK;
+        encodeInt(objectId, k, TBS_INDEX_SIZE + 1);
+        return k;
+    }
+
+    byte[] getUploadKey(String objectName, int objectId) {
+        byte[] a = objectName.getBytes(StandardCharsets.UTF_8);
+        byte[] k = new byte[TBS_INDEX_SIZE + 5 + a.length];
+
+        encodeInt(tbsIndex, k, 0);
+        k[TBS_INDEX_SIZE] = TYPE_OBJ_UPLOAD;
+        encodeInt(objectId, k, TBS_INDEX_SIZE + 1);
+        System.arraycopy(a, 0, k, TBS_INDEX_SIZE + 5, a.length);
+
+        return k;
+    }
+
     private void saveUpdatedBucketProperties(BucketProperties updatedBucketProperties)
             throws RocksDBException, IOException {
         try (WriteBatch writeBatch = new WriteBatch();
@@ -253,4 +468,83 @@ public class RdbBucket implements Bucket {
             this.bucketProps = updatedBucketProperties;
         }
     }
+
+    /**
+     * Reads the range [start, end) of an object, retrieving the chunks one by one when needed.
+     */
+    class ChunkInputStream extends InputStream {
+        final String objectName;
+        final int objectId;
+        final int chunkSize;
+        final long end;
+        long pos;
+        byte[] chunk;
+        int chunkIdx = -1;
+
+        ChunkInputStream(String objectName, ObjectProperties props, long start, long end) {
+            this.objectName = objectName;
+            this.objectId = props.getObjectId();
+            this.chunkSize = props.getChunkSize();
+            this.pos = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n <= 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (pos >= end) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            int idx = (int) (pos / chunkSize);
+            if (idx != chunkIdx) {
+                chunk = readChunk(idx);
+                chunkIdx = idx;
+            }
+            int chunkOffset = (int) (pos - (long) idx * chunkSize);
+            int n = (int) Math.min(Math.min(len, chunk.length - chunkOffset), end - pos);
+            if (n <= 0) {
+                throw new DatabaseCorruptionException("Chunk " + idx + " of object " + objectName + " is too short");
+            }
+            System.arraycopy(chunk, chunkOffset, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            long k = Math.max(0, Math.min(n, end - pos));
+            pos += k;
+            return k;
+        }
+
+        @Override
+        public int available() {
+            if (chunk == null || pos >= end) {
+                return 0;
+            }
+            long chunkEnd = Math.min(end, (long) chunkIdx * chunkSize + chunk.length);
+            return (int) Math.max(0, chunkEnd - pos);
+        }
+
+        private byte[] readChunk(int idx) throws IOException {
+            try {
+                byte[] data = tablespace.getRdb().get(getChunkKey(objectName, objectId, idx));
+                if (data == null) {
+                    throw new IOException("Object " + objectName + " has been modified or deleted while reading");
+                }
+                return data;
+            } catch (RocksDBException e) {
+                throw new IOException("Failed to retrieve object: " + e.toString(), e);
+            }
+        }
+    }
 }
@@ -29,20 +29,28 @@ import org.yamcs.yarch.rocksdb.protobuf.Tablespace.TablespaceRecord.Type;
  * 4 bytes    1 byte             variable size
  * tbsIndex   0 = bucket info
  * tbsIndex   1 = metadata       objectName (up to 1000 bytes)
- * tbsIndex   2 = data           objectId (4 bytes)
+ * tbsIndex   2 = data           objectName (objects stored without chunks by older versions)
+ * tbsIndex   3 = data chunk     objectId (4 bytes) chunkIdx (4 bytes) objectName
+ * tbsIndex   4 = upload marker  objectId (4 bytes) objectName
  * </pre>
  * 
  * The rocksdb value is formed by:
  * <ul>
- * <li>in case of metadata: protobuf representation of ObjectProperties (contains the objectId and key,value metadata)
+ * <li>in case of metadata: protobuf representation of ObjectProperties (contains the objectId, the chunk size and
+ * key,value metadata)
  * <li>in case of user object: binary user object
+ * <li>in case of data chunk: the part of the user object starting at chunkIdx*chunkSize
+ * <li>in case of upload marker: empty. The marker exists while the chunks of an object are being written, it allows
+ * to remove the chunks left by an upload interrupted by a crash.
  * </ul>
+ * The objectId is incremented each time an object is overwritten such that the chunks of the new version do not
+ * overwrite the chunks of the old version which may be being read.
  * 
  * To retrieve an object based on the bucket name and object name,
  * <ol>
  * <li>retrieve the tbsIndex based on the bucket name
  * <li>retrieve the ObjectProperties based on the tbsIndex and object name
- * <li>retrieve the object data based on the tbsIndex and objectId
+ * <li>retrieve the object data chunks based on the tbsIndex, objectId and object name
  * </ol>
  * 
  * @author nm
@@ -56,6 +64,8 @@ public class RdbBucketDatabase implements BucketDatabase {
     final static byte TYPE_BUCKET_INFO = 0;
     final static byte TYPE_OBJ_METADATA = 1;
     final static byte TYPE_OBJ_DATA = 2;
+    final static byte TYPE_OBJ_CHUNK = 3;
+    final static byte TYPE_OBJ_UPLOAD = 4;
 
     final static long DEFAULT_MAX_BUCKET_SIZE = 100L * 1024 * 1024; // 100MB
     final static int DEFAULT_MAX_OBJECTS_PER_BUCKET = 1000;
@@ -14,8 +14,12 @@ import org.rocksdb.Cache;
 import org.rocksdb.ColumnFamilyOptions;
 import org.rocksdb.CompressionType;
 import org.rocksdb.DBOptions;
+import org.rocksdb.HyperClockCache;
 import org.rocksdb.IndexType;
 import org.rocksdb.LRUCache;
+import org.rocksdb.Statistics;
+import org.rocksdb.StatsLevel;
+import org.rocksdb.WriteBufferManager;
 import org.rocksdb.YamcsParchiveMergeOperator;
 import org.yamcs.ConfigurationException;
 import org.yamcs.YConfiguration;
@@ -40,6 +44,9 @@ public class RdbConfig {
     public static final String KEY_TF_CONFIG = "tableFormatConfig";
 
     public static final int DEFAULT_MAX_OPEN_FILES = 10000;
+    public static final long DEFAULT_WRITE_BATCH_MAX_DELAY = 200;
+    public static final int DEFAULT_READ_AHEAD_QUEUE_SIZE = 1024;
+    public static final long DEFAULT_BLOCK_CACHE_SIZE = 64 * 1024 * 1024;
 
     static final Map<String, CompressionType> COMP_TYPES = new HashMap<>();
     static {
@@ -53,6 +60,39 @@ public class RdbConfig {
         COMP_TYPES.put("zstd", CompressionType.ZSTD_COMPRESSION);
     }
 
+    /**
+     * Durability of the table writes
+     */
+    public enum WriteDurability {
+        /**
+         * writes go to the write ahead log which is not synced to disk
+         */
+        WAL,
+        /**
+         * writes go to the write ahead log which is synced to disk after each write (or batch of writes)
+         */
+        SYNC,
+        /**
+         * the write ahead log is not used; the data not yet flushed from the memtables is lost in case of crash
+         */
+        NO_WAL
+    }
+
+    /**
+     * Type of the block cache
+     */
+    public enum BlockCacheType {
+        /**
+         * least recently used cache protected by a mutex per shard
+         */
+        LRU,
+        /**
+         * lock free clock cache (the RocksDB HyperClockCache), scales better than the LRU cache when the cache is
+         * accessed concurrently by many threads
+         */
+        CLOCK
+    }
+
     static final private RdbConfig INSTANTCE = new RdbConfig();
 
     final TablespaceConfig defaultTblConfig;
@@ -113,12 +153,44 @@ public class RdbConfig {
         BlockBasedTableConfig tableFormatConfig;
 
         long targetFileSizeBase;
-        final LRUCache lruCache;
+        // shared by all the column families which do not have their own cache
+        final Cache blockCache;
+        // null if the write buffers are not limited globally
+        WriteBufferManager writeBufferManager;
+        // null if the statistics are not collected
+        Statistics statistics;
+
+        // if greater than 0, the table writers accumulate up to this number of rows into a batch before writing
+        int writeBatchSize = 0;
+        // max time in milliseconds the rows are kept in a batch before being written
+        long writeBatchMaxDelay = DEFAULT_WRITE_BATCH_MAX_DELAY;
+        WriteDurability writeDurability = WriteDurability.WAL;
+
+        // if greater than 0, the table reader streams read and deserialize the rows in a different thread than the
+        // one emitting them, keeping at most this number of rows in between
+        int readAheadQueueSize = DEFAULT_READ_AHEAD_QUEUE_SIZE;
+        // RocksDB readahead size in bytes used when scanning tables; 0 means the RocksDB default (auto-readahead)
+        long scanReadaheadSize = 0;
+        // if false, the blocks read when scanning tables are not added to the block cache. It may be set to false for
+        // the tablespaces mostly scanned by exports, to avoid evicting the blocks used by the other reads.
+        boolean scanFillCache = true;
+        // if greater than 1, the table scans read up to this number of partitions in parallel
+        int scanParallelism = 1;
 
         /**
          * default tablespace config containing default
          */
         public TablespaceConfig() {
+            this(YConfiguration.emptyConfig(), null);
+        }
+
+        TablespaceConfig(YConfiguration tblspConfig) throws ConfigurationException {
+            this(tblspConfig, parsePattern(tblspConfig.getString(KEY_TABLESPACE_NAME_PATTERN)));
+        }
+
+        private TablespaceConfig(YConfiguration tblspConfig, Pattern tablespaceNamePattern)
+                throws ConfigurationException {
+            this.tablespaceNamePattern = tablespaceNamePattern;
             dboptions = new DBOptions();
             dboptions.setCreateIfMissing(true);
             dboptions.setKeepLogFileNum(10);
@@ -151,35 +223,52 @@ public class RdbConfig {
             parchiveCfOptions.setLevel0StopWritesTrigger(100);
             parchiveCfOptions.setMergeOperator(new YamcsParchiveMergeOperator());
 
+            BlockCacheType blockCacheType = tblspConfig.getEnum("blockCacheType", BlockCacheType.class,
+                    BlockCacheType.LRU);
+            long blockCacheSize = DEFAULT_BLOCK_CACHE_SIZE;
+            if (tblspConfig.containsKey("blockCacheSize")) {
+                blockCacheSize = 1024 * tblspConfig.getLong("blockCacheSize");
+            }
+            blockCache = createCache(blockCacheType, blockCacheSize);
+
+            if (tblspConfig.containsKey("writeBufferManagerSize")) {
+                long wbmSize = 1024 * tblspConfig.getLong("writeBufferManagerSize");
+                // if charged to the block cache, the memory used by the memtables is reserved in the block cache
+                // such that the block cache size bounds the total memory
+                if (tblspConfig.getBoolean("chargeWriteBufferToCache", false)) {
+                    writeBufferManager = new WriteBufferManager(wbmSize, blockCache);
+                } else {
+                    writeBufferManager = new WriteBufferManager(wbmSize, new LRUCache(0));
+                }
+                dboptions.setWriteBufferManager(writeBufferManager);
+            }
+
+            if (tblspConfig.getBoolean("statistics", true)) {
+                statistics = new Statistics();
+                statistics.setStatsLevel(StatsLevel.EXCEPT_DETAILED_TIMERS);
+                dboptions.setStatistics(statistics);
+            }
+
             tableFormatConfig = new BlockBasedTableConfig();
             tableFormatConfig.setBlockSize(256l * 1024);
             tableFormatConfig.setFormatVersion(5);
             tableFormatConfig.setFilterPolicy(new BloomFilter());
-            lruCache = new LRUCache(64 * 1024 * 1024);
-            tableFormatConfig.setBlockCache(lruCache);
+            tableFormatConfig.setBlockCache(blockCache);
 
             tableFormatConfig.setIndexType(IndexType.kTwoLevelIndexSearch);
+            if (tblspConfig.containsKey(KEY_TF_CONFIG)) {
+                setMemoryOptions(tableFormatConfig, tblspConfig.getConfig(KEY_TF_CONFIG));
+            }
 
             rtDataCfOptions.setTableFormatConfig(tableFormatConfig);
             parchiveCfOptions.setTableFormatConfig(tableFormatConfig);
             defaultCfOptions.setTableFormatConfig(tableFormatConfig);
             metadataDbCfOptions.setTableFormatConfig(tableFormatConfig);
 
-            cfConfigList.add(new CfConfig(lruCache, Pattern.compile(ParameterArchive.CF_NAME), parchiveCfOptions));
-            cfConfigList.add(new CfConfig(lruCache, Pattern.compile(XtceTmRecorder.CF_NAME), rtDataCfOptions));
-            cfConfigList.add(new CfConfig(lruCache, Pattern.compile(Tablespace.CF_METADATA), metadataDbCfOptions));
-            cfConfigList.add(new CfConfig(lruCache, Pattern.compile(YRDB.DEFAULT_CF), defaultCfOptions));
-
-        }
-
-        TablespaceConfig(YConfiguration tblspConfig) throws ConfigurationException {
-            this();
-            String s = tblspConfig.getString(KEY_TABLESPACE_NAME_PATTERN);
-            try {
-                tablespaceNamePattern = Pattern.compile(s);
-            } catch (PatternSyntaxException e) {
-                throw new ConfigurationException("Cannot parse regexp " + e);
-            }
+            cfConfigList.add(new CfConfig(blockCache, Pattern.compile(ParameterArchive.CF_NAME), parchiveCfOptions));
+            cfConfigList.add(new CfConfig(blockCache, Pattern.compile(XtceTmRecorder.CF_NAME), rtDataCfOptions));
+            cfConfigList.add(new CfConfig(blockCache, Pattern.compile(Tablespace.CF_METADATA), metadataDbCfOptions));
+            cfConfigList.add(new CfConfig(blockCache, Pattern.compile(YRDB.DEFAULT_CF), defaultCfOptions));
 
             if (tblspConfig.containsKey("maxOpenFiles")) {
                 dboptions.setMaxOpenFiles(tblspConfig.getInt("maxOpenFiles"));
@@ -192,11 +281,39 @@ public class RdbConfig {
                 dboptions.setAllowConcurrentMemtableWrite(tblspConfig.getBoolean("allowConcurrentMemtableWrite"));
             }
 
+            if (tblspConfig.containsKey("writeBatchSize")) {
+                writeBatchSize = tblspConfig.getInt("writeBatchSize");
+            }
+            if (tblspConfig.containsKey("writeBatchMaxDelay")) {
+                writeBatchMaxDelay = tblspConfig.getLong("writeBatchMaxDelay");
+                if (writeBatchMaxDelay <= 0) {
+                    throw new ConfigurationException("writeBatchMaxDelay has to be positive");
+                }
+            }
+            if (tblspConfig.containsKey("writeDurability")) {
+                writeDurability = tblspConfig.getEnum("writeDurability", WriteDurability.class);
+            }
+            if (tblspConfig.containsKey("readAheadQueueSize")) {
+                readAheadQueueSize = tblspConfig.getInt("readAheadQueueSize");
+            }
+            if (tblspConfig.containsKey("scanReadaheadSize")) {
+                scanReadaheadSize = 1024 * tblspConfig.getLong("scanReadaheadSize");
+            }
+            if (tblspConfig.containsKey("scanFillCache")) {
+                scanFillCache = tblspConfig.getBoolean("scanFillCache");
+            }
+            if (tblspConfig.containsKey("scanParallelism")) {
+                scanParallelism = tblspConfig.getInt("scanParallelism");
+                if (scanParallelism < 1) {
+                    throw new ConfigurationException("scanParallelism has to be at least 1");
+                }
+            }
+
             if (tblspConfig.containsKey(KEY_CF_CONFIG)) {
                 int count = 0;
                 List<YConfiguration> cfConfigs = tblspConfig.getConfigList(KEY_CF_CONFIG);
                 for (YConfiguration cfConfig : cfConfigs) {
-                    CfConfig cfConf = new CfConfig(lruCache, cfConfig);
+                    CfConfig cfConf = new CfConfig(blockCache, blockCacheType, cfConfig);
                     cfConfigList.add(count, cfConf); // make sure to add them before the three ones added in the default
                                                      // constructor
                     count++;
@@ -217,32 +334,125 @@ public class RdbConfig {
             return dboptions;
         }
 
+        /**
+         * 
+         * @return the block cache shared by the column families which do not have their own cache configured
+         */
         public Cache getTableCache() {
-            return lruCache;
+            return blockCache;
+        }
+
+        /**
+         * 
+         * @return all the block caches used by this tablespace config: the shared one and the ones configured for
+         *         specific column families.
+         */
+        public List<Cache> getBlockCaches() {
+            List<Cache> l = new ArrayList<>();
+            l.add(blockCache);
+            for (CfConfig cfc : cfConfigList) {
+                if (cfc.blockCache != null && !l.contains(cfc.blockCache)) {
+                    l.add(cfc.blockCache);
+                }
+            }
+            return l;
+        }
+
+        /**
+         * 
+         * @return the RocksDB statistics collected for all the databases using this config or null if the statistics
+         *         collection is disabled
+         */
+        public Statistics getStatistics() {
+            return statistics;
+        }
+
+        /**
+         * 
+         * @return the write buffer manager limiting the memory used by the memtables of all the databases using this
+         *         config or null if there is no such limit
+         */
+        public WriteBufferManager getWriteBufferManager() {
+            return writeBufferManager;
+        }
+
+        /**
+         * 
+         * @return the maximum number of rows accumulated by a table writer in one batch. 0 means that the rows are
+         *         written one by one.
+         */
+        public int getWriteBatchSize() {
+            return writeBatchSize;
+        }
+
+        /**
+         * 
+         * @return the maximum time in milliseconds that a row is kept in a batch before being written to the database
+         */
+        public long getWriteBatchMaxDelay() {
+            return writeBatchMaxDelay;
+        }
+
+        public WriteDurability getWriteDurability() {
+            return writeDurability;
+        }
+
+        /**
+         * 
+         * @return the maximum number of rows read ahead by a table reader stream. 0 means that the rows are emitted by
+         *         the thread reading them.
+         */
+        public int getReadAheadQueueSize() {
+            return readAheadQueueSize;
+        }
+
+        /**
+         * 
+         * @return the RocksDB readahead size in bytes used when scanning tables. 0 means the RocksDB default.
+         */
+        public long getScanReadaheadSize() {
+            return scanReadaheadSize;
+        }
+
+        /**
+         * 
+         * @return true if the blocks read when scanning tables should be added to the block cache
+         */
+        public boolean isScanFillCache() {
+            return scanFillCache;
+        }
+
+        /**
+         * 
+         * @return the maximum number of partitions read in parallel by the table scans; it is also the size of the
+         *         thread pool used for reading the partitions. 1 means that the partitions are read sequentially by the
+         *         thread walking the table.
+         */
+        public int getScanParallelism() {
+            return scanParallelism;
         }
     }
 
     static class CfConfig {
         Pattern cfNamePattern;
         ColumnFamilyOptions options;
-        final LRUCache lruCache;
+        // the cache used by the column families matching the pattern, null if they do not use a block cache
+        final Cache blockCache;
 
-        public CfConfig(LRUCache lruCache, Pattern cfNamePattern, ColumnFamilyOptions options) {
-            this.lruCache = lruCache;
+        public CfConfig(Cache blockCache, Pattern cfNamePattern, ColumnFamilyOptions options) {
+            this.blockCache = blockCache;
             this.cfNamePattern = cfNamePattern;
             this.options = options;
         }
 
-        public CfConfig(LRUCache lruCache, YConfiguration cfConfig) {
-            this.lruCache = lruCache;
-            String s = cfConfig.getString(KEY_CF_PATTERN);
-            try {
-                cfNamePattern = Pattern.compile(s);
-            } catch (PatternSyntaxException e) {
-                throw new ConfigurationException("Cannot parse regexp " + e);
-            }
+        public CfConfig(Cache sharedCache, BlockCacheType blockCacheType, YConfiguration cfConfig) {
+            cfNamePattern = parsePattern(cfConfig.getString(KEY_CF_PATTERN));
             options = new ColumnFamilyOptions();
             options.useFixedLengthPrefixExtractor(4);
+            if (cfNamePattern.matcher(ParameterArchive.CF_NAME).matches()) {
+                // the parameter archive cannot work without it
+                options.setMergeOperator(new YamcsParchiveMergeOperator());
+            }
 
             if (cfConfig.containsKey("numLevels")) {
                 options.setNumLevels(cfConfig.getInt("numLevels"));
@@ -294,24 +504,77 @@ public class RdbConfig {
                         getCompressionType(cfConfig.getString("bottommostCompressionType")));
             }
 
+            BlockBasedTableConfig tableFormatConfig = new BlockBasedTableConfig();
+            Cache cache = sharedCache;
             if (cfConfig.containsKey(KEY_TF_CONFIG)) {
                 YConfiguration tfc = cfConfig.getConfig(KEY_TF_CONFIG);
-                BlockBasedTableConfig tableFormatConfig = new BlockBasedTableConfig();
                 if (tfc.containsKey("blockSize")) {
                     tableFormatConfig.setBlockSize(1024L * tfc.getLong("blockSize"));
                 }
 
-                if (tfc.containsKey("noBlockCache")) {
-                    tableFormatConfig.setNoBlockCache(tfc.getBoolean("noBlockCache"));
+                if (tfc.getBoolean("noBlockCache", false)) {
+                    tableFormatConfig.setNoBlockCache(true);
+                    cache = null;
+                } else if (tfc.containsKey("blockCacheSize")) {
+                    // a cache dedicated to the column families matching the pattern
+                    cache = createCache(blockCacheType, 1024L * tfc.getLong("blockCacheSize"));
                 }
 
                 boolean partitionedIndex = tfc.getBoolean("partitionedIndex", true);
                 tableFormatConfig
                         .setIndexType(partitionedIndex ? IndexType.kTwoLevelIndexSearch : IndexType.kBinarySearch);
-                options.setTableFormatConfig(tableFormatConfig);
+                if (tfc.getBoolean("bloomFilter", false)) {
+                    tableFormatConfig.setFilterPolicy(new BloomFilter());
+                }
+                setMemoryOptions(tableFormatConfig, tfc);
+            }
+            if (cache != null) {
+                tableFormatConfig.setBlockCache(cache);
+            }
+            this.blockCache = cache;
+            options.setTableFormatConfig(tableFormatConfig);
+        }
+
+    }
+
+    /**
+     * sets the options controlling which index and filter blocks are kept in memory
+     */
+    static void setMemoryOptions(BlockBasedTableConfig tableFormatConfig, YConfiguration tfc) {
+        if (tfc.containsKey("partitionFilters")) {
+            boolean partitionFilters = tfc.getBoolean("partitionFilters");
+            if (partitionFilters && tableFormatConfig.indexType() != IndexType.kTwoLevelIndexSearch) {
+                throw new ConfigurationException("partitionFilters requires a partitioned index");
             }
+            tableFormatConfig.setPartitionFilters(partitionFilters);
+        }
+        if (tfc.containsKey("cacheIndexAndFilterBlocks")) {
+            tableFormatConfig.setCacheIndexAndFilterBlocks(tfc.getBoolean("cacheIndexAndFilterBlocks"));
+        }
+        if (tfc.containsKey("pinL0FilterAndIndexBlocksInCache")) {
+            tableFormatConfig.setPinL0FilterAndIndexBlocksInCache(tfc.getBoolean("pinL0FilterAndIndexBlocksInCache"));
         }
+        if (tfc.containsKey("pinTopLevelIndexAndFilter")) {
+            tableFormatConfig.setPinTopLevelIndexAndFilter(tfc.getBoolean("pinTopLevelIndexAndFilter"));
+        }
+    }
+
+    static Cache createCache(BlockCacheType type, long size) {
+        switch (type) {
+        case CLOCK:
+            // estimated entry charge 0 means that the cache sizes its table automatically
+            return new HyperClockCache(size, 0, -1, false);
+        default:
+            return new LRUCache(size);
+        }
+    }
 
+    static Pattern parsePattern(String s) {
+        try {
+            return Pattern.compile(s);
+        } catch (PatternSyntaxException e) {
+            throw new ConfigurationException("Cannot parse regexp " + e);
+        }
     }
 
     static CompressionType getCompressionType(String compr) {
@@ -1,7 +1,9 @@
 package org.yamcs.yarch.rocksdb;
 
+import org.rocksdb.RocksDBException;
 import org.yamcs.utils.ByteArrayUtils;
 import org.yamcs.yarch.HistogramInfo;
+import org.yamcs.yarch.HistogramLevel;
 
 import static org.yamcs.yarch.rocksdb.RdbStorageEngine.*;
 
@@ -10,6 +12,9 @@ public class RdbHistogramInfo extends HistogramInfo {
     final int tbsIndex;
     //for time based partitions something like 2017/11
     final String partitionDir;
+    // true if the roll-up levels are maintained for this histogram, null if not yet known
+    volatile Boolean rollups;
+
     public RdbHistogramInfo(int tbsIndex, String columnName, String partitionDir) {
         super(columnName);
         this.tbsIndex = tbsIndex;
@@ -26,6 +31,57 @@ public class RdbHistogramInfo extends HistogramInfo {
         return dbKey;
     }
     
+    /**
+     * Key of the record marking that the histogram has been built with the roll-up levels.
+     * <p>
+     * The histograms created before the roll-up levels existed do not have it; they are read at the
+     * {@link HistogramLevel#HOUR} level until rebuilt.
+     */
+    static byte[] rollupMarkerKey(int tbsIndex) {
+        return histoDbKey(tbsIndex, Long.MAX_VALUE, ZERO_BYTES);
+    }
+
+    /**
+     * Checks if the roll-up levels are available for this histogram.
+     * <p>
+     * If the marker is missing but the histogram is empty, the marker is written (if create is true) and the roll-ups
+     * will be maintained from now on.
+     */
+    boolean hasRollups(YRDB rdb, boolean create) throws RocksDBException {
+        Boolean r = rollups;
+        if (r != null) {
+            return r;
+        }
+        byte[] markerKey = rollupMarkerKey(tbsIndex);
+        if (rdb.get(markerKey) != null) {
+            r = true;
+        } else if (create && isEmpty(rdb)) {
+            rdb.put(markerKey, new byte[0]);
+            r = true;
+        } else if (create) {
+            r = false;
+        } else {
+            // the marker may still be written by the histogram writer
+            return false;
+        }
+        rollups = r;
+        return r;
+    }
+
+    /**
+     * Writes the roll-up marker; called when the histogram is (re)built
+     */
+    void writeRollupMarker(YRDB rdb) throws RocksDBException {
+        rdb.put(rollupMarkerKey(tbsIndex), new byte[0]);
+        rollups = true;
+    }
+
+    private boolean isEmpty(YRDB rdb) {
+        try (DbIterator it = rdb.newPrefixIterator(dbKey(tbsIndex))) {
+            return !it.isValid();
+        }
+    }
+
     @Override
     public String toString() {
         return "RdbHistogramInfo [tbsIndex=" + tbsIndex + ", partitionDir=" + partitionDir + ", columnName="
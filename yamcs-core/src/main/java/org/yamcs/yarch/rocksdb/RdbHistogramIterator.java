@@ -1,6 +1,5 @@
 package org.yamcs.yarch.rocksdb;
 
-import static org.yamcs.yarch.HistogramSegment.segmentStart;
 import static org.yamcs.yarch.rocksdb.RdbHistogramInfo.histoDbKey;
 
 import static org.yamcs.yarch.rocksdb.RdbStorageEngine.*;
@@ -19,12 +18,16 @@ import org.yamcs.logging.Log;
 import org.yamcs.utils.ByteArrayUtils;
 import org.yamcs.utils.TimeInterval;
 import org.yamcs.yarch.HistogramIterator;
+import org.yamcs.yarch.HistogramLevel;
 import org.yamcs.yarch.HistogramRecord;
-import org.yamcs.yarch.HistogramSegment;
 import org.yamcs.yarch.PartitionManager;
 import org.yamcs.yarch.TableDefinition;
 
 /**
+ * Iterates over the histogram records of one column.
+ * <p>
+ * The records are read from the requested {@link HistogramLevel}; the partitions whose histogram has not been built
+ * with the roll-up levels are read at the {@link HistogramLevel#HOUR} level.
  * 
  * @author nm
  *
@@ -45,10 +48,19 @@ public class RdbHistogramIterator implements HistogramIterator {
     String colName;
     boolean stopReached = false;
     RdbPartitionManager partMgr;
-    
+    final HistogramLevel requestedLevel;
+    // level of the current partition
+    HistogramLevel level;
+
     public RdbHistogramIterator(String yamcsInstance, Tablespace tablespace, TableDefinition tblDef,
             String colName, TimeInterval interval) throws RocksDBException, IOException {
+        this(yamcsInstance, tablespace, tblDef, colName, interval, HistogramLevel.HOUR);
+    }
+
+    public RdbHistogramIterator(String yamcsInstance, Tablespace tablespace, TableDefinition tblDef,
+            String colName, TimeInterval interval, HistogramLevel level) throws RocksDBException, IOException {
         this.interval = interval;
+        this.requestedLevel = level;
         this.colName = colName;
         this.tablespace = tablespace;
 
@@ -78,34 +90,49 @@ public class RdbHistogramIterator implements HistogramIterator {
             readNextPartition();
             return;
         }
-        rdb = tablespace.getRdb(hist.partitionDir, false);
+        openPartition(hist);
+
+        long segStart = interval.hasStart() ? level.segmentStart(interval.getStart()) : 0;
+        byte[] dbKeyStart = histoDbKey(hist.tbsIndex, keySstart(segStart), ZERO_BYTES);
 
-        long segStart = interval.hasStart() ? segmentStart(interval.getStart()) : 0;
-        byte[] dbKeyStart = histoDbKey(hist.tbsIndex, segStart, ZERO_BYTES);
-
-        boolean strictEnd;
-        byte[] dbKeyStop;
-        if (interval.hasEnd()) {
-            strictEnd = false;
-            dbKeyStop = ByteArrayUtils.encodeInt(hist.tbsIndex, new byte[12], 0);
-            long segStop = segmentStart(interval.getEnd());
-            ByteArrayUtils.encodeLong(segStop, dbKeyStop, TBS_INDEX_SIZE);
-        } else {
-            dbKeyStop = RdbStorageEngine.dbKey(hist.tbsIndex);
-            strictEnd = false;
-        }
         if (segmentIterator != null) {
             segmentIterator.close();
         }
 
         try {
-            segmentIterator = new AscendingRangeIterator(rdb.newIterator(), dbKeyStart, dbKeyStop);
+            segmentIterator = new AscendingRangeIterator(rdb.newIterator(), dbKeyStart, dbKeyStop(hist));
         } catch (RocksDBException e) {
             throw new IOException(e);
         }
         readNextSegments();
     }
 
+    private void openPartition(RdbHistogramInfo hist) throws IOException {
+        if (rdb != null) {
+            tablespace.dispose(rdb);
+        }
+        rdb = tablespace.getRdb(hist.partitionDir, false);
+        try {
+            level = requestedLevel == HistogramLevel.HOUR || !hist.hasRollups(rdb, false) ? HistogramLevel.HOUR
+                    : requestedLevel;
+        } catch (RocksDBException e) {
+            throw new IOException(e);
+        }
+    }
+
+    // the roll-ups are not maintained for negative times
+    private long keySstart(long sstart) {
+        return level == HistogramLevel.HOUR ? sstart : level.keySstart(Math.max(0, sstart));
+    }
+
+    // the stop key is used as an inclusive prefix
+    private byte[] dbKeyStop(RdbHistogramInfo hist) {
+        byte[] dbKeyStop = ByteArrayUtils.encodeInt(hist.tbsIndex, new byte[12], 0);
+        long segStop = interval.hasEnd() ? keySstart(level.segmentStart(interval.getEnd())) : level.maxKeySstart();
+        ByteArrayUtils.encodeLong(segStop, dbKeyStop, TBS_INDEX_SIZE);
+        return dbKeyStop;
+    }
+
     // reads all the segments with the same sstart time
     private void readNextSegments() throws IOException {
         if (!segmentIterator.isValid()) {
@@ -151,13 +178,23 @@ public class RdbHistogramIterator implements HistogramIterator {
         byte[] columnv = new byte[key.length - RdbStorageEngine.TBS_INDEX_SIZE - 8];
         System.arraycopy(key, RdbStorageEngine.TBS_INDEX_SIZE + 8, columnv, 0, columnv.length);
 
+        long segStartTime = level.sstart(sstart) * level.getSegmentDuration();
+        boolean rollup = level != HistogramLevel.HOUR;
+
         ByteBuffer vbb = ByteBuffer.wrap(val);
         HistogramRecord r = null;
         while (vbb.hasRemaining()) {
-            long start = sstart * HistogramSegment.GROUPING_FACTOR + vbb.getInt();
-
-            long stop = sstart * HistogramSegment.GROUPING_FACTOR + vbb.getInt();
-            int num = vbb.getShort();
+            long start, stop;
+            int num;
+            if (rollup) {
+                start = segStartTime + Integer.toUnsignedLong(vbb.getInt());
+                stop = segStartTime + Integer.toUnsignedLong(vbb.getInt());
+                num = vbb.getInt();
+            } else {
+                start = segStartTime + vbb.getInt();
+                stop = segStartTime + vbb.getInt();
+                num = vbb.getShort();
+            }
             if ((interval.hasStart()) && (stop <= interval.getStart())) {
                 continue;
             }
@@ -184,8 +221,7 @@ public class RdbHistogramIterator implements HistogramIterator {
     public void seek(byte[] columnValue, long time) {
         try {
             records.clear();
-            long sstart = segmentStart(time);
-            interval.setStart(HistogramSegment.GROUPING_FACTOR * sstart);
+            interval.setStart(time);
             partitionIterator = partMgr.intervalIterator(interval);
             if (!partitionIterator.hasNext()) {
                 stopReached = true;
@@ -200,22 +236,17 @@ public class RdbHistogramIterator implements HistogramIterator {
                 return;
             }
 
-            rdb = tablespace.getRdb(hist.partitionDir, false);
-            long segStart = segmentStart(time);
-            byte[] dbKeyStart = histoDbKey(hist.tbsIndex, segStart, columnValue);
+            openPartition(hist);
+            long sstart = level.segmentStart(time);
+            // the records of the other values in the same segment may end before the seek time
+            interval.setStart(level.getSegmentDuration() * sstart);
+            sstart = keySstart(sstart);
+            byte[] dbKeyStart = histoDbKey(hist.tbsIndex, sstart, columnValue);
 
-            byte[] dbKeyStop;
-            if (interval.hasEnd()) {
-                dbKeyStop = ByteArrayUtils.encodeInt(hist.tbsIndex, new byte[12], 0);
-                long segStop = segmentStart(interval.getEnd());
-                ByteArrayUtils.encodeLong(segStop, dbKeyStop, TBS_INDEX_SIZE);
-            } else {
-                dbKeyStop = RdbStorageEngine.dbKey(hist.tbsIndex);
-            }
             if (segmentIterator != null) {
                 segmentIterator.close();
             }
-            segmentIterator = new AscendingRangeIterator(rdb.newIterator(), dbKeyStart, dbKeyStop);
+            segmentIterator = new AscendingRangeIterator(rdb.newIterator(), dbKeyStart, dbKeyStop(hist));
             if (!segmentIterator.isValid()) {
                 readNextPartition();
                 return;
@@ -17,6 +17,7 @@ import org.yamcs.utils.TimeInterval;
 import org.yamcs.yarch.BucketDatabase;
 import org.yamcs.yarch.ExecutionContext;
 import org.yamcs.yarch.HistogramIterator;
+import org.yamcs.yarch.HistogramLevel;
 import org.yamcs.yarch.ProtobufDatabase;
 import org.yamcs.yarch.Sequence;
 import org.yamcs.yarch.SequenceInfo;
@@ -203,11 +204,28 @@ public class RdbStorageEngine implements StorageEngine {
     @Override
     public HistogramIterator getHistogramIterator(YarchDatabaseInstance ydb, TableDefinition tblDef,
             String columnName, TimeInterval interval) throws YarchException {
+        return getHistogramIterator(ydb, tblDef, columnName, interval, HistogramLevel.HOUR);
+    }
 
+    @Override
+    public HistogramIterator getHistogramIterator(YarchDatabaseInstance ydb, TableDefinition tblDef,
+            String columnName, TimeInterval interval, long mergeTime) throws YarchException {
+        return getHistogramIterator(ydb, tblDef, columnName, interval, HistogramLevel.select(interval, mergeTime));
+    }
+
+    private HistogramIterator getHistogramIterator(YarchDatabaseInstance ydb, TableDefinition tblDef,
+            String columnName, TimeInterval interval, HistogramLevel level) throws YarchException {
         checkFormatVersion(ydb, tblDef);
         try {
             Tablespace tblsp = getTablespace(ydb);
-            return new RdbHistogramIterator(ydb.getYamcsInstance(), tblsp, tblDef, columnName, interval);
+            if (level != HistogramLevel.HOUR) {
+                // the roll-ups are written periodically, make sure the recent data is included
+                RdbTable table = tblsp.getTable(tblDef);
+                if (table != null && table.getHistogramWriter() != null) {
+                    table.getHistogramWriter().flush();
+                }
+            }
+            return new RdbHistogramIterator(ydb.getYamcsInstance(), tblsp, tblDef, columnName, interval, level);
         } catch (RocksDBException | IOException e) {
             throw new YarchException(e);
         }
@@ -249,11 +267,14 @@ public class RdbStorageEngine implements StorageEngine {
         return tablespaces.get(tablespaceName);
     }
 
-    public void dropTablespace(String tablespaceName) {
+    public synchronized void dropTablespace(String tablespaceName) {
         Tablespace tablespace = tablespaces.remove(tablespaceName);
         if (tablespace == null) {
             throw new IllegalArgumentException("No tablespace named '" + tablespaceName + "'");
         }
+        // the databases cached for the tablespace cannot be used once it is closed
+        bucketDbs.remove(tablespaceName);
+        protobufDbs.remove(tablespaceName);
         tablespace.close();
     }
 
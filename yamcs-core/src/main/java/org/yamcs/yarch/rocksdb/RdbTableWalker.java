@@ -23,12 +23,13 @@ import org.yamcs.yarch.RawTuple;
 import org.yamcs.yarch.TableDefinition;
 import org.yamcs.yarch.TableVisitor;
 import org.yamcs.yarch.YarchException;
+import org.yamcs.yarch.rocksdb.RdbConfig.TablespaceConfig;
 import org.yamcs.yarch.streamsql.StreamSqlException;
 import org.yamcs.yarch.streamsql.StreamSqlException.ErrCode;
 
 public class RdbTableWalker extends AbstractTableWalker {
-    private final Tablespace tablespace;
-    private final RdbTable table;
+    final Tablespace tablespace;
+    final RdbTable table;
     static AtomicInteger count = new AtomicInteger(0);
 
     boolean batchUpdates = false;
@@ -84,13 +85,7 @@ public class RdbTableWalker extends AbstractTableWalker {
         } else {
             rdb = tablespace.getRdb();
         }
-        ReadOptions readOptions = new ReadOptions();
-
-        readOptions.setTailing(follow);
-        if (!follow) {
-            Snapshot snapshot = ctx.getSnapshot(rdb);
-            readOptions.setSnapshot(snapshot);
-        }
+        ReadOptions readOptions = createReadOptions(follow ? null : ctx.getSnapshot(rdb));
         WriteBatch writeBatch = batchUpdates ? new WriteBatch() : null;
         var cfh = rdb.getColumnFamilyHandle(table.cfName());
 
@@ -99,9 +94,6 @@ public class RdbTableWalker extends AbstractTableWalker {
             // create an iterator for each partitions
             for (Partition p : interval) {
                 p1 = (RdbPartition) p;
-                if (!ascending) {
-                    readOptions.setTotalOrderSeek(true);
-                }
                 RocksIterator rocksIt = rdb.getDb().newIterator(cfh, readOptions);
                 DbIterator it = getPartitionIterator(rocksIt, p1.tbsIndex, ascending, tableRange);
                 if (it.isValid()) {
@@ -145,6 +137,26 @@ public class RdbTableWalker extends AbstractTableWalker {
         }
     }
 
+    ReadOptions createReadOptions(Snapshot snapshot) {
+        ReadOptions readOptions = new ReadOptions();
+
+        readOptions.setTailing(follow);
+        if (!follow) {
+            readOptions.setSnapshot(snapshot);
+            if (bulkRead) {
+                TablespaceConfig tblspConfig = RdbConfig.getInstance().getTablespaceConfig(tablespace.getName());
+                readOptions.setFillCache(tblspConfig.isScanFillCache());
+                if (tblspConfig.getScanReadaheadSize() > 0) {
+                    readOptions.setReadaheadSize(tblspConfig.getScanReadaheadSize());
+                }
+            }
+        }
+        if (!ascending) {
+            readOptions.setTotalOrderSeek(true);
+        }
+        return readOptions;
+    }
+
     // return true if the end condition has been reached
     boolean runAscending(YRDB rdb, ColumnFamilyHandle cfh, DbIterator iterator, WriteBatch writeBatch, byte[] rangeEnd)
             throws RocksDBException, StreamSqlException {
@@ -248,7 +260,7 @@ public class RdbTableWalker extends AbstractTableWalker {
      * TODO: check usage of RocksDB prefix iterators
      * 
      */
-    private DbIterator getPartitionIterator(RocksIterator it, int tbsIndex, boolean ascending, DbRange tableRange) {
+    DbIterator getPartitionIterator(RocksIterator it, int tbsIndex, boolean ascending, DbRange tableRange) {
         DbRange dbRange = getDbRange(tbsIndex, tableRange);
         if (ascending) {
             return new AscendingRangeIterator(it, dbRange);
@@ -3,8 +3,16 @@ package org.yamcs.yarch.rocksdb;
 import static org.yamcs.yarch.rocksdb.RdbStorageEngine.dbKey;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.rocksdb.ColumnFamilyHandle;
 import org.rocksdb.RocksDBException;
@@ -13,6 +21,7 @@ import org.rocksdb.WriteOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.yamcs.YamcsServer;
+import org.yamcs.utils.ByteArrayWrapper;
 import org.yamcs.utils.TimeEncoding;
 import org.yamcs.yarch.ColumnDefinition;
 import org.yamcs.yarch.DataType;
@@ -25,6 +34,7 @@ import org.yamcs.yarch.Tuple;
 import org.yamcs.yarch.TupleDefinition;
 import org.yamcs.yarch.YarchDatabaseInstance;
 import org.yamcs.yarch.YarchException;
+import org.yamcs.yarch.rocksdb.RdbConfig.TablespaceConfig;
 
 import static org.yamcs.yarch.rocksdb.RdbStorageEngine.TBS_INDEX_SIZE;;
 
@@ -39,6 +49,11 @@ import static org.yamcs.yarch.rocksdb.RdbStorageEngine.TBS_INDEX_SIZE;;
  * 
  * <p>
  * The histograms are written by the {@link HistogramWriter}.
+ * <p>
+ * If the tablespace is configured with a writeBatchSize greater than 0, the rows written in the INSERT, UPSERT and LOAD
+ * modes are accumulated in a {@link WriteBatch} per database and written when the batch contains writeBatchSize rows,
+ * when the writeBatchMaxDelay expires or when the stream is closed. The APPEND modes, which read and modify the existing
+ * rows under lock, always write the rows one by one.
  *
  * 
  * @author nm
@@ -59,6 +74,13 @@ public class RdbTableWriter extends TableWriter {
     final SecondaryIndexWriter secondaryIndexWriter;
     TableDefinition tableDefinition;
 
+    // max number of rows in a batch; 0 means no batching
+    final int batchSize;
+    final Map<YRDB, PendingBatch> pendingBatches = new HashMap<>();
+    // the write batches are reused after being written
+    final Deque<WriteBatch> freeWriteBatches = new ArrayDeque<>();
+    ScheduledFuture<?> flushFuture;
+
     public RdbTableWriter(YarchDatabaseInstance ydb, RdbTable table, InsertMode mode) {
         super(ydb, table, mode);
         this.tableDefinition = table.getDefinition();
@@ -67,13 +89,36 @@ public class RdbTableWriter extends TableWriter {
         this.tablespace = table.getTablespace();
         this.table = table;
 
+        TablespaceConfig tblspConfig = RdbConfig.getInstance().getTablespaceConfig(tablespace.getName());
         wopt = new WriteOptions();
         if (mode == InsertMode.LOAD) {
             wopt.setSync(false);
             wopt.setDisableWAL(true);
+        } else {
+            switch (tblspConfig.getWriteDurability()) {
+            case SYNC:
+                wopt.setSync(true);
+                break;
+            case NO_WAL:
+                wopt.setDisableWAL(true);
+                break;
+            default:
+                // WAL without sync is the RocksDB default
+            }
         }
         histoWriter = table.getHistogramWriter();
         secondaryIndexWriter = table.getSecondaryIndexWriter();
+
+        if (mode == InsertMode.INSERT || mode == InsertMode.UPSERT || mode == InsertMode.LOAD) {
+            batchSize = tblspConfig.getWriteBatchSize();
+        } else {
+            batchSize = 0;
+        }
+        if (batchSize > 0) {
+            long maxDelay = tblspConfig.getWriteBatchMaxDelay();
+            flushFuture = tablespace.getExecutor().scheduleAtFixedRate(this::flushPendingBatches, maxDelay, maxDelay,
+                    TimeUnit.MILLISECONDS);
+        }
     }
 
     @Override
@@ -92,6 +137,18 @@ public class RdbTableWriter extends TableWriter {
         if (closed) {
             return;
         }
+        if (batchSize > 0) {
+            synchronized (this) {
+                if (!closed) {
+                    doWrite(t);
+                }
+            }
+        } else {
+            doWrite(t);
+        }
+    }
+
+    private void doWrite(Tuple t) {
         try {
             RdbPartition partition = getDbPartition(t);
             YRDB rdb = tablespace.getRdb(partition.dir, false);
@@ -127,7 +184,11 @@ public class RdbTableWriter extends TableWriter {
         Row row = tableDefinition.generateRow(t);
         byte[] k = dbKey(partition.tbsIndex, row.getKey());
         byte[] v = tableDefinition.serializeValue(t, row);
-        db.put(cfh, wopt, k, v);
+        if (batchSize > 0) {
+            writeToBatch(db, cfh, partition, k, v, row);
+        } else {
+            db.put(cfh, wopt, k, v);
+        }
         return true;
     }
 
@@ -136,7 +197,7 @@ public class RdbTableWriter extends TableWriter {
         Row row = tableDefinition.generateRow(t);
         byte[] k = dbKey(partition.tbsIndex, row.getKey());
 
-        if (rdb.get(cfh, k) != null) {
+        if (isPending(rdb, k) || rdb.get(cfh, k) != null) {
             return;
         }
         byte[] v = tableDefinition.serializeValue(t, row);
@@ -157,7 +218,7 @@ public class RdbTableWriter extends TableWriter {
 
         boolean updated = false;
 
-        if (rdb.get(cfh, k) != null) {
+        if (isPending(rdb, k) || rdb.get(cfh, k) != null) {
             updated = true;
         }
         writeToDb(rdb, cfh, partition, k, v, row);
@@ -269,28 +330,127 @@ public class RdbTableWriter extends TableWriter {
 
     private void writeToDb(YRDB rdb, ColumnFamilyHandle cfh, RdbPartition partition, byte[] key, byte[] value, Row row)
             throws RocksDBException {
+        if (batchSize > 0) {
+            writeToBatch(rdb, cfh, partition, key, value, row);
+            return;
+        }
 
         if (secondaryIndexWriter == null) {
-            rdb.put(cfh, key, value);
+            rdb.put(cfh, wopt, key, value);
             return;
         }
         if (rdb == tablespace.getRdb()) {
-            try (WriteBatch writeBatch = new WriteBatch();
-                    WriteOptions writeOpts = new WriteOptions()) {
+            try (WriteBatch writeBatch = new WriteBatch()) {
                 writeBatch.put(cfh, key, value);
                 secondaryIndexWriter.addTuple(writeBatch, row, partition);
-                rdb.write(writeOpts, writeBatch);
+                rdb.write(wopt, writeBatch);
             }
         } else {// secondary index and main data go into different databases, we cannot perform the write in a batch
-            rdb.put(cfh, key, value);
+            rdb.put(cfh, wopt, key, value);
             cfh = tablespace.getRdb().getColumnFamilyHandle(table.cfName());
-            try (WriteBatch writeBatch = new WriteBatch();
-                    WriteOptions writeOpts = new WriteOptions()) {
+            try (WriteBatch writeBatch = new WriteBatch()) {
                 writeBatch.put(cfh, key, value);
                 secondaryIndexWriter.addTuple(writeBatch, row, partition);
-                tablespace.getRdb().write(writeOpts, writeBatch);
+                tablespace.getRdb().write(wopt, writeBatch);
+            }
+        }
+    }
+
+    /**
+     * Adds the row to the pending batch of the database, and writes the batch if it is full.
+     * <p>
+     * Called with the monitor held.
+     */
+    private void writeToBatch(YRDB rdb, ColumnFamilyHandle cfh, RdbPartition partition, byte[] key, byte[] value,
+            Row row) throws RocksDBException {
+        PendingBatch pb = getPendingBatch(rdb, partition.dir);
+        pb.writeBatch.put(cfh, key, value);
+        if (mode != InsertMode.LOAD) {
+            pb.keys.add(new ByteArrayWrapper(key));
+        }
+
+        if (secondaryIndexWriter != null) {
+            if (rdb == tablespace.getRdb()) {
+                secondaryIndexWriter.addTuple(pb.writeBatch, row, partition);
+            } else {
+                PendingBatch mainPb = getPendingBatch(tablespace.getRdb(), null);
+                ColumnFamilyHandle mainCfh = tablespace.getRdb().getColumnFamilyHandle(table.cfName());
+                mainPb.writeBatch.put(mainCfh, key, value);
+                secondaryIndexWriter.addTuple(mainPb.writeBatch, row, partition);
+                mainPb.numRows++;
+                if (mainPb.numRows >= batchSize) {
+                    pendingBatches.remove(mainPb.rdb);
+                    flush(mainPb);
+                }
+            }
+        }
+        pb.numRows++;
+        if (pb.numRows >= batchSize) {
+            pendingBatches.remove(rdb);
+            flush(pb);
+        }
+    }
+
+    private PendingBatch getPendingBatch(YRDB rdb, String partitionDir) {
+        PendingBatch pb = pendingBatches.get(rdb);
+        if (pb == null) {
+            WriteBatch wb = freeWriteBatches.poll();
+            if (wb == null) {
+                wb = new WriteBatch();
             }
+            // keep a reference to the database until the batch is written
+            tablespace.getRdb(partitionDir, false);
+            pb = new PendingBatch(rdb, wb);
+            pendingBatches.put(rdb, pb);
+        }
+        return pb;
+    }
+
+    private boolean isPending(YRDB rdb, byte[] key) {
+        if (batchSize == 0) {
+            return false;
         }
+        PendingBatch pb = pendingBatches.get(rdb);
+        return pb != null && pb.keys.contains(new ByteArrayWrapper(key));
+    }
+
+    /**
+     * writes the batch to the database and releases the database reference.
+     * <p>
+     * Called with the monitor held.
+     */
+    private void flush(PendingBatch pb) throws RocksDBException {
+        try {
+            if (pb.numRows > 0) {
+                long t0 = System.nanoTime();
+                pb.rdb.write(wopt, pb.writeBatch);
+                tablespace.getWriteBatchStats().addBatch(pb.numRows, System.nanoTime() - t0);
+            }
+        } finally {
+            pb.writeBatch.clear();
+            freeWriteBatches.add(pb.writeBatch);
+            tablespace.dispose(pb.rdb);
+        }
+    }
+
+    /**
+     * writes all the pending batches
+     */
+    synchronized void flushPendingBatches() {
+        if (pendingBatches.isEmpty()) {
+            return;
+        }
+        // each batch is disposed and recycled by flush, even if writing another one failed
+        for (PendingBatch pb : pendingBatches.values()) {
+            try {
+                flush(pb);
+            } catch (RocksDBException | RuntimeException e) {
+                log.error("failed to write a batch: ", e);
+                YamcsServer.getServer().getCrashHandler(ydb.getYamcsInstance()).handleCrash("Archive",
+                        "failed to write a batch in " + table.getName() + ": " + e);
+            }
+        }
+        pendingBatches.clear();
     }
 
     /**
@@ -322,9 +482,34 @@ public class RdbTableWriter extends TableWriter {
         if (closed) {
             return;
         }
+        if (batchSize > 0) {
+            flushFuture.cancel(false);
+            synchronized (this) {
+                flushPendingBatches();
+                closed = true;
+                freeWriteBatches.forEach(WriteBatch::close);
+                freeWriteBatches.clear();
+            }
+        }
+        if (histoWriter != null) {
+            histoWriter.flush();
+        }
         closed = true;
     }
 
+    static class PendingBatch {
+        final YRDB rdb;
+        final WriteBatch writeBatch;
+        // keys written in the batch, used to detect duplicates in the INSERT and UPSERT modes
+        final Set<ByteArrayWrapper> keys = new HashSet<>();
+        int numRows;
+
+        PendingBatch(YRDB rdb, WriteBatch writeBatch) {
+            this.rdb = rdb;
+            this.writeBatch = writeBatch;
+        }
+    }
+
     @Override
     public void streamClosed(Stream stream) {
         log.debug("Stream {} closed", stream.getName());
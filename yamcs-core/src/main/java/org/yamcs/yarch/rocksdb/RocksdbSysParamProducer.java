@@ -1,5 +1,6 @@
 package org.yamcs.yarch.rocksdb;
 
+import static org.yamcs.utils.ValueUtility.getDoubleValue;
 import static org.yamcs.utils.ValueUtility.getUint64Value;
 
 import java.util.ArrayList;
@@ -21,13 +22,25 @@ import org.yamcs.xtce.UnitType;
  * Makes system parameters under /yamcs/<instance-id>/rocksdb/
  * <p>
  * One parameter for each open RocksDB database, containing statistics about the database
- * 
+ * <p>
+ * One parameter containing statistics about the batches written by the table writers (see {@link RdbTableWriter}).
+ * The statistics refer to the interval since the previous parameter value.
+ * <p>
+ * If the RocksDB statistics are enabled for the tablespace, one parameter containing the block cache hit ratios by
+ * block type, also referring to the interval since the previous value.
  */
 public class RocksdbSysParamProducer implements SystemParametersProducer {
 
     private AggregateParameterType rocksdbMemUsageAggrType;
     private Parameter rocksdbMemUsageParam;
 
+    private AggregateParameterType writeBatchesAggrType;
+    private Parameter writeBatchesParam;
+
+    private AggregateParameterType blockCacheAggrType;
+    private Parameter blockCacheParam;
+    private BlockCacheStats blockCacheStats;
+
     final Tablespace tablespace;
 
     public RocksdbSysParamProducer(Tablespace tablespace, SystemParametersService sysParamsService) {
@@ -63,6 +76,66 @@ public class RocksdbSysParamProducer implements SystemParametersProducer {
                 rocksdbMemUsageAggrType,
                 "Memory usage for RocksDB databases associated to tablespace " + tablespace.getName());
 
+        UnitType usunit = new UnitType("us");
+        Member numBatchesMember = new Member("numBatches", sysParamsService.getBasicType(Type.UINT64));
+        numBatchesMember.setShortDescription("The number of batches written since the previous value");
+
+        Member numRowsMember = new Member("numRows", sysParamsService.getBasicType(Type.UINT64));
+        numRowsMember.setShortDescription("The number of rows written in batches since the previous value");
+
+        Member avgBatchSizeMember = new Member("avgBatchSize", sysParamsService.getBasicType(Type.DOUBLE));
+        avgBatchSizeMember.setShortDescription("The average number of rows in one batch");
+
+        Member avgFlushLatencyMember = new Member("avgFlushLatency",
+                sysParamsService.getBasicType(Type.DOUBLE, usunit));
+        avgFlushLatencyMember.setShortDescription("The average time taken to write one batch to the database");
+
+        Member maxFlushLatencyMember = new Member("maxFlushLatency",
+                sysParamsService.getBasicType(Type.DOUBLE, usunit));
+        maxFlushLatencyMember.setShortDescription("The maximum time taken to write one batch to the database");
+
+        writeBatchesAggrType = new AggregateParameterType.Builder().setName("WriteBatches")
+                .addMember(numBatchesMember)
+                .addMember(numRowsMember)
+                .addMember(avgBatchSizeMember)
+                .addMember(avgFlushLatencyMember)
+                .addMember(maxFlushLatencyMember)
+                .build();
+        writeBatchesParam = sysParamsService.createSystemParameter("rocksdb/writeBatches",
+                writeBatchesAggrType,
+                "Statistics about the batches written by the table writers in tablespace " + tablespace.getName());
+
+        var statistics = RdbConfig.getInstance().getTablespaceConfig(tablespace.getName()).getStatistics();
+        if (statistics != null) {
+            blockCacheStats = new BlockCacheStats(statistics);
+
+            Member hitsMember = new Member("hits", sysParamsService.getBasicType(Type.UINT64));
+            hitsMember.setShortDescription("The number of block cache hits since the previous value");
+
+            Member missesMember = new Member("misses", sysParamsService.getBasicType(Type.UINT64));
+            missesMember.setShortDescription("The number of block cache misses since the previous value");
+
+            Member dataHitRatioMember = new Member("dataHitRatio", sysParamsService.getBasicType(Type.DOUBLE));
+            dataHitRatioMember.setShortDescription("The fraction of data block lookups served from the cache");
+
+            Member indexHitRatioMember = new Member("indexHitRatio", sysParamsService.getBasicType(Type.DOUBLE));
+            indexHitRatioMember.setShortDescription("The fraction of index block lookups served from the cache");
+
+            Member filterHitRatioMember = new Member("filterHitRatio", sysParamsService.getBasicType(Type.DOUBLE));
+            filterHitRatioMember.setShortDescription("The fraction of filter block lookups served from the cache");
+
+            blockCacheAggrType = new AggregateParameterType.Builder().setName("BlockCache")
+                    .addMember(hitsMember)
+                    .addMember(missesMember)
+                    .addMember(dataHitRatioMember)
+                    .addMember(indexHitRatioMember)
+                    .addMember(filterHitRatioMember)
+                    .build();
+            blockCacheParam = sysParamsService.createSystemParameter("rocksdb/blockCache",
+                    blockCacheAggrType,
+                    "Block cache statistics for the RocksDB databases using the same configuration as tablespace "
+                            + tablespace.getName());
+        }
     }
 
     @Override
@@ -85,6 +158,41 @@ public class RocksdbSysParamProducer implements SystemParametersProducer {
 
         pv.setExpireMillis((long) (1.9 * getFrequency() * 1000));
         pvlist.add(pv);
+
+        var stats = tablespace.getWriteBatchStats().getAndReset();
+        AggregateValue wbv = new AggregateValue(writeBatchesAggrType.getMemberNames());
+        wbv.setMemberValue("numBatches", getUint64Value(stats.numBatches));
+        wbv.setMemberValue("numRows", getUint64Value(stats.numRows));
+        wbv.setMemberValue("avgBatchSize", getDoubleValue(stats.avgBatchSize()));
+        wbv.setMemberValue("avgFlushLatency", getDoubleValue(stats.avgFlushLatency()));
+        wbv.setMemberValue("maxFlushLatency", getDoubleValue(stats.maxFlushLatency()));
+
+        ParameterValue wbpv = new ParameterValue(writeBatchesParam);
+        wbpv.setGenerationTime(gentime);
+        wbpv.setAcquisitionTime(gentime);
+        wbpv.setAcquisitionStatus(AcquisitionStatus.ACQUIRED);
+        wbpv.setEngValue(wbv);
+        wbpv.setExpireMillis((long) (1.9 * getFrequency() * 1000));
+        pvlist.add(wbpv);
+
+        if (blockCacheStats != null) {
+            blockCacheStats.update();
+            AggregateValue bcv = new AggregateValue(blockCacheAggrType.getMemberNames());
+            bcv.setMemberValue("hits", getUint64Value(blockCacheStats.getHits()));
+            bcv.setMemberValue("misses", getUint64Value(blockCacheStats.getMisses()));
+            bcv.setMemberValue("dataHitRatio", getDoubleValue(blockCacheStats.getDataHitRatio()));
+            bcv.setMemberValue("indexHitRatio", getDoubleValue(blockCacheStats.getIndexHitRatio()));
+            bcv.setMemberValue("filterHitRatio", getDoubleValue(blockCacheStats.getFilterHitRatio()));
+
+            ParameterValue bcpv = new ParameterValue(blockCacheParam);
+            bcpv.setGenerationTime(gentime);
+            bcpv.setAcquisitionTime(gentime);
+            bcpv.setAcquisitionStatus(AcquisitionStatus.ACQUIRED);
+            bcpv.setEngValue(bcv);
+            bcpv.setExpireMillis((long) (1.9 * getFrequency() * 1000));
+            pvlist.add(bcpv);
+        }
+
         return pvlist;
     }
 
@@ -47,6 +47,8 @@ public class SecondaryIndexTableWalker implements TableWalker {
 
     DbRange skRange;
     DbRange pkRange;
+    // if not null, the primary key has to be in one of these ranges (in addition to the pkRange)
+    List<DbRange> pkRanges;
 
     /**
      * When iterating through the table we do not need to decode (transform to column values) the primary or the
@@ -169,8 +171,23 @@ public class SecondaryIndexTableWalker implements TableWalker {
     }
 
     private boolean pkInRange(byte[] pk) {
-        return (pkRange == null) || (ByteArrayUtils.compare(pkRange.rangeStart, pk) >= 0
-                && ByteArrayUtils.compare(pkRange.rangeEnd, pk) <= 0);
+        if (pkRange != null && !inRange(pk, pkRange)) {
+            return false;
+        }
+        if (pkRanges != null) {
+            for (DbRange r : pkRanges) {
+                if (inRange(pk, r)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean inRange(byte[] pk, DbRange range) {
+        return (range.rangeStart == null || ByteArrayUtils.compare(pk, range.rangeStart) >= 0)
+                && (range.rangeEnd == null || ByteArrayUtils.compare(pk, range.rangeEnd) <= 0);
     }
 
     private boolean isRunning() {
@@ -204,6 +221,15 @@ public class SecondaryIndexTableWalker implements TableWalker {
         this.pkRange = pkRange;
     }
 
+    /**
+     * The index entries are still read in the secondary index range; the primary key ranges only select the rows
+     * retrieved from the table.
+     */
+    @Override
+    public void setPrimaryIndexRanges(List<DbRange> ranges) {
+        this.pkRanges = ranges;
+    }
+
     @Override
     public void setSecondaryIndexRange(DbRange skRange) {
         this.skRange = skRange;
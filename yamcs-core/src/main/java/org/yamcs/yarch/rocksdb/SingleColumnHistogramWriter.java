@@ -105,6 +105,9 @@ public class SingleColumnHistogramWriter extends HistogramWriter {
         if (wrs.containsKey(dbPartition)) {
             throw new IllegalStateException("Already queing for this partition");
         }
+        // the rebuilder has to see the pending roll-ups and the writer has to reload the segments it rebuilds
+        colHistoWriter.flushRollups();
+        colHistoWriter.cleanup();
         WhileRebuild wr = new WhileRebuild();
         wrs.put(dbPartition, wr);
         tablespace.getExecutor().schedule(() -> {
@@ -131,11 +134,17 @@ public class SingleColumnHistogramWriter extends HistogramWriter {
         if (wr == null) {
             throw new IllegalStateException("Not queing for this partition");
         }
+        colHistoWriter.cleanup();
         for (HistoData hd : wr.queue) {
             colHistoWriter.addHistogram(hd.time, hd.value);
         }
     }
 
+    @Override
+    public synchronized void flush() {
+        colHistoWriter.flushRollups();
+    }
+
     static class HistoData {
         long time;
         byte[] value;
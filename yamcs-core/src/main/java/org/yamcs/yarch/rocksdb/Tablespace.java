@@ -13,6 +13,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -126,11 +128,15 @@ public class Tablespace {
 
     Map<TableWalker, Object> walkers = Collections.synchronizedMap(new WeakHashMap<TableWalker, Object>());
     final ScheduledThreadPoolExecutor executor;
+    // used by the parallel table walkers, created when first needed
+    private ExecutorService scanExecutor;
 
     Map<TableDefinition, List<RdbTableWriter>> tableWriters = new HashMap<>();
 
     Map<String, RdbSequence> sequences = new HashMap<>();
 
+    final WriteBatchStats writeBatchStats = new WriteBatchStats();
+
     public Tablespace(String name) {
         log = new Log(Tablespace.class);
         log.setContext(name);
@@ -633,6 +639,51 @@ public class Tablespace {
         }
     }
 
+    /**
+     * Removes the time partitions of the table which end before or at the given time, with their data and histograms.
+     * <p>
+     * The data is removed by range: the SST files containing only data of the removed partitions are deleted without
+     * reading them. If compact is true, the ranges are compacted to release immediately the space occupied by the
+     * remaining data.
+     * <p>
+     * The tables which are not partitioned by time are not affected. The secondary indices (if any) are not updated.
+     * 
+     * @return the removed partitions
+     */
+    public List<Partition> dropTimePartitions(TableDefinition tblDef, long before, boolean compact)
+            throws RocksDBException {
+        RdbTable table;
+        synchronized (tables) {
+            table = tables.get(tblDef);
+        }
+        if (table == null) {
+            throw new IllegalArgumentException("Unknown table " + tblDef.getName());
+        }
+        List<Partition> removed = new ArrayList<>();
+        if (tblDef.getPartitioningSpec().timeColumn == null) {
+            return removed;
+        }
+
+        for (var intv : table.partitionManager.removeIntervalsBefore(before)) {
+            for (Partition p : intv) {
+                RdbPartition rdbp = (RdbPartition) p;
+                log.debug("Dropping partition {} of table {}", rdbp, tblDef.getName());
+                YRDB db = getRdb(rdbp.dir, false);
+                db.dropRange(db.getColumnFamilyHandle(table.cfName()), dbKey(rdbp.tbsIndex),
+                        dbKey(rdbp.tbsIndex + 1), compact);
+                removeTbsIndex(Type.TABLE_PARTITION, rdbp.tbsIndex);
+                removed.add(p);
+            }
+            for (var histo : intv.removeHistograms()) {
+                RdbHistogramInfo rhisto = (RdbHistogramInfo) histo;
+                YRDB db = getRdb(rhisto.partitionDir, false);
+                db.dropRange(null, dbKey(rhisto.tbsIndex), dbKey(rhisto.tbsIndex + 1), compact);
+                removeTbsIndex(Type.HISTOGRAM, rhisto.tbsIndex);
+            }
+        }
+        return removed;
+    }
+
     /**
      * returns the table associated to this definition or null if this table is not known.
      * 
@@ -681,7 +732,14 @@ public class Tablespace {
             throw new IllegalArgumentException("Unknown table '" + tblDef.getName() + "'");
         }
         ctx.setTablespace(this);
-        RdbTableWalker rrs = new RdbTableWalker(ctx, tblDef, ascending, follow);
+        int scanParallelism = RdbConfig.getInstance().getTablespaceConfig(name).getScanParallelism();
+        RdbTableWalker rrs;
+        if (scanParallelism > 1 && !follow) {
+            rrs = new ParallelRdbTableWalker(ctx, tblDef, ascending, getScanExecutor(scanParallelism),
+                    scanParallelism);
+        } else {
+            rrs = new RdbTableWalker(ctx, tblDef, ascending, follow);
+        }
         walkers.put(rrs, DUMMY);
         return rrs;
     }
@@ -717,12 +775,29 @@ public class Tablespace {
         for (TableWalker rrs : walkers.keySet()) {
             rrs.close();
         }
+        synchronized (this) {
+            if (scanExecutor != null) {
+                for (Runnable r : scanExecutor.shutdownNow()) {
+                    if (r instanceof ParallelRdbTableWalker.FillTask) {
+                        ((ParallelRdbTableWalker.FillTask) r).cancel();
+                    }
+                }
+            }
+        }
         synchronized (sequences) {
             for (RdbSequence seq : sequences.values()) {
                 seq.close();
             }
             sequences.clear();
         }
+        synchronized (tables) {
+            for (RdbTable table : tables.values()) {
+                HistogramWriter histoWriter = table.getHistogramWriter();
+                if (histoWriter != null) {
+                    histoWriter.flush();
+                }
+            }
+        }
         rdbFactory.shutdown();
     }
 
@@ -772,6 +847,18 @@ public class Tablespace {
         return executor;
     }
 
+    synchronized ExecutorService getScanExecutor(int nThreads) {
+        if (scanExecutor == null) {
+            scanExecutor = Executors.newFixedThreadPool(nThreads, new ThreadFactoryBuilder()
+                    .setNameFormat("Tablespace-" + name + "-scan-%d").setDaemon(true).build());
+        }
+        return scanExecutor;
+    }
+
+    WriteBatchStats getWriteBatchStats() {
+        return writeBatchStats;
+    }
+
     public TableWalker newSecondaryIndexTableWalker(YarchDatabaseInstance ydb, TableDefinition tblDef,
             boolean ascending, boolean follow) {
 
@@ -814,16 +901,18 @@ public class Tablespace {
     }
 
     RocksdbMemoryUsage getApproximateMemoryUsage() {
-        var lruCache = RdbConfig.getInstance().getTablespaceConfig(name).getTableCache();
+        var caches = RdbConfig.getInstance().getTablespaceConfig(name).getBlockCaches();
         List<YRDB> dbList = rdbFactory.getOpenDbs(false);
         var mbt = MemoryUtil.getApproximateMemoryUsageByType(rdbFactory.getOpenRdbs(), null);
         dbList.forEach(yrdb -> rdbFactory.dispose(yrdb));
         RocksdbMemoryUsage memUsage = new RocksdbMemoryUsage();
 
-        memUsage.blockCacheMemoryUsage = lruCache.getUsage();
+        for (var cache : caches) {
+            memUsage.blockCacheMemoryUsage += cache.getUsage();
+            memUsage.pinnedBlocksMemoryUsage += cache.getPinnedUsage();
+        }
         memUsage.indexMemoryUsage = mbt.get(MemoryUsageType.kTableReadersTotal);
         memUsage.memtableMemoryUsage = mbt.get(MemoryUsageType.kMemTableTotal);
-        memUsage.pinnedBlocksMemoryUsage = lruCache.getPinnedUsage();
 
         return memUsage;
     }
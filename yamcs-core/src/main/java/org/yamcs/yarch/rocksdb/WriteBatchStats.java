@@ -0,0 +1,66 @@
+package org.yamcs.yarch.rocksdb;
+
+/**
+ * Collects statistics about the batches written by the {@link RdbTableWriter}s of one tablespace.
+ * <p>
+ * The statistics are accumulated between two calls of {@link #getAndReset()}.
+ */
+public class WriteBatchStats {
+    private long numBatches;
+    private long numRows;
+    private long totalFlushNanos;
+    private long maxFlushNanos;
+
+    synchronized void addBatch(int rows, long flushNanos) {
+        numBatches++;
+        numRows += rows;
+        totalFlushNanos += flushNanos;
+        if (flushNanos > maxFlushNanos) {
+            maxFlushNanos = flushNanos;
+        }
+    }
+
+    /**
+     * returns a snapshot of the statistics collected since the previous call and resets them
+     */
+    synchronized Snapshot getAndReset() {
+        Snapshot s = new Snapshot(numBatches, numRows, totalFlushNanos, maxFlushNanos);
+        numBatches = 0;
+        numRows = 0;
+        totalFlushNanos = 0;
+        maxFlushNanos = 0;
+        return s;
+    }
+
+    static class Snapshot {
+        final long numBatches;
+        final long numRows;
+        final long totalFlushNanos;
+        final long maxFlushNanos;
+
+        Snapshot(long numBatches, long numRows, long totalFlushNanos, long maxFlushNanos) {
+            this.numBatches = numBatches;
+            this.numRows = numRows;
+            this.totalFlushNanos = totalFlushNanos;
+            this.maxFlushNanos = maxFlushNanos;
+        }
+
+        double avgBatchSize() {
+            return numBatches == 0 ? 0 : (double) numRows / numBatches;
+        }
+
+        /**
+         * average flush latency in microseconds
+         */
+        double avgFlushLatency() {
+            return numBatches == 0 ? 0 : totalFlushNanos / (1000.0 * numBatches);
+        }
+
+        /**
+         * maximum flush latency in microseconds
+         */
+        double maxFlushLatency() {
+            return maxFlushNanos / 1000.0;
+        }
+    }
+}
@@ -433,6 +433,27 @@ public class YRDB {
         db.compactRange(cfh, start, stop);
     }
 
+    /**
+     * Removes all the data in the range [start, end) of the column family (the default one if cfh is null).
+     * <p>
+     * The SST files fully contained in the range are deleted directly, the remaining data is covered by a range
+     * tombstone. If compact is true, the range is compacted afterwards such that the disk space is released
+     * immediately instead of at the next compaction.
+     */
+    public void dropRange(ColumnFamilyHandle cfh, byte[] start, byte[] end, boolean compact) throws RocksDBException {
+        if (closed) {
+            throw new IllegalStateException("Database is closed");
+        }
+        if (cfh == null) {
+            cfh = db.getDefaultColumnFamily();
+        }
+        db.deleteFilesInRanges(cfh, List.of(start, end), false);
+        db.deleteRange(cfh, start, end);
+        if (compact) {
+            db.compactRange(cfh, start, end);
+        }
+    }
+
     public void disableAutoCompaction(ColumnFamilyHandle cfh) throws RocksDBException {
         if (closed) {
             throw new IllegalStateException("Database is closed");
@@ -0,0 +1,96 @@
+package org.yamcs.yarch.streamsql;
+
+import java.util.function.Consumer;
+
+import org.yamcs.yarch.DataType;
+import org.yamcs.yarch.ExecutionContext;
+import org.yamcs.yarch.Tuple;
+import org.yamcs.yarch.TupleDefinition;
+
+/**
+ * Shows how a select would be executed without executing it: the access path chosen for reading the table, the filters,
+ * aggregates and limits applied afterwards, together with the estimated number of rows for each step.
+ * <p>
+ * The estimates are based on the table histograms; they are null if no suitable histogram exists.
+ */
+public class ExplainStatement extends SimpleStreamSqlStatement {
+
+    private static final TupleDefinition TDEF = new TupleDefinition();
+    static {
+        TDEF.addColumn("step", DataType.INT);
+        TDEF.addColumn("operation", DataType.STRING);
+        TDEF.addColumn("detail", DataType.STRING);
+        TDEF.addColumn("rows", DataType.LONG);
+        TDEF.addColumn("cost", DataType.LONG);
+    }
+
+    private SelectExpression expression;
+
+    public ExplainStatement(SelectExpression expression) {
+        this.expression = expression;
+    }
+
+    @Override
+    public void execute(ExecutionContext c, Consumer<Tuple> consumer) throws StreamSqlException {
+        expression.bind(c);
+        if (expression.whereClause != null) {
+            expression.whereClause.addFilter(expression.tupleSourceExpression);
+        }
+        int step = 1;
+        long rows;
+
+        TupleSourceExpression tse = expression.tupleSourceExpression;
+        switch (tse.type) {
+        case TABLE:
+            TableScanPlan plan = tse.tableWalkerBuilder.plan(true);
+            consumer.accept(tuple(step++, plan.getAccessPath().name(), plan.getDetail(), plan.getEstimatedRows(),
+                    plan.getEstimatedCost()));
+            rows = plan.getEstimatedOutputRows() >= 0 ? plan.getEstimatedOutputRows() : plan.getEstimatedRows();
+            break;
+        case TABLE_HISTOGRAM:
+            consumer.accept(tuple(step++, "HISTOGRAM", tse.objectName + " histogram(" + tse.histoColumn + ")", -1,
+                    -1));
+            rows = -1;
+            break;
+        default:
+            consumer.accept(tuple(step++, "STREAM", tse.objectName == null ? "(subquery)" : tse.objectName, -1, -1));
+            rows = -1;
+        }
+
+        if (expression.whereClause != null) {
+            consumer.accept(tuple(step++, "FILTER", expression.whereClause.toString(), rows, -1));
+        }
+        if (expression.aggList != null && !expression.aggList.isEmpty()) {
+            StringBuilder sb = new StringBuilder();
+            for (AggregateExpression aggExpr : expression.aggList) {
+                if (sb.length() > 0) {
+                    sb.append(", ");
+                }
+                sb.append(aggExpr.getColumnName());
+            }
+            // without window there is only one output row
+            rows = expression.windowSpec == WindowSpecification.INFINITE_WINDOW ? 1 : -1;
+            consumer.accept(tuple(step++, "AGGREGATE", sb.toString(), rows, -1));
+        }
+        if (expression.limit != null || expression.offset != null) {
+            String detail = "limit " + expression.limit;
+            if (expression.offset != null) {
+                detail += " offset " + expression.offset;
+            }
+            if (expression.limit != null && rows >= 0) {
+                rows = Math.min(rows, expression.limit.longValue());
+            }
+            consumer.accept(tuple(step++, "LIMIT", detail, rows, -1));
+        }
+    }
+
+    private static Tuple tuple(int step, String operation, String detail, long rows, long cost) {
+        return new Tuple(TDEF, new Object[] { step, operation, detail, rows < 0 ? null : rows,
+                cost < 0 ? null : cost });
+    }
+
+    @Override
+    protected TupleDefinition getResultDefinition() {
+        return TDEF;
+    }
+}
@@ -0,0 +1,138 @@
+package org.yamcs.yarch.streamsql;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.yamcs.logging.Log;
+import org.yamcs.utils.TimeInterval;
+import org.yamcs.yarch.ColumnSerializer;
+import org.yamcs.yarch.HistogramIterator;
+import org.yamcs.yarch.HistogramLevel;
+import org.yamcs.yarch.HistogramRecord;
+import org.yamcs.yarch.TableColumnDefinition;
+import org.yamcs.yarch.TableDefinition;
+import org.yamcs.yarch.YarchDatabaseInstance;
+import org.yamcs.yarch.YarchException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Estimates the number of rows of a table using the histograms.
+ * <p>
+ * The histograms count the rows for each value of the column in time segments (see
+ * {@link org.yamcs.yarch.HistogramSegment}), the time being the first column of the primary key. The records partially
+ * overlapping the requested interval are counted proportionally to the overlap.
+ * <p>
+ * To keep the planning cheap, the histograms are read from the coarsest available {@link HistogramLevel} and at most
+ * {@link #MAX_RECORDS} records are read for one estimate; the estimates are remembered such that the same one is not
+ * computed twice for a query. The estimates over the whole table history are shared between the queries and
+ * recomputed at most once per {@value #TOTAL_EXPIRATION_SEC} seconds.
+ */
+class HistogramEstimator {
+    static final Log log = new Log(HistogramEstimator.class);
+    static final int MAX_RECORDS = 1000;
+    static final int TOTAL_EXPIRATION_SEC = 60;
+    static final Cache<String, Long> totals = CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .expireAfterWrite(TOTAL_EXPIRATION_SEC, TimeUnit.SECONDS)
+            .build();
+
+    final YarchDatabaseInstance ydb;
+    final TableDefinition tableDefinition;
+    final Map<String, Long> estimates = new HashMap<>();
+
+    HistogramEstimator(YarchDatabaseInstance ydb, TableDefinition tableDefinition) {
+        this.ydb = ydb;
+        this.tableDefinition = tableDefinition;
+    }
+
+    boolean hasHistogram(String columnName) {
+        return tableDefinition.hasHistogram() && tableDefinition.getHistogramColumns().contains(columnName);
+    }
+
+    /**
+     * Returns the estimated number of rows in the interval having one of the values on the given column.
+     *
+     * @param columnName
+     *            - a column having a histogram
+     * @param interval
+     *            - time interval, can be unbounded at both ends
+     * @param values
+     *            - the values of the column (as they appear in the tuples); if null, all the rows are counted
+     * @return the estimated number of rows or -1 if the histogram could not be read or has more than
+     *         {@link #MAX_RECORDS} records in the interval
+     */
+    long estimate(String columnName, TimeInterval interval, Set<Object> values) {
+        String key = columnName + interval.toStringEncoded() + values;
+        Long n = estimates.get(key);
+        if (n == null) {
+            n = doEstimate(columnName, interval, values);
+            estimates.put(key, n);
+        }
+        return n;
+    }
+
+    /**
+     * Returns the estimated number of rows of the whole table having one of the values on the given column.
+     * <p>
+     * Unlike {@link #estimate(String, TimeInterval, Set)}, the result is cached for all the queries.
+     */
+    long estimateTotal(String columnName, Set<Object> values) {
+        String key = ydb.getName() + "." + tableDefinition.getName() + "." + columnName + values;
+        try {
+            return totals.get(key, () -> estimate(columnName, new TimeInterval(), values));
+        } catch (ExecutionException e) {
+            return -1;
+        }
+    }
+
+    private long doEstimate(String columnName, TimeInterval interval, Set<Object> values) {
+        TableColumnDefinition cd = tableDefinition.getColumnDefinition(columnName);
+        ColumnSerializer<?> serializer = tableDefinition.getColumnSerializer(columnName);
+        double count = 0;
+        int numRecords = 0;
+        // the merging of the records does not change the counts
+        try (HistogramIterator it = ydb.getStorageEngine(tableDefinition).getHistogramIterator(ydb,
+                tableDefinition, columnName, interval, Long.MAX_VALUE)) {
+            while (it.hasNext()) {
+                if (++numRecords > MAX_RECORDS) {
+                    log.debug("Too many histogram records for {}.{} in {}, no estimate", tableDefinition.getName(),
+                            columnName, interval.toStringEncoded());
+                    return -1;
+                }
+                HistogramRecord r = it.next();
+                double fraction = overlap(r, interval);
+                if (fraction == 0) {
+                    continue;
+                }
+                if (values != null && !values.contains(serializer.fromByteArray(r.getColumnv(), cd))) {
+                    continue;
+                }
+                count += fraction * r.getNumTuples();
+            }
+        } catch (YarchException e) {
+            log.warn("Cannot read the histogram of {}.{}: {}", tableDefinition.getName(), columnName, e.toString());
+            return -1;
+        }
+        return Math.round(count);
+    }
+
+    // returns the fraction of the record which is inside the interval, assuming the rows are evenly distributed
+    static double overlap(HistogramRecord r, TimeInterval interval) {
+        long start = r.getStart();
+        long stop = r.getStop();
+        long s = interval.hasStart() ? Math.max(start, interval.getStart()) : start;
+        long e = interval.hasEnd() ? Math.min(stop, interval.getEnd()) : stop;
+        if (s > e) {
+            return 0;
+        }
+        if (stop == start) {
+            return 1;
+        }
+        return (double) (e - s) / (stop - start);
+    }
+}
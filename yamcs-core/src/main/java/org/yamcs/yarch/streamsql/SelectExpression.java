@@ -233,6 +233,12 @@ public class SelectExpression implements StreamExpression {
         if (whereClause != null) {
             whereClause.addFilter(tupleSourceExpression);
         }
+        YarchDatabaseInstance ydb = c.getDb();
+
+        Stream vstream = VectorizedAggregates.createStream(ydb, this);
+        if (vstream != null) {
+            return executeVectorized(ydb, vstream);
+        }
 
         Stream stream = tupleSourceExpression.execute(c);
         CompiledExpression cWhereClause = (whereClause == null) ? null : whereClause.compile();
@@ -275,7 +281,6 @@ public class SelectExpression implements StreamExpression {
             windowProc = WindowProcessor.getInstance(windowSpec, aggInputDef, caggList, aggOutputDef);
         }
 
-        YarchDatabaseInstance ydb = c.getDb();
         if (cWhereClause != null || caggInputList != null || windowProc != null || cselectList != null) {
             stream = new SelectStream(ydb, stream, cWhereClause,
                     caggInputList, windowProc,
@@ -289,6 +294,26 @@ public class SelectExpression implements StreamExpression {
         }
     }
 
+    // the vectorized stream outputs the aggregates, only the select list remains to be computed
+    private Stream executeVectorized(YarchDatabaseInstance ydb, Stream vstream) throws StreamSqlException {
+        List<CompiledExpression> cselectList = new ArrayList<>();
+        for (SelectItem item : selectList) {
+            Expression expr = item.expr;
+            if (expr.isConstant()) {
+                cselectList.add(new ConstantValueCompiledExpression(expr.getConstantValue(),
+                        new ColumnDefinition(expr.getColumnName(), expr.getType())));
+            } else {
+                cselectList.add(expr.compile());
+            }
+        }
+        Stream stream = new SelectStream(ydb, vstream, null, null, null, cselectList, outputDef, minOutputDef);
+        if (limit != null || offset != null) {
+            return new LimitedStream(ydb, stream, offset, limit, stream.getDefinition());
+        } else {
+            return stream;
+        }
+    }
+
     @Override
     public boolean isFinite() {
         return tupleSourceExpression.isFinite();
@@ -4,6 +4,7 @@ import java.util.Arrays;
 import java.util.NoSuchElementException;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.yamcs.logging.Log;
 import org.yamcs.yarch.ExecutionContext;
@@ -84,11 +85,18 @@ public class SelectTableStatement implements StreamSqlStatement {
     }
 
     static class QueueStreamSqlResult implements StreamSqlResult, StreamSubscriber {
+        /**
+         * if the queue stays full for longer than this, the result is considered abandoned (discarded without being
+         * closed) and the stream is closed; the stream references the result so it cannot be finalized.
+         */
+        static long maxConsumerWaitMillis = 60_000;
+
         final Stream stream;
         final ExecutionContext context;
 
         BlockingQueue<Tuple> queue = new ArrayBlockingQueue<Tuple>(1024);
         Tuple next;
+        volatile boolean closed;
         static Log log = new Log(QueueStreamSqlResult.class);
 
         QueueStreamSqlResult(ExecutionContext context, Stream stream) {
@@ -135,19 +143,62 @@ public class SelectTableStatement implements StreamSqlStatement {
 
         @Override
         public void close() {
+            closed = true;
+            next = END_SIGNAL;
             stream.close();
             context.close();
-            queue.add(END_SIGNAL);
+            signalEnd();
         }
 
+        /**
+         * Called in the stream thread; if the queue is full, blocks until the consumer makes room or closes the
+         * result.
+         */
         @Override
         public void onTuple(Stream stream, Tuple tuple) {
-            queue.add(tuple);
+            try {
+                put(tuple);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stream.close();
+            }
         }
 
         @Override
         public void streamClosed(Stream stream) {
-            queue.add(END_SIGNAL);
+            try {
+                if (put(END_SIGNAL)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            signalEnd();
+        }
+
+        // returns false if the result has been closed or abandoned before the tuple could be queued
+        private boolean put(Tuple tuple) throws InterruptedException {
+            long waitMillis = maxConsumerWaitMillis;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+            while (!closed) {
+                if (queue.offer(tuple, Math.min(1000, waitMillis), TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+                if (System.nanoTime() - deadline >= 0) {
+                    log.warn("Stream {}: no data consumed for {} ms, closing it (StreamSqlResult abandoned without "
+                            + "closing?)", stream.getName(), waitMillis);
+                    closed = true;
+                    stream.close();
+                    return false;
+                }
+            }
+            return false;
+        }
+
+        // drops the data not yet consumed to make room for the end marker
+        private void signalEnd() {
+            queue.clear();
+            queue.offer(END_SIGNAL);
         }
 
         @Override
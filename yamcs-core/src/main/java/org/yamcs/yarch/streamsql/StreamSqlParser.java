@@ -26,6 +26,10 @@ public class StreamSqlParser implements StreamSqlParserConstants {
     protected boolean seeTYPE() {
         return "TYPE".equalsIgnoreCase(getToken(1).image);
     }
+    
+    protected boolean seeEXPLAIN() {
+        return getToken(1).kind == S_IDENTIFIER && "EXPLAIN".equalsIgnoreCase(getToken(1).image);
+    }
 
    public void setArgs(Object[] args) {
         this.args = args;
@@ -155,7 +159,10 @@ public class StreamSqlParser implements StreamSqlParserConstants {
     case K_UPDATE:
     case K_UPSERT:
     case K_UPSERT_APPEND:
-      if (jj_2_1(2)) {
+    case S_IDENTIFIER:
+      if (seeEXPLAIN()) {
+        statement = ExplainStatement();
+      } else if (jj_2_1(2)) {
         statement = CreateTableStatement();
       } else if (jj_2_2(2)) {
         statement = CreateStreamStatement();
@@ -561,6 +568,15 @@ public class StreamSqlParser implements StreamSqlParserConstants {
     throw new Error("Missing return statement in function");
   }
 
+// EXPLAIN is not a reserved keyword such that it can still be used as a column name
+  final public ExplainStatement ExplainStatement() throws ParseException, StreamSqlException {
+    SelectExpression expression;
+    jj_consume_token(S_IDENTIFIER);
+    expression = SelectExpression();
+        {if (true) return new ExplainStatement(expression);}
+    throw new Error("Missing return statement in function");
+  }
+
   final public CloseStreamStatement CloseStreamStatement() throws ParseException, StreamSqlException {
     String name;
     jj_consume_token(K_CLOSE);
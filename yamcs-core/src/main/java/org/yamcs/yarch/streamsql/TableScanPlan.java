@@ -0,0 +1,76 @@
+package org.yamcs.yarch.streamsql;
+
+/**
+ * The access path chosen by the {@link TableWalkerBuilder} for reading a table, together with the estimates on which
+ * the choice is based.
+ * <p>
+ * The estimates are -1 if they are not known (no histogram available for the columns involved).
+ */
+public class TableScanPlan {
+    public enum AccessPath {
+        /**
+         * Iterates through the table in primary key order, possibly restricted to some partitions and primary key
+         * ranges
+         */
+        TABLE_SCAN,
+        /**
+         * Iterates through the secondary index and retrieves each row from the table
+         */
+        SECONDARY_INDEX
+    }
+
+    final AccessPath accessPath;
+    final String detail;
+    final long estimatedRows;
+    final long estimatedCost;
+    final long estimatedOutputRows;
+
+    TableScanPlan(AccessPath accessPath, String detail, long estimatedRows, long estimatedCost,
+            long estimatedOutputRows) {
+        this.accessPath = accessPath;
+        this.detail = detail;
+        this.estimatedRows = estimatedRows;
+        this.estimatedCost = estimatedCost;
+        this.estimatedOutputRows = estimatedOutputRows;
+    }
+
+    public AccessPath getAccessPath() {
+        return accessPath;
+    }
+
+    /**
+     * human readable description of the table, ranges and partitions read
+     */
+    public String getDetail() {
+        return detail;
+    }
+
+    /**
+     *
+     * @return the estimated number of rows read from the table or -1 if not known
+     */
+    public long getEstimatedRows() {
+        return estimatedRows;
+    }
+
+    /**
+     *
+     * @return the estimated cost of the access path (in units of sequentially read rows) or -1 if not known
+     */
+    public long getEstimatedCost() {
+        return estimatedCost;
+    }
+
+    /**
+     *
+     * @return the estimated number of rows passing the equality filters on the histogram columns or -1 if not known
+     */
+    public long getEstimatedOutputRows() {
+        return estimatedOutputRows;
+    }
+
+    @Override
+    public String toString() {
+        return accessPath + " " + detail + " (rows: " + estimatedRows + ", cost: " + estimatedCost + ")";
+    }
+}
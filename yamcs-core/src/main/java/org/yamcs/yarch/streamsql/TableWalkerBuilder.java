@@ -1,10 +1,15 @@
 package org.yamcs.yarch.streamsql;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.yamcs.logging.Log;
+import org.yamcs.utils.ByteArrayUtils;
 import org.yamcs.utils.TimeInterval;
 import org.yamcs.yarch.ColumnDefinition;
 import org.yamcs.yarch.DataType;
@@ -23,6 +28,13 @@ import com.google.common.collect.BiMap;
 public class TableWalkerBuilder implements FilterableTarget {
     static Log log = new Log(TableWalkerBuilder.class);
 
+    // relative costs used to compare the access paths: reading one row sequentially vs retrieving one row by key
+    static final int SCAN_ROW_COST = 1;
+    static final int LOOKUP_ROW_COST = 10;
+    // above this number of values, an IN condition on the first column of the primary key is not transformed into
+    // ranges (each range costs one seek in each partition)
+    static final int MAX_PK_RANGES = 1000;
+
     final private ExecutionContext ctx;
     final private YarchDatabaseInstance ydb;
     final private TableDefinition tableDefinition;
@@ -33,12 +45,28 @@ public class TableWalkerBuilder implements FilterableTarget {
     // filter on primary key
     private DbRange pkRange;
 
+    // filter on primary key given by an IN condition on the first key column
+    private List<DbRange> pkRanges;
+
     // filter on secondary key
     private DbRange skRange;
 
     private boolean ascending = true;
     private boolean follow = false;
 
+    // time interval given by conditions on the first column of the primary key if it is a timestamp
+    // it is used to estimate the number of rows from the histograms
+    private TimeInterval keyTimeFilter = new TimeInterval();
+
+    // values given by equality or IN conditions on each column, used for the estimations
+    private Map<String, Set<Object>> equalityFilters = new HashMap<>();
+
+    // conditions pushed down to the table walker, used to describe the plan
+    private List<String> pkConditions = new ArrayList<>();
+    private List<String> skConditions = new ArrayList<>();
+
+    private TableScanPlan plan;
+
     public TableWalkerBuilder(ExecutionContext ctx, TableDefinition tableDefinition) {
         this.ctx = ctx;
         this.ydb = ctx.getDb();
@@ -63,9 +91,13 @@ public class TableWalkerBuilder implements FilterableTarget {
                 pkRange = new DbRange();
             }
             addToRange(pkRange, relOp, val);
+            pkConditions.add(condition(columnName, relOp, value));
 
             if (tableDefinition.isPartitionedByTime()) {
-                addPartitionTimeFilter(relOp, (Long) columnValue);
+                addPartitionTimeFilter(partitionTimeFilter, relOp, (Long) columnValue);
+            }
+            if (col0.getType() == DataType.TIMESTAMP) {
+                addPartitionTimeFilter(keyTimeFilter, relOp, (Long) columnValue);
             }
         } else {
             List<String> sidx = tableDefinition.getSecondaryIndex();
@@ -85,8 +117,12 @@ public class TableWalkerBuilder implements FilterableTarget {
                 b[0] = (byte)(0x70|tcd.getType().getTypeId());
                 System.arraycopy(val, 0, b, 1, val.length);
                 addToRange(skRange, relOp, b);
+                skConditions.add(condition(columnName, relOp, value));
             }
         }
+        if (relOp == RelOp.EQUAL) {
+            addEqualityFilter(columnName, Set.of(value));
+        }
 
         if ((relOp == RelOp.EQUAL) && tableDefinition.hasPartitioning()) {
             PartitioningSpec pspec = tableDefinition.getPartitioningSpec();
@@ -103,19 +139,19 @@ public class TableWalkerBuilder implements FilterableTarget {
         }
     }
 
-    private void addPartitionTimeFilter(RelOp relOp, long time) {
+    private static void addPartitionTimeFilter(TimeInterval timeFilter, RelOp relOp, long time) {
         switch (relOp) {
         case GREATER:
         case GREATER_OR_EQUAL:
-            partitionTimeFilter.setStart(time);
+            timeFilter.setStart(time);
             break;
         case LESS:
         case LESS_OR_EQUAL:
-            partitionTimeFilter.setEnd(time);
+            timeFilter.setEnd(time);
             break;
         case EQUAL:
-            partitionTimeFilter.setStart(time);
-            partitionTimeFilter.setEnd(time);
+            timeFilter.setStart(time);
+            timeFilter.setEnd(time);
             break;
         case NOT_EQUAL:
             // TODO support multiple ranges
@@ -150,10 +186,17 @@ public class TableWalkerBuilder implements FilterableTarget {
     }
 
     /**
-     * currently adds only filters on value based partitions
+     * adds filters on value based partitions and, for the first column of the primary key, one range for each value
      */
     @Override
     public void addInFilter(ColumnExpression cexpr, boolean negation, Set<Object> values) throws StreamSqlException {
+        TableColumnDefinition col0 = tableDefinition.getKeyDefinition().get(0);
+        if (!negation && col0.getName().equals(cexpr.getName()) && addPkRanges(col0, values)) {
+            pkConditions.add(cexpr.getName() + " IN " + values);
+        }
+        if (!negation) {
+            addEqualityFilter(cexpr.getName(), values);
+        }
         if (!tableDefinition.hasPartitioning()) {
             return;
         }
@@ -185,6 +228,58 @@ public class TableWalkerBuilder implements FilterableTarget {
         return;
     }
 
+    // returns false if the values cannot be converted to the column type or if there are too many; the ranges are then
+    // not used and the IN condition is only applied by the filter expression
+    private boolean addPkRanges(TableColumnDefinition col0, Set<Object> values) {
+        if (values.size() > MAX_PK_RANGES) {
+            return false;
+        }
+        List<DbRange> l = new ArrayList<>(values.size());
+        for (Object value : values) {
+            byte[] val;
+            try {
+                val = col0.getSerializer().toByteArray(DataType.castAs(col0.getType(), value));
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+            DbRange r = new DbRange();
+            r.rangeStart = val;
+            r.rangeEnd = val;
+            // multiple IN conditions on the same column are intersected
+            if (pkRanges == null || pkRanges.stream().anyMatch(r1 -> Arrays.equals(r1.rangeStart, val))) {
+                l.add(r);
+            }
+        }
+        pkRanges = l;
+        return true;
+    }
+
+    private void addEqualityFilter(String columnName, Set<Object> values) {
+        TableColumnDefinition tcd = tableDefinition.getColumnDefinition(columnName);
+        if (tcd == null) {
+            return;
+        }
+        Set<Object> s = new HashSet<>();
+        for (Object v : values) {
+            try {
+                s.add(DataType.castAs(tcd.getType(), v));
+            } catch (IllegalArgumentException e) {
+                // the filter cannot match, the expression will be rejected at compilation
+                return;
+            }
+        }
+        Set<Object> existing = equalityFilters.get(columnName);
+        if (existing == null) {
+            equalityFilters.put(columnName, s);
+        } else {
+            existing.retainAll(s);
+        }
+    }
+
+    private static String condition(String columnName, RelOp relOp, Object value) {
+        return columnName + " " + relOp.getSign() + " " + value;
+    }
+
     // if the value partitioning column is of type Enum, we have to convert all
     // the values (used in the query for filtering) from String to Short
     // the values that do not have an enum are eliminated (because they cannot be possibly matching the query)
@@ -213,12 +308,117 @@ public class TableWalkerBuilder implements FilterableTarget {
         return values;
     }
 
+    /**
+     * Chooses the access path based on the filters added so far.
+     * <p>
+     * If there is a condition on the first column of the secondary index, the cost of reading the table through the
+     * secondary index (reading the index entries and retrieving each row from the table) is compared with the cost of
+     * scanning the table (restricted by the partition and primary key filters). The number of rows is estimated from
+     * the histograms of the partitioning value column, of the secondary index column or of the first histogram column.
+     * If the estimates are not available (no histogram or too many histogram records to read), the secondary index is
+     * used.
+     * <p>
+     * The secondary index is only used for ascending queries without follow, because it returns the rows ordered by
+     * the secondary key.
+     *
+     * @param estimate
+     *            - if true, the estimates are computed even if there is no choice to be made (used for EXPLAIN)
+     */
+    public TableScanPlan plan(boolean estimate) {
+        boolean useSk = skRange != null && ascending && !follow;
+        long scanRows = -1, skRows = -1, skEntries = -1, outputRows = -1;
+
+        if (estimate || useSk) {
+            HistogramEstimator estimator = new HistogramEstimator(ydb, tableDefinition);
+            scanRows = estimateScanRows(estimator);
+            if (skRange != null) {
+                String skCol = tableDefinition.getSecondaryIndex().get(0);
+                Set<Object> values = equalityFilters.get(skCol);
+                if (values != null && estimator.hasHistogram(skCol)) {
+                    skRows = estimator.estimate(skCol, keyTimeFilter, values);
+                    // the pk range is checked after reading the index entries
+                    skEntries = keyTimeFilter.hasStart() || keyTimeFilter.hasEnd()
+                            ? estimator.estimateTotal(skCol, values)
+                            : skRows;
+                }
+            }
+            outputRows = estimateOutputRows(estimator);
+        }
+
+        long scanCost = scanRows < 0 ? -1 : scanRows * SCAN_ROW_COST;
+        long skCost = (skRows < 0 || skEntries < 0) ? -1 : skEntries * SCAN_ROW_COST + skRows * LOOKUP_ROW_COST;
+        if (useSk && scanCost >= 0 && skCost >= 0 && scanCost <= skCost) {
+            useSk = false;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(tableDefinition.getName());
+        if (useSk) {
+            sb.append(" using index(").append(String.join(", ", tableDefinition.getSecondaryIndex())).append(")");
+            appendConditions(sb, "index range", skConditions);
+            appendConditions(sb, "primary key range", pkConditions);
+            plan = new TableScanPlan(TableScanPlan.AccessPath.SECONDARY_INDEX, sb.toString(), skRows, skCost,
+                    outputRows);
+        } else {
+            sb.append(ascending ? " ascending" : " descending");
+            appendConditions(sb, "primary key range", pkConditions);
+            if (partitionTimeFilter.hasStart() || partitionTimeFilter.hasEnd()) {
+                sb.append(", time partitions: ").append(partitionTimeFilter.toStringEncoded());
+            }
+            if (partitionValueFilter != null) {
+                sb.append(", value partitions: ").append(partitionValueFilter);
+            }
+            plan = new TableScanPlan(TableScanPlan.AccessPath.TABLE_SCAN, sb.toString(), scanRows, scanCost,
+                    outputRows);
+        }
+        log.debug("Query plan: {}", plan);
+        return plan;
+    }
+
+    private static void appendConditions(StringBuilder sb, String name, List<String> conditions) {
+        if (!conditions.isEmpty()) {
+            sb.append(", ").append(name).append(": ").append(String.join(" and ", conditions));
+        }
+    }
+
+    // rows read by the table scan: the time restriction is given by the primary key range and the value restriction by
+    // the partitions
+    private long estimateScanRows(HistogramEstimator estimator) {
+        PartitioningSpec pspec = tableDefinition.getPartitioningSpec();
+        String valueColumn = pspec == null ? null : pspec.valueColumn;
+        if (valueColumn != null && equalityFilters.containsKey(valueColumn) && estimator.hasHistogram(valueColumn)) {
+            return estimator.estimate(valueColumn, keyTimeFilter, equalityFilters.get(valueColumn));
+        }
+        if (!tableDefinition.hasHistogram()) {
+            return -1;
+        }
+        return estimator.estimate(tableDefinition.getHistogramColumns().get(0), keyTimeFilter, null);
+    }
+
+    // the smallest estimate from the equality filters on columns with histograms
+    private long estimateOutputRows(HistogramEstimator estimator) {
+        long rows = -1;
+        for (Map.Entry<String, Set<Object>> me : equalityFilters.entrySet()) {
+            if (estimator.hasHistogram(me.getKey())) {
+                long n = estimator.estimate(me.getKey(), keyTimeFilter, me.getValue());
+                if (n >= 0 && (rows < 0 || n < rows)) {
+                    rows = n;
+                }
+            }
+        }
+        return rows;
+    }
+
     public TableWalker build() {
         if (!ascending) {
             follow = false;
         }
+        if (plan == null) {
+            plan(false);
+        }
         TableWalker tw;
-        if (skRange == null) {
+        boolean useSk = plan.getAccessPath() == TableScanPlan.AccessPath.SECONDARY_INDEX;
+        if (!useSk) {
             tw = ydb.getStorageEngine(tableDefinition).newTableWalker(ctx, tableDefinition, ascending, follow);
             tw.setPartitionFilter(partitionTimeFilter, partitionValueFilter);
         } else {
@@ -226,13 +426,34 @@ public class TableWalkerBuilder implements FilterableTarget {
                     follow);
             tw.setSecondaryIndexRange(skRange);
         }
-      
+
         if (pkRange != null) {
             tw.setPrimaryIndexRange(pkRange);
         }
+        if (pkRanges != null) {
+            tw.setPrimaryIndexRanges(restrictToPkRange(pkRanges));
+        }
         return tw;
     }
 
+    // keep only the ranges that are inside the pkRange (if any)
+    private List<DbRange> restrictToPkRange(List<DbRange> ranges) {
+        if (pkRange == null) {
+            return ranges;
+        }
+        List<DbRange> l = new ArrayList<>();
+        for (DbRange r : ranges) {
+            if (pkRange.rangeStart != null && ByteArrayUtils.compare(r.rangeStart, pkRange.rangeStart) < 0) {
+                continue;
+            }
+            if (pkRange.rangeEnd != null && ByteArrayUtils.compare(r.rangeStart, pkRange.rangeEnd) > 0) {
+                continue;
+            }
+            l.add(r);
+        }
+        return l;
+    }
+
     public void setAscending(boolean ascending) {
         this.ascending = ascending;
     }
@@ -241,6 +462,10 @@ public class TableWalkerBuilder implements FilterableTarget {
         this.follow = follow;
     }
 
+    public boolean isFollow() {
+        return follow;
+    }
+
     public TableDefinition getTableDefinition() {
         return tableDefinition;
     }
@@ -14,6 +14,7 @@ import org.yamcs.yarch.TableReaderStream;
 import org.yamcs.yarch.TupleDefinition;
 import org.yamcs.yarch.YarchDatabaseInstance;
 import org.yamcs.yarch.YarchException;
+import org.yamcs.yarch.rocksdb.RdbConfig;
 import org.yamcs.yarch.streamsql.StreamSqlException.ErrCode;
 
 /**
@@ -159,7 +160,16 @@ public class TupleSourceExpression implements FilterableTarget {
             break;
         case TABLE:
             TableWalker tblit = tableWalkerBuilder.build();
-            stream = new TableReaderStream(ydb, tableWalkerBuilder.getTableDefinition(), tblit);
+            tblit.setBulkRead(true);
+            // reading ahead is not used in follow mode because the rows inserted behind the reading position
+            // would be missed
+            int readAheadQueueSize = 0;
+            if (!tableWalkerBuilder.isFollow() && c.getTablespace() != null) {
+                readAheadQueueSize = RdbConfig.getInstance().getTablespaceConfig(c.getTablespace().getName())
+                        .getReadAheadQueueSize();
+            }
+            stream = new TableReaderStream(ydb, tableWalkerBuilder.getTableDefinition(), tblit,
+                    readAheadQueueSize);
             break;
         case TABLE_HISTOGRAM:
             HistogramReaderStream histoStream = histogramStreamBuilder.build();
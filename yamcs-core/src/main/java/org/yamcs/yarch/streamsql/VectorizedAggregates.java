@@ -0,0 +1,184 @@
+package org.yamcs.yarch.streamsql;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.yamcs.yarch.ColumnDefinition;
+import org.yamcs.yarch.TableDefinition;
+import org.yamcs.yarch.TableWalker;
+import org.yamcs.yarch.TupleDefinition;
+import org.yamcs.yarch.VectorAggregate;
+import org.yamcs.yarch.VectorPredicate;
+import org.yamcs.yarch.VectorizedAggregateStream;
+import org.yamcs.yarch.YarchDatabaseInstance;
+import org.yamcs.yarch.streamsql.TupleSourceExpression.Type;
+import org.yamcs.yarch.streamsql.funct.CountExpression;
+import org.yamcs.yarch.streamsql.funct.SumExpression;
+
+/**
+ * Translates a select with aggregates into a {@link VectorizedAggregateStream}.
+ * <p>
+ * The translation is possible for non follow selects from a table aggregated over the whole table (no window), with:
+ * <ul>
+ * <li>a where clause made of comparisons or IN between a column and constants, possibly joined by AND;</li>
+ * <li>count, sum and first_val aggregates on columns.</li>
+ * </ul>
+ * Anything else is executed by the generic {@link org.yamcs.yarch.SelectStream}.
+ */
+class VectorizedAggregates {
+    final TableDefinition tableDefinition;
+    final TupleDefinition tableTupleDef;
+    final List<ColumnDefinition> columns = new ArrayList<>();
+    final List<VectorPredicate> filters = new ArrayList<>();
+    final List<VectorAggregate> aggregates = new ArrayList<>();
+
+    private VectorizedAggregates(TableDefinition tableDefinition) {
+        this.tableDefinition = tableDefinition;
+        this.tableTupleDef = tableDefinition.getTupleDefinition();
+    }
+
+    /**
+     * Creates the vectorized stream for the select expression or returns null if the select cannot be vectorized.
+     * <p>
+     * Called after the where clause has been added as filter to the table walker builder.
+     */
+    static VectorizedAggregateStream createStream(YarchDatabaseInstance ydb, SelectExpression select)
+            throws StreamSqlException {
+        if (!VectorizedAggregateStream.isEnabled()) {
+            return null;
+        }
+        TupleSourceExpression tse = select.tupleSourceExpression;
+        if (tse.type != Type.TABLE || select.follow || select.windowSpec != WindowSpecification.INFINITE_WINDOW
+                || select.aggList == null || select.aggList.isEmpty() || select.aggInputList != null) {
+            return null;
+        }
+        if (select.selectList.contains(SelectItem.STAR)) {
+            return null;
+        }
+
+        VectorizedAggregates va = new VectorizedAggregates(tse.tableWalkerBuilder.getTableDefinition());
+        if (select.whereClause != null && !va.addFilter(select.whereClause)) {
+            return null;
+        }
+        for (AggregateExpression aggExpr : select.aggList) {
+            if (!va.addAggregate(aggExpr)) {
+                return null;
+            }
+        }
+
+        TableWalker tblit = tse.tableWalkerBuilder.build();
+        tblit.setBulkRead(true);
+        return new VectorizedAggregateStream(ydb, va.tableDefinition, tblit, va.columns, va.filters, va.aggregates,
+                select.aggOutputDef);
+    }
+
+    private boolean addFilter(Expression expr) {
+        if (expr instanceof AndExpression) {
+            for (Expression c : expr.children) {
+                if (!addFilter(c)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (expr instanceof RelationalExpression) {
+            return addRelOpFilter((RelationalExpression) expr);
+        } else if (expr instanceof InExpression) {
+            return addInFilter((InExpression) expr);
+        } else {
+            return false;
+        }
+    }
+
+    private boolean addRelOpFilter(RelationalExpression expr) {
+        Expression left = expr.children[0];
+        Expression right = expr.children[1];
+        RelOp relOp = expr.getRelation();
+        if (left.isConstant() && right instanceof ColumnExpression) {
+            Expression tmp = left;
+            left = right;
+            right = tmp;
+            relOp = relOp.getOppsite();
+        }
+        if (!(left instanceof ColumnExpression) || !right.isConstant()) {
+            return false;
+        }
+        int col = columnIndex((ColumnExpression) left);
+        if (col < 0) {
+            return false;
+        }
+        VectorPredicate p = VectorPredicate.compare(col, columns.get(col).getType(), relOp,
+                right.getConstantValue());
+        if (p == null) {
+            return false;
+        }
+        filters.add(p);
+        return true;
+    }
+
+    private boolean addInFilter(InExpression expr) {
+        if (!(expr.children[0] instanceof ColumnExpression)) {
+            return false;
+        }
+        Set<Object> values = new HashSet<>();
+        for (int i = 1; i < expr.children.length; i++) {
+            if (!expr.children[i].isConstant()) {
+                return false;
+            }
+            values.add(expr.children[i].getConstantValue());
+        }
+        int col = columnIndex((ColumnExpression) expr.children[0]);
+        if (col < 0) {
+            return false;
+        }
+        VectorPredicate p = VectorPredicate.in(col, columns.get(col).getType(), expr.negation, values);
+        if (p == null) {
+            return false;
+        }
+        filters.add(p);
+        return true;
+    }
+
+    private boolean addAggregate(AggregateExpression aggExpr) {
+        VectorAggregate agg = null;
+        if (aggExpr instanceof CountExpression) {
+            agg = VectorAggregate.count();
+        } else if (aggExpr instanceof SumExpression || aggExpr instanceof FirstValExpression) {
+            if (aggExpr.star || aggExpr.children == null || aggExpr.children.length != 1
+                    || !(aggExpr.children[0] instanceof ColumnExpression)) {
+                return false;
+            }
+            int col = columnIndex((ColumnExpression) aggExpr.children[0]);
+            if (col < 0) {
+                return false;
+            }
+            if (aggExpr instanceof SumExpression) {
+                agg = VectorAggregate.sum(col, columns.get(col).getType());
+            } else {
+                agg = VectorAggregate.firstVal(col);
+            }
+        }
+        if (agg == null) {
+            return false;
+        }
+        aggregates.add(agg);
+        return true;
+    }
+
+    // returns the index of the column in the block, adding it if necessary, or -1 if it is not a table column
+    private int columnIndex(ColumnExpression cexpr) {
+        String name = cexpr.getName();
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).getName().equals(name)) {
+                return i;
+            }
+        }
+        ColumnDefinition cd = tableTupleDef.getColumn(name);
+        if (cd == null) {
+            return -1;
+        }
+        columns.add(cd);
+        return columns.size() - 1;
+    }
+}
@@ -98,6 +98,37 @@ public class CcsdsTmIndexTest extends YarchTestCase {
         // tmindex.printApidDb();
     }
 
+    @Test
+    public void testInterleavedRuns() throws Exception {
+        CcsdsTmIndex tmindex = new CcsdsTmIndex();
+        tmindex.init(ydb.getName(), "test", YConfiguration.wrap(config));
+
+        short apid = 1000;
+        // two sequences of packets received interleaved (e.g. realtime and dump)
+        for (int i = 0; i < 100; i++) {
+            tmindex.addPacket(apid, 2000L + i, (short) (201 + i));
+            tmindex.addPacket(apid, 1000L + i, (short) i);
+            tmindex.addPacket(apid, 1000L + i, (short) i); // duplicate
+        }
+        for (int i = 100; i < 200; i++) {
+            tmindex.addPacket(apid, 1000L + i, (short) i);
+        }
+
+        CcsdsIndexIterator it = tmindex.new CcsdsIndexIterator((short) -1, -1L, -1L);
+        assertEqual(it.getNextRecord(), 1000, 1199, 200);
+        assertEqual(it.getNextRecord(), 2000, 2099, 100);
+        assertNull(it.getNextRecord());
+        it.close();
+
+        // the packet in between causes the two records to be merged
+        tmindex.addPacket(apid, 1500L, (short) 200);
+        tmindex.addPacket(apid, 2100L, (short) 301);
+        it = tmindex.new CcsdsIndexIterator((short) -1, -1L, -1L);
+        assertEqual(it.getNextRecord(), 1000, 2100, 302);
+        assertNull(it.getNextRecord());
+        it.close();
+    }
+
     @Test
     @Disabled
     public void testApidIndexSameTimeAndWraparound() throws Exception {
@@ -0,0 +1,170 @@
+package org.yamcs.archive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.yamcs.StandardTupleDefinitions;
+import org.yamcs.utils.TimeInterval;
+import org.yamcs.yarch.SqlBuilder;
+import org.yamcs.yarch.Stream;
+import org.yamcs.yarch.TimePartitionSchema;
+import org.yamcs.yarch.Tuple;
+import org.yamcs.yarch.YarchTestCase;
+import org.yamcs.yarch.protobuf.Db.Event;
+
+public class EventTextIndexTest extends YarchTestCase {
+    static final long DAY = 24 * 3600 * 1000L;
+    static final String[] MESSAGES = { "Battery voltage low", "Battery charging started", "Switching to safe mode",
+            "Voltage back to nominal", "battery-2 off" };
+
+    EventTextIndex textIndex;
+    Stream stream;
+
+    @BeforeEach
+    public void before() throws Exception {
+        TimePartitionSchema timePart = TimePartitionSchema.getInstance("YYYY/DOY");
+        ydb.execute("create table " + EventRecorder.TABLE_NAME
+                + "(gentime timestamp, source enum, seqNum int, body PROTOBUF('" + Event.class.getName()
+                + "'), primary key(gentime, source, seqNum)) histogram(source) partition by time(gentime('"
+                + timePart.getName() + "'))");
+        textIndex = new EventTextIndex(ydb, EventRecorder.CF_NAME);
+
+        ydb.execute("create stream events_in" + StandardTupleDefinitions.EVENT.getStringDefinition());
+        ydb.execute("insert into " + EventRecorder.TABLE_NAME + " select * from events_in");
+        stream = ydb.getStream("events_in");
+        textIndex.indexStream(stream);
+
+        // 5 days with one event every hour
+        for (int i = 0; i < 120; i++) {
+            emit(i * 3600_000L, i, MESSAGES[i % MESSAGES.length]);
+        }
+    }
+
+    @Test
+    public void testTokenize() {
+        assertEquals(Arrays.asList("battery", "attery", "ttery", "tery", "ery", "low"),
+                new ArrayList<>(EventTextIndex.tokenize("Battery low, 2 V")));
+
+        assertEquals("voltage", EventTextIndex.getSearchWord("low VOLTAGE"));
+        assertNull(EventTextIndex.getSearchWord("2 V"));
+        assertNull(EventTextIndex.getSearchWord("volt.*age"));
+    }
+
+    @Test
+    public void testPartitioning() throws Exception {
+        // partitioned like the events table
+        assertTrue(ydb.getTable(EventTextIndex.TABLE_NAME).isPartitionedByTime());
+        assertEquals(5, ydb.getPartitionManager(ydb.getTable(EventTextIndex.TABLE_NAME)).getPartitions().size());
+
+        // an interval inside one partition
+        Set<Long> candidates = textIndex.search("battery", new TimeInterval(DAY + 3600_000L, DAY + 7 * 3600_000L));
+        assertEquals(4, candidates.size());
+    }
+
+    @Test
+    public void testSearch() throws Exception {
+        Set<Long> candidates = textIndex.search("oltag", new TimeInterval());
+        assertEquals(48, candidates.size());
+
+        candidates = textIndex.search("battery", new TimeInterval(DAY, 2 * DAY));
+        assertEquals(15, candidates.size());
+        for (long t : candidates) {
+            assertTrue(t >= DAY && t < 2 * DAY);
+        }
+
+        assertEquals(0, textIndex.search("nothing", new TimeInterval()).size());
+
+        // too many candidates
+        for (int i = 0; i <= EventTextIndex.MAX_CANDIDATES; i++) {
+            emit(10 * DAY + i, 0, "many events");
+        }
+        assertNull(textIndex.search("events", new TimeInterval()));
+
+        // the maximum number of candidates can be used in the query
+        candidates = textIndex.search("events", new TimeInterval(10 * DAY, 10 * DAY + EventTextIndex.MAX_CANDIDATES));
+        assertEquals(EventTextIndex.MAX_CANDIDATES, candidates.size());
+        SqlBuilder sqlb = new SqlBuilder(EventRecorder.TABLE_NAME);
+        sqlb.where("body.message like ?", "%events%");
+        sqlb.whereColIn("gentime", candidates);
+        assertEquals(EventTextIndex.MAX_CANDIDATES, gentimes(sqlb).size());
+    }
+
+    @Test
+    public void testSameResultAsScan() throws Exception {
+        for (String q : Arrays.asList("battery", "ATTERY low", "age", "safe", "y-2", "nothing")) {
+            for (boolean desc : Arrays.asList(true, false)) {
+                SqlBuilder scan = new SqlBuilder(EventRecorder.TABLE_NAME);
+                scan.whereColAfterOrEqual("gentime", DAY / 2);
+                scan.where("body.message like ?", "%" + q + "%");
+                scan.descend(desc);
+
+                SqlBuilder indexed = new SqlBuilder(EventRecorder.TABLE_NAME);
+                indexed.whereColAfterOrEqual("gentime", DAY / 2);
+                indexed.where("body.message like ?", "%" + q + "%");
+                indexed.descend(desc);
+                Set<Long> candidates = textIndex.search(q, new TimeInterval(DAY / 2, Long.MAX_VALUE));
+                if (candidates != null) {
+                    indexed.whereColIn("gentime", candidates.isEmpty() ? Arrays.asList(Long.MIN_VALUE) : candidates);
+                }
+                assertEquals(gentimes(scan), gentimes(indexed), q);
+            }
+        }
+    }
+
+    @Test
+    public void testRebuild() throws Exception {
+        ydb.execute("delete from " + EventTextIndex.TABLE_NAME);
+        assertEquals(0, textIndex.search("battery", new TimeInterval()).size());
+
+        textIndex.rebuild(new TimeInterval(0, DAY)).get();
+        assertEquals(15, textIndex.search("battery", new TimeInterval()).size());
+
+        textIndex.rebuild(new TimeInterval()).get();
+        assertEquals(72, textIndex.search("battery", new TimeInterval()).size());
+    }
+
+    @Test
+    public void testReady() throws Exception {
+        // created together with the events table
+        assertTrue(textIndex.isReady());
+        // the marker is persisted
+        assertTrue(new EventTextIndex(ydb, EventRecorder.CF_NAME).isReady());
+
+        // restarted during a rebuild
+        ydb.getProtobufDatabase().delete(EventTextIndex.READY_MARKER_ID);
+        EventTextIndex textIndex1 = new EventTextIndex(ydb, EventRecorder.CF_NAME);
+        assertFalse(textIndex1.isReady());
+        assertNull(textIndex1.search("battery", new TimeInterval()));
+
+        textIndex1.rebuild(new TimeInterval()).get();
+        assertTrue(textIndex1.isReady());
+        assertEquals(72, textIndex1.search("battery", new TimeInterval()).size());
+        assertTrue(new EventTextIndex(ydb, EventRecorder.CF_NAME).isReady());
+    }
+
+    private List<Long> gentimes(SqlBuilder sqlb) throws Exception {
+        List<Long> l = new ArrayList<>();
+        var r = ydb.execute(sqlb.toString(), sqlb.getQueryArgumentsArray());
+        while (r.hasNext()) {
+            Tuple t = r.next();
+            l.add(t.getTimestampColumn("gentime"));
+        }
+        r.close();
+        return l;
+    }
+
+    private void emit(long gentime, int seqNum, String message) {
+        Event ev = Event.newBuilder().setSource("test").setGenerationTime(gentime).setReceptionTime(gentime)
+                .setSeqNumber(seqNum).setMessage(message).build();
+        stream.emitTuple(new Tuple(StandardTupleDefinitions.EVENT, new Object[] { gentime, "test", seqNum, ev }));
+    }
+}
@@ -0,0 +1,73 @@
+package org.yamcs.archive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class FastForwardPipelineTest {
+
+    @Test
+    public void testOrder() throws Exception {
+        FastForwardPipeline ffp = new FastForwardPipeline("test", 4, 16);
+        List<Integer> delivered = Collections.synchronizedList(new ArrayList<>());
+        Random random = new Random(1);
+        int n = 500;
+        for (int i = 0; i < n; i++) {
+            int k = i;
+            int sleep = random.nextInt(3);
+            if (i % 10 == 0) {
+                ffp.submitDelivery(() -> delivered.add(k));
+            } else {
+                ffp.submit(() -> {
+                    Thread.sleep(sleep);
+                    return () -> delivered.add(k);
+                });
+            }
+        }
+        ffp.drain();
+        assertEquals(n, delivered.size());
+        for (int i = 0; i < n; i++) {
+            assertEquals(i, delivered.get(i));
+        }
+        ffp.close();
+    }
+
+    @Test
+    public void testFailedTask() throws Exception {
+        FastForwardPipeline ffp = new FastForwardPipeline("test", 2, 4);
+        List<Integer> delivered = Collections.synchronizedList(new ArrayList<>());
+        ffp.submit(() -> () -> delivered.add(1));
+        ffp.submit(() -> {
+            throw new IllegalStateException("test");
+        });
+        ffp.submit(() -> null);
+        ffp.submit(() -> () -> delivered.add(4));
+        ffp.drain();
+        assertEquals(List.of(1, 4), delivered);
+        ffp.close();
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        FastForwardPipeline ffp = new FastForwardPipeline("test", 1, 2);
+        ffp.submit(() -> {
+            Thread.sleep(60000);
+            return null;
+        });
+        ffp.submit(() -> null);
+        ffp.close();
+        assertTrue(ffp.isClosed());
+
+        // does not block after close
+        ffp.submit(() -> null);
+        ffp.submitDelivery(() -> {
+        });
+        ffp.drain();
+    }
+}
@@ -0,0 +1,90 @@
+package org.yamcs.archive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.yamcs.YConfiguration;
+import org.yamcs.utils.TimeEncoding;
+import org.yamcs.yarch.Stream;
+import org.yamcs.yarch.Tuple;
+import org.yamcs.yarch.YarchTestCase;
+import org.yamcs.yarch.rocksdb.RdbStorageEngine;
+import org.yamcs.yarch.rocksdb.Tablespace;
+
+public class RetentionServiceTest extends YarchTestCase {
+    static final long HOUR = 3600 * 1000L;
+    long t0;
+
+    @BeforeEach
+    public void before() throws Exception {
+        TimeEncoding.setUp();
+        t0 = TimeEncoding.parse("2020-01-01T00:00:00");
+
+        ydb.execute("create table tt (gentime timestamp, source enum, seqNum int, primary key(gentime, seqNum))"
+                + " histogram(source) partition by time(gentime('YYYY/MM')) table_format=compressed");
+        ydb.execute("create table tnp (gentime timestamp, seqNum int, primary key(gentime, seqNum))");
+        ydb.execute("create stream tt_in (gentime timestamp, source enum, seqNum int)");
+        ydb.execute("create stream tnp_in (gentime timestamp, seqNum int)");
+        ydb.execute("insert into tt select * from tt_in");
+        ydb.execute("insert into tnp select * from tnp_in");
+
+        // one row every 12 hours during 6 months
+        Stream s1 = ydb.getStream("tt_in");
+        Stream s2 = ydb.getStream("tnp_in");
+        for (int i = 0; i < 364; i++) {
+            long t = t0 + i * 12 * HOUR;
+            s1.emitTuple(new Tuple(s1.getDefinition(), new Object[] { t, "s" + (i % 2), i }));
+            s2.emitTuple(new Tuple(s2.getDefinition(), new Object[] { t, i }));
+        }
+    }
+
+    @Test
+    public void testRetention() throws Exception {
+        RetentionService rs = new RetentionService();
+        YConfiguration config = rs.getSpec().validate(YConfiguration.wrap(Map.of(
+                "tables", List.of(Map.of("name", "tt", "retentionDays", 30),
+                        Map.of("name", "tnp", "retentionDays", 30),
+                        Map.of("name", "nonexistent", "retentionDays", 30)))));
+        rs.init(instance, "test", config);
+
+        Tablespace tablespace = RdbStorageEngine.getInstance().getTablespace(instance);
+        assertEquals(2 * 6, tablespace.getTableHistograms(instance, "tt").size()
+                + tablespace.getTablePartitions(instance, "tt").size());
+
+        // cutoff at 2020-03-16: January and February are removed
+        long now = TimeEncoding.parse("2020-04-15T00:00:00");
+        assertEquals(2, rs.applyRetention(now));
+        checkData(TimeEncoding.parse("2020-03-01T00:00:00"));
+        assertEquals(4, tablespace.getTablePartitions(instance, "tt").size());
+        assertEquals(4, tablespace.getTableHistograms(instance, "tt").size());
+        assertEquals(364, fetchAllFromTable("tnp").size());
+
+        // nothing more to remove
+        assertEquals(0, rs.applyRetention(now));
+
+        // the removal survives a reload
+        reloadDb();
+        checkData(TimeEncoding.parse("2020-03-01T00:00:00"));
+
+        // the data can be written again in a removed partition
+        ydb.execute("create stream tt_in (gentime timestamp, source enum, seqNum int)");
+        ydb.execute("insert into tt select * from tt_in");
+        Stream s = ydb.getStream("tt_in");
+        s.emitTuple(new Tuple(s.getDefinition(), new Object[] { t0, "s0", 1000 }));
+        assertEquals(t0, fetchAllFromTable("tt").get(0).getTimestampColumn("gentime"));
+    }
+
+    private void checkData(long start) throws Exception {
+        List<Tuple> tuples = fetchAllFromTable("tt");
+        long expected = 364 - (start - t0) / (12 * HOUR);
+        assertEquals(expected, tuples.size());
+        for (Tuple t : tuples) {
+            assertTrue(t.getTimestampColumn("gentime") >= start);
+        }
+    }
+}
@@ -5,6 +5,9 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 
 import org.junit.jupiter.api.BeforeAll;
@@ -12,6 +15,7 @@ import org.junit.jupiter.api.Test;
 import org.python.bouncycastle.util.Arrays;
 import org.yamcs.cfdp.pdu.FileDataPacket;
 import org.yamcs.cfdp.pdu.SegmentRequest;
+import org.yamcs.utils.FileUtils;
 
 public class DataFileTest {
     static int n = 100;
@@ -142,6 +146,57 @@ public class DataFileTest {
         verify(df);
     }
 
+    @Test
+    public void testFileBacked() throws Exception {
+        // unknown size, moved to the temporary file when the data grows beyond 40 bytes
+        try (DataFile df = new DataFile(-1, 40)) {
+            df.addSegment(getSegment(0, 30));
+            assertFalse(df.isFileBacked());
+            df.addSegment(getSegment(50, 20));
+            assertTrue(df.isFileBacked());
+            df.addSegment(getSegment(20, 40));
+            df.addSegment(getSegment(70, n - 70));
+            df.setSize(n);
+
+            assertTrue(df.isComplete());
+            assertArrayEquals(data, df.getData());
+            try (InputStream is = df.newInputStream()) {
+                assertArrayEquals(data, is.readAllBytes());
+            }
+            assertEquals(ChecksumCalculator.calculateChecksum(data), df.getChecksum());
+        }
+    }
+
+    @Test
+    public void testPartFileDir() throws Exception {
+        Path dir = Files.createTempDirectory("cfdptest");
+        try {
+            DataFile df = new DataFile(-1, 40, dir);
+            df.addSegment(getSegment(0, 50));
+            assertTrue(df.isFileBacked());
+            assertEquals(1, dir.toFile().list().length);
+
+            // the file left by a crash is removed
+            assertEquals(1, DataFile.deletePartFiles(dir));
+            assertEquals(0, dir.toFile().list().length);
+        } finally {
+            FileUtils.deleteRecursivelyIfExists(dir);
+        }
+    }
+
+    @Test
+    public void testChecksumWithOverlaps() {
+        DataFile df = new DataFile(n);
+        df.addSegment(getSegment(10, 7));
+        df.addSegment(getSegment(0, 13));
+        df.addSegment(getSegment(5, 30));
+        df.addSegment(getSegment(40, 20));
+        df.addSegment(getSegment(33, 67));
+        df.addSegment(getSegment(41, 3));
+        assertTrue(df.isComplete());
+        assertEquals(ChecksumCalculator.calculateChecksum(data), df.getChecksum());
+    }
+
     private FileDataPacket getSegment(int offset, int length) {
         return new FileDataPacket(Arrays.copyOfRange(data, offset, offset + length), offset, null);
     }
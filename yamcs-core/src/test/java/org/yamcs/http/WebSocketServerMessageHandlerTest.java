@@ -0,0 +1,72 @@
+package org.yamcs.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.yamcs.protobuf.ServerMessage;
+
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+
+public class WebSocketServerMessageHandlerTest {
+
+    @Test
+    public void testBatch() throws Exception {
+        WebSocketFrameHandler frameHandler = new WebSocketFrameHandler(null, null, null, null);
+        EmbeddedChannel channel = new EmbeddedChannel(
+                new WebSocketServerMessageHandler(null, true, frameHandler, 20, 1000));
+
+        for (int i = 1; i <= 3; i++) {
+            channel.attr(WebSocketFramePriority.ATTR).set(WebSocketFramePriority.NORMAL);
+            channel.writeAndFlush(message(i));
+        }
+        // the frame is sent after the batch window
+        assertNull(channel.readOutbound());
+        Thread.sleep(30);
+        channel.runPendingTasks();
+        assertEquals(List.of(1, 2, 3), readFrame(channel));
+
+        // a high priority message causes the frame to be sent immediately
+        channel.writeAndFlush(message(4));
+        channel.attr(WebSocketFramePriority.ATTR).set(WebSocketFramePriority.HIGH);
+        channel.writeAndFlush(message(5));
+        assertEquals(List.of(4, 5), readFrame(channel));
+
+        assertEquals(2, frameHandler.getFrameCount());
+        assertEquals(5, frameHandler.getMessageCount());
+        assertEquals(2.5, frameHandler.getCoalescingRatio());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testMaxBatchSize() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel(new WebSocketServerMessageHandler(null, true, null, 1000, 10));
+        channel.writeAndFlush(message(1));
+        channel.writeAndFlush(message(2));
+        assertEquals(List.of(1), readFrame(channel));
+        assertEquals(List.of(2), readFrame(channel));
+        channel.finishAndReleaseAll();
+    }
+
+    private static ServerMessage message(int seq) {
+        return ServerMessage.newBuilder().setType("test").setCall(1).setSeq(seq).build();
+    }
+
+    private static List<Integer> readFrame(EmbeddedChannel channel) throws Exception {
+        BinaryWebSocketFrame frame = channel.readOutbound();
+        List<Integer> seqs = new ArrayList<>();
+        try (InputStream in = new ByteBufInputStream(frame.content(), true)) {
+            ServerMessage msg;
+            while ((msg = ServerMessage.parseDelimitedFrom(in)) != null) {
+                seqs.add(msg.getSeq());
+            }
+        }
+        return seqs;
+    }
+}
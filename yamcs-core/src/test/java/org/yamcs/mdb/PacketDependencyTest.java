@@ -0,0 +1,66 @@
+package org.yamcs.mdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.yamcs.ProcessorConfig;
+import org.yamcs.YConfiguration;
+import org.yamcs.utils.TimeEncoding;
+import org.yamcs.xtce.SequenceContainer;
+
+/**
+ * Packets whose decoding uses a parameter from a previous packet cannot be decoded ahead of the delivery of that
+ * packet (as done by the fast-forward replays).
+ */
+public class PacketDependencyTest {
+    private Mdb mdb;
+    private SequenceContainer header;
+    private SequenceContainer dataPacket;
+
+    @BeforeEach
+    public void setup() {
+        YConfiguration.setupTest(null);
+        mdb = MdbFactory.createInstanceByConfig("PacketDependencyTest");
+        header = mdb.getSequenceContainer("/PacketDependencyTest/Header");
+        dataPacket = mdb.getSequenceContainer("/PacketDependencyTest/DataPacket");
+        TimeEncoding.setUp();
+    }
+
+    @Test
+    public void testDependsOnOtherPackets() {
+        XtceTmProcessor tmProcessor = new XtceTmProcessor(mdb, new ProcessorConfig());
+        // the value packet is calibrated according to the mode from the mode packet
+        assertTrue(tmProcessor.dependsOnOtherPackets(header));
+        // the size of the data is in the same packet
+        assertFalse(tmProcessor.dependsOnOtherPackets(dataPacket));
+    }
+
+    @Test
+    public void testDecodeInOrder() {
+        ProcessorData pdata = new ProcessorData("test", mdb, new ProcessorConfig());
+        XtceTmExtractor extractor = new XtceTmExtractor(mdb, pdata);
+        extractor.provideAll();
+        byte[] modePacket = new byte[] { 1, 1 };
+        byte[] valuePacket = new byte[] { 2, 0, 5 };
+
+        // decoded before the mode packet has been delivered, the default calibrator is used
+        assertEquals(5.0, decodeValue(extractor, valuePacket), 1e-6);
+
+        // the delivery of the mode packet updates the last value cache
+        long now = TimeEncoding.getWallclockTime();
+        ContainerProcessingResult result = extractor.processPacket(modePacket, now, now, 0, header);
+        pdata.getLastValueCache().addAll(result.getParameterResult());
+
+        assertEquals(50.0, decodeValue(extractor, valuePacket), 1e-6);
+    }
+
+    private double decodeValue(XtceTmExtractor extractor, byte[] packet) {
+        long now = TimeEncoding.getWallclockTime();
+        ContainerProcessingResult result = extractor.processPacket(packet, now, now, 0, header);
+        return result.getParameterResult().getLastInserted(mdb.getParameter("/PacketDependencyTest/value"))
+                .getEngValue().getDoubleValue();
+    }
+}
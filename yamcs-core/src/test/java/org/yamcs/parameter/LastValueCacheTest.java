@@ -1,6 +1,7 @@
 package org.yamcs.parameter;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
@@ -12,6 +13,8 @@ import org.yamcs.parameter.LastValueCache.ParamBuffer;
 import org.yamcs.utils.TimeEncoding;
 import org.yamcs.xtce.DataSource;
 import org.yamcs.xtce.Parameter;
+import org.yamcs.xtce.SpaceSystem;
+import org.yamcs.xtce.XtceDb;
 
 public class LastValueCacheTest {
     static Parameter p0, p1;
@@ -112,4 +115,91 @@ public class LastValueCacheTest {
         assertEquals(p1v1, lvc.getValue(p1, -2));
         assertEquals(p1v0, lvc.getValue(p1, -3));
     }
+
+    @Test
+    public void testEnlargeAfterWrap() {
+        LastValueCache lvc = new LastValueCache();
+        lvc.enableBuffering(p1, 2);
+        lvc.add(p1v0);
+        lvc.add(p1v1);
+        lvc.add(p1v2);
+
+        lvc.enableBuffering(p1, 3);
+        assertEquals(p1v2, lvc.getValue(p1, 0));
+        assertEquals(p1v1, lvc.getValue(p1, -1));
+        assertNull(lvc.getValue(p1, -2));
+
+        lvc.add(p1v3);
+        assertEquals(p1v3, lvc.getValue(p1, 0));
+        assertEquals(p1v2, lvc.getValue(p1, -1));
+        assertEquals(p1v1, lvc.getValue(p1, -2));
+    }
+
+    @Test
+    public void testIndexed() {
+        SpaceSystem ss = new SpaceSystem("test");
+        ss.setQualifiedName("/test");
+        Parameter p2 = new Parameter("p2");
+        p2.setQualifiedName("/test/p2");
+        Parameter p3 = new Parameter("p3");
+        p3.setQualifiedName("/test/p3");
+        ss.addParameter(p2);
+        ss.addParameter(p3);
+        XtceDb xtcedb = new XtceDb(ss);
+        xtcedb.buildIndexMaps();
+        assertEquals(2, xtcedb.getNumParameterIndices());
+
+        // p4 has the same index as p2 but is not part of the same MDB
+        SpaceSystem ss1 = new SpaceSystem("test1");
+        ss1.setQualifiedName("/test1");
+        Parameter p4 = new Parameter("p4");
+        p4.setQualifiedName("/test1/p4");
+        ss1.addParameter(p4);
+        new XtceDb(ss1).buildIndexMaps();
+        assertEquals(p2.getIndex(), p4.getIndex());
+
+        LastValueCache lvc = new LastValueCache(Arrays.asList(p0v0), xtcedb.getNumParameterIndices());
+        ParameterValue p2v0 = new ParameterValue(p2);
+        ParameterValue p3v0 = new ParameterValue(p3);
+        ParameterValue p4v0 = new ParameterValue(p4);
+        lvc.add(p2v0);
+        lvc.add(p4v0);
+        lvc.add(p1v0);
+        assertEquals(p2v0, lvc.getValue(p2));
+        assertEquals(p4v0, lvc.getValue(p4));
+        assertEquals(p1v0, lvc.getValue(p1));
+        assertNull(lvc.getValue(p3));
+        assertEquals(4, lvc.size());
+
+        lvc.enableBuffering(p3, 2);
+        lvc.add(p3v0);
+        assertEquals(p3v0, lvc.getValue(p3));
+        assertNull(lvc.getValue(p3, -1));
+        assertEquals(5, lvc.size());
+        assertEquals(4, lvc.getValues().size());
+    }
+
+    @Test
+    public void testConcurrentAdd() throws Exception {
+        LastValueCache lvc = new LastValueCache();
+        lvc.enableBuffering(p1, 4);
+        int n = 100000;
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < n; j++) {
+                    lvc.add(new ParameterValue(p1));
+                }
+            });
+            threads[i].start();
+        }
+        // enlarge the buffer while the values are added
+        lvc.enableBuffering(p1, 8);
+        for (Thread t : threads) {
+            t.join();
+        }
+        for (int i = 0; i > -8; i--) {
+            assertNotNull(lvc.getValue(p1, i));
+        }
+    }
 }
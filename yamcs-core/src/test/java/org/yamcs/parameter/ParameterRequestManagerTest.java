@@ -0,0 +1,247 @@
+package org.yamcs.parameter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.yamcs.Processor;
+import org.yamcs.ProcessorFactory;
+import org.yamcs.YConfiguration;
+import org.yamcs.protobuf.Yamcs.NamedObjectId;
+import org.yamcs.events.EventProducerFactory;
+import org.yamcs.mdb.Mdb;
+import org.yamcs.mdb.MdbFactory;
+import org.yamcs.utils.ValueUtility;
+import org.yamcs.xtce.Parameter;
+
+import com.google.common.util.concurrent.AbstractService;
+
+public class ParameterRequestManagerTest {
+    static String instance = "BogusSAT";
+    static Mdb mdb;
+    static ParameterRequestManager prm;
+    static Parameter p1, p2, p3;
+
+    @BeforeAll
+    public static void setUpBeforeClass() throws Exception {
+        YConfiguration.setupTest(instance);
+        EventProducerFactory.setMockup(false);
+        MdbFactory.reset();
+        Processor proc = ProcessorFactory.create(instance, "ParameterRequestManagerTest", new AllParaProvider());
+        prm = proc.getParameterProcessorManager().getParameterRequestManager();
+        mdb = proc.getMdb();
+        p1 = mdb.getParameter("/BogusSAT/SC001/BusElectronics/Battery_Voltage");
+        p2 = mdb.getParameter("/BogusSAT/SC001/BusElectronics/Battery_Current");
+        p3 = mdb.getParameter("/BogusSAT/SC001/BusElectronics/Battery_Charge_Mode");
+    }
+
+    @Test
+    public void testDelivery() {
+        List<ParameterValue> l1 = new ArrayList<>();
+        List<ParameterValue> l2 = new ArrayList<>();
+        int id1 = prm.addRequest(Arrays.asList(p1, p2), (ParameterConsumer) (id, items) -> l1.addAll(items));
+        int id2 = prm.addRequest(p2, (ParameterConsumer) (id, items) -> l2.addAll(items));
+
+        prm.update(ParameterValueList.asList(pv(p1, 1), pv(p2, 2), pv(p3, 3)));
+        assertEquals(2, l1.size());
+        assertEquals(p1, l1.get(0).getParameter());
+        assertEquals(p2, l1.get(1).getParameter());
+        assertEquals(1, l2.size());
+        assertEquals(p2, l2.get(0).getParameter());
+
+        prm.removeRequest(id1);
+        prm.update(ParameterValueList.asList(pv(p1, 1), pv(p2, 2)));
+        assertEquals(2, l1.size());
+        assertEquals(2, l2.size());
+
+        // the slot of the removed subscription is reused
+        List<ParameterValue> l3 = new ArrayList<>();
+        int id3 = prm.addRequest(p1, (ParameterConsumer) (id, items) -> l3.addAll(items));
+        prm.update(ParameterValueList.asList(pv(p1, 1), pv(p2, 2)));
+        assertEquals(1, l3.size());
+        assertEquals(p1, l3.get(0).getParameter());
+        assertEquals(3, l2.size());
+
+        prm.removeRequest(id2);
+        prm.removeRequest(id3);
+    }
+
+    @Test
+    public void testAddRequestWithExistingId() {
+        List<ParameterValue> l1 = new ArrayList<>();
+        int id1 = prm.addRequest(p1, (ParameterConsumer) (id, items) -> l1.addAll(items));
+
+        // the subscription is extended, not registered a second time
+        List<ParameterValue> l2 = new ArrayList<>();
+        prm.addRequest(id1, Arrays.asList(p1, p2), (ParameterConsumer) (id, items) -> l2.addAll(items));
+        prm.update(ParameterValueList.asList(pv(p1, 1), pv(p2, 2)));
+        assertEquals(0, l1.size());
+        assertEquals(2, l2.size());
+
+        assertEquals(2, prm.removeRequest(id1).size());
+        prm.update(ParameterValueList.asList(pv(p1, 1), pv(p2, 2)));
+        assertEquals(2, l2.size());
+    }
+
+    @Test
+    public void testSubscribeAll() {
+        List<List<ParameterValue>> received = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        ParameterConsumer consumer = (id, items) -> {
+            received.add(items);
+            sizes.add(items.size());
+        };
+        int id1 = prm.subscribeAll(consumer);
+        int id2 = prm.subscribeAll(consumer);
+
+        prm.update(ParameterValueList.asList(pv(p1, 1), pv(p3, 3)));
+        assertEquals(2, received.size());
+        // the two subscribers receive the same read only list
+        assertSame(received.get(0), received.get(1));
+        assertEquals(Arrays.asList(2, 2), sizes);
+        assertThrows(UnsupportedOperationException.class, () -> received.get(0).add(pv(p2, 2)));
+
+        prm.unsubscribeAll(id1);
+        prm.unsubscribeAll(id2);
+        prm.update(ParameterValueList.asList(pv(p1, 1)));
+        assertEquals(2, received.size());
+    }
+
+    @Test
+    public void testNestedDelivery() {
+        List<ParameterValue> l1 = new ArrayList<>();
+        List<ParameterValue> l2 = new ArrayList<>();
+        int id1 = prm.addRequest(p1, (ParameterConsumer) (id, items) -> {
+            // deliver another value from within the consumer
+            prm.update(ParameterValueList.asList(pv(p2, 2)));
+            l1.addAll(items);
+        });
+        int id2 = prm.addRequest(p2, (ParameterConsumer) (id, items) -> l2.addAll(items));
+
+        prm.update(ParameterValueList.asList(pv(p1, 1)));
+        assertEquals(1, l1.size());
+        assertEquals(p1, l1.get(0).getParameter());
+        assertEquals(1, l2.size());
+
+        prm.removeRequest(id1);
+        prm.removeRequest(id2);
+    }
+
+    /**
+     * Measures the bytes allocated by the ParameterRequestManager for each delivered value.
+     * <p>
+     * With 100 subscriptions of 100 parameters each and 4 subscribe all consumers, the allocation went from about 16
+     * bytes per delivered value (one HashMap and one ArrayList per subscriber and delivery) to less than 0.1 and the
+     * run time from 10.8 to 8.3 seconds.
+     */
+    @Test
+    @Disabled
+    public void testAllocationPerDeliveredValue() {
+        List<Parameter> plist = new ArrayList<>(mdb.getParameters());
+        int numSubscriptions = 100;
+        int paramsPerSubscription = 100;
+        long[] count = new long[1];
+        ParameterConsumer consumer = (id, items) -> count[0] += items.size();
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < numSubscriptions; i++) {
+            List<Parameter> l = new ArrayList<>();
+            for (int j = 0; j < paramsPerSubscription; j++) {
+                l.add(plist.get((i + j) % plist.size()));
+            }
+            ids.add(prm.addRequest(l, consumer));
+        }
+        List<Integer> allIds = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            allIds.add(prm.subscribeAll(consumer));
+        }
+
+        ParameterValueList pvlist = new ParameterValueList();
+        for (Parameter p : plist) {
+            pvlist.add(pv(p, 1));
+        }
+        com.sun.management.ThreadMXBean tmx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+
+        for (int i = 0; i < 10000; i++) {// warm up
+            prm.update(pvlist);
+        }
+        count[0] = 0;
+        int n = 100000;
+        long b0 = tmx.getThreadAllocatedBytes(tid);
+        long t0 = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            prm.update(pvlist);
+        }
+        long t1 = System.nanoTime();
+        long b1 = tmx.getThreadAllocatedBytes(tid);
+
+        System.out.println("delivered " + count[0] + " values in " + (t1 - t0) / 1000_000 + " ms; "
+                + String.format("%.3f", (double) (b1 - b0) / count[0]) + " bytes allocated per delivered value");
+
+        ids.forEach(id -> prm.removeRequest(id));
+        allIds.forEach(id -> prm.unsubscribeAll(id));
+    }
+
+    static ParameterValue pv(Parameter p, int v) {
+        ParameterValue pv = new ParameterValue(p);
+        pv.setEngValue(ValueUtility.getUint32Value(v));
+        return pv;
+    }
+
+    // provides all parameters, the values are pushed directly into the ParameterRequestManager by the tests
+    static class AllParaProvider extends AbstractService implements ParameterProvider {
+        @Override
+        public void init(Processor processor, YConfiguration config, Object spec) {
+            processor.getParameterProcessorManager().addParameterProvider(this);
+        }
+
+        @Override
+        public void setParameterProcessor(ParameterProcessor parameterProcessor) {
+        }
+
+        @Override
+        public void startProviding(Parameter paramDef) {
+        }
+
+        @Override
+        public void startProvidingAll() {
+        }
+
+        @Override
+        public void stopProviding(Parameter paramDef) {
+        }
+
+        @Override
+        public boolean canProvide(NamedObjectId paraId) {
+            return true;
+        }
+
+        @Override
+        public Parameter getParameter(NamedObjectId paraId) {
+            return mdb.getParameter(paraId.getName());
+        }
+
+        @Override
+        public boolean canProvide(Parameter param) {
+            return true;
+        }
+
+        @Override
+        protected void doStart() {
+            notifyStarted();
+        }
+
+        @Override
+        protected void doStop() {
+            notifyStopped();
+        }
+    }
+}
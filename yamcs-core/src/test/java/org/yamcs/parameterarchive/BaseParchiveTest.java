@@ -23,6 +23,7 @@ import org.yamcs.utils.FileUtils;
 import org.yamcs.utils.ValueUtility;
 import org.yamcs.xtce.Parameter;
 import org.yamcs.yarch.YarchDatabase;
+import org.yamcs.yarch.YarchDatabaseInstance;
 import org.yamcs.yarch.rocksdb.RdbStorageEngine;
 
 public abstract class BaseParchiveTest {
@@ -38,6 +39,21 @@ public abstract class BaseParchiveTest {
     }
 
     public void openDb(String partitioningSchema, boolean sparseGroups, double minOverlap) throws Exception {
+        openDb(partitioningSchema, sparseGroups, minOverlap, null);
+    }
+
+    /**
+     * Opens a parameter archive partitioned by time with the given schema.
+     * <p>
+     * The schema is passed as the instance level dataPartitioningByTime option which is the one actually used by the
+     * parameter archive.
+     */
+    public void openTimePartitionedDb(String timePartitioningSchema) throws Exception {
+        openDb(null, false, 0, timePartitioningSchema);
+    }
+
+    private void openDb(String partitioningSchema, boolean sparseGroups, double minOverlap,
+            String timePartitioningSchema) throws Exception {
         Path dbroot = Path.of(YarchDatabase.getDataDir(), instance);
         FileUtils.deleteRecursivelyIfExists(dbroot);
         FileUtils.deleteRecursivelyIfExists(Path.of(dbroot + ".rdb"));
@@ -61,6 +77,11 @@ public abstract class BaseParchiveTest {
 
         parchive = new ParameterArchive();
         YConfiguration config = parchive.getSpec().validate(YConfiguration.wrap(conf));
+        if (timePartitioningSchema != null) {
+            Map<String, Object> m = new HashMap<>(config.getRoot());
+            m.put(YarchDatabaseInstance.PART_CONF_KEY, timePartitioningSchema);
+            config = YConfiguration.wrap(m);
+        }
         parchive.init(instance, "test", config);
         pidMap = parchive.getParameterIdDb();
         pgidMap = parchive.getParameterGroupIdDb();
@@ -2,9 +2,11 @@ package org.yamcs.parameterarchive;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Random;
 
 import org.junit.jupiter.api.Test;
 import org.yamcs.utils.DecodingException;
@@ -35,4 +37,62 @@ public class DoubleValueSegmentTest {
         assertArrayEquals(new double[] { 1.2, 2.3, 3 }, dvs1.getRange(0, 3, true).getDoubleArray(), 1e-10);
         assertArrayEquals(new double[] { 3, 2.3 }, dvs1.getRange(0, 2, false).getDoubleArray(), 1e-10);
     }
+
+    @Test
+    public void testCompressed() throws IOException, DecodingException {
+        DoubleValueSegment dvs = new DoubleValueSegment();
+        int n = 1000;
+        double[] expected = new double[n];
+        for (int i = 0; i < n; i++) {
+            expected[i] = 20 + (i / 10) * 0.25;
+            dvs.add(ValueUtility.getDoubleValue(expected[i]));
+        }
+        dvs.consolidate();
+
+        ByteBuffer bb = ByteBuffer.allocate(dvs.getMaxSerializedSize());
+        dvs.writeTo(bb);
+        assertEquals(DoubleValueSegment.SUBFORMAT_ID_COMPRESSED, bb.get(0));
+        assertTrue(bb.position() < 8 * n / 4);
+
+        bb.rewind();
+        DoubleValueSegment dvs1 = DoubleValueSegment.parseFrom(bb);
+        assertArrayEquals(expected, dvs1.getRange(0, n, true).getDoubleArray(), 0);
+    }
+
+    @Test
+    public void testRandomFallsBackToRaw() throws IOException, DecodingException {
+        DoubleValueSegment dvs = new DoubleValueSegment();
+        Random random = new Random(0);
+        int n = 500;
+        double[] expected = new double[n];
+        for (int i = 0; i < n; i++) {
+            expected[i] = Double.longBitsToDouble(random.nextLong());
+            dvs.add(ValueUtility.getDoubleValue(expected[i]));
+        }
+        dvs.consolidate();
+
+        ByteBuffer bb = ByteBuffer.allocate(2 * dvs.getMaxSerializedSize());
+        dvs.writeTo(bb);
+        assertEquals(DoubleValueSegment.SUBFORMAT_ID_RAW, bb.get(0));
+
+        bb.rewind();
+        DoubleValueSegment dvs1 = DoubleValueSegment.parseFrom(bb);
+        double[] da = dvs1.getRange(0, n, true).getDoubleArray();
+        for (int i = 0; i < n; i++) {
+            assertEquals(Double.doubleToRawLongBits(expected[i]), Double.doubleToRawLongBits(da[i]));
+        }
+    }
+
+    @Test
+    public void testCompressorSpecialValues() {
+        double[] da = new double[] { 0, -0.0, Double.NaN, Double.MAX_VALUE, Double.MIN_VALUE,
+                Double.NEGATIVE_INFINITY, 1, 1, 3.14, -3.14, 1e300, 1e-300 };
+        ByteBuffer bb = ByteBuffer.allocate(1024);
+        DoubleCompressor.compress(da, bb);
+        bb.flip();
+        double[] da1 = DoubleCompressor.decompress(bb, da.length);
+        for (int i = 0; i < da.length; i++) {
+            assertEquals(Double.doubleToRawLongBits(da[i]), Double.doubleToRawLongBits(da1[i]));
+        }
+    }
 }
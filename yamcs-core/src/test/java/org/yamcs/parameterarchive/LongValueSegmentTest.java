@@ -2,9 +2,11 @@ package org.yamcs.parameterarchive;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Random;
 
 import org.junit.jupiter.api.Test;
 import org.yamcs.protobuf.Yamcs.Value.Type;
@@ -35,6 +37,19 @@ public class LongValueSegmentTest {
         assertArrayEquals(new long[] { 3, 2 }, fvs1.getRange(0, 2, false).getLongArray());
     }
 
+    @Test
+    public void testEmpty() throws IOException, DecodingException {
+        LongValueSegment lvs = new LongValueSegment(Type.SINT64);
+
+        ByteBuffer bb = ByteBuffer.allocate(lvs.getMaxSerializedSize());
+        lvs.writeTo(bb);
+
+        bb.rewind();
+        LongValueSegment fvs1 = LongValueSegment.parseFrom(bb);
+        assertEquals(0, fvs1.size());
+        assertEquals(0, fvs1.getRange(0, 0, true).getLongArray().length);
+    }
+
     @Test
     public void testSigned() throws IOException, DecodingException {
         LongValueSegment lvs = new LongValueSegment(Type.SINT64);
@@ -84,4 +99,63 @@ public class LongValueSegmentTest {
         assertArrayEquals(new long[] { 1, 2, 3 }, fvs1.getRange(0, 3, true).getLongArray());
         assertArrayEquals(new long[] { 3, 2 }, fvs1.getRange(0, 2, false).getLongArray());
     }
+
+    @Test
+    public void testCompressedTimestamps() throws IOException, DecodingException {
+        LongValueSegment lvs = new LongValueSegment(Type.TIMESTAMP);
+        int n = 1000;
+        long[] expected = new long[n];
+        long t0 = 1_700_000_000_000L;
+        for (int i = 0; i < n; i++) {
+            expected[i] = t0 + i * 1000 + (i % 3);
+            lvs.add(ValueUtility.getTimestampValue(expected[i]));
+        }
+
+        ByteBuffer bb = ByteBuffer.allocate(lvs.getMaxSerializedSize());
+        lvs.writeTo(bb);
+        assertEquals(LongValueSegment.SUBFORMAT_ID_DELTAZG_FPF128_VB, bb.get(0) & 0xF);
+        assertTrue(bb.position() < 8 * n / 4);
+
+        bb.rewind();
+        LongValueSegment lvs1 = LongValueSegment.parseFrom(bb);
+        assertArrayEquals(expected, lvs1.getRange(0, n, true).getLongArray());
+        assertEquals(ValueUtility.getTimestampValue(expected[5]), lvs1.getValue(5));
+    }
+
+    @Test
+    public void testCompressedLargeDeltas() throws IOException, DecodingException {
+        LongValueSegment lvs = new LongValueSegment(Type.SINT64);
+        long[] expected = new long[] { 0, Long.MAX_VALUE, Long.MIN_VALUE, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0 };
+        for (long v : expected) {
+            lvs.add(ValueUtility.getSint64Value(v));
+        }
+
+        ByteBuffer bb = ByteBuffer.allocate(lvs.getMaxSerializedSize());
+        lvs.writeTo(bb);
+        assertEquals(LongValueSegment.SUBFORMAT_ID_DELTAZG_VB, bb.get(0) & 0xF);
+
+        bb.rewind();
+        LongValueSegment lvs1 = LongValueSegment.parseFrom(bb);
+        assertArrayEquals(expected, lvs1.getRange(0, expected.length, true).getLongArray());
+    }
+
+    @Test
+    public void testRandomFallsBackToRaw() throws IOException, DecodingException {
+        LongValueSegment lvs = new LongValueSegment(Type.UINT64);
+        Random random = new Random(0);
+        int n = 300;
+        long[] expected = new long[n];
+        for (int i = 0; i < n; i++) {
+            expected[i] = random.nextLong();
+            lvs.add(ValueUtility.getUint64Value(expected[i]));
+        }
+
+        ByteBuffer bb = ByteBuffer.allocate(2 * lvs.getMaxSerializedSize());
+        lvs.writeTo(bb);
+        assertEquals(LongValueSegment.SUBFORMAT_ID_RAW, bb.get(0) & 0xF);
+
+        bb.rewind();
+        LongValueSegment lvs1 = LongValueSegment.parseFrom(bb);
+        assertArrayEquals(expected, lvs1.getRange(0, n, true).getLongArray());
+    }
 }
@@ -226,6 +226,47 @@ public class ParameterArchiveTest extends BaseParchiveTest {
         checkEquals(params.get(0), 100, pv1_0);
     }
 
+    @ParameterizedTest
+    @ValueSource(strings = { "none", "YYYY/MM" })
+    public void testDeletePartitions(String partitioningSchema) throws Exception {
+        openTimePartitionedDb(partitioningSchema);
+        ParameterValue pv = getParameterValue(p1, 100, "pv", 100);
+        int p1id = pidMap.createAndGet(p1.getQualifiedName(), pv.getEngValue().getType(), pv.getRawValue().getType());
+        var pg1 = pgidMap.getGroup(IntArray.wrap(p1id));
+
+        long[] times = { TimeEncoding.parse("2017-01-15T00:00:51"), TimeEncoding.parse("2017-02-15T00:00:51"),
+                TimeEncoding.parse("2017-03-15T00:00:51") };
+        for (long t : times) {
+            PGSegment pgs = new PGSegment(pg1.id, ParameterArchive.getIntervalStart(t));
+            pgs.addRecord(t, IntArray.wrap(p1id), Arrays.asList(getParameterValue(p1, t, "pv" + t, 3)));
+            parchive.writeToArchive(pgs);
+        }
+        assertEquals(3, retrieveSingleParamSingleGroup(0, TimeEncoding.POSITIVE_INFINITY, p1id, pg1.id, true).size());
+
+        var removed = parchive.deletePartitions(TimeEncoding.NEGATIVE_INFINITY,
+                TimeEncoding.parse("2017-03-01T00:00:00"));
+        var l = retrieveSingleParamSingleGroup(0, TimeEncoding.POSITIVE_INFINITY, p1id, pg1.id, true);
+        if ("none".equals(partitioningSchema)) {
+            assertEquals(0, removed.size());
+            assertEquals(3, l.size());
+        } else {
+            assertEquals(2, removed.size());
+            assertEquals(1, l.size());
+            assertEquals(times[2], l.get(0).timestamps[0]);
+
+            // the removal survives a reopen and the removed partitions can be written again
+            parchive = new ParameterArchive();
+            parchive.init(instance, "test", parchive.getSpec().validate(backFillerDisabledConfig()));
+            pidMap = parchive.getParameterIdDb();
+            assertNull(parchive.getPartitions(times[0]));
+            PGSegment pgs = new PGSegment(pg1.id, ParameterArchive.getIntervalStart(times[0]));
+            pgs.addRecord(times[0], IntArray.wrap(p1id), Arrays.asList(getParameterValue(p1, times[0], "pv", 3)));
+            parchive.writeToArchive(pgs);
+            assertEquals(2, retrieveSingleParamSingleGroup(0, TimeEncoding.POSITIVE_INFINITY, p1id, pg1.id, true)
+                    .size());
+        }
+    }
+
 
     @ParameterizedTest
     @ValueSource(strings = { "none", "YYYY", "YYYY/MM" })
@@ -0,0 +1,154 @@
+package org.yamcs.parameterarchive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.yamcs.YamcsServer;
+import org.yamcs.parameter.ParameterValue;
+import org.yamcs.parameterarchive.ParameterRollup.Bucket;
+import org.yamcs.protobuf.Yamcs.Value.Type;
+import org.yamcs.utils.IntArray;
+import org.yamcs.utils.TimeEncoding;
+import org.yamcs.utils.ValueUtility;
+import org.yamcs.xtce.Parameter;
+
+public class ParameterRollupTest extends BaseParchiveTest {
+    static Parameter p1;
+
+    @BeforeAll
+    public static void beforeClass() {
+        p1 = new Parameter("p1");
+        p1.setQualifiedName("/test/p1");
+        TimeEncoding.setUp();
+
+        timeService = new MockupTimeService();
+        YamcsServer.setMockupTimeService(timeService);
+    }
+
+    @BeforeEach
+    public void beforeEach() throws Exception {
+        instance = "ParameterRollupTest";
+        openDb("none");
+    }
+
+    @Test
+    public void testLevels() {
+        assertEquals(-1, ParameterRollup.getLevel(1000));
+        assertEquals(0, ParameterRollup.getLevel(4 * ParameterRollup.getBucketDuration(0)));
+        assertEquals(1, ParameterRollup.getLevel(4 * ParameterRollup.getBucketDuration(1)));
+        assertEquals(2, ParameterRollup.getLevel(100 * ParameterArchive.getIntervalDuration()));
+    }
+
+    @Test
+    public void testEncodeDecode() throws Exception {
+        long interval = ParameterArchive.getIntervalStart(100 * ParameterArchive.getIntervalDuration());
+        ParameterRollup r = new ParameterRollup(interval, 0, Type.SINT32);
+        for (int i = 0; i < 100; i++) {
+            r.add(interval + i * 1000, i % 10);
+        }
+
+        ParameterRollup r1 = ParameterRollup.decode(r.encode(), interval);
+        assertEquals(Type.SINT32, r1.getEngType());
+        assertEquals(r.getBuckets().size(), r1.getBuckets().size());
+        Bucket b = r1.getBuckets().get(1);
+        assertEquals(8192, b.getStart() - interval);
+        assertEquals(8, b.getCount());
+        assertEquals(9, b.getFirst());
+        assertEquals(interval + 9000, b.getFirstTime());
+        assertEquals(0, b.getMin());
+        assertEquals(interval + 10000, b.getMinTime());
+        assertEquals(6, b.getLast());
+        assertEquals(interval + 16000, b.getLastTime());
+        assertEquals(9 + 0 + 1 + 2 + 3 + 4 + 5 + 6, b.getSum());
+        assertNull(r1.getConstantValue(b));
+    }
+
+    @Test
+    public void testToLevel() {
+        long interval = 0;
+        ParameterRollup r0 = new ParameterRollup(interval, 0, Type.DOUBLE);
+        for (int i = 0; i < 1000; i++) {
+            r0.add(i * 1000, 3.5);
+        }
+        ParameterRollup r2 = r0.toLevel(2);
+        assertEquals(1, r2.getBuckets().size());
+        Bucket b = r2.getBuckets().get(0);
+        assertEquals(1000, b.getCount());
+        assertEquals(3.5, b.getAvg());
+        assertEquals(0, b.getFirstTime());
+        assertEquals(999_000, b.getLastTime());
+        assertEquals(ValueUtility.getDoubleValue(3.5), r2.getConstantValue(b));
+    }
+
+    @Test
+    public void testWriteAndRetrieve() throws Exception {
+        int p1id = pidMap.createAndGet(p1.getQualifiedName(), Type.SINT32);
+        var pg1 = pgidMap.getGroup(IntArray.wrap(p1id));
+
+        long t0 = ParameterArchive.getIntervalStart(10 * ParameterArchive.getIntervalDuration());
+        // each segment of the interval has its own rollup
+        PGSegment seg1 = new PGSegment(pg1.id, t0);
+        for (int i = 0; i < 100; i++) {
+            seg1.addRecord(t0 + i * 1000, pg1.pids, Arrays.asList(getSint32Value(t0 + i * 1000, i)));
+        }
+        seg1.freeze();
+        parchive.writeToArchive(seg1);
+
+        // the second segment of the same interval; its rollup is merged with the first one at retrieval
+        PGSegment seg2 = new PGSegment(pg1.id, t0);
+        for (int i = 100; i < 200; i++) {
+            seg2.addRecord(t0 + i * 1000, pg1.pids, Arrays.asList(getSint32Value(t0 + i * 1000, -i)));
+        }
+        seg2.continueSegment(seg1);
+        parchive.writeToArchive(seg2);
+        // rewriting the same segment (e.g. by the back filler) does not count its values twice
+        parchive.writeToArchive(seg2);
+
+        long t1 = t0 + ParameterArchive.getIntervalDuration();
+        PGSegment seg3 = new PGSegment(pg1.id, t1);
+        seg3.addRecord(t1, pg1.pids, Arrays.asList(getSint32Value(t1, 7)));
+        parchive.writeToArchive(seg3);
+
+        List<ParameterRollup> l = retrieve(t0, t1 + ParameterArchive.getIntervalDuration(), 2);
+        assertEquals(2, l.size());
+        Bucket b = l.get(0).getBuckets().get(0);
+        assertEquals(200, b.getCount());
+        assertEquals(-199, b.getMin());
+        assertEquals(99, b.getMax());
+        assertEquals(0, b.getFirst());
+        assertEquals(-199, b.getLast());
+        assertEquals(t0 + 199_000, b.getLastTime());
+
+        assertEquals(t1, l.get(1).getInterval());
+        assertEquals(1, l.get(1).getBuckets().get(0).getCount());
+
+        // the level 0 buckets
+        l = retrieve(t0, t1, 0);
+        assertEquals(1, l.size());
+        assertEquals(25, l.get(0).getBuckets().size());
+        assertEquals(200, l.get(0).getBuckets().stream().mapToInt(Bucket::getCount).sum());
+
+        // the partial intervals are not sent
+        assertEquals(0, retrieve(t0 + 1, t1 + ParameterArchive.getIntervalDuration() - 1, 2).size());
+    }
+
+    private List<ParameterRollup> retrieve(long start, long stop, int level) throws Exception {
+        List<ParameterRollup> l = new ArrayList<>();
+        new RollupRetrieval(parchive, p1.getQualifiedName(), level).retrieve(start, stop, l::add);
+        return l;
+    }
+
+    private ParameterValue getSint32Value(long t, int v) {
+        ParameterValue pv = new ParameterValue(p1);
+        pv.setGenerationTime(t);
+        pv.setEngValue(ValueUtility.getSint32Value(v));
+        return pv;
+    }
+}
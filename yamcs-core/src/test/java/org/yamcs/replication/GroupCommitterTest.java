@@ -0,0 +1,116 @@
+package org.yamcs.replication;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.yamcs.utils.FileUtils;
+
+public class GroupCommitterTest {
+    Path dir;
+
+    @BeforeEach
+    public void before() throws IOException {
+        dir = Files.createTempDirectory("repltest");
+    }
+
+    @AfterEach
+    public void after() throws IOException {
+        FileUtils.deleteRecursivelyIfExists(dir);
+    }
+
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        ReplicationFile rf = ReplicationFile.newFile("test", dir.resolve("t1"), 0, 100, 100, 1024 * 1024);
+        GroupCommitter gc = new GroupCommitter("test", () -> rf, 2);
+        gc.start();
+
+        int numThreads = 4;
+        int numTx = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < numThreads; i++) {
+            futures.add(executor.submit(() -> {
+                for (int j = 0; j < numTx; j++) {
+                    long txId = rf.writeData(new DataTransaction());
+                    gc.awaitDurable(txId);
+                    assertTrue(gc.getDurableTxId() >= txId);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : futures) {
+            f.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(numThreads * numTx - 1, gc.getDurableTxId());
+        GroupCommitter.Stats stats = gc.getStats();
+        assertEquals(numThreads * numTx, stats.getNumTx());
+        assertTrue(stats.getNumSyncs() <= stats.getNumTx());
+        assertTrue(stats.getMaxLatency() >= stats.getAvgLatency());
+
+        // the statistics are reset
+        assertEquals(0, gc.getStats().getNumSyncs());
+
+        gc.quit();
+        rf.close();
+    }
+
+    @Test
+    public void testQuitReleasesWriters() throws Exception {
+        ReplicationFile rf = ReplicationFile.newFile("test", dir.resolve("t1"), 0, 100, 100, 1024 * 1024);
+        // not started, nobody will synchronize the file
+        GroupCommitter gc = new GroupCommitter("test", () -> rf, 0);
+        long txId = rf.writeData(new DataTransaction());
+        Thread t = new Thread(() -> {
+            try {
+                gc.awaitDurable(txId);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        t.start();
+        Thread.sleep(100);
+        assertTrue(t.isAlive());
+        gc.quit();
+        t.join(5000);
+        assertFalse(t.isAlive());
+
+        // already durable, does not wait
+        gc.markDurable(txId);
+        gc.awaitDurable(txId);
+        rf.close();
+    }
+
+    static class DataTransaction implements Transaction {
+        @Override
+        public void marshall(ByteBuffer buf) {
+            buf.putLong(System.nanoTime());
+        }
+
+        @Override
+        public byte getType() {
+            return Message.DATA;
+        }
+
+        @Override
+        public int getInstanceId() {
+            return 1;
+        }
+    }
+}
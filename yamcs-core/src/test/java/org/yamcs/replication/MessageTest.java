@@ -0,0 +1,102 @@
+package org.yamcs.replication;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.yamcs.replication.Message.CompressedMessage;
+import org.yamcs.replication.Message.TransactionMessage;
+import org.yamcs.utils.DecodingException;
+import org.yamcs.utils.FileUtils;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.compression.Snappy;
+
+public class MessageTest {
+    Path dir;
+
+    @BeforeEach
+    public void before() throws IOException {
+        dir = Files.createTempDirectory("repltest");
+    }
+
+    @AfterEach
+    public void after() throws IOException {
+        FileUtils.deleteRecursivelyIfExists(dir);
+    }
+
+    @Test
+    public void testCompressed() throws Exception {
+        ReplicationFile rf = ReplicationFile.newFile("test", dir.resolve("t1"), 100, 10, 10, 100_000);
+        for (int i = 0; i < 20; i++) {
+            int k = i;
+            rf.writeData(new Transaction() {
+                @Override
+                public void marshall(ByteBuffer buf) {
+                    for (int j = 0; j < 250; j++) {
+                        buf.putInt(k);
+                    }
+                }
+
+                @Override
+                public byte getType() {
+                    return Message.DATA;
+                }
+
+                @Override
+                public int getInstanceId() {
+                    return 3;
+                }
+            });
+        }
+        ReplicationTail tail = rf.tail(100);
+        int length = tail.buf.remaining();
+
+        ByteBuf in = Unpooled.wrappedBuffer(tail.buf);
+        ByteBuf compressed = Message.encodeCompressed(new Snappy(), in, length);
+        assertTrue(compressed.readableBytes() < length / 10);
+
+        Message msg = Message.decode(compressed.nioBuffer());
+        assertEquals(Message.COMPRESSED, msg.type());
+        List<Message> msgs = ((CompressedMessage) msg).decompress(new Snappy());
+        assertEquals(20, msgs.size());
+        // the message encodes back to what has been received
+        assertEquals(compressed.nioBuffer(), msg.encode());
+        for (int i = 0; i < 20; i++) {
+            TransactionMessage tmsg = (TransactionMessage) msgs.get(i);
+            assertEquals(Message.DATA, tmsg.type());
+            assertEquals(100 + i, tmsg.txId());
+            assertEquals(3, tmsg.instanceId);
+            assertEquals(1000, tmsg.buf().remaining());
+            assertEquals(i, tmsg.buf().getInt(tmsg.buf().position() + 996));
+        }
+        rf.close();
+    }
+
+    @Test
+    public void testCorruptedCompressed() throws Exception {
+        ByteBuf in = Unpooled.wrappedBuffer(new byte[100]);
+        ByteBuf compressed = Message.encodeCompressed(new Snappy(), in, 100);
+        // change the uncompressed length and fix the CRC
+        compressed.setInt(4, 99);
+        ByteBuffer buf = compressed.nioBuffer();
+        buf.limit(buf.limit() - 4);
+        CRC32 crc = new CRC32();
+        crc.update(buf);
+        compressed.setInt(compressed.writerIndex() - 4, (int) crc.getValue());
+
+        Message msg = Message.decode(compressed.nioBuffer());
+        assertThrows(DecodingException.class, () -> ((CompressedMessage) msg).decompress(new Snappy()));
+    }
+}
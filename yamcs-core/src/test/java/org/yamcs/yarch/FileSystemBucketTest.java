@@ -1,12 +1,20 @@
 package org.yamcs.yarch;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -66,6 +74,39 @@ public class FileSystemBucketTest {
         }
     }
 
+    @Test
+    public void testStreams() throws IOException {
+        var bucket = new FileSystemBucket("bucket", testDir.resolve("bucket"));
+        Files.createDirectory(bucket.getBucketRoot());
+        bucket.setMaxSize(2000);
+
+        byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        bucket.putObject("dir/obj", null, Map.of(), new ByteArrayInputStream(data));
+        assertArrayEquals(data, bucket.getObject("dir/obj"));
+
+        try (InputStream is = bucket.getObjectStream("dir/obj", 100, 200)) {
+            assertArrayEquals(Arrays.copyOfRange(data, 100, 300), is.readAllBytes());
+        }
+        assertNull(bucket.getObjectStream("dir/obj2"));
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        assertEquals(100, bucket.transferObject("dir/obj", 900, -1, Channels.newChannel(bos)));
+        assertArrayEquals(Arrays.copyOfRange(data, 900, 1000), bos.toByteArray());
+
+        // the limit is verified while copying and the partial data is removed
+        IOException e = assertThrows(IOException.class,
+                () -> bucket.putObject("dir/obj2", null, Map.of(), new ByteArrayInputStream(new byte[1001])));
+        assertTrue(e.getMessage().contains("Maximum bucket size"));
+        assertNull(bucket.findObject("dir/obj2"));
+        assertEquals(1, bucket.listObjects(x -> true).size());
+        try (var files = Files.list(bucket.getBucketRoot().resolve("dir"))) {
+            assertEquals(1, files.count());
+        }
+    }
+
     @AfterEach
     public void afterEach() throws IOException {
         FileUtils.deleteRecursivelyIfExists(testDir);
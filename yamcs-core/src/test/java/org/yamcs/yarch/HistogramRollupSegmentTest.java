@@ -0,0 +1,99 @@
+package org.yamcs.yarch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+import org.yamcs.utils.TimeInterval;
+import org.yamcs.yarch.HistogramRollupSegment.Rec;
+
+public class HistogramRollupSegmentTest {
+    static final long DAY = HistogramLevel.DAY.getSegmentDuration();
+    static final long MONTH = HistogramLevel.MONTH.getSegmentDuration();
+
+    @Test
+    public void testMergeGap() {
+        HistogramRollupSegment segment = new HistogramRollupSegment(HistogramLevel.DAY, "g1".getBytes(), 0);
+        segment.add(1000);
+        segment.add(50_000);
+        assertEquals(1, segment.size());
+        assertRecEquals(1000, 50_000, 2, segment.recs.get(0));
+
+        segment.add(150_000);
+        assertEquals(2, segment.size());
+
+        segment.add(20_000); // inside
+        segment.add(100_000); // joins both
+        assertEquals(1, segment.size());
+        assertRecEquals(1000, 150_000, 5, segment.recs.get(0));
+
+        segment.add(0);
+        assertRecEquals(0, 150_000, 6, segment.recs.get(0));
+    }
+
+    @Test
+    public void testUnordered() {
+        HistogramRollupSegment segment = new HistogramRollupSegment(HistogramLevel.DAY, "g1".getBytes(), 0);
+        segment.add(500_000);
+        segment.add(100_000);
+        segment.add(300_000);
+        assertEquals(3, segment.size());
+        assertRecEquals(100_000, 100_000, 1, segment.recs.get(0));
+        assertRecEquals(300_000, 300_000, 1, segment.recs.get(1));
+        assertRecEquals(500_000, 500_000, 1, segment.recs.get(2));
+
+        segment.add(260_000);
+        assertEquals(3, segment.size());
+        assertRecEquals(260_000, 300_000, 2, segment.recs.get(1));
+    }
+
+    @Test
+    public void testSerialization() {
+        HistogramRollupSegment segment = new HistogramRollupSegment(HistogramLevel.MONTH, "g1".getBytes(), 3);
+        // beyond the positive int range
+        segment.add(MONTH - 1);
+        segment.add(10);
+        for (int i = 0; i < 70000; i++) {
+            segment.add(MONTH - 2);
+        }
+
+        HistogramRollupSegment segment1 = new HistogramRollupSegment(HistogramLevel.MONTH, "g1".getBytes(), 3,
+                segment.val());
+        assertEquals(2, segment1.size());
+        assertRecEquals(10, 10, 1, segment1.recs.get(0));
+        assertRecEquals(MONTH - 2, MONTH - 1, 70001, segment1.recs.get(1));
+    }
+
+    @Test
+    public void testSelectLevel() {
+        TimeInterval year = new TimeInterval(0, 365 * DAY);
+        assertEquals(HistogramLevel.HOUR, HistogramLevel.select(year, -1));
+        assertEquals(HistogramLevel.HOUR, HistogramLevel.select(year, 2000));
+        assertEquals(HistogramLevel.DAY, HistogramLevel.select(year, 60_000));
+        assertEquals(HistogramLevel.MONTH, HistogramLevel.select(year, 3600_000));
+
+        TimeInterval week = new TimeInterval(0, 7 * DAY);
+        assertEquals(HistogramLevel.DAY, HistogramLevel.select(week, 3600_000));
+        assertEquals(HistogramLevel.HOUR, HistogramLevel.select(new TimeInterval(0, DAY), 3600_000));
+
+        assertEquals(HistogramLevel.MONTH, HistogramLevel.select(new TimeInterval(), 3600_000));
+    }
+
+    @Test
+    public void testKeys() {
+        HistogramLevel level = HistogramLevel.MONTH;
+        long sstart = level.segmentStart(100 * MONTH + 5);
+        assertEquals(100, sstart);
+        assertEquals(sstart, level.sstart(level.keySstart(sstart)));
+        assertEquals(sstart, HistogramLevel.HOUR.keySstart(sstart));
+
+        // the levels do not overlap
+        assertEquals(true, HistogramLevel.HOUR.maxKeySstart() < HistogramLevel.DAY.keySstart(0));
+        assertEquals(true, HistogramLevel.DAY.maxKeySstart() < HistogramLevel.MONTH.keySstart(0));
+    }
+
+    void assertRecEquals(long dstart, long dstop, int num, Rec r) {
+        assertEquals(dstart, r.dstart);
+        assertEquals(dstop, r.dstop);
+        assertEquals(num, r.num);
+    }
+}
@@ -0,0 +1,154 @@
+package org.yamcs.yarch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.yamcs.utils.TimeEncoding;
+import org.yamcs.yarch.streamsql.StreamSqlResult;
+
+/**
+ * The IN conditions on the first column of the primary key are transformed into key ranges; checks that the result is
+ * the same as the one of the filter for the different kinds of tables.
+ */
+public class PkInFilterTest extends YarchTestCase {
+    static final long HOUR = 3600 * 1000L;
+    static final int N = 200;
+    long t0;
+
+    @BeforeEach
+    public void populate() throws Exception {
+        TimeEncoding.setUp();
+        t0 = TimeEncoding.parse("2020-01-01T00:00:00");
+
+        execute("create table t_none (gentime timestamp, seqNum int, part enum, name string, "
+                + "primary key(gentime, seqNum), index(name))");
+        execute("create table t_time (gentime timestamp, seqNum int, part enum, name string, "
+                + "primary key(gentime, seqNum)) partition by time(gentime('YYYY/DOY'))");
+        execute("create table t_time_value (gentime timestamp, seqNum int, part enum, name string, "
+                + "primary key(gentime, seqNum)) partition by time_and_value(gentime('YYYY/DOY'), part)");
+        execute("create table t_int (seqNum int, gentime timestamp, part enum, name string, "
+                + "primary key(seqNum, gentime))");
+        execute("create stream t_in (gentime timestamp, seqNum int, part enum, name string)");
+        for (String t : Arrays.asList("t_none", "t_time", "t_time_value", "t_int")) {
+            execute("insert into " + t + " select * from t_in");
+        }
+
+        // one row every 30 minutes over a bit more than 4 days, two rows at some of the times
+        Stream s = ydb.getStream("t_in");
+        for (int i = 0; i < N; i++) {
+            s.emitTuple(new Tuple(s.getDefinition(),
+                    new Object[] { gentime(i), i, "p" + (i % 3), "n" + (i % 5) }));
+            if (i % 10 == 0) {
+                s.emitTuple(new Tuple(s.getDefinition(),
+                        new Object[] { gentime(i), N + i, "p" + (i % 3), "n" + (i % 5) }));
+            }
+        }
+        execute("close stream t_in");
+    }
+
+    @Test
+    public void testTimeTables() throws Exception {
+        // times in several partitions, including times without data
+        List<Long> times = Arrays.asList(gentime(0), gentime(10), gentime(47), gentime(48), gentime(150),
+                gentime(199), gentime(500), t0 + 1);
+        for (String t : Arrays.asList("t_none", "t_time", "t_time_value")) {
+            for (boolean desc : Arrays.asList(false, true)) {
+                SqlBuilder sqlb = new SqlBuilder(t);
+                sqlb.whereColIn("gentime", times);
+                sqlb.descend(desc);
+                assertEquals(expected(times, null, desc), seqNums(sqlb), t);
+
+                // combined with a range and with a value partition filter
+                sqlb = new SqlBuilder(t);
+                sqlb.whereColIn("gentime", times);
+                sqlb.whereColAfterOrEqual("gentime", gentime(10));
+                sqlb.where("part = 'p1'");
+                sqlb.descend(desc);
+                assertEquals(expected(times, "p1", desc).stream()
+                        .filter(k -> gentime(k % N) >= gentime(10))
+                        .collect(Collectors.toList()), seqNums(sqlb), t);
+
+                // limit
+                sqlb = new SqlBuilder(t);
+                sqlb.whereColIn("gentime", times);
+                sqlb.descend(desc);
+                sqlb.limit(3);
+                assertEquals(expected(times, null, desc).subList(0, 3), seqNums(sqlb), t);
+            }
+        }
+    }
+
+    @Test
+    public void testIntersection() throws Exception {
+        SqlBuilder sqlb = new SqlBuilder("t_time");
+        sqlb.whereColIn("gentime", Arrays.asList(gentime(0), gentime(20), gentime(30)));
+        sqlb.whereColIn("gentime", Arrays.asList(gentime(20), gentime(30), gentime(40)));
+        assertEquals(Arrays.asList(20, N + 20, 30, N + 30), seqNums(sqlb));
+    }
+
+    @Test
+    public void testSecondaryIndex() throws Exception {
+        // the secondary index may be chosen, the IN condition is then applied on the rows retrieved
+        List<Long> times = Arrays.asList(gentime(1), gentime(6), gentime(7), gentime(20));
+        SqlBuilder sqlb = new SqlBuilder("t_none");
+        sqlb.where("name = 'n1'");
+        sqlb.whereColIn("gentime", times);
+        assertEquals(Arrays.asList(1, 6), seqNums(sqlb));
+    }
+
+    @Test
+    public void testIntKey() throws Exception {
+        assertEquals(Arrays.asList(3, 7, N + 10), seqNums("select * from t_int where seqNum in (7, 3, " + (N + 10)
+                + ", 1000)"));
+        assertEquals(Arrays.asList(N + 10, 7, 3), seqNums("select * from t_int where seqNum in (7, 3, " + (N + 10)
+                + ", 1000) order desc"));
+        assertEquals(Arrays.asList(7), seqNums("select * from t_int where seqNum in (7, 3) and seqNum > 5"));
+        assertEquals(Arrays.asList(), seqNums("select * from t_int where seqNum in (-1, 1000)"));
+    }
+
+    long gentime(int i) {
+        return t0 + i * HOUR / 2;
+    }
+
+    // the seqNums of the rows with the gentime in times and (if not null) in the partition part
+    private List<Integer> expected(List<Long> times, String part, boolean desc) {
+        List<Integer> l = new ArrayList<>();
+        for (int i = 0; i < N; i++) {
+            if (!times.contains(gentime(i)) || (part != null && !part.equals("p" + (i % 3)))) {
+                continue;
+            }
+            l.add(i);
+            if (i % 10 == 0) {
+                l.add(N + i);
+            }
+        }
+        if (desc) {
+            Collections.reverse(l);
+        }
+        return l;
+    }
+
+    private List<Integer> seqNums(SqlBuilder sqlb) throws Exception {
+        return seqNums(ydb.execute(sqlb.toString(), sqlb.getQueryArgumentsArray()));
+    }
+
+    private List<Integer> seqNums(String query) throws Exception {
+        return seqNums(ydb.execute(query));
+    }
+
+    private List<Integer> seqNums(StreamSqlResult res) {
+        List<Integer> l = new ArrayList<>();
+        while (res.hasNext()) {
+            l.add(res.next().getIntColumn("seqNum"));
+        }
+        res.close();
+        return l;
+    }
+}
@@ -0,0 +1,136 @@
+package org.yamcs.yarch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.yamcs.utils.TimeEncoding;
+import org.yamcs.yarch.streamsql.StreamSqlResult;
+
+public class QueryPlannerTest extends YarchTestCase {
+    static final long HOUR = 3600 * 1000L;
+    long t0;
+
+    @BeforeEach
+    public void populate() throws Exception {
+        TimeEncoding.setUp();
+        t0 = TimeEncoding.parse("2020-01-01T00:00:00");
+
+        ydb.execute("create table pv (gentime timestamp, seqNum int, pname string, v int, "
+                + "primary key(gentime, seqNum), index(pname)) histogram(pname)");
+        ydb.execute("create stream pv_in (gentime timestamp, seqNum int, pname string, v int)");
+        ydb.execute("insert into pv select * from pv_in");
+
+        // 1000 rows during 10 hours: 1% rare, 5% medium and the rest common
+        Stream s = ydb.getStream("pv_in");
+        for (int i = 0; i < 1000; i++) {
+            String pname = (i % 100 == 50) ? "rare" : (i % 20 == 0) ? "medium" : "common";
+            s.emitTuple(new Tuple(s.getDefinition(), new Object[] { t0 + i * 36000L, i, pname, i }));
+        }
+        execute("close stream pv_in");
+    }
+
+    @Test
+    public void testSelectiveIndex() throws Exception {
+        List<Tuple> plan = explain("explain select * from pv where pname = 'rare'");
+        assertEquals("SECONDARY_INDEX", plan.get(0).getColumn("operation"));
+        assertEquals(10L, (long) plan.get(0).getColumn("rows"));
+        assertEquals("FILTER", plan.get(1).getColumn("operation"));
+
+        List<Tuple> rows = select("select * from pv where pname = 'rare'");
+        assertEquals(10, rows.size());
+        for (Tuple t : rows) {
+            assertEquals("rare", t.getColumn("pname"));
+        }
+    }
+
+    @Test
+    public void testUnselectiveIndex() throws Exception {
+        List<Tuple> plan = explain("explain select * from pv where pname = 'common'");
+        assertEquals("TABLE_SCAN", plan.get(0).getColumn("operation"));
+        assertEquals(1000L, (long) plan.get(0).getColumn("rows"));
+        assertEquals(940L, (long) plan.get(1).getColumn("rows"));
+
+        assertEquals(940, select("select * from pv where pname = 'common'").size());
+    }
+
+    @Test
+    public void testNarrowTimeRange() throws Exception {
+        // the index is selective over the whole table but the scan of one hour reads fewer rows than the index
+        List<Tuple> plan = explain("explain select * from pv where pname = 'medium'");
+        assertEquals("SECONDARY_INDEX", plan.get(0).getColumn("operation"));
+
+        String start = TimeEncoding.toString(t0 + 2 * HOUR);
+        String stop = TimeEncoding.toString(t0 + 3 * HOUR);
+        String query = "select * from pv where pname = 'medium' and gentime >= '" + start + "' and gentime < '" + stop
+                + "'";
+        plan = explain("explain " + query);
+        assertEquals("TABLE_SCAN", plan.get(0).getColumn("operation"));
+        assertEquals(100L, (long) plan.get(0).getColumn("rows"));
+
+        List<Tuple> rows = select(query);
+        assertEquals(5, rows.size());
+        assertEquals(200, (int) rows.get(0).getColumn("seqNum"));
+    }
+
+    @Test
+    public void testIndexWithPkRange() throws Exception {
+        String start = TimeEncoding.toString(t0 + 2 * HOUR);
+        String query = "select * from pv where pname = 'rare' and gentime >= '" + start + "'";
+        List<Tuple> plan = explain("explain " + query);
+        assertEquals("SECONDARY_INDEX", plan.get(0).getColumn("operation"));
+
+        List<Tuple> rows = select(query);
+        assertEquals(8, rows.size());
+        assertEquals(250, (int) rows.get(0).getColumn("seqNum"));
+    }
+
+    @Test
+    public void testDescending() throws Exception {
+        List<Tuple> plan = explain("explain select * from pv where pname = 'rare' order desc limit 3");
+        assertEquals("TABLE_SCAN", plan.get(0).getColumn("operation"));
+        assertEquals("LIMIT", plan.get(2).getColumn("operation"));
+        assertEquals(3L, (long) plan.get(2).getColumn("rows"));
+
+        List<Tuple> rows = select("select * from pv where pname = 'rare' order desc limit 3");
+        assertEquals(3, rows.size());
+        assertEquals(950, (int) rows.get(0).getColumn("seqNum"));
+    }
+
+    @Test
+    public void testNoHistogram() throws Exception {
+        ydb.execute("create table nohist (a int, b int, primary key(a), index(b))");
+        List<Tuple> plan = explain("explain select count(*) from nohist where b = 3");
+        assertEquals("SECONDARY_INDEX", plan.get(0).getColumn("operation"));
+        assertNull(plan.get(0).getColumn("rows"));
+        assertEquals("AGGREGATE", plan.get(2).getColumn("operation"));
+    }
+
+    @Test
+    public void testExplainColumnName() throws Exception {
+        // explain is not a reserved word
+        ydb.execute("create table expl (explain int, primary key(explain))");
+        assertTrue(select("select explain from expl").isEmpty());
+    }
+
+    private List<Tuple> explain(String query) throws Exception {
+        List<Tuple> l = select(query);
+        assertTrue(l.size() > 0);
+        return l;
+    }
+
+    private List<Tuple> select(String query) throws Exception {
+        List<Tuple> l = new ArrayList<>();
+        StreamSqlResult res = ydb.execute(query);
+        while (res.hasNext()) {
+            l.add(res.next());
+        }
+        res.close();
+        return l;
+    }
+}
@@ -0,0 +1,74 @@
+package org.yamcs.yarch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.yamcs.yarch.streamsql.StreamSqlResult;
+
+/**
+ * Compares the row by row and the vectorized execution of aggregate queries.
+ */
+@Disabled
+public class VectorizedAggregatePerfTest extends YarchTestCase {
+    int n = 2000000;
+    int iterations = 10;
+
+    void populate() throws Exception {
+        ydb.execute("create table pv (gentime timestamp, seqNum int, pname string, v int, d double, "
+                + "primary key(gentime, seqNum))");
+        ydb.execute("create stream pv_in (gentime timestamp, seqNum int, pname string, v int, d double)");
+        ydb.execute("insert into pv select * from pv_in");
+
+        long t0 = System.currentTimeMillis();
+        Stream s = ydb.getStream("pv_in");
+        for (int i = 0; i < n; i++) {
+            s.emitTuple(new Tuple(s.getDefinition(),
+                    new Object[] { 1000L * i, i, "p" + (i % 100), i % 1000, i * 0.5 }));
+        }
+        execute("close stream pv_in");
+        System.out.println("populated " + n + " rows in " + (System.currentTimeMillis() - t0) + " ms");
+    }
+
+    @Test
+    public void testAggregates() throws Exception {
+        populate();
+        run("select count(*) from pv");
+        run("select count(*), sum(v) from pv where v > 500");
+        run("select sum(d), firstval(pname) from pv where pname in ('p1', 'p2') and v < 800");
+    }
+
+    private void run(String query) throws Exception {
+        // warm up
+        Tuple expected = query(query, false);
+        Tuple actual = query(query, true);
+        assertEquals(expected.getColumn(0), actual.getColumn(0));
+
+        long rowTime = 0;
+        long vectorTime = 0;
+        for (int i = 0; i < iterations; i++) {
+            long t0 = System.nanoTime();
+            query(query, false);
+            long t1 = System.nanoTime();
+            query(query, true);
+            long t2 = System.nanoTime();
+            rowTime += t1 - t0;
+            vectorTime += t2 - t1;
+        }
+        System.out.println(query);
+        System.out.println(String.format("    row by row: %d ms, vectorized: %d ms", rowTime / iterations / 1000000,
+                vectorTime / iterations / 1000000));
+    }
+
+    private Tuple query(String query, boolean vectorized) throws Exception {
+        VectorizedAggregateStream.setEnabled(vectorized);
+        try {
+            StreamSqlResult res = ydb.execute(query);
+            Tuple t = res.next();
+            res.close();
+            return t;
+        } finally {
+            VectorizedAggregateStream.setEnabled(true);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package org.yamcs.yarch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.yamcs.yarch.streamsql.StreamSqlResult;
+
+public class VectorizedAggregateTest extends YarchTestCase {
+    static final int N = 3000;
+
+    @BeforeEach
+    public void populate() throws Exception {
+        ydb.execute("create table tbl (k int, t timestamp, s short, name string, e enum, v int, w long, d double, "
+                + "primary key(k, t))");
+        ydb.execute("create stream tbl_in (k int, t timestamp, s short, name string, e enum, v int, w long, d double)");
+        ydb.execute("insert into tbl select * from tbl_in");
+
+        Stream s = ydb.getStream("tbl_in");
+        for (int i = 0; i < N; i++) {
+            String name = (i % 7 == 0) ? null : "n" + (i % 5);
+            Integer v = (i % 11 == 0) ? null : i - 1000;
+            s.emitTuple(new Tuple(s.getDefinition(), new Object[] { i, 1000L * i, (short) (i % 300), name,
+                    "e" + (i % 3), v, 100000L * i, i * 0.25 }));
+        }
+        execute("close stream tbl_in");
+    }
+
+    @AfterEach
+    public void restore() {
+        VectorizedAggregateStream.setEnabled(true);
+    }
+
+    @Test
+    public void testCount() throws Exception {
+        compare("select count(*) from tbl");
+        compare("select count(*) as c, count(k) from tbl where k >= 100 and k < 2000");
+        compare("select count(*) from tbl where k > 5000");
+    }
+
+    @Test
+    public void testSum() throws Exception {
+        compare("select sum(k), sum(w), sum(d), sum(s), sum(t) from tbl");
+        compare("select sum(d) from tbl where d > 10 and d <= 700");
+        compare("select sum(w) + 3 as x, count(*) from tbl where e = 'e1'");
+    }
+
+    @Test
+    public void testFirstVal() throws Exception {
+        compare("select firstval(name), firstval(v), firstval(e) from tbl");
+        compare("select firstval(v), firstval(d) from tbl where v > 100");
+    }
+
+    @Test
+    public void testNullFilters() throws Exception {
+        // v and name contain nulls
+        compare("select count(*) from tbl where v != 3");
+        compare("select count(*), sum(k) from tbl where v < 0");
+        compare("select count(*) from tbl where name = 'n2'");
+        compare("select count(*) from tbl where name >= 'n2'");
+        compare("select count(*) from tbl where name in ('n1', 'n3')");
+        compare("select count(*) from tbl where name not in ('n1', 'n3')");
+        compare("select count(*) from tbl where e in ('e0', 'e2') and v is null");
+    }
+
+    @Test
+    public void testMixedTypes() throws Exception {
+        compare("select count(*) from tbl where 1000 <= k");
+        compare("select count(*) from tbl where s = 17");
+        compare("select count(*) from tbl where w > 1000");
+        compare("select count(*) from tbl where d > 3");
+        compare("select count(*) from tbl where t >= 1500000");
+    }
+
+    @Test
+    public void testVectorized() throws Exception {
+        assertTrue(isVectorized("select count(*), sum(w) from tbl where name in ('n1') and v > 3"));
+        // computations in the aggregates or expressions not supported in the filter are executed row by row
+        assertFalse(isVectorized("select sum(w + 1) from tbl"));
+        assertFalse(isVectorized("select count(*) from tbl where v > 3 or k < 10"));
+        assertFalse(isVectorized("select count(*) from tbl where v is null"));
+        assertFalse(isVectorized("select * from tbl"));
+    }
+
+    private void compare(String query) throws Exception {
+        VectorizedAggregateStream.setEnabled(false);
+        List<Tuple> expected = select(query);
+        VectorizedAggregateStream.setEnabled(true);
+        List<Tuple> actual = select(query);
+
+        assertEquals(1, expected.size());
+        assertEquals(expected.size(), actual.size());
+        Tuple t1 = expected.get(0);
+        Tuple t2 = actual.get(0);
+        // the names of the aggregate columns are generated when parsing the query
+        assertEquals(t1.size(), t2.size());
+        for (int i = 0; i < t1.size(); i++) {
+            assertEquals(t1.getColumnDefinition(i).getType(), t2.getColumnDefinition(i).getType());
+            assertEquals(t1.getColumn(i), t2.getColumn(i), query + ": column " + i);
+        }
+    }
+
+    private boolean isVectorized(String query) throws Exception {
+        String sname = "vout" + System.nanoTime();
+        execute("create stream " + sname + " as " + query + " nofollow");
+        InternalStream s = (InternalStream) ydb.getStream(sname);
+        boolean r = (s.inner instanceof SelectStream)
+                && ((SelectStream) s.inner).input instanceof VectorizedAggregateStream;
+        s.close();
+        return r;
+    }
+
+    private List<Tuple> select(String query) throws Exception {
+        List<Tuple> l = new ArrayList<>();
+        StreamSqlResult res = ydb.execute(query);
+        while (res.hasNext()) {
+            l.add(res.next());
+        }
+        res.close();
+        return l;
+    }
+}
@@ -4,18 +4,24 @@ import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Arrays;
 import java.util.Random;
 
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.yamcs.utils.ByteArrayUtils;
 import org.yamcs.utils.FileUtils;
 import org.yamcs.utils.TimeEncoding;
 import org.yamcs.yarch.Bucket;
@@ -179,6 +185,139 @@ public class BucketDbTest {
         bucketDb.getTablespace().close();
     }
 
+    @Test
+    public void testChunks() throws Exception {
+        int chunkSize = RdbBucket.CHUNK_SIZE;
+        RdbBucket.CHUNK_SIZE = 100;
+        try {
+            RdbBucketDatabase bucketDb = createDb(5);
+            RdbBucket b = bucketDb.createBucket("bucket1");
+            byte[] objectData = new byte[1050];
+            random.nextBytes(objectData);
+            b.putObject("obj1", null, null, new ByteArrayInputStream(objectData));
+            assertEquals(11, countChunks(b));
+            assertEquals(100, b.findObject("obj1").getChunkSize());
+            assertArrayEquals(objectData, b.getObject("obj1"));
+
+            try (InputStream is = b.getObjectStream("obj1", 150, 300)) {
+                assertArrayEquals(Arrays.copyOfRange(objectData, 150, 450), is.readAllBytes());
+            }
+            try (InputStream is = b.getObjectStream("obj1", 1000, -1)) {
+                assertArrayEquals(Arrays.copyOfRange(objectData, 1000, 1050), is.readAllBytes());
+            }
+            try (InputStream is = b.getObjectStream("obj1", 2000, 10)) {
+                assertEquals(0, is.readAllBytes().length);
+            }
+            assertNull(b.getObjectStream("obj2"));
+
+            // the old chunks are removed when the object is overwritten
+            InputStream oldStream = b.getObjectStream("obj1");
+            byte[] objectData2 = new byte[200];
+            random.nextBytes(objectData2);
+            b.putObject("obj1", null, null, objectData2);
+            assertEquals(2, countChunks(b));
+            assertArrayEquals(objectData2, b.getObject("obj1"));
+            assertThrows(IOException.class, () -> oldStream.readAllBytes());
+            assertEquals(200, b.getProperties().getSize());
+
+            // empty objects have no chunk
+            b.putObject("obj2", null, null, new byte[0]);
+            assertArrayEquals(new byte[0], b.getObject("obj2"));
+            assertEquals(2, b.getProperties().getNumObjects());
+
+            b.deleteObject("obj1");
+            b.deleteObject("obj2");
+            assertEquals(0, countChunks(b));
+            assertEquals(0, b.getProperties().getSize());
+            bucketDb.getTablespace().close();
+        } finally {
+            RdbBucket.CHUNK_SIZE = chunkSize;
+        }
+    }
+
+    @Test
+    public void testChunksSizeExceeded() throws Exception {
+        int chunkSize = RdbBucket.CHUNK_SIZE;
+        RdbBucket.CHUNK_SIZE = 100;
+        try {
+            RdbBucketDatabase bucketDb = createDb(6);
+            RdbBucket b = bucketDb.createBucket("bucket1");
+            b.setMaxSize(1000);
+            b.putObject("obj1", null, null, new byte[600]);
+            // the chunks written before the limit is reached are removed
+            assertThrows(IOException.class,
+                    () -> b.putObject("obj2", null, null, new ByteArrayInputStream(new byte[500])));
+            assertNull(b.findObject("obj2"));
+            assertEquals(6, countChunks(b));
+
+            // overwriting an object may use its size
+            b.putObject("obj1", null, null, new ByteArrayInputStream(new byte[1000]));
+            assertEquals(10, countChunks(b));
+            assertEquals(1000, b.getProperties().getSize());
+            bucketDb.getTablespace().close();
+        } finally {
+            RdbBucket.CHUNK_SIZE = chunkSize;
+        }
+    }
+
+    @Test
+    public void testOrphanChunks() throws Exception {
+        int chunkSize = RdbBucket.CHUNK_SIZE;
+        RdbBucket.CHUNK_SIZE = 100;
+        try {
+            RdbBucketDatabase bucketDb = createDb(7);
+            RdbBucket b = bucketDb.createBucket("bucket1");
+            b.putObject("obj1", null, null, new byte[150]);
+            int objectId = b.findObject("obj1").getObjectId();
+
+            // a new version of a deleted object does not reuse the objectId
+            InputStream oldStream = b.getObjectStream("obj1");
+            b.deleteObject("obj1");
+            b.putObject("obj1", null, null, new byte[150]);
+            assertTrue(b.findObject("obj1").getObjectId() > objectId);
+            assertThrows(IOException.class, () -> oldStream.readAllBytes());
+
+            // an upload interrupted by a crash after its first chunks have been written
+            YRDB rdb = b.getTablespace().getRdb();
+            rdb.put(b.getUploadKey("obj2", 100), new byte[0]);
+            rdb.put(b.getChunkKey("obj2", 100, 0), new byte[100]);
+            rdb.put(b.getChunkKey("obj2", 100, 1), new byte[100]);
+            assertEquals(4, countChunks(b));
+            bucketDb.getTablespace().close();
+
+            bucketDb = createDb(7);
+            b = bucketDb.getBucket("bucket1");
+            assertEquals(2, countChunks(b));
+            assertEquals(150, b.getObject("obj1").length);
+            assertEquals(101, b.getProperties().getNextObjectId());
+
+            // a completed upload written in several batches does not leave its marker
+            b.putObject("obj3", null, null, new byte[100 * (RdbBucket.CHUNKS_PER_BATCH + 2)]);
+            assertEquals(0, countKeys(b, RdbBucketDatabase.TYPE_OBJ_UPLOAD));
+            bucketDb.getTablespace().close();
+        } finally {
+            RdbBucket.CHUNK_SIZE = chunkSize;
+        }
+    }
+
+    private int countChunks(RdbBucket b) {
+        return countKeys(b, RdbBucketDatabase.TYPE_OBJ_CHUNK);
+    }
+
+    private int countKeys(RdbBucket b, byte type) {
+        byte[] prefix = new byte[RdbStorageEngine.TBS_INDEX_SIZE + 1];
+        ByteArrayUtils.encodeInt(b.getTbsIndex(), prefix, 0);
+        prefix[RdbStorageEngine.TBS_INDEX_SIZE] = type;
+        int n = 0;
+        try (DbIterator it = b.getTablespace().getRdb().newPrefixIterator(prefix)) {
+            while (it.isValid()) {
+                n++;
+                it.next();
+            }
+        }
+        return n;
+    }
+
     private RdbBucketDatabase createDb(int n) throws Exception {
         String dir = testDir + File.separator + "tablespace" + n;
         Tablespace tablespace = new Tablespace("tablespace" + n);
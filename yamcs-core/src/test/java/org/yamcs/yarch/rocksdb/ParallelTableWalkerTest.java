@@ -0,0 +1,178 @@
+package org.yamcs.yarch.rocksdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.yamcs.utils.TimeEncoding;
+import org.yamcs.yarch.ExecutionContext;
+import org.yamcs.yarch.Stream;
+import org.yamcs.yarch.TableVisitor;
+import org.yamcs.yarch.Tuple;
+import org.yamcs.yarch.YarchException;
+import org.yamcs.yarch.YarchTestCase;
+import org.yamcs.yarch.streamsql.StreamSqlException;
+import org.yamcs.yarch.streamsql.StreamSqlResult;
+
+/**
+ * The tablespace of this test is configured in the test yamcs.yaml with scanParallelism: 3
+ */
+public class ParallelTableWalkerTest extends YarchTestCase {
+    static final long HOUR = 3600 * 1000L;
+    // 2000 rows over 10 days, spread in 3 value partitions and 10 time partitions
+    static final int N = 2000;
+    long t0;
+
+    @BeforeEach
+    public void populate() throws Exception {
+        TimeEncoding.setUp();
+        t0 = TimeEncoding.parse("2020-01-01T00:00:00");
+        ydb.execute("create table pt (gentime timestamp, seqNum int, part enum, v int, primary key(gentime, seqNum))"
+                + " partition by time_and_value(gentime('YYYY/DOY'), part)");
+        ydb.execute("create stream pt_in (gentime timestamp, seqNum int, part enum, v int)");
+        ydb.execute("insert into pt select * from pt_in");
+        Stream s = ydb.getStream("pt_in");
+        for (int i = 0; i < N; i++) {
+            s.emitTuple(new Tuple(s.getDefinition(), new Object[] { t0 + i * 432000L, i, "p" + (i * 7 % 3), i }));
+        }
+        execute("close stream pt_in");
+    }
+
+    @Test
+    public void testWalkerType() {
+        Tablespace tablespace = RdbStorageEngine.getInstance().getTablespace(instance);
+        ExecutionContext ctx = new ExecutionContext(ydb);
+        assertTrue(tablespace.newTableWalker(ctx, ydb.getTable("pt"), true, false) instanceof ParallelRdbTableWalker);
+        assertTrue(!(tablespace.newTableWalker(ctx, ydb.getTable("pt"), true, true) instanceof ParallelRdbTableWalker));
+        ctx.close();
+    }
+
+    @Test
+    public void testAscending() throws Exception {
+        List<Tuple> tuples = select("select * from pt");
+        assertEquals(N, tuples.size());
+        for (int i = 0; i < N; i++) {
+            assertEquals(i, tuples.get(i).getIntColumn("seqNum"));
+        }
+    }
+
+    @Test
+    public void testDescending() throws Exception {
+        List<Tuple> tuples = select("select * from pt order desc");
+        assertEquals(N, tuples.size());
+        for (int i = 0; i < N; i++) {
+            assertEquals(N - 1 - i, tuples.get(i).getIntColumn("seqNum"));
+        }
+    }
+
+    @Test
+    public void testRangeAndValueFilter() throws Exception {
+        String start = TimeEncoding.toString(t0 + 30 * HOUR);
+        String stop = TimeEncoding.toString(t0 + 100 * HOUR);
+        List<Tuple> tuples = select("select * from pt where gentime >= '" + start + "' and gentime < '" + stop
+                + "' and part = 'p1'");
+        int k = 0;
+        for (int i = 0; i < N; i++) {
+            long t = t0 + i * 432000L;
+            if (t >= t0 + 30 * HOUR && t < t0 + 100 * HOUR && i * 7 % 3 == 1) {
+                assertEquals(i, tuples.get(k++).getIntColumn("seqNum"));
+            }
+        }
+        assertEquals(k, tuples.size());
+    }
+
+    @Test
+    public void testLimit() throws Exception {
+        for (int j = 0; j < 20; j++) {
+            List<Tuple> tuples = select("select * from pt limit 5");
+            assertEquals(5, tuples.size());
+            assertEquals(4, tuples.get(4).getIntColumn("seqNum"));
+        }
+    }
+
+    @Test
+    public void testCloseResult() throws Exception {
+        StreamSqlResult res = ydb.execute("select * from pt");
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, res.next().getIntColumn("seqNum"));
+        }
+        res.close();
+    }
+
+    @Test
+    public void testSlowConsumer() throws Exception {
+        // more rows than the result queue can hold are produced before the first row is read
+        StreamSqlResult res = ydb.execute("select * from pt");
+        Thread.sleep(500);
+        int k = 0;
+        while (res.hasNext()) {
+            assertEquals(k++, res.next().getIntColumn("seqNum"));
+        }
+        res.close();
+        assertEquals(N, k);
+    }
+
+    @Test
+    public void testCloseBeforeEnd() throws Exception {
+        StreamSqlResult res = ydb.execute("select * from pt");
+        Thread.sleep(500);
+        assertTrue(res.hasNext());
+        res.next();
+        res.close();
+        assertTrue(!res.hasNext());
+    }
+
+    @Test
+    public void testExecutorShutdown() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch latch = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        ExecutionContext ctx = new ExecutionContext(ydb);
+        ctx.setTablespace(RdbStorageEngine.getInstance().getTablespace(instance));
+        ParallelRdbTableWalker tw = new ParallelRdbTableWalker(ctx, ydb.getTable("pt"), true, executor, 3);
+        tw.setBulkRead(true);
+        CompletableFuture<Void> cf = CompletableFuture.runAsync(() -> {
+            try {
+                tw.walk((key, value) -> TableVisitor.ACTION_CONTINUE);
+            } catch (StreamSqlException e) {
+                throw new YarchException(e);
+            }
+        });
+        // the fill tasks are queued behind the blocked task
+        Thread.sleep(200);
+        for (Runnable r : executor.shutdownNow()) {
+            ((ParallelRdbTableWalker.FillTask) r).cancel();
+        }
+        ExecutionException e = assertThrows(ExecutionException.class, () -> cf.get(10, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof YarchException);
+        ctx.close();
+    }
+
+    private List<Tuple> select(String query) throws Exception {
+        List<Tuple> l = new ArrayList<>();
+        StreamSqlResult res = ydb.execute(query);
+        while (res.hasNext()) {
+            l.add(res.next());
+        }
+        res.close();
+        return l;
+    }
+}
@@ -0,0 +1,92 @@
+package org.yamcs.yarch.rocksdb;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.HyperClockCache;
+import org.yamcs.archive.XtceTmRecorder;
+import org.yamcs.utils.ByteArrayUtils;
+import org.yamcs.yarch.YarchTestCase;
+
+/**
+ * The tablespace of this test is configured in the test yamcs.yaml with a clock cache, a write buffer manager and a
+ * separate cache for the rt_data column family.
+ */
+public class RdbConfigTest extends YarchTestCase {
+
+    @Test
+    public void testMemoryConfig() {
+        var tc = RdbConfig.getInstance().getTablespaceConfig(instance);
+        assertTrue(tc.getTableCache() instanceof HyperClockCache);
+        assertNotNull(tc.getWriteBufferManager());
+        assertNotNull(tc.getStatistics());
+        assertEquals(2, tc.getBlockCaches().size());
+
+        var tfc = (BlockBasedTableConfig) tc.getColumnFamilyOptions(YRDB.DEFAULT_CF).tableFormatConfig();
+        assertTrue(tfc.cacheIndexAndFilterBlocks());
+        assertTrue(tfc.pinL0FilterAndIndexBlocksInCache());
+        assertTrue(tfc.partitionFilters());
+
+        var rtCfc = tc.cfConfigList.stream().filter(c -> c.cfNamePattern.matcher(XtceTmRecorder.CF_NAME).matches())
+                .findFirst().get();
+        assertNotSame(tc.getTableCache(), rtCfc.blockCache);
+        var rtTfc = (BlockBasedTableConfig) rtCfc.options.tableFormatConfig();
+        assertTrue(rtTfc.pinTopLevelIndexAndFilter());
+    }
+
+    @Test
+    public void testDefaultConfig() {
+        var tc = new RdbConfig.TablespaceConfig();
+        assertNull(tc.getWriteBufferManager());
+        assertNotNull(tc.getStatistics());
+        assertEquals(1, tc.getBlockCaches().size());
+        for (var cfc : tc.cfConfigList) {
+            assertSame(tc.getTableCache(), cfc.blockCache);
+        }
+    }
+
+    @Test
+    public void testBlockCacheStats() throws Exception {
+        var tc = RdbConfig.getInstance().getTablespaceConfig(instance);
+        BlockCacheStats stats = new BlockCacheStats(tc.getStatistics());
+        stats.update();
+
+        Tablespace tablespace = RdbStorageEngine.getInstance().getTablespace(instance);
+        YRDB rdb = tablespace.getRdb();
+        var cfh = rdb.createAndGetColumnFamilyHandle(XtceTmRecorder.CF_NAME);
+        int n = 1000;
+        for (int i = 0; i < n; i++) {
+            rdb.put(cfh, key(i), new byte[100]);
+        }
+        // flushes the memtable such that the reads go through the block cache
+        rdb.compactRange(cfh);
+        for (int i = 0; i < n; i++) {
+            assertArrayEquals(new byte[100], rdb.get(cfh, key(i)));
+        }
+
+        stats.update();
+        assertTrue(stats.getHits() > 0);
+        assertTrue(stats.getDataHitRatio() > 0.9);
+
+        stats.update();
+        assertEquals(0, stats.getHits() + stats.getMisses());
+        assertTrue(Double.isNaN(stats.getDataHitRatio()));
+
+        var memUsage = tablespace.getApproximateMemoryUsage();
+        assertTrue(memUsage.blockCacheMemoryUsage > 0);
+    }
+
+    static byte[] key(int i) {
+        byte[] k = new byte[8];
+        ByteArrayUtils.encodeInt(0x42, k, 0);
+        ByteArrayUtils.encodeInt(i, k, 4);
+        return k;
+    }
+}
@@ -1,13 +1,20 @@
 package org.yamcs.yarch.rocksdb;
 
+import static org.yamcs.yarch.rocksdb.RdbStorageEngine.ZERO_BYTES;
+
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.jupiter.api.Test;
 import org.yamcs.utils.ByteArray;
 import org.yamcs.utils.TimeInterval;
 import org.yamcs.yarch.HistogramIterator;
+import org.yamcs.yarch.HistogramLevel;
 import org.yamcs.yarch.HistogramRecord;
 import org.yamcs.yarch.TableDefinition;
 import org.yamcs.yarch.TableWriter;
@@ -18,6 +25,7 @@ import org.yamcs.yarch.YarchTestCase;
 public class RdbHistogramIteratorTest extends YarchTestCase {
     long t0 = 0L;
     long t1 = 100000000000L;
+    static final long DAY = 24 * 3600_000L;
 
     @Test
     public void test1() throws Exception {
@@ -45,9 +53,107 @@ public class RdbHistogramIteratorTest extends YarchTestCase {
         iter1.close();
     }
 
+    @Test
+    public void testRollups() throws Exception {
+        TableDefinition tblDef = populateDays();
+        RdbStorageEngine rse = RdbStorageEngine.getInstance();
+        TimeInterval days = new TimeInterval(0, 4 * DAY);
+
+        // p1: two hours each day, p2: every 30 minutes
+        HistogramIterator iter = rse.getHistogramIterator(ydb, tblDef, "name", days);
+        assertNumElementsEqual(iter, 4 * 2 + 4 * 48);
+        iter.close();
+
+        iter = rse.getHistogramIterator(ydb, tblDef, "name", new TimeInterval(0, 4 * DAY), 60_000);
+        List<HistogramRecord> l = toList(iter);
+        assertEquals(4 + 4 * 48, l.size());
+        HistogramRecord hr = l.get(0);
+        assertArrayEquals(colValue("p1"), hr.getColumnv());
+        assertEquals(1000, hr.getStart());
+        assertEquals(2 * 3600_000 - 9000, hr.getStop());
+        assertEquals(720, hr.getNumTuples());
+        assertEquals(4 * 720 + 4 * 48, l.stream().mapToInt(r -> r.getNumTuples()).sum());
+
+        iter = rse.getHistogramIterator(ydb, tblDef, "name", new TimeInterval(), 3600_000);
+        l = toList(iter);
+        assertEquals(4 + 1, l.size());
+        hr = l.get(4);
+        assertArrayEquals(colValue("p2"), hr.getColumnv());
+        assertEquals(1000, hr.getStart());
+        assertEquals(4 * DAY - 1800_000 + 1000, hr.getStop());
+        assertEquals(4 * 48, hr.getNumTuples());
+
+        // continuation from the end of the first record
+        iter = rse.getHistogramIterator(ydb, tblDef, "name", new TimeInterval(0, 4 * DAY), 60_000);
+        iter.seek(colValue("p1"), 2 * 3600_000 - 9000);
+        assertNumElementsEqual(iter, 3 + 4 * 48);
+        iter.close();
+    }
+
+    @Test
+    public void testRollupWrites() throws Exception {
+        TableDefinition tblDef = populateDays();
+        RdbStorageEngine rse = RdbStorageEngine.getInstance();
+        SingleColumnHistogramWriter histoWriter = (SingleColumnHistogramWriter) rse.getTablespace(ydb)
+                .getTable(tblDef).getHistogramWriter();
+
+        // 2 values x (4 days + 1 month) roll-up segments written once when closing the table writer, possibly once
+        // more by the periodic flush; not once per tuple
+        long numWrites = histoWriter.colHistoWriter.numRollupWrites;
+        assertTrue(numWrites >= 10 && numWrites <= 20, "roll-up writes: " + numWrites);
+
+        // the pending roll-ups are visible before the table writer is closed
+        TableWriter tw = rse.newTableWriter(ydb, tblDef, InsertMode.INSERT);
+        tw.onTuple(null, new Tuple(tblDef.getTupleDefinition(), new Object[] { 5 * DAY, 1, "p3" }));
+        HistogramIterator iter = rse.getHistogramIterator(ydb, tblDef, "name", new TimeInterval(), 3600_000);
+        List<HistogramRecord> l = toList(iter);
+        assertEquals(4 + 1 + 1, l.size());
+        assertEquals(4 * 720 + 4 * 48 + 1, l.stream().mapToInt(r -> r.getNumTuples()).sum());
+        tw.close();
+    }
+
+    @Test
+    public void testLegacyHistogram() throws Exception {
+        TableDefinition tblDef = populateDays();
+        RdbStorageEngine rse = RdbStorageEngine.getInstance();
+        Tablespace tablespace = rse.getTablespace(ydb);
+
+        // remove the roll-ups, as if the histogram had been written by an older version
+        RdbHistogramInfo hist = (RdbHistogramInfo) ydb.getPartitionManager(tblDef)
+                .intervalIterator(new TimeInterval()).next().getHistogram("name");
+        YRDB rdb = tablespace.getRdb(hist.partitionDir, false);
+        rdb.getDb().deleteRange(RdbHistogramInfo.histoDbKey(hist.tbsIndex, HistogramLevel.DAY.keySstart(0), ZERO_BYTES),
+                RdbStorageEngine.dbKey(hist.tbsIndex + 1));
+        hist.rollups = null;
+
+        HistogramIterator iter = rse.getHistogramIterator(ydb, tblDef, "name", new TimeInterval(), 3600_000);
+        assertNumElementsEqual(iter, 4 * 2 + 4 * 48);
+        iter.close();
+
+        // the new data does not create the roll-ups either
+        TableWriter tw = rse.newTableWriter(ydb, tblDef, InsertMode.INSERT);
+        tw.onTuple(null, new Tuple(tblDef.getTupleDefinition(), new Object[] { 5 * DAY, 1, "p3" }));
+        tw.close();
+        iter = rse.getHistogramIterator(ydb, tblDef, "name", new TimeInterval(), 3600_000);
+        assertNumElementsEqual(iter, 4 * 2 + 4 * 48 + 1);
+        iter.close();
+
+        new HistogramRebuilder(tablespace, ydb, "table2").rebuild().get();
+        iter = rse.getHistogramIterator(ydb, tblDef, "name", new TimeInterval(), 3600_000);
+        assertNumElementsEqual(iter, 4 + 1 + 1);
+        iter.close();
+    }
+
+    private List<HistogramRecord> toList(HistogramIterator iter) {
+        List<HistogramRecord> l = new ArrayList<>();
+        iter.forEachRemaining(l::add);
+        iter.close();
+        return l;
+    }
+
     private byte[] colValue(String s) {
         ByteArray ba = new ByteArray();
-        ba.addNullTerminatedUTF("p1");
+        ba.addNullTerminatedUTF(s);
         return ba.toArray();
     }
 
@@ -68,4 +174,23 @@ public class RdbHistogramIteratorTest extends YarchTestCase {
         tw.close();
         return tblDef;
     }
+
+    TableDefinition populateDays() throws Exception {
+        execute("create table table2(gentime timestamp, seqNum int, name string, primary key(gentime, seqNum)) "
+                + "histogram(name) table_format=compressed engine rocksdb2");
+        TableDefinition tblDef = ydb.getTable("table2");
+        RdbStorageEngine rse = (RdbStorageEngine) ydb.getStorageEngine(tblDef);
+        TableWriter tw = rse.newTableWriter(ydb, tblDef, InsertMode.INSERT);
+        int seq = 0;
+        for (int d = 0; d < 4; d++) {
+            for (long t = d * DAY + 1000; t < d * DAY + 2 * 3600_000; t += 10_000) {
+                tw.onTuple(null, new Tuple(tblDef.getTupleDefinition(), new Object[] { t, seq++, "p1" }));
+            }
+            for (long t = d * DAY + 1000; t < (d + 1) * DAY; t += 1800_000) {
+                tw.onTuple(null, new Tuple(tblDef.getTupleDefinition(), new Object[] { t, seq++, "p2" }));
+            }
+        }
+        tw.close();
+        return tblDef;
+    }
 }
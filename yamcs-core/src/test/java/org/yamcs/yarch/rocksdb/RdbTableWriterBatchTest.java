@@ -0,0 +1,92 @@
+package org.yamcs.yarch.rocksdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.yamcs.yarch.ColumnDefinition;
+import org.yamcs.yarch.DataType;
+import org.yamcs.yarch.PartitioningSpec;
+import org.yamcs.yarch.TableDefinition;
+import org.yamcs.yarch.TableWriter;
+import org.yamcs.yarch.TableWriter.InsertMode;
+import org.yamcs.yarch.Tuple;
+import org.yamcs.yarch.TupleDefinition;
+import org.yamcs.yarch.YarchDatabase;
+import org.yamcs.yarch.YarchTestCase;
+
+/**
+ * The tablespace of this test is configured in the test yamcs.yaml with writeBatchSize: 5 and writeBatchMaxDelay: 100
+ */
+public class RdbTableWriterBatchTest extends YarchTestCase {
+    private TupleDefinition tdef;
+    private TableDefinition tblDef;
+
+    @BeforeEach
+    public void before() throws Exception {
+        tdef = new TupleDefinition();
+        tdef.addColumn(new ColumnDefinition("gentime", DataType.TIMESTAMP));
+        tdef.addColumn(new ColumnDefinition("packetid", DataType.INT));
+        tdef.addColumn(new ColumnDefinition("col3", DataType.INT));
+        tblDef = new TableDefinition("test1", tdef, Arrays.asList("gentime"));
+
+        PartitioningSpec pspec = PartitioningSpec.timeAndValueSpec("gentime", "packetid", "YYYY");
+        pspec.setValueColumnType(DataType.INT);
+        tblDef.setPartitioningSpec(pspec);
+        tblDef.setStorageEngineName(YarchDatabase.RDB_ENGINE_NAME);
+        ydb.createTable(tblDef);
+    }
+
+    @Test
+    public void testInsert() throws Exception {
+        RdbStorageEngine rse = (RdbStorageEngine) ydb.getStorageEngine(tblDef);
+        TableWriter tw = rse.newTableWriter(ydb, tblDef, InsertMode.INSERT);
+        for (int i = 0; i < 12; i++) {
+            tw.onTuple(null, new Tuple(tdef, new Object[] { 1000L * i, i % 2, i }));
+        }
+        // duplicate of a row still in the pending batch, ignored
+        tw.onTuple(null, new Tuple(tdef, new Object[] { 11000L, 1, 100 }));
+        tw.close();
+
+        List<Tuple> tuples = fetchAllFromTable("test1");
+        assertEquals(12, tuples.size());
+        for (int i = 0; i < 12; i++) {
+            Tuple t = tuples.get(i);
+            assertEquals(1000L * i, t.getLongColumn("gentime"));
+            assertEquals(i, t.getIntColumn("col3"));
+        }
+    }
+
+    @Test
+    public void testUpsert() throws Exception {
+        RdbStorageEngine rse = (RdbStorageEngine) ydb.getStorageEngine(tblDef);
+        TableWriter tw = rse.newTableWriter(ydb, tblDef, InsertMode.UPSERT);
+        tw.onTuple(null, new Tuple(tdef, new Object[] { 1000L, 1, 1 }));
+        tw.onTuple(null, new Tuple(tdef, new Object[] { 1000L, 1, 2 }));
+        tw.close();
+
+        List<Tuple> tuples = fetchAllFromTable("test1");
+        assertEquals(1, tuples.size());
+        assertEquals(2, tuples.get(0).getIntColumn("col3"));
+    }
+
+    @Test
+    public void testMaxDelay() throws Exception {
+        RdbStorageEngine rse = (RdbStorageEngine) ydb.getStorageEngine(tblDef);
+        TableWriter tw = rse.newTableWriter(ydb, tblDef, InsertMode.INSERT);
+        tw.onTuple(null, new Tuple(tdef, new Object[] { 1000L, 1, 1 }));
+
+        // the row is written by the periodic flush, without closing the writer
+        long t0 = System.currentTimeMillis();
+        List<Tuple> tuples = fetchAllFromTable("test1");
+        while (tuples.isEmpty() && System.currentTimeMillis() - t0 < 5000) {
+            Thread.sleep(50);
+            tuples = fetchAllFromTable("test1");
+        }
+        assertEquals(1, tuples.size());
+        tw.close();
+    }
+}
@@ -0,0 +1,41 @@
+package org.yamcs.yarch.rocksdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+import org.yamcs.yarch.TableDefinition;
+import org.yamcs.yarch.TableWriter;
+import org.yamcs.yarch.TableWriter.InsertMode;
+import org.yamcs.yarch.Tuple;
+import org.yamcs.yarch.TupleDefinition;
+import org.yamcs.yarch.YarchTestCase;
+
+/**
+ * The tablespace of this test is configured in the test yamcs.yaml with writeBatchSize: 5 and a writeBatchMaxDelay
+ * long enough such that the batches are only written when full or when the writer is closed.
+ */
+public class RdbTableWriterIndexBatchTest extends YarchTestCase {
+
+    @Test
+    public void testSecondaryIndexBatch() throws Exception {
+        ydb.execute("create table test1 (gentime timestamp, a int, b int, primary key(gentime), index(a)) "
+                + "partition by time(gentime('YYYY'))");
+        TableDefinition tblDef = ydb.getTable("test1");
+        TupleDefinition tdef = tblDef.getTupleDefinition();
+        Tablespace tablespace = RdbStorageEngine.getInstance().getTablespace(ydb.getTablespaceName());
+        tablespace.getWriteBatchStats().getAndReset();
+
+        TableWriter tw = ydb.getStorageEngine(tblDef).newTableWriter(ydb, tblDef, InsertMode.INSERT);
+        for (int i = 0; i < 10; i++) {
+            tw.onTuple(null, new Tuple(tdef, new Object[] { 1000L * i, i % 3, i }));
+        }
+        // the rows go in the partition database and the secondary index in the main database; both batches are
+        // written when they reach the size
+        var stats = tablespace.getWriteBatchStats().getAndReset();
+        assertEquals(4, stats.numBatches);
+        assertEquals(20, stats.numRows);
+
+        tw.close();
+        assertEquals(10, fetchAllFromTable("test1").size());
+    }
+}
@@ -0,0 +1,95 @@
+package org.yamcs.yarch.rocksdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.yamcs.yarch.ColumnDefinition;
+import org.yamcs.yarch.DataType;
+import org.yamcs.yarch.PartitioningSpec;
+import org.yamcs.yarch.Stream;
+import org.yamcs.yarch.StreamSubscriber;
+import org.yamcs.yarch.TableDefinition;
+import org.yamcs.yarch.TableWriter;
+import org.yamcs.yarch.TableWriter.InsertMode;
+import org.yamcs.yarch.Tuple;
+import org.yamcs.yarch.TupleDefinition;
+import org.yamcs.yarch.YarchDatabase;
+import org.yamcs.yarch.YarchTestCase;
+
+/**
+ * The tablespace of this test is configured in the test yamcs.yaml with readAheadQueueSize: 4
+ * <p>
+ * The read-ahead is used only for the nofollow streams.
+ */
+public class TableReaderStreamTest extends YarchTestCase {
+    static final int N = 1000;
+    private TupleDefinition tdef;
+
+    @BeforeEach
+    public void before() throws Exception {
+        tdef = new TupleDefinition();
+        tdef.addColumn(new ColumnDefinition("gentime", DataType.TIMESTAMP));
+        tdef.addColumn(new ColumnDefinition("packetid", DataType.INT));
+        tdef.addColumn(new ColumnDefinition("col3", DataType.INT));
+        TableDefinition tblDef = new TableDefinition("test1", tdef, Arrays.asList("gentime"));
+
+        PartitioningSpec pspec = PartitioningSpec.timeAndValueSpec("gentime", "packetid", "YYYY");
+        pspec.setValueColumnType(DataType.INT);
+        tblDef.setPartitioningSpec(pspec);
+        tblDef.setStorageEngineName(YarchDatabase.RDB_ENGINE_NAME);
+        ydb.createTable(tblDef);
+
+        RdbStorageEngine rse = (RdbStorageEngine) ydb.getStorageEngine(tblDef);
+        TableWriter tw = rse.newTableWriter(ydb, tblDef, InsertMode.INSERT);
+        for (int i = 0; i < N; i++) {
+            tw.onTuple(null, new Tuple(tdef, new Object[] { 1000L * i, i % 3, i }));
+        }
+        tw.close();
+    }
+
+    @Test
+    public void testReadAhead() throws Exception {
+        ydb.execute("create stream s0 as select * from test1 nofollow");
+        List<Tuple> tuples = fetchAll("s0");
+        assertEquals(N, tuples.size());
+        for (int i = 0; i < N; i++) {
+            assertEquals(1000L * i, tuples.get(i).getLongColumn("gentime"));
+            assertEquals(i, tuples.get(i).getIntColumn("col3"));
+        }
+    }
+
+    @Test
+    public void testCloseFromSubscriber() throws Exception {
+        ydb.execute("create stream s1 as select * from test1 nofollow");
+        Stream s = ydb.getStream("s1");
+        List<Tuple> tuples = new ArrayList<>();
+        Semaphore semaphore = new Semaphore(0);
+        s.addSubscriber(new StreamSubscriber() {
+            @Override
+            public void onTuple(Stream stream, Tuple tuple) {
+                tuples.add(tuple);
+                if (tuples.size() == 10) {
+                    stream.close();
+                }
+            }
+
+            @Override
+            public void streamClosed(Stream stream) {
+                semaphore.release();
+            }
+        });
+        s.start();
+        assertTrue(semaphore.tryAcquire(10, TimeUnit.SECONDS));
+        // give a chance to the reading thread to emit more if it would
+        Thread.sleep(100);
+        assertEquals(10, tuples.size());
+    }
+}
@@ -0,0 +1,64 @@
+package org.yamcs.yarch.streamsql;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.yamcs.yarch.Stream;
+import org.yamcs.yarch.Tuple;
+import org.yamcs.yarch.YarchTestCase;
+
+public class SelectTableStatementTest extends YarchTestCase {
+    // more rows than the result queue can hold
+    static final int N = 3000;
+    long maxConsumerWaitMillis;
+
+    @BeforeEach
+    public void populate() throws Exception {
+        maxConsumerWaitMillis = SelectTableStatement.QueueStreamSqlResult.maxConsumerWaitMillis;
+        ydb.execute("create table t1 (x int, primary key(x))");
+        ydb.execute("create stream t1_in (x int)");
+        ydb.execute("insert into t1 select * from t1_in");
+        Stream s = ydb.getStream("t1_in");
+        for (int i = 0; i < N; i++) {
+            s.emitTuple(new Tuple(s.getDefinition(), new Object[] { i }));
+        }
+        execute("close stream t1_in");
+    }
+
+    @AfterEach
+    public void restore() {
+        SelectTableStatement.QueueStreamSqlResult.maxConsumerWaitMillis = maxConsumerWaitMillis;
+    }
+
+    @Test
+    public void testAbandonedResult() throws Exception {
+        SelectTableStatement.QueueStreamSqlResult.maxConsumerWaitMillis = 200;
+
+        // the result is never read nor closed
+        StreamSqlResult res = ydb.execute("select * from t1");
+        Stream stream = ((SelectTableStatement.QueueStreamSqlResult) res).stream;
+        for (int i = 0; i < 100 && !stream.isClosed(); i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(stream.isClosed());
+        // the rows not read have been dropped
+        assertFalse(res.hasNext());
+    }
+
+    @Test
+    public void testSlowConsumer() throws Exception {
+        SelectTableStatement.QueueStreamSqlResult.maxConsumerWaitMillis = 2000;
+        StreamSqlResult res = ydb.execute("select * from t1");
+        Thread.sleep(500);
+        int k = 0;
+        while (res.hasNext()) {
+            assertEquals(k++, res.next().getIntColumn("x"));
+        }
+        res.close();
+        assertEquals(N, k);
+    }
+}
@@ -4,7 +4,7 @@ package org.yamcs.xtce;
  * A Parameter is a description of something that can have a value; it is not the value itself.
  */
 public class Parameter extends NameDescription {
-    private static final long serialVersionUID = 3L;
+    private static final long serialVersionUID = 4L;
     ParameterType parameterType;
     DataSource dataSource = DataSource.TELEMETERED;
     /**
@@ -22,6 +22,12 @@ public class Parameter extends NameDescription {
      */
     String recordingGroup = null;
 
+    /**
+     * Dense index of the parameter in the {@link XtceDb} where it has been added, -1 if the parameter is not part of
+     * an XtceDb
+     */
+    private int index = -1;
+
     public Parameter(String name) {
         super(name);
     }
@@ -54,6 +60,20 @@ public class Parameter extends NameDescription {
         this.recordingGroup = g;
     }
 
+    /**
+     * The index is assigned when the parameter is added to an {@link XtceDb}. The indices of the parameters of one
+     * XtceDb are consecutive starting from 0 such that they can be used for array based lookups.
+     * 
+     * @return the index of the parameter in the XtceDb or -1 if the parameter is not part of an XtceDb
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    void setIndex(int index) {
+        this.index = index;
+    }
+
     /**
      * 
      * @return the initial value of the parameter (if any)
@@ -28,7 +28,7 @@ import org.yamcs.xtce.xml.XtceAliasSet;
  * 
  */
 public class XtceDb implements Serializable {
-    private static final long serialVersionUID = 57L;
+    private static final long serialVersionUID = 58L;
 
     final SpaceSystem rootSystem;
 
@@ -50,6 +50,8 @@ public class XtceDb implements Serializable {
     protected HashMap<String, SpaceSystem> spaceSystems = new HashMap<>();
     protected Map<String, SequenceContainer> sequenceContainers = new LinkedHashMap<>();
     protected Map<String, Parameter> parameters = new LinkedHashMap<>();
+    // used to assign the parameter indices
+    private int numParameterIndices = 0;
     protected Map<String, ParameterType> parameterTypes = new LinkedHashMap<>();
     protected Map<String, ArgumentType> argumentTypes = new LinkedHashMap<>();
     protected HashMap<String, Algorithm> algorithms = new HashMap<>();
@@ -219,6 +221,16 @@ public class XtceDb implements Serializable {
         return algorithms.values();
     }
 
+    /**
+     * 
+     * @return the number of parameter indices assigned so far; all the parameters of this XtceDb have an index smaller
+     *         than this number.
+     * @see Parameter#getIndex()
+     */
+    public int getNumParameterIndices() {
+        return numParameterIndices;
+    }
+
     public Collection<Parameter> getParameters() {
         rwLock.readLock().lock();
         try {
@@ -490,6 +502,7 @@ public class XtceDb implements Serializable {
     private void buildParameterMap(SpaceSystem ss) {
         for (Parameter p : ss.getParameters()) {
             parameters.put(p.getQualifiedName(), p);
+            p.setIndex(numParameterIndices++);
         }
         for (SpaceSystem ss1 : ss.getSubSystems()) {
             buildParameterMap(ss1);
@@ -651,6 +664,7 @@ public class XtceDb implements Serializable {
 
                 ss.addParameter(p);
                 parameters.put(p.getQualifiedName(), p);
+                p.setIndex(numParameterIndices++);
 
                 parameterAliases.add(p);
                 XtceAliasSet aliases = p.getAliasSet();